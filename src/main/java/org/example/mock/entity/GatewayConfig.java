@@ -20,12 +20,114 @@ public class GatewayConfig implements Serializable {
     @Column(name = "TARGET_BASE_URL", nullable = false)
     private String targetBaseUrl;
 
+    // Load-balanced targets, one "URL [weight]" per line; null or blank sends everything to targetBaseUrl.
+    @Column(name = "TARGETS", length = 4000)
+    private String targets;
+
     @Column(name = "ENABLED", nullable = false)
     private boolean enabled = true;
 
     @Column(name = "DESCRIPTION")
     private String description;
 
+    // Upstream connection pool settings; null falls back to the gateway.* system property defaults.
+    @Column(name = "MAX_CONNECTIONS")
+    private Integer maxConnections;
+
+    @Column(name = "CONNECT_TIMEOUT_MS")
+    private Integer connectTimeoutMs;
+
+    @Column(name = "READ_TIMEOUT_MS")
+    private Integer readTimeoutMs;
+
+    // Calls allowed to wait for one of the route's connections before further ones get a 503.
+    @Column(name = "MAX_QUEUED")
+    private Integer maxQueued;
+
+    // Circuit breaker; null falls back to the gateway.breaker.* defaults, a failure rate of 0 disables it.
+    @Column(name = "BREAKER_FAILURE_RATE")
+    private Integer breakerFailureRate;
+
+    @Column(name = "BREAKER_SLOW_CALL_MS")
+    private Integer breakerSlowCallMs;
+
+    @Column(name = "BREAKER_OPEN_MS")
+    private Integer breakerOpenMs;
+
+    // Whether GET responses are kept in the gateway's HTTP cache, as their Cache-Control allows; null means no.
+    @Column(name = "CACHE_ENABLED")
+    private Boolean cacheEnabled;
+
+    // Whether identical concurrent GETs share one upstream call; null means no.
+    @Column(name = "COALESCE_REQUESTS")
+    private Boolean coalesceRequests;
+
+    // Hedged requests; a null delay waits for the rule's recent p95 latency.
+    @Column(name = "HEDGE_ENABLED")
+    private Boolean hedgeEnabled;
+
+    @Column(name = "HEDGE_DELAY_MS")
+    private Integer hedgeDelayMs;
+
+    // Log capture policy; null falls back to capturing everything up to gateway.log.maxBodyBytes.
+    @Column(name = "CAPTURE_MAX_BYTES")
+    private Integer captureMaxBytes;
+
+    // Share (0..1) of successful, fast calls logged with headers and bodies.
+    @Column(name = "CAPTURE_SAMPLE_RATE")
+    private Double captureSampleRate;
+
+    // Calls at least this slow are always logged in full.
+    @Column(name = "CAPTURE_SLOW_MS")
+    private Integer captureSlowMs;
+
+    // Whether 4xx/5xx calls are always logged in full; null means yes.
+    @Column(name = "CAPTURE_ERRORS")
+    private Boolean captureErrors;
+
+    @Column(name = "CAPTURE_HEADERS_ONLY")
+    private Boolean captureHeadersOnly;
+
+    // Log retention; null falls back to the gateway.log.retention.* defaults (which keep everything).
+    @Column(name = "RETENTION_MAX_AGE_HOURS")
+    private Integer retentionMaxAgeHours;
+
+    @Column(name = "RETENTION_MAX_ROWS")
+    private Integer retentionMaxRows;
+
+    public GatewayConfig() {
+    }
+
+    /**
+     * Detached copy, so in-memory route tables do not see later unsaved edits to {@code other}.
+     */
+    public GatewayConfig(GatewayConfig other) {
+        this.id = other.id;
+        this.sourceUrlPattern = other.sourceUrlPattern;
+        this.targetBaseUrl = other.targetBaseUrl;
+        this.targets = other.targets;
+        this.enabled = other.enabled;
+        this.description = other.description;
+        this.maxConnections = other.maxConnections;
+        this.connectTimeoutMs = other.connectTimeoutMs;
+        this.readTimeoutMs = other.readTimeoutMs;
+        this.maxQueued = other.maxQueued;
+        this.breakerFailureRate = other.breakerFailureRate;
+        this.breakerSlowCallMs = other.breakerSlowCallMs;
+        this.breakerOpenMs = other.breakerOpenMs;
+        this.cacheEnabled = other.cacheEnabled;
+        this.coalesceRequests = other.coalesceRequests;
+        this.hedgeEnabled = other.hedgeEnabled;
+        this.hedgeDelayMs = other.hedgeDelayMs;
+        this.captureMaxBytes = other.captureMaxBytes;
+        this.captureSampleRate = other.captureSampleRate;
+        this.captureSlowMs = other.captureSlowMs;
+        this.captureErrors = other.captureErrors;
+        this.captureHeadersOnly = other.captureHeadersOnly;
+        this.retentionMaxAgeHours = other.retentionMaxAgeHours;
+        this.retentionMaxRows = other.retentionMaxRows;
+    }
+
     // Getters and Setters
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
@@ -33,10 +135,48 @@ public class GatewayConfig implements Serializable {
     public void setSourceUrlPattern(String sourceUrlPattern) { this.sourceUrlPattern = sourceUrlPattern; }
     public String getTargetBaseUrl() { return targetBaseUrl; }
     public void setTargetBaseUrl(String targetBaseUrl) { this.targetBaseUrl = targetBaseUrl; }
+    public String getTargets() { return targets; }
+    public void setTargets(String targets) { this.targets = targets; }
     public boolean isEnabled() { return enabled; }
     public void setEnabled(boolean enabled) { this.enabled = enabled; }
     public String getDescription() { return description; }
     public void setDescription(String description) { this.description = description; }
+    public Integer getMaxConnections() { return maxConnections; }
+    public void setMaxConnections(Integer maxConnections) { this.maxConnections = maxConnections; }
+    public Integer getConnectTimeoutMs() { return connectTimeoutMs; }
+    public void setConnectTimeoutMs(Integer connectTimeoutMs) { this.connectTimeoutMs = connectTimeoutMs; }
+    public Integer getReadTimeoutMs() { return readTimeoutMs; }
+    public void setReadTimeoutMs(Integer readTimeoutMs) { this.readTimeoutMs = readTimeoutMs; }
+    public Integer getMaxQueued() { return maxQueued; }
+    public void setMaxQueued(Integer maxQueued) { this.maxQueued = maxQueued; }
+    public Integer getBreakerFailureRate() { return breakerFailureRate; }
+    public void setBreakerFailureRate(Integer breakerFailureRate) { this.breakerFailureRate = breakerFailureRate; }
+    public Integer getBreakerSlowCallMs() { return breakerSlowCallMs; }
+    public void setBreakerSlowCallMs(Integer breakerSlowCallMs) { this.breakerSlowCallMs = breakerSlowCallMs; }
+    public Integer getBreakerOpenMs() { return breakerOpenMs; }
+    public void setBreakerOpenMs(Integer breakerOpenMs) { this.breakerOpenMs = breakerOpenMs; }
+    public Boolean getCacheEnabled() { return cacheEnabled; }
+    public void setCacheEnabled(Boolean cacheEnabled) { this.cacheEnabled = cacheEnabled; }
+    public Boolean getCoalesceRequests() { return coalesceRequests; }
+    public void setCoalesceRequests(Boolean coalesceRequests) { this.coalesceRequests = coalesceRequests; }
+    public Boolean getHedgeEnabled() { return hedgeEnabled; }
+    public void setHedgeEnabled(Boolean hedgeEnabled) { this.hedgeEnabled = hedgeEnabled; }
+    public Integer getHedgeDelayMs() { return hedgeDelayMs; }
+    public void setHedgeDelayMs(Integer hedgeDelayMs) { this.hedgeDelayMs = hedgeDelayMs; }
+    public Integer getCaptureMaxBytes() { return captureMaxBytes; }
+    public void setCaptureMaxBytes(Integer captureMaxBytes) { this.captureMaxBytes = captureMaxBytes; }
+    public Double getCaptureSampleRate() { return captureSampleRate; }
+    public void setCaptureSampleRate(Double captureSampleRate) { this.captureSampleRate = captureSampleRate; }
+    public Integer getCaptureSlowMs() { return captureSlowMs; }
+    public void setCaptureSlowMs(Integer captureSlowMs) { this.captureSlowMs = captureSlowMs; }
+    public Boolean getCaptureErrors() { return captureErrors; }
+    public void setCaptureErrors(Boolean captureErrors) { this.captureErrors = captureErrors; }
+    public Boolean getCaptureHeadersOnly() { return captureHeadersOnly; }
+    public void setCaptureHeadersOnly(Boolean captureHeadersOnly) { this.captureHeadersOnly = captureHeadersOnly; }
+    public Integer getRetentionMaxAgeHours() { return retentionMaxAgeHours; }
+    public void setRetentionMaxAgeHours(Integer retentionMaxAgeHours) { this.retentionMaxAgeHours = retentionMaxAgeHours; }
+    public Integer getRetentionMaxRows() { return retentionMaxRows; }
+    public void setRetentionMaxRows(Integer retentionMaxRows) { this.retentionMaxRows = retentionMaxRows; }
 
     @Override
     public boolean equals(Object o) {
@@ -6,7 +6,8 @@ import java.sql.Timestamp;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "GATEWAY_LOG")
+// Keyset paging and retention purges seek on (rule, timestamp, id); see JpaLogStore.
+@Table(name = "GATEWAY_LOG", indexes = @Index(name = "GATEWAY_LOG_CFG_TS_ID_IX", columnList = "GATEWAY_CONFIG_ID, TIMESTAMP, ID"))
 @NamedQuery(name = "GatewayLog.findByConfigId", query = "SELECT l FROM GatewayLog l WHERE l.gatewayConfig.id = :configId ORDER BY l.timestamp DESC")
 public class GatewayLog implements Serializable {
 
@@ -52,6 +53,17 @@ public class GatewayLog implements Serializable {
     @Column(name = "DURATION_MS")
     private long durationMs;
 
+    // Full body lengths in bytes, also when the stored body is truncated or was not captured.
+    @Column(name = "REQUEST_BODY_LENGTH")
+    private Long requestBodyLength;
+
+    @Column(name = "RESPONSE_BODY_LENGTH")
+    private Long responseBodyLength;
+
+    // Whether the response body came from the gateway cache (fresh, stale or revalidated with a 304).
+    @Column(name = "CACHE_HIT")
+    private Boolean cacheHit;
+
     // Getters and Setters...
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
@@ -75,17 +87,24 @@ public class GatewayLog implements Serializable {
     public void setResponseBody(String responseBody) { this.responseBody = responseBody; }
     public long getDurationMs() { return durationMs; }
     public void setDurationMs(long durationMs) { this.durationMs = durationMs; }
+    public Long getRequestBodyLength() { return requestBodyLength; }
+    public void setRequestBodyLength(Long requestBodyLength) { this.requestBodyLength = requestBodyLength; }
+    public Long getResponseBodyLength() { return responseBodyLength; }
+    public void setResponseBodyLength(Long responseBodyLength) { this.responseBodyLength = responseBodyLength; }
+    public Boolean getCacheHit() { return cacheHit; }
+    public void setCacheHit(Boolean cacheHit) { this.cacheHit = cacheHit; }
 
     public GatewayLog() {
         // Default constructor
     }
 
     // --- SOLUTION: Add the constructor used by our new query ---
-    public GatewayLog(Long id, Timestamp timestamp, String requestMethod, int responseStatusCode, long durationMs) {
+    public GatewayLog(Long id, Timestamp timestamp, String requestMethod, int responseStatusCode, long durationMs, Boolean cacheHit) {
         this.id = id;
         this.timestamp = timestamp;
         this.requestMethod = requestMethod;
         this.responseStatusCode = responseStatusCode;
         this.durationMs = durationMs;
+        this.cacheHit = cacheHit;
     }
 }
\ No newline at end of file
@@ -0,0 +1,60 @@
+package org.example.mock.entity;
+
+import javax.persistence.*;
+import java.io.Serializable;
+import java.sql.Timestamp;
+
+/**
+ * A request captured by {@code /api/mock2}. Rows are inserted in JDBC batches by
+ * {@code CaptureService}, so the entity is only used for reading.
+ */
+@Entity
+@Table(name = "MOCK_CAPTURE", indexes = {
+        @Index(name = "IDX_MOCK_CAPTURE_CONFIG", columnList = "MOCK_CONFIG2_ID, CAPTURED_AT")
+})
+@NamedQuery(name = "MockCapture.findByConfigId", query = "SELECT c FROM MockCapture c WHERE c.mockConfigId = :configId ORDER BY c.capturedAt DESC, c.id DESC")
+public class MockCapture implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "mock_capture_seq")
+    @SequenceGenerator(name = "mock_capture_seq", sequenceName = "MOCK_CAPTURE_SEQ", allocationSize = 50)
+    private Long id;
+
+    @Column(name = "MOCK_CONFIG2_ID", nullable = false)
+    private Long mockConfigId;
+
+    @Column(name = "CAPTURED_AT", nullable = false)
+    private Timestamp capturedAt;
+
+    @Column(name = "HTTP_METHOD", length = 10)
+    private String httpMethod;
+
+    @Column(name = "REQUEST_URL", length = 2048)
+    private String requestUrl;
+
+    @Lob
+    @Column(name = "REQUEST_HEADERS")
+    private String requestHeaders;
+
+    @Lob
+    @Column(name = "REQUEST_PAYLOAD")
+    private String requestPayload;
+
+    // Getters and Setters
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public Long getMockConfigId() { return mockConfigId; }
+    public void setMockConfigId(Long mockConfigId) { this.mockConfigId = mockConfigId; }
+    public Timestamp getCapturedAt() { return capturedAt; }
+    public void setCapturedAt(Timestamp capturedAt) { this.capturedAt = capturedAt; }
+    public String getHttpMethod() { return httpMethod; }
+    public void setHttpMethod(String httpMethod) { this.httpMethod = httpMethod; }
+    public String getRequestUrl() { return requestUrl; }
+    public void setRequestUrl(String requestUrl) { this.requestUrl = requestUrl; }
+    public String getRequestHeaders() { return requestHeaders; }
+    public void setRequestHeaders(String requestHeaders) { this.requestHeaders = requestHeaders; }
+    public String getRequestPayload() { return requestPayload; }
+    public void setRequestPayload(String requestPayload) { this.requestPayload = requestPayload; }
+}
@@ -1,5 +1,7 @@
 package org.example.mock.entity;
 
+import org.example.mock.util.JsonUtil;
+
 import javax.persistence.*;
 import javax.validation.constraints.Max;
 import javax.validation.constraints.Min;
@@ -7,7 +9,9 @@ import java.io.Serializable;
 import java.util.Objects;
 
 @Entity
-@Table(name = "MOCK_CONFIG")
+@Table(name = "MOCK_CONFIG", indexes = {
+        @Index(name = "IDX_MOCK_CONFIG_LOOKUP", columnList = "HTTP_METHOD, URL_PATTERN, REQUEST_PAYLOAD_DIGEST")
+})
 @NamedQuery(name = "MockConfig.findAll", query = "SELECT m FROM MockConfig m ORDER BY m.id")
 public class MockConfig implements Serializable {
 
@@ -23,10 +27,21 @@ public class MockConfig implements Serializable {
     @Column(name = "REQUEST_PAYLOAD")
     private String requestPayload;
 
+    // SHA-256 (hex) and length of the normalized request payload, so lookups never compare the CLOB itself.
+    @Column(name = "REQUEST_PAYLOAD_DIGEST", length = 64)
+    private String requestPayloadDigest;
+
+    @Column(name = "REQUEST_PAYLOAD_LENGTH")
+    private Integer requestPayloadLength;
+
     @Lob // Large Object for CLOB
-    @Column(name = "RESPONSE_PAYLOAD", nullable = false)
+    @Column(name = "RESPONSE_PAYLOAD")
     private String responsePayload;
 
+    // Path relative to the content store; when set, the body is served from that file instead of RESPONSE_PAYLOAD.
+    @Column(name = "RESPONSE_BODY_FILE", length = 1024)
+    private String responseBodyFile;
+
 
     @Min(0) // Ensures the value is not negative
     @Column(name = "DELAY_MS", nullable = false)
@@ -80,6 +95,21 @@ public class MockConfig implements Serializable {
     public void setRequestPayload(String requestPayload) { this.requestPayload = requestPayload; }
     public String getResponsePayload() { return responsePayload; }
     public void setResponsePayload(String responsePayload) { this.responsePayload = responsePayload; }
+    public String getResponseBodyFile() { return responseBodyFile; }
+    public void setResponseBodyFile(String responseBodyFile) { this.responseBodyFile = responseBodyFile; }
+    public String getRequestPayloadDigest() { return requestPayloadDigest; }
+    public Integer getRequestPayloadLength() { return requestPayloadLength; }
+
+    /**
+     * Keeps the digest columns in sync with the request payload on every insert and update.
+     */
+    @PrePersist
+    @PreUpdate
+    void computeRequestPayloadDigest() {
+        String normalized = JsonUtil.normalize(requestPayload);
+        this.requestPayloadDigest = JsonUtil.digest(normalized);
+        this.requestPayloadLength = normalized == null ? null : normalized.length();
+    }
 
     @Override
     public boolean equals(Object o) {
@@ -23,9 +23,9 @@ public class MockConfig2 implements Serializable {
     @Column(name = "RESPONSE_PAYLOAD", nullable = false)
     private String responsePayload;
 
-    // ADD THIS FIELD
+    // Written only by CaptureService; JPA must not merge a stale copy back over the latest capture.
     @Lob
-    @Column(name = "CAPTURED_REQUEST_PAYLOAD")
+    @Column(name = "CAPTURED_REQUEST_PAYLOAD", insertable = false, updatable = false)
     private String capturedRequestPayload;
 
     @Min(0)
@@ -40,6 +40,19 @@ public class MockConfig2 implements Serializable {
     @Column(name = "HTTP_METHOD", nullable = false, length = 10)
     private String httpMethod = "POST";
 
+    public MockConfig2() {
+        // Default constructor
+    }
+
+    // Used by the lookup query in MockConfigService2, which leaves out the LOB columns.
+    public MockConfig2(Long id, String urlPattern, String httpMethod, Integer httpStatusCode, Integer delayMs) {
+        this.id = id;
+        this.urlPattern = urlPattern;
+        this.httpMethod = httpMethod;
+        this.httpStatusCode = httpStatusCode;
+        this.delayMs = delayMs;
+    }
+
     // Getters and Setters
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
@@ -0,0 +1,66 @@
+package org.example.mock.rest;
+
+import org.example.mock.entity.MockCapture;
+import org.example.mock.service.CaptureService;
+import org.example.mock.service.CapturedRequest;
+import org.example.mock.service.MockConfigService2;
+
+import javax.inject.Inject;
+import javax.ws.rs.*;
+import javax.ws.rs.core.MediaType;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read access to the requests captured by {@code /api/mock2}.
+ */
+@Path("/captures")
+@Produces(MediaType.APPLICATION_JSON)
+public class CaptureResource {
+
+    private static final int MAX_LIMIT = 1000;
+
+    @Inject
+    private CaptureService captureService;
+
+    @Inject
+    private MockConfigService2 mockConfigService;
+
+    /**
+     * The most recent captures of a mock, newest first, served from memory (including ones not yet flushed).
+     */
+    @GET
+    @Path("/{mockId}")
+    public List<CapturedRequest> recent(@PathParam("mockId") Long mockId, @QueryParam("limit") @DefaultValue("20") int limit) {
+        return captureService.findRecent(mockId, clamp(limit));
+    }
+
+    /**
+     * The persisted capture history of a mock, newest first.
+     */
+    @GET
+    @Path("/{mockId}/history")
+    public List<MockCapture> history(@PathParam("mockId") Long mockId, @QueryParam("limit") @DefaultValue("100") int limit) {
+        return mockConfigService.findCaptures(mockId, clamp(limit));
+    }
+
+    @GET
+    @Path("/stats")
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("overflowPolicy", captureService.getOverflowPolicy());
+        stats.put("captured", captureService.getCapturedCount());
+        stats.put("flushed", captureService.getFlushedCount());
+        stats.put("backlog", captureService.getBacklog());
+        stats.put("dropped", captureService.getDroppedCount());
+        stats.put("blocked", captureService.getBlockedCount());
+        stats.put("lost", captureService.getLostCount());
+        stats.put("failedFlushes", captureService.getFailedFlushCount());
+        return stats;
+    }
+
+    private static int clamp(int limit) {
+        return Math.max(1, Math.min(limit, MAX_LIMIT));
+    }
+}
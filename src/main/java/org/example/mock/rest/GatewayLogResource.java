@@ -0,0 +1,48 @@
+package org.example.mock.rest;
+
+import org.example.mock.service.GatewayLogWriter;
+import org.example.mock.service.LogRetentionService;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.MediaType;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * State of the gateway log pipeline. Lives outside {@code /gateway}, where every path is proxied.
+ */
+@Path("/gateway-logs")
+@Produces(MediaType.APPLICATION_JSON)
+public class GatewayLogResource {
+
+    @Inject
+    private GatewayLogWriter logWriter;
+
+    @Inject
+    private LogRetentionService logRetention;
+
+    @GET
+    @Path("/stats")
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("store", logWriter.getStoreName());
+        stats.put("overflowPolicy", logWriter.getOverflowPolicy());
+        stats.put("capacity", logWriter.getCapacity());
+        stats.put("queueDepth", logWriter.getQueueDepth());
+        stats.put("submitted", logWriter.getSubmittedCount());
+        stats.put("written", logWriter.getWrittenCount());
+        stats.put("dropped", logWriter.getDroppedCount());
+        stats.put("blocked", logWriter.getBlockedCount());
+        stats.put("discarded", logWriter.getDiscardedCount());
+        stats.put("batches", logWriter.getBatchCount());
+        stats.put("failedBatches", logWriter.getFailedBatchCount());
+        stats.put("lastBatchMs", logWriter.getLastBatchMillis());
+        stats.put("avgBatchMs", logWriter.getAvgBatchMillis());
+        stats.put("maxBatchMs", logWriter.getMaxBatchMillis());
+        stats.put("retention", logRetention.getStats());
+        return stats;
+    }
+}
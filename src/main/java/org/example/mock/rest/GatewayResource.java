@@ -2,224 +2,671 @@ package org.example.mock.rest;
 
 import org.example.mock.entity.GatewayConfig;
 import org.example.mock.entity.GatewayLog;
-import org.example.mock.service.GatewayService;
+import org.example.mock.service.CapturePolicy;
+import org.example.mock.service.GatewayCircuitBreakers;
+import org.example.mock.service.GatewayExecutor;
+import org.example.mock.service.GatewayHedging;
+import org.example.mock.service.GatewayLogWriter;
+import org.example.mock.service.GatewayMatch;
+import org.example.mock.service.GatewayRequest;
+import org.example.mock.service.GatewayResponseCache;
+import org.example.mock.service.GatewayRouteTable;
+import org.example.mock.service.GatewayTargets;
+import org.example.mock.service.HedgedCall;
+import org.example.mock.service.MetricsRegistry;
+import org.example.mock.service.RequestCoalescer;
+import org.example.mock.service.RouteMetrics;
+import org.example.mock.service.UpstreamClient;
+import org.example.mock.util.BodyCapture;
+import org.example.mock.util.CircuitBreaker;
+import org.example.mock.util.HttpConnectionPool;
+import org.example.mock.util.HttpExchange;
+import org.example.mock.util.TargetBalancer;
 
 import javax.inject.Inject;
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.net.SocketTimeoutException;
+import java.net.URI;
 import java.sql.Timestamp;
 import java.time.Instant;
-import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 @Path("/gateway")
 public class GatewayResource {
 
+    private static final Logger LOGGER = Logger.getLogger(GatewayResource.class.getName());
+
+    @Inject
+    private GatewayLogWriter logWriter;
+
+    @Inject
+    private GatewayRouteTable routeTable;
+
+    @Inject
+    private UpstreamClient upstreamClient;
+
+    @Inject
+    private GatewayExecutor gatewayExecutor;
+
+    @Inject
+    private MetricsRegistry metrics;
+
+    @Inject
+    private GatewayCircuitBreakers circuitBreakers;
+
+    @Inject
+    private GatewayResponseCache responseCache;
+
+    @Inject
+    private RequestCoalescer coalescer;
+
     @Inject
-    private GatewayService gatewayService;
+    private GatewayTargets targets;
+
+    @Inject
+    private GatewayHedging hedging;
 
     // --- JAX-RS Resource Methods ---
     // Each HTTP verb gets its own method, which then delegates to the private proxyRequest method.
+    // The request thread is released as soon as the request is handed to the upstream executor.
 
     @GET
     @Path("/{sourceUrlPattern:.+}")
-    public Response handleGet(
+    public void handleGet(
             @PathParam("sourceUrlPattern") String sourceUrlPattern,
             @Context HttpHeaders headers,
-            @Context UriInfo uriInfo) {
+            @Context UriInfo uriInfo,
+            @Suspended AsyncResponse asyncResponse) {
         // For GET requests, the body is always null.
-        return proxyRequest("GET", sourceUrlPattern, headers, uriInfo, null);
+        proxyRequest("GET", sourceUrlPattern, headers, uriInfo, null, asyncResponse);
     }
 
     @POST
     @Path("/{sourceUrlPattern:.+}")
-    public Response handlePost(
+    public void handlePost(
             @PathParam("sourceUrlPattern") String sourceUrlPattern,
             @Context HttpHeaders headers,
             @Context UriInfo uriInfo,
-            String requestBody) {
-        return proxyRequest("POST", sourceUrlPattern, headers, uriInfo, requestBody);
+            InputStream requestBody,
+            @Suspended AsyncResponse asyncResponse) {
+        proxyRequest("POST", sourceUrlPattern, headers, uriInfo, requestBody, asyncResponse);
     }
 
     @PUT
     @Path("/{sourceUrlPattern:.+}")
-    public Response handlePut(
+    public void handlePut(
+            @PathParam("sourceUrlPattern") String sourceUrlPattern,
+            @Context HttpHeaders headers,
+            @Context UriInfo uriInfo,
+            InputStream requestBody,
+            @Suspended AsyncResponse asyncResponse) {
+        proxyRequest("PUT", sourceUrlPattern, headers, uriInfo, requestBody, asyncResponse);
+    }
+
+    @PATCH
+    @Path("/{sourceUrlPattern:.+}")
+    public void handlePatch(
             @PathParam("sourceUrlPattern") String sourceUrlPattern,
             @Context HttpHeaders headers,
             @Context UriInfo uriInfo,
-            String requestBody) {
-        return proxyRequest("PUT", sourceUrlPattern, headers, uriInfo, requestBody);
+            InputStream requestBody,
+            @Suspended AsyncResponse asyncResponse) {
+        proxyRequest("PATCH", sourceUrlPattern, headers, uriInfo, requestBody, asyncResponse);
     }
 
     @DELETE
     @Path("/{sourceUrlPattern:.+}")
-    public Response handleDelete(
+    public void handleDelete(
             @PathParam("sourceUrlPattern") String sourceUrlPattern,
             @Context HttpHeaders headers,
-            @Context UriInfo uriInfo) {
-        // DELETE requests typically don't have a body, but we pass null for consistency.
-        return proxyRequest("DELETE", sourceUrlPattern, headers, uriInfo, null);
+            @Context UriInfo uriInfo,
+            InputStream requestBody,
+            @Suspended AsyncResponse asyncResponse) {
+        // DELETE requests rarely have a body, but some APIs use one; it is forwarded if the client sent it.
+        proxyRequest("DELETE", sourceUrlPattern, headers, uriInfo, requestBody, asyncResponse);
     }
 
     @OPTIONS
     @Path("/{sourceUrlPattern:.+}")
-    public Response handleOptions(
+    public void handleOptions(
             @PathParam("sourceUrlPattern") String sourceUrlPattern,
             @Context HttpHeaders headers,
-            @Context UriInfo uriInfo) {
-        return proxyRequest("OPTIONS", sourceUrlPattern, headers, uriInfo, null);
+            @Context UriInfo uriInfo,
+            @Suspended AsyncResponse asyncResponse) {
+        proxyRequest("OPTIONS", sourceUrlPattern, headers, uriInfo, null, asyncResponse);
     }
 
     @HEAD
     @Path("/{sourceUrlPattern:.+}")
-    public Response handleHead(
+    public void handleHead(
             @PathParam("sourceUrlPattern") String sourceUrlPattern,
             @Context HttpHeaders headers,
-            @Context UriInfo uriInfo) {
-        return proxyRequest("HEAD", sourceUrlPattern, headers, uriInfo, null);
+            @Context UriInfo uriInfo,
+            @Suspended AsyncResponse asyncResponse) {
+        proxyRequest("HEAD", sourceUrlPattern, headers, uriInfo, null, asyncResponse);
     }
 
 
     /**
-     * Private method containing the core proxy logic. It's called by the public JAX-RS methods.
+     * Resolves the route and copies what the upstream call needs out of the request context, then runs
+     * the call on the route's share of the {@link GatewayExecutor}. The client gets a 504 if no response
+     * head arrives within the route's connect plus read timeout, and a 503 if the route's circuit breaker
+     * is open or its share is saturated. On a route with a response cache, a fresh or stale-while-revalidate
+     * entry is served right here, without an upstream call (see {@link GatewayResponseCache}); on a route
+     * that coalesces requests, a request identical to one in flight waits for its response instead of
+     * making a call of its own (see {@link RequestCoalescer}). Each upstream call goes to one of the rule's
+     * targets, chosen when it starts (see {@link GatewayTargets}), and may be hedged on another one (see
+     * {@link GatewayHedging}).
+     *
+     * @param requestBody The unread request body, or null for methods that never carry one. It is
+     *                    streamed to the upstream, never buffered whole.
      */
-    private Response proxyRequest(
+    private void proxyRequest(
             String method,
             String sourceUrlPattern,
             HttpHeaders headers,
             UriInfo uriInfo,
-            String requestBody) {
+            InputStream requestBody,
+            AsyncResponse asyncResponse) {
 
-        GatewayConfig config = gatewayService.findActiveConfigBySourcePattern(sourceUrlPattern);
+        // Matched on the path as the client sent it, so the remainder is forwarded without re-encoding.
+        GatewayMatch match = routeTable.find(uriInfo.getPathParameters(false).getFirst("sourceUrlPattern"));
 
-        if (config == null) {
-            return Response.status(Response.Status.NOT_FOUND)
-                    .entity("{\"error\":\"No active gateway configuration found for pattern: " + sourceUrlPattern + "\"}")
-                    .build();
+        if (match == null) {
+            asyncResponse.resume(Response.status(Response.Status.NOT_FOUND)
+                    .entity("{\"error\":\"No active gateway configuration found for path: " + sourceUrlPattern + "\"}")
+                    .build());
+            return;
         }
 
+        GatewayConfig config = match.getConfig();
         long startTime = System.currentTimeMillis();
+        RouteMetrics routeMetrics = metrics.gateway(config);
+        long startNanos = routeMetrics.start();
+        // Every call ends here exactly once, whichever way it completes.
+        Consumer<GatewayLog> complete = completed -> {
+            routeMetrics.finish(completed.getResponseStatusCode(), startNanos);
+            if (completed.getCacheHit() != null) {
+                routeMetrics.countCache(completed.getCacheHit() ? RouteMetrics.CacheResult.REVALIDATED : RouteMetrics.CacheResult.MISS);
+            }
+            logWriter.submit(completed);
+        };
         GatewayLog log = new GatewayLog();
         log.setGatewayConfig(config);
         log.setTimestamp(Timestamp.from(Instant.now()));
-        log.setRequestBody(requestBody);
         log.setRequestMethod(method);
 
-        HttpURLConnection connection = null;
+        GatewayRequest request;
         try {
-            // 1. Construct the Target URL
-            String targetUrl = buildTargetUrl(config.getTargetBaseUrl(), uriInfo);
-            log.setRequestUrl(targetUrl);
-
-            URL url = new URL(targetUrl);
-            connection = (HttpURLConnection) url.openConnection();
+            // 1. Take the path below the rule; the target it is appended to is chosen per upstream call
+            String path = pathBelowRule(match.getRemainingPath(), uriInfo);
 
-            // 2. Set the method and basic properties
-            connection.setRequestMethod(method);
-            connection.setConnectTimeout(10000); // 10 seconds
-            connection.setReadTimeout(10000);    // 10 seconds
-            connection.setInstanceFollowRedirects(false); // Important for proxying
-
-            // 3. Copy Headers from incoming request to outgoing request
-            String allRequestHeaders = copyHeaders(headers, connection);
+            // 2. Copy Headers from incoming request to outgoing request
+            Map<String, List<String>> upstreamHeaders = new LinkedHashMap<>();
+            String allRequestHeaders = copyHeaders(headers, upstreamHeaders);
             log.setRequestHeaders(allRequestHeaders);
 
-            // 4. Write request body for methods that support it (e.g., POST, PUT)
-            if ("POST".equalsIgnoreCase(method) || "PUT".equalsIgnoreCase(method)) {
-                if (requestBody != null && !requestBody.isEmpty()) {
-                    connection.setDoOutput(true);
-                    try (OutputStream os = connection.getOutputStream()) {
-                        byte[] input = requestBody.getBytes(StandardCharsets.UTF_8);
-                        os.write(input, 0, input.length);
-                    }
+            boolean withBody = requestBody != null && hasBody(headers);
+            request = new GatewayRequest(config, method, path, upstreamHeaders, allRequestHeaders,
+                    withBody ? requestBody : null, withBody ? declaredLength(headers) : -1,
+                    headers.getHeaderString(HttpHeaders.CONTENT_TYPE), headers.getHeaderString(HttpHeaders.CONTENT_ENCODING),
+                    startTime);
+            // Replaced by the chosen target's URL once a call is made.
+            log.setRequestUrl(request.targetOn(config.getTargetBaseUrl()).toString());
+        } catch (RuntimeException e) {
+            asyncResponse.resume(fail(log, startTime, 500, "Gateway failed to process request.", e, complete));
+            return;
+        }
+
+        GatewayResponseCache.Lookup cached = responseCache.lookup(request);
+        if (cached != null) {
+            log.setCacheHit(false);
+            GatewayResponseCache.State state = cached.getState();
+            if (state == GatewayResponseCache.State.FRESH || state == GatewayResponseCache.State.STALE) {
+                if (state == GatewayResponseCache.State.STALE && cached.claimRefresh()) {
+                    refresh(cached.forRefresh(), request);
                 }
+                Response response = fromCache(cached.getEntry(), request, log);
+                routeMetrics.finishFromCache(response.getStatus(),
+                        state == GatewayResponseCache.State.FRESH ? RouteMetrics.CacheResult.HIT : RouteMetrics.CacheResult.STALE);
+                logWriter.submit(log);
+                asyncResponse.resume(response);
+                return;
             }
+        }
 
-            // 5. Get the response from the real server
-            int responseCode = connection.getResponseCode();
-            log.setResponseStatusCode(responseCode);
+        long timeoutMs = upstreamClient.responseTimeoutMs(config);
+        asyncResponse.setTimeoutHandler(timedOut -> timedOut.resume(Response.status(Response.Status.GATEWAY_TIMEOUT)
+                .entity("{\"error\":\"Upstream did not respond within " + timeoutMs + " ms.\"}")
+                .type(MediaType.APPLICATION_JSON)
+                .build()));
+        asyncResponse.setTimeout(timeoutMs, TimeUnit.MILLISECONDS);
+
+        RequestCoalescer.Flight flight = coalescer.join(request);
+        if (flight != null && !flight.isLeader()) {
+            routeMetrics.countCollapsed();
+            flight.whenDone((shared, error) -> {
+                if (shared != null) {
+                    Response response = buffered(shared.getStatus(), shared.getHeaders(), shared.getBody(), request, log).build();
+                    complete.accept(log);
+                    asyncResponse.resume(response);
+                } else if (error != null) {
+                    asyncResponse.resume(failed(log, startTime,
+                            error instanceof Exception ? (Exception) error : new ExecutionException(error), complete));
+                } else {
+                    dispatch(request, cached, null, log, asyncResponse, complete); // Too large to share; call on our own.
+                }
+            });
+            return;
+        }
+        dispatch(request, cached, flight, log, asyncResponse, complete);
+    }
 
-            // 6. Read the response body
-            InputStream responseStream = (responseCode < 400) ? connection.getInputStream() : connection.getErrorStream();
-            String responseBody = "";
-            if (responseStream != null) {
-                // For HEAD requests, there is no body, so avoid trying to read it.
-                if (!"HEAD".equalsIgnoreCase(method)) {
-                    try (BufferedReader reader = new BufferedReader(new InputStreamReader(responseStream, StandardCharsets.UTF_8))) {
-                        responseBody = reader.lines().collect(Collectors.joining("\n"));
+    /**
+     * Runs the upstream call on the route's share of the {@link GatewayExecutor}, unless the route's circuit
+     * breaker or its share refuses it.
+     *
+     * @param flight The coalesced call this request leads, or null.
+     */
+    private void dispatch(GatewayRequest request, GatewayResponseCache.Lookup cached, RequestCoalescer.Flight flight,
+                          GatewayLog log, AsyncResponse asyncResponse, Consumer<GatewayLog> complete) {
+        GatewayConfig config = request.getConfig();
+        long startTime = request.getStartTime();
+        CircuitBreaker breaker = circuitBreakers.get(config);
+        if (!breaker.tryAcquire()) {
+            RejectedExecutionException e = new RejectedExecutionException("Circuit " + breaker.getState());
+            if (flight != null) {
+                flight.fail(e);
+            }
+            asyncResponse.resume(fail(log, startTime, 503, "Circuit breaker is open for this gateway rule.", e, complete));
+            return;
+        }
+
+        try {
+            gatewayExecutor.execute(config, () -> {
+                Response response = forward(request, cached, flight, log, breaker, complete);
+                if (!asyncResponse.resume(response)) {
+                    // The client already got a 504 (or went away); don't leave the upstream connection dangling.
+                    Object entity = response.getEntity();
+                    if (entity instanceof UpstreamStreamingOutput) {
+                        ((UpstreamStreamingOutput) entity).discard("client response already completed");
                     }
                 }
+            });
+        } catch (RejectedExecutionException e) {
+            breaker.onIgnored();
+            if (flight != null) {
+                flight.fail(e);
             }
-            log.setResponseBody(responseBody);
+            asyncResponse.resume(fail(log, startTime, 503, "Too many concurrent requests for this gateway rule.", e, complete));
+        }
+    }
 
-            // 7. Log response details
-            log.setResponseHeaders(formatHeaders(connection.getHeaderFields()));
-            log.setDurationMs(System.currentTimeMillis() - startTime);
+    /**
+     * Performs the upstream call on an executor thread and builds the client response.
+     *
+     * @param cached   The cache lookup of a GET or HEAD on a caching rule, or null. A stale entry is revalidated
+     *                 and served on a 304; otherwise a cacheable response is stored as it is relayed.
+     * @param flight   The coalesced call this request leads, or null. A body of up to
+     *                 {@link RequestCoalescer#MAX_BODY_BYTES} is read whole and shared with its waiting requests.
+     * @param breaker  Has let the call through; told whether the target answered, and how fast.
+     * @param complete Receives the log entry once the call is over, including the response body transfer.
+     *                 The call counts as outstanding on its target until then.
+     */
+    private Response forward(GatewayRequest request, GatewayResponseCache.Lookup cached, RequestCoalescer.Flight flight,
+                             GatewayLog log, CircuitBreaker breaker, Consumer<GatewayLog> complete) {
+        long startTime = request.getStartTime();
+        int captureLimit = CapturePolicy.maxBodyBytes(request.getConfig());
+        BodyCapture requestCapture = new BodyCapture(captureLimit);
+        HedgedCall call = hedging.newCall(request, breaker);
+        Consumer<GatewayLog> done = completed -> {
+            call.release();
+            complete.accept(completed);
+        };
+        HttpExchange.Response upstream = null;
+        boolean streaming = false;
+        boolean callFailed = false;
+        boolean callStarted = false;
+        try {
+            // 3. Send the request over a pooled keep-alive connection, to one of the rule's targets (and,
+            // if hedged and slow, to a second one). A body the client sent is streamed as-is: with its
+            // Content-Length when known, chunked otherwise, and teed into the log capture.
+            InputStream body = request.getBody() == null ? null : requestCapture.tee(request.getBody());
+            boolean revalidating = cached != null && cached.getState() == GatewayResponseCache.State.REVALIDATE;
+            callStarted = true;
+            upstream = call.execute(revalidating ? cached.revalidationHeaders() : request.getHeaders(),
+                    body, request.getContentLength());
+            log.setRequestUrl(call.getUri().toString());
+            log.setRequestBody(requestCapture.toLogString(request.getContentType(), request.getContentEncoding()));
+            log.setRequestBodyLength(requestCapture.getTotal());
+
+            // 4. Get the response from the real server
+            int responseCode = upstream.getStatus();
+            log.setResponseStatusCode(responseCode);
+            log.setResponseHeaders(formatHeaders(upstream.getHeaders()));
+            if (responseCode < 400 && !isSafe(request.getMethod()) && GatewayResponseCache.isEnabled(request.getConfig())) {
+                responseCache.invalidate(request.getConfig().getId(), request.getPath());
+            }
+            if (revalidating && responseCode == 304) {
+                // Still valid: the client gets the stored response, with the 304's updated headers.
+                GatewayResponseCache.CachedResponse entry = responseCache.revalidated(cached, upstream.getHeaders());
+                if (flight != null) {
+                    flight.share(entry.getStatus(), entry.getHeaders(), entry.getBody());
+                }
+                return fromCache(entry, request, log);
+            }
 
-            // 8. Build the final response to send back to the original client
-            Response.ResponseBuilder clientResponseBuilder = Response.status(responseCode).entity(responseBody);
-            connection.getHeaderFields().forEach((key, values) -> {
-                // The key can be null for the HTTP status line, which we should ignore.
-                // Also filter out headers that can cause issues.
-                if (key != null && !key.equalsIgnoreCase("transfer-encoding")) {
+            // 5. Build the response to the original client. Headers pass through untouched (including
+            // Content-Encoding and Content-Length), except hop-by-hop ones that describe the upstream connection.
+            Response.ResponseBuilder clientResponseBuilder = Response.status(responseCode);
+            upstream.getHeaders().forEach((key, values) -> {
+                if (!HttpExchange.isHopByHop(key)) {
                     values.forEach(value -> clientResponseBuilder.header(key, value));
                 }
             });
 
+            if ("HEAD".equalsIgnoreCase(request.getMethod())) {
+                if (flight != null) {
+                    flight.share(responseCode, upstream.getHeaders(), new byte[0]);
+                }
+                log.setResponseBody("");
+                log.setResponseBodyLength(0L);
+                log.setDurationMs(System.currentTimeMillis() - startTime);
+                return clientResponseBuilder.build();
+            }
+
+            // 6. Stream the body: bytes go to the client as they arrive and the log entry is saved
+            // (with a bounded prefix of the body) once the transfer has finished.
+            GatewayResponseCache.Fill cacheFill = cached == null ? null
+                    : responseCache.fill(cached, responseCode, upstream.getHeaders(), contentLength(upstream));
+            byte[] prefix = null;
+            if (flight != null && contentLength(upstream) <= RequestCoalescer.MAX_BODY_BYTES) {
+                // One byte past the limit tells whether the whole body can be shared.
+                prefix = readAtMost(upstream.getBody(), RequestCoalescer.MAX_BODY_BYTES + 1);
+                if (prefix.length <= RequestCoalescer.MAX_BODY_BYTES) {
+                    flight.share(responseCode, upstream.getHeaders(), prefix);
+                    if (cacheFill != null) {
+                        cacheFill.write(prefix, 0, prefix.length);
+                        cacheFill.finish();
+                    }
+                    return buffered(responseCode, upstream.getHeaders(), prefix, request, log).build();
+                }
+            }
+            if (flight != null) {
+                flight.abandon();
+            }
+            clientResponseBuilder.entity(new UpstreamStreamingOutput(upstream, prefix, log, captureLimit, startTime, done, cacheFill));
+            streaming = true;
             return clientResponseBuilder.build();
 
         } catch (Exception e) {
-            log.setResponseStatusCode(500);
-            log.setResponseBody("Gateway Error: " + e.getMessage());
-            log.setDurationMs(System.currentTimeMillis() - startTime);
-            // In case of an exception, always save the log before returning an error
-            gatewayService.saveLog(log);
-            return Response.serverError().entity("{\"error\":\"Gateway failed to process request.\", \"details\":\"" + e.getMessage() + "\"}").build();
+            callFailed = true;
+            if (!callStarted) {
+                breaker.onIgnored(); // Failed before reaching the target.
+            } else if (upstream == null && call.getUri() != null) {
+                log.setRequestUrl(call.getUri().toString());
+            }
+            if (log.getRequestBody() == null) {
+                log.setRequestBody(requestCapture.toLogString(request.getContentType(), request.getContentEncoding()));
+                log.setRequestBodyLength(requestCapture.getTotal());
+            }
+            if (flight != null) {
+                flight.fail(e);
+            }
+            return failed(log, startTime, e, done);
         } finally {
-            // 9. Save the log entry (if not already saved in an exception) and disconnect
-            if (log.getResponseStatusCode() != 500) { // Avoid double-saving on error
-                gatewayService.saveLog(log);
+            requestCapture.close();
+            if (flight != null) {
+                flight.abandon(); // Only takes effect if the call ended without sharing or failing above.
+            }
+            // 7. Unless the body is still being streamed (or the call failed and was logged above), save
+            // the log entry and release the connection
+            if (!streaming && !callFailed) {
+                done.accept(log);
+            }
+            if (!streaming && upstream != null) {
+                upstream.close();
+            }
+        }
+    }
+
+    /**
+     * Builds the client response from a cache entry and fills in the log entry for it. A client's own
+     * {@code If-None-Match} or {@code If-Modified-Since} that the entry satisfies gets a 304.
+     */
+    private Response fromCache(GatewayResponseCache.CachedResponse entry, GatewayRequest request, GatewayLog log) {
+        boolean notModified = entry.isNotModifiedFor(request.getHeaders());
+        log.setCacheHit(true);
+        log.setRequestBody("");
+        log.setRequestBodyLength(0L);
+        return buffered(notModified ? 304 : entry.getStatus(), entry.getHeaders(), notModified ? null : entry.getBody(), request, log)
+                .header("Age", entry.getAgeSeconds())
+                .build();
+    }
+
+    /**
+     * Starts the client response for an upstream response held in memory, and fills in the log entry for it.
+     *
+     * @param body The whole body, or null for a 304.
+     */
+    private Response.ResponseBuilder buffered(int status, Map<String, List<String>> headers, byte[] body,
+                                              GatewayRequest request, GatewayLog log) {
+        Response.ResponseBuilder builder = Response.status(status);
+        headers.forEach((key, values) -> {
+            if (key != null && !HttpExchange.isHopByHop(key) && (body != null || !key.equalsIgnoreCase(HttpHeaders.CONTENT_LENGTH))) {
+                values.forEach(value -> builder.header(key, value));
             }
-            if (connection != null) {
-                connection.disconnect();
+        });
+        log.setResponseStatusCode(status);
+        log.setResponseHeaders(formatHeaders(headers));
+        if (body == null || body.length == 0 || "HEAD".equalsIgnoreCase(request.getMethod())) {
+            log.setResponseBody("");
+            log.setResponseBodyLength(0L);
+        } else {
+            BodyCapture capture = new BodyCapture(CapturePolicy.maxBodyBytes(request.getConfig()));
+            capture.write(body, 0, body.length);
+            capture.close();
+            log.setResponseBody(capture.toLogString(first(headers, HttpHeaders.CONTENT_TYPE), first(headers, "Content-Encoding")));
+            log.setResponseBodyLength((long) body.length);
+            builder.entity(body);
+        }
+        log.setDurationMs(System.currentTimeMillis() - request.getStartTime());
+        return builder;
+    }
+
+    /**
+     * Refreshes a stale cache entry in the background, on the rule's share of the executor, while the
+     * stale copy is served. The refresh is not logged; if it fails, the entry is left to expire.
+     */
+    private void refresh(GatewayResponseCache.Lookup lookup, GatewayRequest request) {
+        GatewayConfig config = request.getConfig();
+        CircuitBreaker breaker = circuitBreakers.get(config);
+        if (!breaker.tryAcquire()) {
+            lookup.releaseRefresh();
+            return;
+        }
+        try {
+            gatewayExecutor.execute(config, () -> {
+                boolean revalidating = lookup.getState() == GatewayResponseCache.State.REVALIDATE;
+                boolean refreshed = false;
+                TargetBalancer balancer = targets.get(config);
+                TargetBalancer.Target target = balancer.pick();
+                URI uri = request.targetOn(target.getBaseUrl());
+                HttpExchange.Response upstream = null;
+                long callStart = System.nanoTime();
+                try {
+                    upstream = upstreamClient.execute(config, "GET", uri,
+                            revalidating ? lookup.revalidationHeaders() : request.getHeaders(), null, -1);
+                    long elapsedMicros = (System.nanoTime() - callStart) / 1000;
+                    breaker.onResult(upstream.getStatus() < 500, elapsedMicros / 1000);
+                    balancer.onResult(target, upstream.getStatus() < 500, elapsedMicros);
+                    if (revalidating && upstream.getStatus() == 304) {
+                        responseCache.revalidated(lookup, upstream.getHeaders());
+                        refreshed = true;
+                    } else {
+                        GatewayResponseCache.Fill fill = responseCache.fill(lookup, upstream.getStatus(), upstream.getHeaders(),
+                                contentLength(upstream));
+                        if (fill != null) {
+                            InputStream body = upstream.getBody();
+                            byte[] buffer = new byte[HttpExchange.BUFFER_SIZE];
+                            int read;
+                            while ((read = body.read(buffer)) != -1) {
+                                fill.write(buffer, 0, read);
+                            }
+                            refreshed = fill.finish();
+                        }
+                    }
+                } catch (Exception e) {
+                    if (upstream == null) {
+                        long elapsedMicros = (System.nanoTime() - callStart) / 1000;
+                        breaker.onResult(false, elapsedMicros / 1000);
+                        balancer.onResult(target, false, elapsedMicros);
+                    }
+                    LOGGER.log(Level.FINE, "Background refresh of " + uri + " failed", e);
+                } finally {
+                    balancer.release(target);
+                    if (upstream != null) {
+                        upstream.close();
+                    }
+                    if (!refreshed) {
+                        lookup.releaseRefresh();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            breaker.onIgnored();
+            lookup.releaseRefresh();
+        }
+    }
+
+    /**
+     * Logs a call that failed with {@code e} and builds the error response for it: 503 if it was refused,
+     * 504 if the upstream timed out, 500 otherwise.
+     */
+    private Response failed(GatewayLog log, long startTime, Exception e, Consumer<GatewayLog> complete) {
+        if (e instanceof RejectedExecutionException) {
+            return fail(log, startTime, 503, "Upstream call was refused.", e, complete);
+        }
+        if (e instanceof SocketTimeoutException || e instanceof HttpConnectionPool.LeaseTimeoutException) {
+            return fail(log, startTime, 504, "Upstream timed out.", e, complete);
+        }
+        return fail(log, startTime, 500, "Gateway failed to process request.", e, complete);
+    }
+
+    /**
+     * Logs a failed call and builds the JSON error response for it.
+     */
+    private Response fail(GatewayLog log, long startTime, int status, String error, Exception e, Consumer<GatewayLog> complete) {
+        LOGGER.log(Level.FINE, error, e);
+        log.setResponseStatusCode(status);
+        log.setResponseBody("Gateway Error: " + e.getMessage());
+        log.setDurationMs(System.currentTimeMillis() - startTime);
+        // In case of an exception, always save the log before returning an error
+        complete.accept(log);
+        return Response.status(status)
+                .entity("{\"error\":\"" + error + "\", \"details\":\"" + e.getMessage() + "\"}")
+                .type(MediaType.APPLICATION_JSON)
+                .build();
+    }
+
+    private static boolean isSafe(String method) {
+        return "GET".equalsIgnoreCase(method) || "HEAD".equalsIgnoreCase(method) || "OPTIONS".equalsIgnoreCase(method);
+    }
+
+    /**
+     * The upstream's Content-Length, or -1 if it sent none or the body is chunked.
+     */
+    private static long contentLength(HttpExchange.Response upstream) {
+        String length = upstream.getHeader(HttpHeaders.CONTENT_LENGTH);
+        if (length == null || upstream.getHeader("Transfer-Encoding") != null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(length.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Reads {@code in} until it ends or {@code limit} bytes were read.
+     */
+    private static byte[] readAtMost(InputStream in, int limit) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.min(limit, HttpExchange.BUFFER_SIZE));
+        byte[] buffer = new byte[HttpExchange.BUFFER_SIZE];
+        int read;
+        while (out.size() < limit && (read = in.read(buffer, 0, Math.min(buffer.length, limit - out.size()))) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    private static String first(Map<String, List<String>> headers, String name) {
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey()) && !header.getValue().isEmpty()) {
+                return header.getValue().get(0);
             }
         }
+        return null;
     }
 
-    private String buildTargetUrl(String targetBase, UriInfo uriInfo) {
-        // This logic is more robust to get the path after the source pattern
-        String fullPathFromRequest = uriInfo.getPath();
-        String sourcePattern = uriInfo.getPathParameters().getFirst("sourceUrlPattern");
-        int patternIndex = fullPathFromRequest.indexOf(sourcePattern);
-        String remainingPath = fullPathFromRequest.substring(patternIndex + sourcePattern.length());
+    /**
+     * Whether the client sent a body: a positive Content-Length or any Transfer-Encoding.
+     */
+    private static boolean hasBody(HttpHeaders headers) {
+        return declaredLength(headers) > 0 || headers.getHeaderString("Transfer-Encoding") != null;
+    }
 
-        String targetUrl = targetBase.endsWith("/") ? targetBase.substring(0, targetBase.length() - 1) : targetBase;
-        targetUrl += remainingPath;
+    /**
+     * The client's Content-Length, or -1 if it sent none (the body is then forwarded chunked).
+     */
+    private static long declaredLength(HttpHeaders headers) {
+        String length = headers.getHeaderString(HttpHeaders.CONTENT_LENGTH);
+        if (length == null || headers.getHeaderString("Transfer-Encoding") != null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(length.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
 
-        String query = uriInfo.getRequestUri().getQuery();
-        return (query != null && !query.isEmpty()) ? targetUrl + "?" + query : targetUrl;
+    private String pathBelowRule(String remainingPath, UriInfo uriInfo) {
+        // The part of the path below the rule's source pattern is appended to the target base URL
+        String query = uriInfo.getRequestUri().getRawQuery();
+        return (query != null && !query.isEmpty()) ? remainingPath + "?" + query : remainingPath;
     }
 
-    private String copyHeaders(HttpHeaders incomingHeaders, HttpURLConnection connection) {
+    private String copyHeaders(HttpHeaders incomingHeaders, Map<String, List<String>> upstreamHeaders) {
         StringBuilder headerLog = new StringBuilder();
         incomingHeaders.getRequestHeaders().forEach((key, values) -> {
-            // Don't copy the Host header; the HttpURLConnection sets it from the URL.
-            // Content-Length is also managed automatically when we write the body.
-            if (!key.equalsIgnoreCase("host") && !key.equalsIgnoreCase("content-length")) {
+            // Don't copy the Host header; the client sets it from the URL.
+            // Content-Length is also managed automatically when we write the body, and hop-by-hop
+            // headers belong to the client's connection, not ours.
+            if (!key.equalsIgnoreCase("host") && !key.equalsIgnoreCase("content-length") && !HttpExchange.isHopByHop(key)) {
                 values.forEach(value -> {
-                    connection.addRequestProperty(key, value);
+                    upstreamHeaders.computeIfAbsent(key, k -> new ArrayList<>(1)).add(value);
                     headerLog.append(key).append(": ").append(value).append("\n");
                 });
             }
@@ -236,4 +683,4 @@ public class GatewayResource {
                 .map(entry -> entry.getKey() + ": " + String.join(", ", entry.getValue()))
                 .collect(Collectors.joining("\n"));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,24 @@
+package org.example.mock.rest;
+
+import org.example.mock.service.MetricsRegistry;
+
+import javax.inject.Inject;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+
+/**
+ * Per-route request counters, in-flight gauges and latency summaries for Prometheus to scrape.
+ */
+@Path("/metrics")
+public class MetricsResource {
+
+    @Inject
+    private MetricsRegistry metrics;
+
+    @GET
+    @Produces("text/plain; version=0.0.4; charset=utf-8")
+    public String scrape() {
+        return metrics.toPrometheus();
+    }
+}
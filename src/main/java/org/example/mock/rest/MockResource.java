@@ -1,12 +1,23 @@
-// In /src/main/java/org/example/mock/rest/MockResource.java
+package org.example.mock.rest;
 
-import org.example.mock.entity.MockConfig;
-import org.example.mock.service.MockConfigService;
+import org.example.mock.service.MetricsRegistry;
+import org.example.mock.service.MockMatch;
+import org.example.mock.service.MockRoute;
+import org.example.mock.service.MockRouteTable;
+import org.example.mock.service.ResponseDelayScheduler;
+import org.example.mock.service.RouteMetrics;
 
 import javax.inject.Inject;
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.CompletionCallback;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import java.io.IOException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -16,72 +27,107 @@ public class MockResource {
     private static final Logger LOGGER = Logger.getLogger(MockResource.class.getName());
 
     @Inject
-    private MockConfigService mockConfigService;
+    private MockRouteTable mockRouteTable;
+
+    @Inject
+    private ResponseDelayScheduler responseDelayScheduler;
+
+    @Inject
+    private MetricsRegistry metrics;
 
     @GET
     @Path("/{urlPattern:.+}")
-    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_PLAIN})
-    public Response handleMockGet(@PathParam("urlPattern") String urlPattern) {
-        return handleMockRequest("GET", urlPattern, null);
+    @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_PLAIN, MediaType.WILDCARD})
+    public void handleMockGet(@PathParam("urlPattern") String urlPattern, @Context HttpHeaders headers,
+                              @Context Request request, @Suspended AsyncResponse asyncResponse) {
+        handleMockRequest("GET", urlPattern, null, headers, request, asyncResponse);
     }
 
     @POST
     @Path("/{urlPattern:.+}")
     @Consumes({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_PLAIN})
     @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_PLAIN})
-    public Response handleMockPost(@PathParam("urlPattern") String urlPattern, String requestBody) {
-        return handleMockRequest("POST", urlPattern, requestBody);
+    public void handleMockPost(@PathParam("urlPattern") String urlPattern, String requestBody, @Context HttpHeaders headers,
+                              @Suspended AsyncResponse asyncResponse) {
+        handleMockRequest("POST", urlPattern, requestBody, headers, null, asyncResponse);
     }
 
     @PUT
     @Path("/{urlPattern:.+}")
     @Consumes({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_PLAIN})
     @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_PLAIN})
-    public Response handleMockPut(@PathParam("urlPattern") String urlPattern, String requestBody) {
-        return handleMockRequest("PUT", urlPattern, requestBody);
+    public void handleMockPut(@PathParam("urlPattern") String urlPattern, String requestBody, @Context HttpHeaders headers,
+                              @Suspended AsyncResponse asyncResponse) {
+        handleMockRequest("PUT", urlPattern, requestBody, headers, null, asyncResponse);
     }
 
     @DELETE
     @Path("/{urlPattern:.+}")
     @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_PLAIN})
-    public Response handleMockDelete(@PathParam("urlPattern") String urlPattern) {
-        return handleMockRequest("DELETE", urlPattern, null);
+    public void handleMockDelete(@PathParam("urlPattern") String urlPattern, @Context HttpHeaders headers,
+                                 @Suspended AsyncResponse asyncResponse) {
+        handleMockRequest("DELETE", urlPattern, null, headers, null, asyncResponse);
     }
 
     /**
      * Central logic to find and process a mock request.
+     * The lookup is served from the in-memory route table, not from the database.
+     *
+     * @param request Used to answer conditional GETs; null for other methods.
      */
-    private Response handleMockRequest(String httpMethod, String urlPattern, String requestBody) {
-        MockConfig mock = mockConfigService.findMockConfig(httpMethod, urlPattern, requestBody);
+    private void handleMockRequest(String httpMethod, String urlPattern, String requestBody, HttpHeaders headers,
+                                   Request request, AsyncResponse asyncResponse) {
+        MockMatch match = mockRouteTable.find(httpMethod, urlPattern, requestBody);
 
-        if (mock != null) {
-            // Delay Logic
-            Integer delay = mock.getDelayMs();
-            if (delay != null && delay > 0) {
+        if (match != null) {
+            MockRoute mock = match.getRoute();
+            RouteMetrics routeMetrics = metrics.mock(mock);
+            long startNanos = routeMetrics.start();
+            // HTTP Status Code Logic
+            LOGGER.info(String.format("Returning status %d for %s %s", mock.getHttpStatusCode(), httpMethod, urlPattern));
+            Response response;
+            if (mock.getFileBody() != null) {
                 try {
-                    LOGGER.info(String.format("Delaying response for %dms for %s %s", delay, httpMethod, urlPattern));
-                    Thread.sleep(delay);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    return Response.serverError().entity("{\"error\": \"Thread interrupted during delay\"}").build();
+                    response = MockResponses.buildFile(mock.getHttpStatusCode(), mock.getFileBody(), request,
+                            headers.getHeaderString("Range"), headers.getHeaderString("If-Range"));
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Cannot read response body file " + mock.getFileBody().getPath(), e);
+                    track(asyncResponse, routeMetrics, startNanos, 500);
+                    asyncResponse.resume(Response.serverError()
+                            .entity("{\"error\": \"Response body file for this mock is not readable.\"}")
+                            .type(MediaType.APPLICATION_JSON)
+                            .build());
+                    return;
                 }
+            } else {
+                response = MockResponses.build(mock.getHttpStatusCode(), match.encodedBody(), request,
+                        headers.getHeaderString(HttpHeaders.ACCEPT_ENCODING));
             }
 
-            // HTTP Status Code Logic
-            LOGGER.info(String.format("Returning status %d for %s %s", mock.getHttpStatusCode(), httpMethod, urlPattern));
-            return Response.status(mock.getHttpStatusCode())
-                    .entity(mock.getResponsePayload())
-                    .build();
+            // Delay Logic: the response is parked on the shared timer instead of sleeping on this thread
+            int delay = mock.getDelayMs();
+            if (delay > 0) {
+                LOGGER.info(String.format("Delaying response for %dms for %s %s", delay, httpMethod, urlPattern));
+            }
+            track(asyncResponse, routeMetrics, startNanos, response.getStatus());
+            responseDelayScheduler.resume(asyncResponse, response, delay);
         } else {
             // No mock found
             String errorMessage = String.format(
                     "{\"error\": \"No mock configuration found for method '%s', URL pattern '%s', and the provided request body.\"}",
                     httpMethod, urlPattern
             );
-            return Response.status(Response.Status.NOT_FOUND)
+            asyncResponse.resume(Response.status(Response.Status.NOT_FOUND)
                     .entity(errorMessage)
                     .type(MediaType.APPLICATION_JSON)
-                    .build();
+                    .build());
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Records the request in the route's metrics once its response has been written (after any delay).
+     */
+    static void track(AsyncResponse asyncResponse, RouteMetrics routeMetrics, long startNanos, int status) {
+        asyncResponse.register((CompletionCallback) failure -> routeMetrics.finish(failure == null ? status : 0, startNanos));
+    }
+}
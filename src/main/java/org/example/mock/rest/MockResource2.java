@@ -1,12 +1,25 @@
 package org.example.mock.rest;
 
 import org.example.mock.entity.MockConfig2;
+import org.example.mock.service.CaptureService;
+import org.example.mock.service.CapturedRequest;
+import org.example.mock.service.EncodedBodyCache;
+import org.example.mock.service.MetricsRegistry;
 import org.example.mock.service.MockConfigService2;
+import org.example.mock.service.ResponseDelayScheduler;
+import org.example.mock.service.RouteMetrics;
 
 import javax.inject.Inject;
 import javax.ws.rs.*;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.HttpHeaders;
 import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
 import javax.ws.rs.core.Response;
+import java.sql.Timestamp;
+import java.time.Instant;
 import java.util.logging.Logger;
 
 @Path("/mock2")
@@ -17,78 +30,103 @@ public class MockResource2 {
     @Inject
     private MockConfigService2 mockConfigService;
 
+    @Inject
+    private ResponseDelayScheduler responseDelayScheduler;
+
+    @Inject
+    private MetricsRegistry metrics;
+
+    @Inject
+    private EncodedBodyCache encodedBodyCache;
+
+    @Inject
+    private CaptureService captureService;
+
     @GET
     @Path("/{urlPattern:.+}")
     @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_PLAIN})
-    public Response handleMockGet(@PathParam("urlPattern") String urlPattern) {
+    public void handleMockGet(@PathParam("urlPattern") String urlPattern, @Context HttpHeaders headers,
+                              @Context Request request, @Suspended AsyncResponse asyncResponse) {
         // Pass null for the request body
-        return handleMockRequest("GET", urlPattern, null);
+        handleMockRequest("GET", urlPattern, null, headers, request, asyncResponse);
     }
 
     @POST
     @Path("/{urlPattern:.+}")
     @Consumes({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_PLAIN})
     @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_PLAIN})
-    public Response handleMockPost(@PathParam("urlPattern") String urlPattern, String requestBody) {
+    public void handleMockPost(@PathParam("urlPattern") String urlPattern, String requestBody, @Context HttpHeaders headers,
+                              @Suspended AsyncResponse asyncResponse) {
         // Pass the captured request body
-        return handleMockRequest("POST", urlPattern, requestBody);
+        handleMockRequest("POST", urlPattern, requestBody, headers, null, asyncResponse);
     }
 
     @PUT
     @Path("/{urlPattern:.+}")
     @Consumes({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_PLAIN})
     @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_PLAIN})
-    public Response handleMockPut(@PathParam("urlPattern") String urlPattern, String requestBody) {
+    public void handleMockPut(@PathParam("urlPattern") String urlPattern, String requestBody, @Context HttpHeaders headers,
+                              @Suspended AsyncResponse asyncResponse) {
         // Pass the captured request body
-        return handleMockRequest("PUT", urlPattern, requestBody);
+        handleMockRequest("PUT", urlPattern, requestBody, headers, null, asyncResponse);
     }
 
     @DELETE
     @Path("/{urlPattern:.+}")
     @Produces({MediaType.APPLICATION_JSON, MediaType.APPLICATION_XML, MediaType.TEXT_PLAIN})
-    public Response handleMockDelete(@PathParam("urlPattern") String urlPattern) {
+    public void handleMockDelete(@PathParam("urlPattern") String urlPattern, @Context HttpHeaders headers,
+                                 @Suspended AsyncResponse asyncResponse) {
         // Pass null for the request body
-        return handleMockRequest("DELETE", urlPattern, null);
+        handleMockRequest("DELETE", urlPattern, null, headers, null, asyncResponse);
     }
 
     /**
      * Central logic to find, process, and update a mock request with the captured body.
+     *
+     * @param request Used to answer conditional GETs; null for other methods.
      */
-    private Response handleMockRequest(String httpMethod, String urlPattern, String requestBody) {
+    private void handleMockRequest(String httpMethod, String urlPattern, String requestBody, HttpHeaders headers,
+                                   Request request, AsyncResponse asyncResponse) {
         MockConfig2 mock = mockConfigService.findMockConfig(httpMethod, urlPattern);
 
         if (mock != null) {
-            // Capture the request body and save it
-            mock.setCapturedRequestPayload(requestBody);
-            mockConfigService.save(mock); // Use the existing save method to update the entity
-
-            // Delay Logic
-            Integer delay = mock.getDelayMs();
-            if (delay != null && delay > 0) {
-                try {
-                    LOGGER.info(String.format("Delaying response for %dms for %s %s", delay, httpMethod, urlPattern));
-                    Thread.sleep(delay);
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    return Response.serverError().entity("{\"error\": \"Thread interrupted during delay\"}").build();
-                }
-            }
+            RouteMetrics routeMetrics = metrics.mock2(mock.getId(), mock.getHttpMethod(), mock.getUrlPattern());
+            long startNanos = routeMetrics.start();
+
+            // Capture the request; it is written to the database in the background, not on this thread
+            captureService.capture(new CapturedRequest(mock.getId(), Timestamp.from(Instant.now()), httpMethod,
+                    urlPattern, formatHeaders(headers), requestBody));
 
             // HTTP Status Code Logic
             LOGGER.info(String.format("Returning status %d for %s %s", mock.getHttpStatusCode(), httpMethod, urlPattern));
-            return Response.status(mock.getHttpStatusCode())
-                    .entity(mock.getResponsePayload())
-                    .build();
+            Response response = MockResponses.build(mock.getHttpStatusCode(),
+                    encodedBodyCache.get(mock.getId(), mockConfigService::findResponsePayload), request,
+                    headers.getHeaderString(HttpHeaders.ACCEPT_ENCODING));
+
+            // Delay Logic: the response is parked on the shared timer instead of sleeping on this thread
+            int delay = mock.getDelayMs() != null ? mock.getDelayMs() : 0;
+            if (delay > 0) {
+                LOGGER.info(String.format("Delaying response for %dms for %s %s", delay, httpMethod, urlPattern));
+            }
+            MockResource.track(asyncResponse, routeMetrics, startNanos, response.getStatus());
+            responseDelayScheduler.resume(asyncResponse, response, delay);
         } else {
             // No mock found
             String errorMessage = String.format(
                     "{\"error\": \"No mock configuration found for method '%s' and URL pattern '%s'.\"}",
                     httpMethod, urlPattern
             );
-            return Response.status(Response.Status.NOT_FOUND)
+            asyncResponse.resume(Response.status(Response.Status.NOT_FOUND)
                     .entity(errorMessage)
                     .type(MediaType.APPLICATION_JSON)
-                    .build();
+                    .build());
         }
     }
-}
\ No newline at end of file
+
+    private String formatHeaders(HttpHeaders headers) {
+        StringBuilder headerLog = new StringBuilder();
+        headers.getRequestHeaders().forEach((key, values) ->
+                values.forEach(value -> headerLog.append(key).append(": ").append(value).append("\n")));
+        return headerLog.toString();
+    }
+}
@@ -0,0 +1,159 @@
+package org.example.mock.rest;
+
+import org.example.mock.service.EncodedBody;
+import org.example.mock.service.FileBody;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import java.io.IOException;
+import java.util.Date;
+
+/**
+ * Builds mock responses from pre-encoded bodies, shared by {@link MockResource} and {@link MockResource2}.
+ */
+final class MockResponses {
+
+    private MockResponses() {
+    }
+
+    /**
+     * Picks the variant allowed by {@code acceptEncoding} and wraps it with Content-Type, Content-Length,
+     * Content-Encoding, ETag and Vary. Successful GETs with a matching If-None-Match get a 304 without a body.
+     *
+     * @param request Used to evaluate preconditions; null for methods other than GET.
+     */
+    static Response build(int status, EncodedBody body, Request request, String acceptEncoding) {
+        EncodedBody.Variant variant = body.select(acceptEncoding);
+        EntityTag etag = variant.getEntityTag();
+
+        if (request != null && etag != null && status == Response.Status.OK.getStatusCode()) {
+            Response.ResponseBuilder notModified = request.evaluatePreconditions(etag);
+            if (notModified != null) {
+                if (body.isCompressible()) {
+                    notModified.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+                }
+                return notModified.tag(etag).build();
+            }
+        }
+
+        Response.ResponseBuilder builder = Response.status(status)
+                .entity(variant.getBytes())
+                .type(body.getContentType())
+                .header(HttpHeaders.CONTENT_LENGTH, variant.getBytes().length);
+        if (variant.getContentEncoding() != null) {
+            builder.header(HttpHeaders.CONTENT_ENCODING, variant.getContentEncoding());
+        }
+        if (body.isCompressible()) {
+            builder.header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        }
+        if (etag != null) {
+            builder.tag(etag);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Serves a content-store file without reading it onto the heap. Successful GETs honour
+     * If-None-Match/If-Modified-Since and a single {@code Range: bytes=...} (206, or 416 when unsatisfiable);
+     * multi-range requests and ranges whose If-Range no longer matches get the whole file.
+     *
+     * @param request Used to evaluate preconditions and ranges; null for methods other than GET.
+     * @throws IOException if the file cannot be read.
+     */
+    static Response buildFile(int status, FileBody body, Request request, String range, String ifRange) throws IOException {
+        FileBody.Snapshot file = body.open();
+        long size = file.getSize();
+        EntityTag etag = file.getEntityTag();
+        Date lastModified = new Date(file.getLastModified());
+        boolean ok = status == Response.Status.OK.getStatusCode();
+
+        if (request != null && ok) {
+            Response.ResponseBuilder notModified = request.evaluatePreconditions(lastModified, etag);
+            if (notModified != null) {
+                return notModified.tag(etag).build();
+            }
+        }
+
+        long start = 0;
+        long end = size - 1;
+        boolean partial = false;
+        if (request != null && ok && range != null && (ifRange == null || ifRange.equals(etag.toString()))) {
+            long[] bounds = parseRange(range, size);
+            if (bounds == UNSATISFIABLE) {
+                return Response.status(Response.Status.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header("Content-Range", "bytes */" + size)
+                        .header("Accept-Ranges", "bytes")
+                        .tag(etag)
+                        .build();
+            }
+            if (bounds != null) {
+                start = bounds[0];
+                end = bounds[1];
+                partial = true;
+            }
+        }
+
+        long length = end - start + 1;
+        Response.ResponseBuilder builder = Response.status(partial ? Response.Status.PARTIAL_CONTENT.getStatusCode() : status)
+                .entity(file.stream(start, length))
+                .type(body.getContentType())
+                .header(HttpHeaders.CONTENT_LENGTH, length)
+                .header("Accept-Ranges", "bytes")
+                .lastModified(lastModified)
+                .tag(etag);
+        if (partial) {
+            builder.header("Content-Range", "bytes " + start + "-" + end + "/" + size);
+        }
+        return builder.build();
+    }
+
+    private static final long[] UNSATISFIABLE = new long[0];
+
+    /**
+     * Parses a single byte range ({@code bytes=a-b}, {@code bytes=a-} or {@code bytes=-n}).
+     *
+     * @return Inclusive {start, end}, {@link #UNSATISFIABLE}, or null to ignore the header and send everything.
+     */
+    private static long[] parseRange(String header, long size) {
+        String value = header.trim();
+        if (!value.startsWith("bytes=") || value.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = value.substring("bytes=".length()).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            String first = spec.substring(0, dash).trim();
+            String last = spec.substring(dash + 1).trim();
+            long start;
+            long end;
+            if (first.isEmpty()) {
+                if (last.isEmpty()) {
+                    return null;
+                }
+                long suffix = Long.parseLong(last);
+                if (suffix <= 0 || size == 0) {
+                    return UNSATISFIABLE;
+                }
+                start = Math.max(size - suffix, 0);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(first);
+                end = last.isEmpty() ? size - 1 : Math.min(Long.parseLong(last), size - 1);
+                if (start < 0 || (!last.isEmpty() && Long.parseLong(last) < start)) {
+                    return null;
+                }
+                if (start >= size) {
+                    return UNSATISFIABLE;
+                }
+            }
+            return new long[]{start, end};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
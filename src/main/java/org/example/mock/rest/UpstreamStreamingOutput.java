@@ -0,0 +1,105 @@
+package org.example.mock.rest;
+
+import org.example.mock.entity.GatewayLog;
+import org.example.mock.service.GatewayResponseCache;
+import org.example.mock.util.BodyCapture;
+import org.example.mock.util.HttpExchange;
+
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.function.Consumer;
+
+/**
+ * Pipes an upstream response body to the client as it arrives, through one fixed-size buffer
+ * ({@link HttpExchange#BUFFER_SIZE}), without decoding it. A bounded prefix is teed into the
+ * {@link GatewayLog}, which is completed and handed to {@code logSink} once the body has been sent
+ * (or the transfer failed). A cacheable response is also copied into its cache fill, and stored only
+ * if the whole body got through. Bytes already read from the upstream (e.g. while trying to buffer the
+ * body for coalesced requests) are passed as a prefix and sent first.
+ */
+final class UpstreamStreamingOutput implements StreamingOutput {
+
+    private final HttpExchange.Response upstream;
+    private final byte[] prefix;
+    private final GatewayLog log;
+    private final BodyCapture capture;
+    private final long startTime;
+    private final Consumer<GatewayLog> logSink;
+    private final GatewayResponseCache.Fill cacheFill;
+
+    /**
+     * @param prefix    The start of the body, already read from {@code upstream}, or null.
+     * @param cacheFill Receives the body for the response cache, or null if the response is not cached.
+     */
+    UpstreamStreamingOutput(HttpExchange.Response upstream, byte[] prefix, GatewayLog log, int captureLimit, long startTime,
+                            Consumer<GatewayLog> logSink, GatewayResponseCache.Fill cacheFill) {
+        this.upstream = upstream;
+        this.prefix = prefix;
+        this.log = log;
+        this.capture = new BodyCapture(captureLimit);
+        this.startTime = startTime;
+        this.logSink = logSink;
+        this.cacheFill = cacheFill;
+    }
+
+    @Override
+    public void write(OutputStream output) throws IOException {
+        boolean complete = false;
+        try {
+            if (prefix != null) {
+                output.write(prefix);
+                capture.write(prefix, 0, prefix.length);
+                if (cacheFill != null) {
+                    cacheFill.write(prefix, 0, prefix.length);
+                }
+            }
+            InputStream body = upstream.getBody();
+            byte[] buffer = new byte[HttpExchange.BUFFER_SIZE];
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+                capture.write(buffer, 0, read);
+                if (cacheFill != null) {
+                    cacheFill.write(buffer, 0, read);
+                }
+                if (body.available() == 0) {
+                    // Nothing more is buffered: pass on what we have instead of waiting for a full container buffer.
+                    output.flush();
+                }
+            }
+            complete = true;
+        } catch (IOException e) {
+            log.setResponseBody(capture.toLogString(upstream.getHeader("Content-Type"), upstream.getHeader("Content-Encoding"))
+                    + " [transfer aborted after " + capture.getTotal() + " bytes: " + e.getMessage() + "]");
+            throw e;
+        } finally {
+            if (complete) {
+                upstream.close();
+                if (cacheFill != null) {
+                    cacheFill.finish();
+                }
+                log.setResponseBody(capture.toLogString(upstream.getHeader("Content-Type"), upstream.getHeader("Content-Encoding")));
+            } else {
+                upstream.abort();
+            }
+            capture.close();
+            log.setResponseBodyLength(capture.getTotal());
+            log.setDurationMs(System.currentTimeMillis() - startTime);
+            logSink.accept(log);
+        }
+    }
+
+    /**
+     * Drops a response that will never be written (e.g. the client was already answered with a
+     * timeout): closes the upstream connection and records why the body was not relayed.
+     */
+    void discard(String reason) {
+        upstream.abort();
+        capture.close();
+        log.setResponseBody("[response not relayed: " + reason + "]");
+        log.setDurationMs(System.currentTimeMillis() - startTime);
+        logSink.accept(log);
+    }
+}
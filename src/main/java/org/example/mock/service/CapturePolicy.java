@@ -0,0 +1,67 @@
+package org.example.mock.service;
+
+import org.example.mock.entity.GatewayConfig;
+import org.example.mock.entity.GatewayLog;
+import org.example.mock.util.Settings;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * How much of a proxied call a rule keeps in its {@link GatewayLog}.
+ * <p>
+ * Bodies are captured up to {@link #maxBodyBytes(GatewayConfig)} while they stream. Once the call has
+ * finished, {@link #apply(GatewayLog)} decides what is stored: calls that failed (4xx/5xx, unless the rule
+ * turns that off) or took at least the rule's slow threshold are always kept in full; other calls are
+ * kept with the rule's sampling rate, and otherwise stored as a summary row (method, URL, status,
+ * duration and body lengths) without headers or bodies. In header-only mode bodies are never stored.
+ */
+public final class CapturePolicy {
+
+    // Used when a rule does not set its own cap; the log columns are sized for 4000 characters.
+    static final int DEFAULT_MAX_BODY_BYTES = Settings.getInt("gateway.log.maxBodyBytes", 4000);
+
+    private CapturePolicy() {
+    }
+
+    /**
+     * Longest body prefix to capture for this rule; 0 in header-only mode, where only lengths are counted.
+     */
+    public static int maxBodyBytes(GatewayConfig config) {
+        if (Boolean.TRUE.equals(config.getCaptureHeadersOnly())) {
+            return 0;
+        }
+        return Math.max(UpstreamClient.valueOrDefault(config.getCaptureMaxBytes(), DEFAULT_MAX_BODY_BYTES), 0);
+    }
+
+    /**
+     * Strips what the rule does not keep from a completed log entry.
+     *
+     * @return The same entry, for chaining.
+     */
+    public static GatewayLog apply(GatewayLog log) {
+        GatewayConfig config = log.getGatewayConfig();
+        if (!isKeptInFull(config, log)) {
+            log.setRequestHeaders(null);
+            log.setResponseHeaders(null);
+            log.setRequestBody(null);
+            log.setResponseBody(null);
+        } else if (Boolean.TRUE.equals(config.getCaptureHeadersOnly())) {
+            log.setRequestBody(null);
+            log.setResponseBody(null);
+        }
+        return log;
+    }
+
+    private static boolean isKeptInFull(GatewayConfig config, GatewayLog log) {
+        int status = log.getResponseStatusCode();
+        if (status >= 400 && !Boolean.FALSE.equals(config.getCaptureErrors())) {
+            return true;
+        }
+        Integer slowMs = config.getCaptureSlowMs();
+        if (slowMs != null && log.getDurationMs() >= slowMs) {
+            return true;
+        }
+        Double rate = config.getCaptureSampleRate();
+        return rate == null || rate >= 1 || (rate > 0 && ThreadLocalRandom.current().nextDouble() < rate);
+    }
+}
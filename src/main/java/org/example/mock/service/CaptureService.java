@@ -0,0 +1,255 @@
+package org.example.mock.service;
+
+import org.example.mock.entity.MockConfig2;
+import org.example.mock.util.BoundedRingBuffer;
+import org.example.mock.util.Settings;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.TransactionPhase;
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Write-behind store for requests captured by {@code /api/mock2}.
+ * <p>
+ * Each mock gets a lock-free {@link BoundedRingBuffer} holding its last {@code mock.capture.bufferSize}
+ * requests (default 64). The request thread only publishes into that buffer. A background task drains
+ * all buffers every {@code mock.capture.flushIntervalMs} (default 1000) and inserts the captures into
+ * MOCK_CAPTURE in JDBC batches of {@code mock.capture.batchSize} (default 500), each committed together
+ * with an update of CAPTURED_REQUEST_PAYLOAD to the latest body of every mock in it. Those mocks are
+ * then evicted from the JPA shared cache, which does not see JDBC writes.
+ * {@code mock.capture.overflowPolicy} chooses between DROP_OLDEST (default) and BLOCK when a buffer fills
+ * faster than it is flushed.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class CaptureService {
+
+    private static final Logger LOGGER = Logger.getLogger(CaptureService.class.getName());
+
+    private static final int BUFFER_SIZE = Settings.getInt("mock.capture.bufferSize", 64);
+    private static final int BATCH_SIZE = Settings.getInt("mock.capture.batchSize", 500);
+    private static final long FLUSH_INTERVAL_MS = Settings.getLong("mock.capture.flushIntervalMs", 1000);
+    private static final long MAX_BLOCK_MS = Settings.getLong("mock.capture.maxBlockMs", 1000);
+    private static final BoundedRingBuffer.OverflowPolicy OVERFLOW_POLICY =
+            BoundedRingBuffer.OverflowPolicy.valueOf(Settings.getString("mock.capture.overflowPolicy", "DROP_OLDEST"));
+
+    private static final String INSERT_SQL = "INSERT INTO MOCK_CAPTURE "
+            + "(ID, MOCK_CONFIG2_ID, CAPTURED_AT, HTTP_METHOD, REQUEST_URL, REQUEST_HEADERS, REQUEST_PAYLOAD) "
+            + "VALUES (MOCK_CAPTURE_SEQ.NEXTVAL, ?, ?, ?, ?, ?, ?)";
+    private static final String UPDATE_LATEST_SQL = "UPDATE MOCK_CONFIG2 SET CAPTURED_REQUEST_PAYLOAD = ? WHERE ID = ?";
+
+    @Resource(lookup = "jdbc/myMockDS")
+    private DataSource dataSource;
+
+    @Resource
+    private ManagedScheduledExecutorService scheduler;
+
+    @PersistenceContext(unitName = "mock-pu")
+    private EntityManager em;
+
+    private final ConcurrentMap<Long, BoundedRingBuffer<CapturedRequest>> buffers = new ConcurrentHashMap<>();
+    private final AtomicLong captured = new AtomicLong();
+    private final AtomicLong flushed = new AtomicLong();
+    private final AtomicLong lost = new AtomicLong();
+    private final AtomicLong failedFlushes = new AtomicLong();
+    private final Object flushLock = new Object();
+    private ScheduledFuture<?> flushTask;
+
+    @PostConstruct
+    public void init() {
+        flushTask = scheduler.scheduleWithFixedDelay(this::flushQuietly, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+        }
+        flushQuietly();
+    }
+
+    /**
+     * Records a request. Never touches the database.
+     */
+    public void capture(CapturedRequest request) {
+        buffers.computeIfAbsent(request.getMockConfigId(),
+                id -> new BoundedRingBuffer<>(BUFFER_SIZE, OVERFLOW_POLICY, TimeUnit.MILLISECONDS.toNanos(MAX_BLOCK_MS)))
+                .offer(request);
+        captured.incrementAndGet();
+    }
+
+    /**
+     * Returns up to {@code limit} of the most recent captures for a mock, newest first, from memory.
+     */
+    public List<CapturedRequest> findRecent(Long mockConfigId, int limit) {
+        BoundedRingBuffer<CapturedRequest> buffer = buffers.get(mockConfigId);
+        return buffer == null ? Collections.emptyList() : buffer.recent(limit);
+    }
+
+    /**
+     * Forgets the in-memory captures of a deleted mock. Undrained captures are discarded.
+     */
+    public void evict(Long mockConfigId) {
+        if (mockConfigId != null) {
+            buffers.remove(mockConfigId);
+        }
+    }
+
+    public void onMockConfigChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) MockConfig2ChangedEvent event) {
+        MockConfig2 config = event.getMockConfig();
+        if (event.isDeleted() && config != null && config.getId() != null) {
+            evict(config.getId());
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            failedFlushes.incrementAndGet();
+            LOGGER.log(Level.WARNING, "Failed to flush captured requests; the failed batches are lost but remain readable from memory", e);
+        }
+    }
+
+    /**
+     * Drains every buffer into MOCK_CAPTURE, committing each batch on its own. Only one flush runs at a
+     * time. A batch that fails is rolled back and counted as lost; the flush goes on with the next one.
+     *
+     * @throws SQLException The first batch failure, once the rest has been written.
+     */
+    public void flush() throws SQLException {
+        synchronized (flushLock) {
+            if (getBacklog() == 0) {
+                return;
+            }
+            List<CapturedRequest> batch = new ArrayList<>(BATCH_SIZE);
+            SQLException failure = null;
+            try (Connection connection = dataSource.getConnection()) {
+                connection.setAutoCommit(false);
+                try (PreparedStatement insert = connection.prepareStatement(INSERT_SQL);
+                     PreparedStatement update = connection.prepareStatement(UPDATE_LATEST_SQL)) {
+                    for (BoundedRingBuffer<CapturedRequest> buffer : buffers.values()) {
+                        do {
+                            if (batch.size() >= BATCH_SIZE) {
+                                failure = writeBatch(connection, insert, update, batch, failure);
+                            }
+                        } while (buffer.drainTo(batch::add, BATCH_SIZE - batch.size()) > 0);
+                    }
+                    failure = writeBatch(connection, insert, update, batch, failure);
+                }
+            }
+            if (failure != null) {
+                throw failure;
+            }
+        }
+    }
+
+    /**
+     * Inserts and commits one batch, along with the latest payload of each mock in it, then clears it.
+     *
+     * @return {@code failure}, or this batch's error if it failed (added to {@code failure} if both).
+     */
+    private SQLException writeBatch(Connection connection, PreparedStatement insert, PreparedStatement update,
+                                    List<CapturedRequest> batch, SQLException failure) throws SQLException {
+        if (batch.isEmpty()) {
+            return failure;
+        }
+        Map<Long, CapturedRequest> latest = new HashMap<>();
+        try {
+            for (CapturedRequest request : batch) {
+                insert.setLong(1, request.getMockConfigId());
+                insert.setTimestamp(2, request.getCapturedAt());
+                insert.setString(3, request.getHttpMethod());
+                insert.setString(4, request.getRequestUrl());
+                insert.setString(5, request.getRequestHeaders());
+                insert.setString(6, request.getRequestPayload());
+                insert.addBatch();
+                latest.put(request.getMockConfigId(), request);
+            }
+            insert.executeBatch();
+            for (CapturedRequest request : latest.values()) {
+                update.setString(1, request.getRequestPayload());
+                update.setLong(2, request.getMockConfigId());
+                update.addBatch();
+            }
+            update.executeBatch();
+            connection.commit();
+            flushed.addAndGet(batch.size());
+            Cache cache = em.getEntityManagerFactory().getCache();
+            for (Long mockConfigId : latest.keySet()) {
+                cache.evict(MockConfig2.class, mockConfigId);
+            }
+        } catch (SQLException e) {
+            // E.g. a capture of a mock deleted meanwhile; only this batch is lost.
+            lost.addAndGet(batch.size());
+            insert.clearBatch();
+            update.clearBatch();
+            connection.rollback();
+            if (failure == null) {
+                return e;
+            }
+            failure.addSuppressed(e);
+        } finally {
+            batch.clear();
+        }
+        return failure;
+    }
+
+    public long getCapturedCount() { return captured.get(); }
+    public long getFlushedCount() { return flushed.get(); }
+    /** Captures drained from memory whose batch failed to insert. */
+    public long getLostCount() { return lost.get(); }
+    public long getFailedFlushCount() { return failedFlushes.get(); }
+    public String getOverflowPolicy() { return OVERFLOW_POLICY.name(); }
+
+    public long getDroppedCount() {
+        long total = 0;
+        for (BoundedRingBuffer<CapturedRequest> buffer : buffers.values()) {
+            total += buffer.getDropped();
+        }
+        return total;
+    }
+
+    public long getBlockedCount() {
+        long total = 0;
+        for (BoundedRingBuffer<CapturedRequest> buffer : buffers.values()) {
+            total += buffer.getBlocked();
+        }
+        return total;
+    }
+
+    public long getBacklog() {
+        long total = 0;
+        for (BoundedRingBuffer<CapturedRequest> buffer : buffers.values()) {
+            total += buffer.getBacklog();
+        }
+        return total;
+    }
+}
@@ -0,0 +1,33 @@
+package org.example.mock.service;
+
+import java.sql.Timestamp;
+
+/**
+ * Immutable in-memory record of one request received by {@code /api/mock2}.
+ */
+public final class CapturedRequest {
+
+    private final Long mockConfigId;
+    private final Timestamp capturedAt;
+    private final String httpMethod;
+    private final String requestUrl;
+    private final String requestHeaders;
+    private final String requestPayload;
+
+    public CapturedRequest(Long mockConfigId, Timestamp capturedAt, String httpMethod, String requestUrl,
+                           String requestHeaders, String requestPayload) {
+        this.mockConfigId = mockConfigId;
+        this.capturedAt = capturedAt;
+        this.httpMethod = httpMethod;
+        this.requestUrl = requestUrl;
+        this.requestHeaders = requestHeaders;
+        this.requestPayload = requestPayload;
+    }
+
+    public Long getMockConfigId() { return mockConfigId; }
+    public Timestamp getCapturedAt() { return capturedAt; }
+    public String getHttpMethod() { return httpMethod; }
+    public String getRequestUrl() { return requestUrl; }
+    public String getRequestHeaders() { return requestHeaders; }
+    public String getRequestPayload() { return requestPayload; }
+}
@@ -0,0 +1,162 @@
+package org.example.mock.service;
+
+import org.example.mock.util.JsonUtil;
+import org.example.mock.util.Settings;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * A response payload encoded once into every representation we may send: the raw UTF-8 bytes and,
+ * for payloads of at least {@code mock.compression.minBytes} bytes (default 1024), gzip and deflate
+ * variants. Each variant carries its own strong ETag, so caches never mix encodings.
+ */
+public final class EncodedBody {
+
+    public static final String GZIP = "gzip";
+    public static final String DEFLATE = "deflate";
+
+    private static final int MIN_COMPRESS_BYTES = Settings.getInt("mock.compression.minBytes", 1024);
+
+    private final String contentType;
+    private final Variant identity;
+    private final Variant gzip;
+    private final Variant deflate;
+
+    private EncodedBody(String contentType, Variant identity, Variant gzip, Variant deflate) {
+        this.contentType = contentType;
+        this.identity = identity;
+        this.gzip = gzip;
+        this.deflate = deflate;
+    }
+
+    /**
+     * Encodes {@code payload} and, if it is large enough, pre-compresses it.
+     */
+    public static EncodedBody encode(String payload, String contentType) {
+        byte[] raw = payload == null ? new byte[0] : payload.getBytes(StandardCharsets.UTF_8);
+        String tag = JsonUtil.digest(payload == null ? "" : payload).substring(0, 32);
+        Variant gzip = null;
+        Variant deflate = null;
+        if (raw.length >= MIN_COMPRESS_BYTES) {
+            gzip = compressed(raw, GZIP, tag);
+            deflate = compressed(raw, DEFLATE, tag);
+        }
+        return new EncodedBody(contentType, new Variant(raw, null, new EntityTag(tag)), gzip, deflate);
+    }
+
+    /**
+     * Wraps bytes that differ per request (e.g. rendered templates): identity only, no ETag.
+     */
+    public static EncodedBody uncached(byte[] raw, String contentType) {
+        return new EncodedBody(contentType, new Variant(raw, null, null), null, null);
+    }
+
+    /**
+     * Picks a Content-Type from the first non-blank character of the payload, since configs don't store one.
+     */
+    public static String detectContentType(String payload) {
+        if (payload != null) {
+            for (int i = 0; i < payload.length(); i++) {
+                char c = payload.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    continue;
+                }
+                if (c == '{' || c == '[') {
+                    return MediaType.APPLICATION_JSON + ";charset=UTF-8";
+                }
+                if (c == '<') {
+                    return MediaType.APPLICATION_XML + ";charset=UTF-8";
+                }
+                break;
+            }
+        }
+        return MediaType.TEXT_PLAIN + ";charset=UTF-8";
+    }
+
+    private static Variant compressed(byte[] raw, String encoding, String tag) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(Math.max(raw.length / 4, 64));
+        try (OutputStream out = GZIP.equals(encoding) ? new GZIPOutputStream(buffer) : new DeflaterOutputStream(buffer)) {
+            out.write(raw);
+        } catch (IOException e) {
+            // Writing to memory cannot fail.
+            throw new IllegalStateException(e);
+        }
+        byte[] bytes = buffer.toByteArray();
+        // Incompressible payloads are only ever sent as-is.
+        return bytes.length < raw.length ? new Variant(bytes, encoding, new EntityTag(tag + "-" + encoding)) : null;
+    }
+
+    /**
+     * Picks the best variant allowed by an {@code Accept-Encoding} header (gzip, then deflate, then identity).
+     * Codings with {@code q=0} are treated as refused.
+     */
+    public Variant select(String acceptEncoding) {
+        if (acceptEncoding == null || (gzip == null && deflate == null)) {
+            return identity;
+        }
+        boolean gzipAccepted = false;
+        boolean deflateAccepted = false;
+        boolean anyAccepted = false;
+        for (String part : acceptEncoding.split(",")) {
+            String[] tokens = part.split(";");
+            String coding = tokens[0].trim().toLowerCase();
+            boolean accepted = true;
+            for (int i = 1; i < tokens.length; i++) {
+                String param = tokens[i].trim();
+                if (param.startsWith("q=")) {
+                    try {
+                        accepted = Double.parseDouble(param.substring(2).trim()) > 0;
+                    } catch (NumberFormatException e) {
+                        accepted = false;
+                    }
+                }
+            }
+            if (GZIP.equals(coding) || "x-gzip".equals(coding)) {
+                gzipAccepted = accepted;
+            } else if (DEFLATE.equals(coding)) {
+                deflateAccepted = accepted;
+            } else if ("*".equals(coding)) {
+                anyAccepted = accepted;
+            }
+        }
+        if (gzip != null && (gzipAccepted || (anyAccepted && !acceptEncoding.toLowerCase().contains(GZIP)))) {
+            return gzip;
+        }
+        if (deflate != null && (deflateAccepted || (anyAccepted && !acceptEncoding.toLowerCase().contains(DEFLATE)))) {
+            return deflate;
+        }
+        return identity;
+    }
+
+    /** Whether the representation depends on Accept-Encoding (i.e. responses need {@code Vary}). */
+    public boolean isCompressible() { return gzip != null || deflate != null; }
+    public String getContentType() { return contentType; }
+    public Variant getIdentity() { return identity; }
+
+    /**
+     * One encoded representation. The byte array is shared; do not modify it.
+     */
+    public static final class Variant {
+        private final byte[] bytes;
+        private final String contentEncoding;
+        private final EntityTag entityTag;
+
+        Variant(byte[] bytes, String contentEncoding, EntityTag entityTag) {
+            this.bytes = bytes;
+            this.contentEncoding = contentEncoding;
+            this.entityTag = entityTag;
+        }
+
+        public byte[] getBytes() { return bytes; }
+        /** {@code gzip}, {@code deflate}, or null for the identity encoding. */
+        public String getContentEncoding() { return contentEncoding; }
+        public EntityTag getEntityTag() { return entityTag; }
+    }
+}
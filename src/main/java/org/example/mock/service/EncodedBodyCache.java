@@ -0,0 +1,55 @@
+package org.example.mock.service;
+
+import org.example.mock.entity.MockConfig2;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.TransactionPhase;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Keeps the pre-encoded response of each {@code MockConfig2} row, keyed by id, so {@code /api/mock2}
+ * neither reads nor compresses the payload per hit. Entries are rebuilt once a save commits and dropped
+ * once a delete commits; a row not seen since startup is loaded and encoded on its first hit, once even
+ * when several hits arrive together.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class EncodedBodyCache {
+
+    private final ConcurrentMap<Long, EncodedBody> entries = new ConcurrentHashMap<>();
+
+    /**
+     * @param payloadLoader Reads the row's response payload, on a miss only.
+     */
+    public EncodedBody get(Long id, Function<Long, String> payloadLoader) {
+        return entries.computeIfAbsent(id, key -> encode(payloadLoader.apply(key)));
+    }
+
+    public void evict(Long id) {
+        if (id != null) {
+            entries.remove(id);
+        }
+    }
+
+    public void onMockConfigChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) MockConfig2ChangedEvent event) {
+        MockConfig2 config = event.getMockConfig();
+        if (config == null || config.getId() == null) {
+            return;
+        }
+        if (event.isDeleted()) {
+            evict(config.getId());
+        } else {
+            // Replaces any entry, including one a concurrent hit loaded before the commit.
+            entries.put(config.getId(), encode(config.getResponsePayload()));
+        }
+    }
+
+    private static EncodedBody encode(String payload) {
+        return EncodedBody.encode(payload, EncodedBody.detectContentType(payload));
+    }
+}
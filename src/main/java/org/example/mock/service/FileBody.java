@@ -0,0 +1,150 @@
+package org.example.mock.service;
+
+import org.example.mock.util.Settings;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.net.URLConnection;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+
+/**
+ * A mock response body kept as a file in the local content store ({@code mock.contentStore.dir},
+ * default {@code <java.io.tmpdir>/mock-content}) instead of a CLOB.
+ * <p>
+ * Files up to {@code mock.contentStore.maxMappedBytes} (default 1 GB, capped at 2 GB) are memory-mapped
+ * once and shared by all requests; larger ones are streamed from a {@link FileChannel}. Either way the
+ * body never becomes a Java String or byte[], so heap usage does not depend on the fixture size.
+ * The file is re-mapped when its size or modification time changes; replace fixtures by writing
+ * a new file and renaming it over the old one rather than rewriting it in place.
+ */
+public final class FileBody {
+
+    private static final Path ROOT = Paths.get(Settings.getString("mock.contentStore.dir",
+            Paths.get(System.getProperty("java.io.tmpdir"), "mock-content").toString())).toAbsolutePath().normalize();
+    // A single mapping (and the int positions used on it) cannot exceed Integer.MAX_VALUE bytes.
+    private static final long MAX_MAPPED_BYTES = Math.min(
+            Settings.getLong("mock.contentStore.maxMappedBytes", 1L << 30), Integer.MAX_VALUE);
+
+    private final Path path;
+    private final String contentType;
+    private volatile Snapshot snapshot;
+
+    private FileBody(Path path) {
+        this.path = path;
+        String guessed = URLConnection.getFileNameMap().getContentTypeFor(path.getFileName().toString());
+        this.contentType = guessed != null ? guessed : MediaType.APPLICATION_OCTET_STREAM;
+    }
+
+    /**
+     * Resolves a path relative to the content store.
+     *
+     * @throws IllegalArgumentException if the path points outside the content store.
+     */
+    public static Path resolve(String relativePath) {
+        Path resolved = ROOT.resolve(relativePath).normalize();
+        if (!resolved.startsWith(ROOT)) {
+            throw new IllegalArgumentException("Response body file must be inside the content store: " + relativePath);
+        }
+        return resolved;
+    }
+
+    public static FileBody of(String relativePath) {
+        return new FileBody(resolve(relativePath));
+    }
+
+    /**
+     * Returns the current view of the file, mapping it again if it has changed on disk.
+     */
+    public Snapshot open() throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        Snapshot current = snapshot;
+        if (current != null && current.size == size && current.modified == modified) {
+            return current;
+        }
+        synchronized (this) {
+            current = snapshot;
+            if (current == null || current.size != size || current.modified != modified) {
+                MappedByteBuffer mapped = null;
+                if (size > 0 && size <= MAX_MAPPED_BYTES) {
+                    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                    }
+                }
+                current = new Snapshot(size, modified, mapped);
+                snapshot = current;
+            }
+            return current;
+        }
+    }
+
+    public Path getPath() { return path; }
+    public String getContentType() { return contentType; }
+
+    /**
+     * One version of the file: its size, modification time and (if small enough) its mapping.
+     */
+    public final class Snapshot {
+        private final long size;
+        private final long modified;
+        private final MappedByteBuffer mapped;
+        private final EntityTag entityTag;
+
+        Snapshot(long size, long modified, MappedByteBuffer mapped) {
+            this.size = size;
+            this.modified = modified;
+            this.mapped = mapped;
+            this.entityTag = new EntityTag(Long.toHexString(size) + "-" + Long.toHexString(modified));
+        }
+
+        public long getSize() { return size; }
+        public long getLastModified() { return modified; }
+        public EntityTag getEntityTag() { return entityTag; }
+
+        /**
+         * Streams {@code length} bytes starting at {@code offset} straight from the mapping or the file.
+         */
+        public StreamingOutput stream(long offset, long length) {
+            return output -> {
+                WritableByteChannel target = Channels.newChannel(output);
+                if (mapped != null) {
+                    ByteBuffer slice = mapped.duplicate();
+                    // Through Buffer so the bytecode also links on Java 8.
+                    Buffer window = slice;
+                    window.limit((int) (offset + length));
+                    window.position((int) offset);
+                    while (slice.hasRemaining()) {
+                        target.write(slice);
+                    }
+                } else {
+                    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                        long position = offset;
+                        long remaining = length;
+                        while (remaining > 0) {
+                            long written = channel.transferTo(position, remaining, target);
+                            if (written <= 0) {
+                                break;
+                            }
+                            position += written;
+                            remaining -= written;
+                        }
+                    }
+                }
+                output.flush();
+            };
+        }
+    }
+}
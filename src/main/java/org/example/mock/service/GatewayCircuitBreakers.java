@@ -0,0 +1,104 @@
+package org.example.mock.service;
+
+import org.example.mock.entity.GatewayConfig;
+import org.example.mock.util.CircuitBreaker;
+import org.example.mock.util.Settings;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.TransactionPhase;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * One {@link CircuitBreaker} per gateway rule, so a failing or hanging target is refused with a 503
+ * instead of holding every caller for the full read timeout.
+ * <p>
+ * A call fails if the target cannot be reached, times out or answers 5xx; it is slow if its response
+ * head takes at least the rule's slow call time. Over a rolling {@code gateway.breaker.windowMs}
+ * (default 10 s) with at least {@code gateway.breaker.minCalls} (default 20) calls, the breaker opens
+ * when the rule's failure rate (default {@code gateway.breaker.failureRate}, 50%) or
+ * {@code gateway.breaker.slowCallRate} (default 80%) of slow calls (default
+ * {@code gateway.breaker.slowCallMs}, 5 s) is reached. It stays open for the rule's open time (default
+ * {@code gateway.breaker.openMs}, 30 s), then lets {@code gateway.breaker.halfOpenCalls} (default 5)
+ * trial calls through.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class GatewayCircuitBreakers {
+
+    private static final long WINDOW_MS = Settings.getLong("gateway.breaker.windowMs", 10_000);
+    private static final int BUCKETS = Settings.getInt("gateway.breaker.buckets", 10);
+    private static final int MIN_CALLS = Settings.getInt("gateway.breaker.minCalls", 20);
+    private static final int HALF_OPEN_CALLS = Settings.getInt("gateway.breaker.halfOpenCalls", 5);
+    private static final int FAILURE_RATE = Settings.getInt("gateway.breaker.failureRate", 50);
+    private static final int SLOW_CALL_RATE = Settings.getInt("gateway.breaker.slowCallRate", 80);
+    private static final int SLOW_CALL_MS = Settings.getInt("gateway.breaker.slowCallMs", 5000);
+    private static final int OPEN_MS = Settings.getInt("gateway.breaker.openMs", 30_000);
+
+    private final ConcurrentMap<Long, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    /**
+     * The rule's breaker, created on first use and kept in line with the rule's current settings.
+     */
+    public CircuitBreaker get(GatewayConfig config) {
+        int failureRate = config.getBreakerFailureRate() != null ? config.getBreakerFailureRate() : FAILURE_RATE;
+        int slowCallMs = UpstreamClient.valueOrDefault(config.getBreakerSlowCallMs(), SLOW_CALL_MS);
+        int openMs = UpstreamClient.valueOrDefault(config.getBreakerOpenMs(), OPEN_MS);
+        // A disabled breaker ignores slowness too.
+        int slowCallRate = failureRate > 0 ? SLOW_CALL_RATE : 0;
+        CircuitBreaker breaker = breakers.get(config.getId());
+        if (breaker == null) {
+            breaker = breakers.computeIfAbsent(config.getId(), id -> new CircuitBreaker(config.getSourceUrlPattern(),
+                    WINDOW_MS, BUCKETS, MIN_CALLS, HALF_OPEN_CALLS, failureRate, slowCallRate, slowCallMs, openMs));
+        }
+        breaker.configure(failureRate, slowCallRate, slowCallMs, openMs);
+        return breaker;
+    }
+
+    /** The rule's breaker, or null if it has not handled a call yet. */
+    public CircuitBreaker find(Long configId) {
+        return breakers.get(configId);
+    }
+
+    /**
+     * Closes a rule's breaker by hand.
+     */
+    public void reset(Long configId) {
+        CircuitBreaker breaker = breakers.get(configId);
+        if (breaker != null) {
+            breaker.reset();
+        }
+    }
+
+    /**
+     * Forgets a deleted rule.
+     */
+    public void evict(Long configId) {
+        breakers.remove(configId);
+    }
+
+    public void onGatewayConfigChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) GatewayConfigChangedEvent event) {
+        GatewayConfig config = event.getGatewayConfig();
+        if (event.isDeleted() && config != null && config.getId() != null) {
+            evict(config.getId());
+        }
+    }
+
+    public Map<String, Object> getStats(Long configId) {
+        CircuitBreaker breaker = breakers.get(configId);
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("state", breaker == null ? CircuitBreaker.State.CLOSED : breaker.getState());
+        stats.put("calls", breaker == null ? 0 : breaker.getWindowCalls());
+        stats.put("failures", breaker == null ? 0 : breaker.getWindowFailures());
+        stats.put("slowCalls", breaker == null ? 0 : breaker.getWindowSlowCalls());
+        stats.put("rejected", breaker == null ? 0 : breaker.getRejectedCount());
+        stats.put("opened", breaker == null ? 0 : breaker.getTransitionCount(CircuitBreaker.State.OPEN));
+        stats.put("lastTransitionAt", breaker == null ? 0 : breaker.getLastTransitionAt());
+        return stats;
+    }
+}
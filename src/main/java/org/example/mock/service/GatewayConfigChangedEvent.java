@@ -0,0 +1,22 @@
+package org.example.mock.service;
+
+import org.example.mock.entity.GatewayConfig;
+
+/**
+ * CDI event fired by {@link GatewayService} whenever a gateway rule is saved or deleted.
+ * {@link GatewayRouteTable} and the holders of per-rule state listen for it after the surrounding
+ * transaction has committed.
+ */
+public class GatewayConfigChangedEvent {
+
+    private final GatewayConfig gatewayConfig;
+    private final boolean deleted;
+
+    public GatewayConfigChangedEvent(GatewayConfig gatewayConfig, boolean deleted) {
+        this.gatewayConfig = gatewayConfig;
+        this.deleted = deleted;
+    }
+
+    public GatewayConfig getGatewayConfig() { return gatewayConfig; }
+    public boolean isDeleted() { return deleted; }
+}
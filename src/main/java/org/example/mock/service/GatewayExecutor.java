@@ -0,0 +1,104 @@
+package org.example.mock.service;
+
+import org.example.mock.entity.GatewayConfig;
+import org.example.mock.util.BoundedExecutor;
+import org.example.mock.util.Settings;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.enterprise.concurrent.ManagedThreadFactory;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.TransactionPhase;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Threads for blocking upstream I/O, kept apart from the container's request threads.
+ * <p>
+ * One pool of up to {@code gateway.executor.maxThreads} (default 200) container-managed threads is
+ * shared by all routes, and each route may use at most as many of them as it has upstream connections
+ * (see {@link UpstreamClient}), with up to the rule's max queued calls (default
+ * {@code gateway.executor.queueSize}, 100) waiting behind them; further calls are rejected at once.
+ * A slow target therefore only ties up its own share.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class GatewayExecutor {
+
+    private static final int MAX_THREADS = Settings.getInt("gateway.executor.maxThreads", 200);
+    private static final int QUEUE_SIZE = Settings.getInt("gateway.executor.queueSize", 100);
+
+    @Resource
+    private ManagedThreadFactory threadFactory;
+
+    private ThreadPoolExecutor threads;
+    private final ConcurrentMap<Long, BoundedExecutor> routes = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        threads = new ThreadPoolExecutor(0, MAX_THREADS, 60, TimeUnit.SECONDS, new SynchronousQueue<>(), threadFactory);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        threads.shutdown();
+    }
+
+    /**
+     * Runs {@code task} within {@code config}'s share of the upstream threads.
+     *
+     * @throws RejectedExecutionException if the route is saturated or the shared pool is exhausted.
+     */
+    public void execute(GatewayConfig config, Runnable task) {
+        int limit = UpstreamClient.valueOrDefault(config.getMaxConnections(), UpstreamClient.DEFAULT_MAX_CONNECTIONS);
+        int queueSize = config.getMaxQueued() != null ? Math.max(config.getMaxQueued(), 0) : QUEUE_SIZE; // 0: no waiting
+        BoundedExecutor executor = routes.computeIfAbsent(config.getId(), id -> new BoundedExecutor(threads, limit, queueSize));
+        if (executor.getMaxConcurrent() != limit) {
+            executor.setMaxConcurrent(limit);
+        }
+        if (executor.getQueueCapacity() != queueSize) {
+            executor.setQueueCapacity(queueSize);
+        }
+        executor.execute(task);
+    }
+
+    /**
+     * Forgets a deleted route; calls already running finish normally.
+     */
+    public void evict(Long configId) {
+        routes.remove(configId);
+    }
+
+    public void onGatewayConfigChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) GatewayConfigChangedEvent event) {
+        GatewayConfig config = event.getGatewayConfig();
+        if (event.isDeleted() && config != null && config.getId() != null) {
+            evict(config.getId());
+        }
+    }
+
+    public Map<String, Object> getStats(Long configId) {
+        BoundedExecutor executor = routes.get(configId);
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("active", executor == null ? 0 : executor.getActive());
+        stats.put("queued", executor == null ? 0 : executor.getQueued());
+        stats.put("maxConcurrent", executor == null ? 0 : executor.getMaxConcurrent());
+        stats.put("completed", executor == null ? 0 : executor.getCompletedCount());
+        stats.put("rejected", executor == null ? 0 : executor.getRejectedCount());
+        return stats;
+    }
+
+    public int getPoolSize() { return threads.getPoolSize(); }
+    public int getActiveThreads() { return threads.getActiveCount(); }
+}
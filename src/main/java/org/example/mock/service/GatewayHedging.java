@@ -0,0 +1,182 @@
+package org.example.mock.service;
+
+import org.example.mock.entity.GatewayConfig;
+import org.example.mock.util.CircuitBreaker;
+import org.example.mock.util.HashedWheelTimer;
+import org.example.mock.util.LatencyHistogram;
+import org.example.mock.util.Settings;
+import org.example.mock.util.TargetBalancer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.concurrent.ManagedThreadFactory;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.TransactionPhase;
+import javax.inject.Inject;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hedged requests for gateway rules with {@code hedgeEnabled} and more than one target: a GET, HEAD,
+ * OPTIONS, PUT or DELETE without a body whose response head has not arrived after the rule's hedge
+ * delay is sent again to another target, and the first response wins (see {@link HedgedCall}).
+ * <p>
+ * The delay is the rule's {@code hedgeDelayMs}, or else the p95 of its upstream calls' recent time to
+ * the response head (not the full transfer, which a hedge cannot speed up) once that covers
+ * {@code gateway.hedge.minSamples} (default 100) calls; before that nothing is hedged.
+ * Hedges are capped at {@code gateway.hedge.budgetPercent} (default 10) percent of a rule's hedgeable
+ * calls: each call earns that share of a hedge, a hedge spends a whole one, and at most
+ * {@code gateway.hedge.maxBurst} (default 10) can be saved up. Hedge delays share one
+ * {@link HashedWheelTimer} ticking every {@code gateway.hedge.tickMs} (default 5).
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class GatewayHedging {
+
+    private static final int MIN_SAMPLES = Settings.getInt("gateway.hedge.minSamples", 100);
+    // Budget in thousandths of a hedge, earned per hedgeable call.
+    private static final long EARNED_PER_CALL = Math.round(Settings.getDouble("gateway.hedge.budgetPercent", 10) * 10);
+    private static final long MAX_CREDIT = Math.max(Settings.getInt("gateway.hedge.maxBurst", 10), 1) * 1000L;
+    private static final long TICK_MS = Settings.getLong("gateway.hedge.tickMs", 5);
+    private static final int TICKS_PER_WHEEL = 1024;
+    private static final long P95_REFRESH_MS = 1000;
+
+    @Resource
+    private ManagedThreadFactory threadFactory;
+
+    @Resource
+    private ManagedExecutorService executor;
+
+    @Inject
+    private UpstreamClient upstreamClient;
+
+    @Inject
+    private GatewayExecutor gatewayExecutor;
+
+    @Inject
+    private GatewayTargets targets;
+
+    @Inject
+    private MetricsRegistry metrics;
+
+    private HashedWheelTimer timer;
+    private final ConcurrentMap<Long, Budget> budgets = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        timer = new HashedWheelTimer(threadFactory, executor, TICK_MS, TimeUnit.MILLISECONDS, TICKS_PER_WHEEL);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.stop();
+    }
+
+    public static boolean isEnabled(GatewayConfig config) {
+        return Boolean.TRUE.equals(config.getHedgeEnabled());
+    }
+
+    /**
+     * Prepares the upstream call of {@code request}, hedged if the rule and request allow it.
+     *
+     * @param breaker The rule's breaker, which has already let the first call through.
+     */
+    public HedgedCall newCall(GatewayRequest request, CircuitBreaker breaker) {
+        GatewayConfig config = request.getConfig();
+        TargetBalancer balancer = targets.get(config);
+        long delayMs = -1;
+        Budget budget = null;
+        if (isEnabled(config) && request.getBody() == null && isIdempotent(request.getMethod())
+                && balancer.getTargets().size() > 1) {
+            budget = budgets.computeIfAbsent(config.getId(), id -> new Budget());
+            budget.earn();
+            delayMs = delayMs(config, budget);
+        }
+        return new HedgedCall(request, upstreamClient, gatewayExecutor, balancer, breaker,
+                delayMs < 0 ? null : this, delayMs, budget, metrics.gateway(config));
+    }
+
+    /**
+     * Forgets a deleted rule.
+     */
+    public void evict(Long configId) {
+        budgets.remove(configId);
+    }
+
+    public void onGatewayConfigChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) GatewayConfigChangedEvent event) {
+        GatewayConfig config = event.getGatewayConfig();
+        if (event.isDeleted() && config != null && config.getId() != null) {
+            evict(config.getId());
+        }
+    }
+
+    HashedWheelTimer.Timeout schedule(Runnable task, long delayMs) {
+        return timer.newTimeout(task, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    /** The rule's hedge delay, or -1 if it has no fixed one and too few recent requests for a p95. */
+    private long delayMs(GatewayConfig config, Budget budget) {
+        if (config.getHedgeDelayMs() != null && config.getHedgeDelayMs() > 0) {
+            return config.getHedgeDelayMs();
+        }
+        long now = System.currentTimeMillis();
+        if (now - budget.p95At >= P95_REFRESH_MS) {
+            // A snapshot copies the histograms; recomputed at most once a second per rule.
+            budget.p95At = now;
+            RouteMetrics route = metrics.findGateway(config.getId());
+            LatencyHistogram.Snapshot recent = route == null ? null : route.getRecentHead();
+            budget.p95Ms = recent == null || recent.getCount() < MIN_SAMPLES ? -1 : Math.max(recent.percentile(0.95) / 1000, 1);
+        }
+        return budget.p95Ms;
+    }
+
+    private static boolean isIdempotent(String method) {
+        return "GET".equalsIgnoreCase(method) || "HEAD".equalsIgnoreCase(method) || "OPTIONS".equalsIgnoreCase(method)
+                || "PUT".equalsIgnoreCase(method) || "DELETE".equalsIgnoreCase(method);
+    }
+
+    /**
+     * A rule's hedge allowance, plus its cached p95. Earning and spending are compare-and-set loops.
+     */
+    static final class Budget {
+
+        private final AtomicLong credit = new AtomicLong();
+        private volatile long p95Ms = -1;
+        private volatile long p95At;
+
+        void earn() {
+            long current;
+            do {
+                current = credit.get();
+                if (current >= MAX_CREDIT) {
+                    return;
+                }
+            } while (!credit.compareAndSet(current, Math.min(current + EARNED_PER_CALL, MAX_CREDIT)));
+        }
+
+        boolean trySpend() {
+            long current;
+            do {
+                current = credit.get();
+                if (current < 1000) {
+                    return false;
+                }
+            } while (!credit.compareAndSet(current, current - 1000));
+            return true;
+        }
+
+        /** Returns a hedge that was paid for but could not be sent. */
+        void refund() {
+            credit.addAndGet(1000);
+        }
+    }
+}
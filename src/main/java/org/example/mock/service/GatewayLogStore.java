@@ -0,0 +1,54 @@
+package org.example.mock.service;
+
+import org.example.mock.entity.GatewayLog;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Where gateway logs are kept. {@link GatewayLogWriter} appends batches to the backend selected with
+ * {@code gateway.log.store}: {@code jpa} (default, the GATEWAY_LOG table, see {@link JpaLogStore}) or
+ * {@code segment} (local append-only files, see {@link SegmentLogStore}). {@link GatewayService} reads
+ * through the same backend.
+ */
+public interface GatewayLogStore {
+
+    /**
+     * Stores a batch of completed log entries, assigning their ids. Called by one thread at a time.
+     */
+    void append(List<GatewayLog> batch) throws IOException;
+
+    /**
+     * One page of summaries (id, timestamp, method, status, duration) of a rule's logs that pass the
+     * query's filters, newest first, starting after the query's cursor.
+     */
+    List<GatewayLog> findLogs(LogQuery query, int maxResults);
+
+    /**
+     * One log entry with headers and bodies, or null if it does not exist (any more).
+     */
+    GatewayLog findLogDetails(Long logId);
+
+    /**
+     * Deletes up to {@code chunkSize} of a rule's oldest logs that are older than {@code olderThan} (epoch
+     * milliseconds) and have an id of at most {@code upToId}. Each call is a short unit of work of its own;
+     * {@link LogRetentionService} repeats it, pausing in between, until it returns 0.
+     *
+     * @return The number of logs deleted.
+     */
+    long deleteChunk(Long configId, long olderThan, long upToId, int chunkSize) throws IOException;
+
+    /**
+     * The id of the newest log to delete so that a rule keeps only its {@code keepRows} newest logs,
+     * or 0 if it has no more than that.
+     */
+    long findPurgeBoundary(Long configId, int keepRows) throws IOException;
+
+    /**
+     * Removes whole units of storage (table partitions, segment files) holding only logs older than
+     * {@code cutoff} (epoch milliseconds), if the backend is organised that way.
+     *
+     * @return The number of units removed.
+     */
+    int dropOlderThan(long cutoff) throws IOException;
+}
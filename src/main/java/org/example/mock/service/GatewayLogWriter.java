@@ -0,0 +1,225 @@
+package org.example.mock.service;
+
+import org.example.mock.entity.GatewayConfig;
+import org.example.mock.entity.GatewayLog;
+import org.example.mock.util.BoundedRingBuffer;
+import org.example.mock.util.Settings;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.TransactionPhase;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Write-behind store for {@link GatewayLog} entries.
+ * <p>
+ * Proxied requests only publish their log into a lock-free {@link BoundedRingBuffer} of
+ * {@code gateway.log.queueSize} entries (default 8192). A background task drains it every
+ * {@code gateway.log.flushIntervalMs} (default 500), or as soon as a full batch is waiting, and hands
+ * the entries to the {@link GatewayLogStore} selected with {@code gateway.log.store} in batches of
+ * {@code gateway.log.batchSize} (default 500).
+ * {@code gateway.log.overflowPolicy} chooses between DROP_OLDEST (default) and BLOCK (for at most
+ * {@code gateway.log.maxBlockMs}, default 1000) when requests outpace the database.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class GatewayLogWriter {
+
+    private static final Logger LOGGER = Logger.getLogger(GatewayLogWriter.class.getName());
+
+    private static final int QUEUE_SIZE = Settings.getInt("gateway.log.queueSize", 8192);
+    private static final int BATCH_SIZE = Math.max(Settings.getInt("gateway.log.batchSize", 500), 1);
+    private static final long FLUSH_INTERVAL_MS = Settings.getLong("gateway.log.flushIntervalMs", 500);
+    private static final long MAX_BLOCK_MS = Settings.getLong("gateway.log.maxBlockMs", 1000);
+    private static final BoundedRingBuffer.OverflowPolicy OVERFLOW_POLICY =
+            BoundedRingBuffer.OverflowPolicy.valueOf(Settings.getString("gateway.log.overflowPolicy", "DROP_OLDEST"));
+
+    private static final int MAX_DELETED_CONFIGS = 1024;
+
+    private static final String STORE = Settings.getString("gateway.log.store", "jpa");
+
+    @Inject
+    private JpaLogStore jpaLogStore;
+
+    @Inject
+    private SegmentLogStore segmentLogStore;
+
+    @Resource
+    private ManagedScheduledExecutorService scheduler;
+
+    private GatewayLogStore store;
+    private BoundedRingBuffer<GatewayLog> queue;
+    // Rules deleted while their logs were queued; inserting those would violate the foreign key. Only
+    // requests still running at the deletion can add more, so the latest deletions are enough to keep.
+    private final Set<Long> deletedConfigs = Collections.synchronizedSet(Collections.newSetFromMap(
+            new LinkedHashMap<Long, Boolean>() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+                    return size() > MAX_DELETED_CONFIGS;
+                }
+            }));
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong written = new AtomicLong();
+    private final AtomicLong discarded = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong failedBatches = new AtomicLong();
+    private final AtomicLong totalBatchNanos = new AtomicLong();
+    private final AtomicLong maxBatchNanos = new AtomicLong();
+    private volatile long lastBatchNanos;
+    private final Object flushLock = new Object();
+    private ScheduledFuture<?> flushTask;
+
+    @PostConstruct
+    public void init() {
+        store = "segment".equalsIgnoreCase(STORE) ? segmentLogStore : jpaLogStore;
+        queue = new BoundedRingBuffer<>(QUEUE_SIZE, OVERFLOW_POLICY, TimeUnit.MILLISECONDS.toNanos(MAX_BLOCK_MS));
+        flushTask = scheduler.scheduleWithFixedDelay(this::flushQuietly, FLUSH_INTERVAL_MS, FLUSH_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+        }
+        flushQuietly();
+    }
+
+    /**
+     * Applies the rule's {@link CapturePolicy} to a completed log entry and queues it. Never touches the
+     * database; the entry must not be modified afterwards.
+     */
+    public void submit(GatewayLog log) {
+        queue.offer(CapturePolicy.apply(log));
+        submitted.incrementAndGet();
+        if (queue.getBacklog() >= BATCH_SIZE && flushRequested.compareAndSet(false, true)) {
+            try {
+                scheduler.execute(this::flushQuietly);
+            } catch (RejectedExecutionException e) {
+                flushRequested.set(false); // The scheduled flush will pick the batch up.
+            }
+        }
+    }
+
+    /**
+     * Discards queued logs of a deleted rule instead of inserting them. Called once the deletion has
+     * committed; a rollback leaves the rule and its logs alone.
+     */
+    public void evict(Long configId) {
+        if (configId != null) {
+            deletedConfigs.add(configId);
+        }
+    }
+
+    public void onGatewayConfigChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) GatewayConfigChangedEvent event) {
+        GatewayConfig config = event.getGatewayConfig();
+        if (event.isDeleted() && config != null && config.getId() != null) {
+            evict(config.getId());
+        }
+    }
+
+    private void flushQuietly() {
+        flushRequested.set(false);
+        try {
+            flush();
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Failed to flush gateway logs; the drained batch is lost", e);
+        }
+    }
+
+    /**
+     * Drains the queue into the log store. Only one flush runs at a time.
+     */
+    public void flush() throws IOException {
+        synchronized (flushLock) {
+            if (queue.getBacklog() == 0) {
+                return;
+            }
+            List<GatewayLog> batch = new ArrayList<>(Math.min(BATCH_SIZE, queue.getCapacity()));
+            int drained;
+            do {
+                drained = queue.drainTo(log -> {
+                    if (deletedConfigs.contains(log.getGatewayConfig().getId())) {
+                        discarded.incrementAndGet();
+                    } else {
+                        batch.add(log);
+                    }
+                }, BATCH_SIZE - batch.size());
+                if (batch.size() >= BATCH_SIZE || (drained == 0 && !batch.isEmpty())) {
+                    writeBatch(batch);
+                }
+            } while (drained > 0);
+        }
+    }
+
+    private void writeBatch(List<GatewayLog> batch) throws IOException {
+        long start = System.nanoTime();
+        try {
+            store.append(batch);
+            written.addAndGet(batch.size());
+        } catch (IOException | RuntimeException e) {
+            failedBatches.incrementAndGet();
+            throw e;
+        } finally {
+            long elapsed = System.nanoTime() - start;
+            batches.incrementAndGet();
+            totalBatchNanos.addAndGet(elapsed);
+            maxBatchNanos.accumulateAndGet(elapsed, Math::max);
+            lastBatchNanos = elapsed;
+            batch.clear();
+        }
+    }
+
+    /**
+     * The backend selected with {@code gateway.log.store}.
+     */
+    public GatewayLogStore getStore() { return store; }
+
+    public String getStoreName() { return STORE.toLowerCase(Locale.ROOT); }
+    public String getOverflowPolicy() { return OVERFLOW_POLICY.name(); }
+    public int getCapacity() { return queue.getCapacity(); }
+    /** Logs waiting to be written. */
+    public long getQueueDepth() { return queue.getBacklog(); }
+    public long getSubmittedCount() { return submitted.get(); }
+    public long getWrittenCount() { return written.get(); }
+    /** Logs overwritten in the queue before they could be written. */
+    public long getDroppedCount() { return queue.getDropped(); }
+    /** Times a request had to wait for room in the queue under the BLOCK policy. */
+    public long getBlockedCount() { return queue.getBlocked(); }
+    /** Logs of deleted rules that were not written. */
+    public long getDiscardedCount() { return discarded.get(); }
+    public long getBatchCount() { return batches.get(); }
+    public long getFailedBatchCount() { return failedBatches.get(); }
+    public double getLastBatchMillis() { return lastBatchNanos / 1e6; }
+    public double getMaxBatchMillis() { return maxBatchNanos.get() / 1e6; }
+
+    public double getAvgBatchMillis() {
+        long count = batches.get();
+        return count == 0 ? 0 : totalBatchNanos.get() / 1e6 / count;
+    }
+}
@@ -0,0 +1,23 @@
+package org.example.mock.service;
+
+import org.example.mock.entity.GatewayConfig;
+
+/**
+ * Result of a {@link GatewayRouteTable} lookup: the rule whose source pattern is the longest prefix of
+ * the request path, plus the part of the path below that prefix, which is appended to the target URL.
+ */
+public final class GatewayMatch {
+
+    private final GatewayConfig config;
+    private final String remainingPath;
+
+    GatewayMatch(GatewayConfig config, String remainingPath) {
+        this.config = config;
+        this.remainingPath = remainingPath;
+    }
+
+    public GatewayConfig getConfig() { return config; }
+
+    /** The path below the matched prefix, starting with a slash, or empty for an exact match. */
+    public String getRemainingPath() { return remainingPath; }
+}
@@ -0,0 +1,70 @@
+package org.example.mock.service;
+
+import org.example.mock.entity.GatewayConfig;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Everything the gateway needs from an incoming request, copied out of the JAX-RS request context
+ * on the request thread so the upstream call can run on another one. The target is chosen per upstream
+ * call (see {@link GatewayTargets}), so the request holds only the part of the URL below the rule.
+ */
+public final class GatewayRequest {
+
+    private final GatewayConfig config;
+    private final String method;
+    private final String path;
+    private final Map<String, List<String>> headers;
+    private final String headerLog;
+    private final InputStream body;
+    private final long contentLength;
+    private final String contentType;
+    private final String contentEncoding;
+    private final long startTime;
+
+    /**
+     * @param path          Path and query below the rule's source pattern, e.g. {@code /orders?page=2}.
+     * @param headers       Headers to forward (hop-by-hop, Host and Content-Length already removed).
+     * @param body          The unread request body, or null if the client sent none.
+     * @param contentLength Length of {@code body}, or -1 if unknown.
+     */
+    public GatewayRequest(GatewayConfig config, String method, String path, Map<String, List<String>> headers, String headerLog,
+                          InputStream body, long contentLength, String contentType, String contentEncoding, long startTime) {
+        this.config = config;
+        this.method = method;
+        this.path = path;
+        this.headers = Collections.unmodifiableMap(headers);
+        this.headerLog = headerLog;
+        this.body = body;
+        this.contentLength = contentLength;
+        this.contentType = contentType;
+        this.contentEncoding = contentEncoding;
+        this.startTime = startTime;
+    }
+
+    public GatewayConfig getConfig() { return config; }
+    public String getMethod() { return method; }
+    /** Path and query below the rule's source pattern, as the client sent them. */
+    public String getPath() { return path; }
+
+    /**
+     * The URL of this request on a target: the path below the rule appended to the target's base URL.
+     */
+    public URI targetOn(String baseUrl) {
+        String base = baseUrl.endsWith("/") ? baseUrl.substring(0, baseUrl.length() - 1) : baseUrl;
+        return URI.create(base + path);
+    }
+    public Map<String, List<String>> getHeaders() { return headers; }
+    /** The forwarded headers as {@code Name: value} lines, for the log. */
+    public String getHeaderLog() { return headerLog; }
+    public InputStream getBody() { return body; }
+    public long getContentLength() { return contentLength; }
+    public String getContentType() { return contentType; }
+    public String getContentEncoding() { return contentEncoding; }
+    /** When the request arrived, in epoch milliseconds. */
+    public long getStartTime() { return startTime; }
+}
@@ -0,0 +1,627 @@
+package org.example.mock.service;
+
+import org.example.mock.entity.GatewayConfig;
+import org.example.mock.util.CacheControl;
+import org.example.mock.util.HttpExchange;
+import org.example.mock.util.Settings;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.TransactionPhase;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Shared HTTP cache of upstream GET responses for gateway rules with {@code cacheEnabled}, following what
+ * RFC 9111 allows a shared cache.
+ * <p>
+ * A response is stored only if it states how long it stays fresh ({@code s-maxage}, {@code max-age} or
+ * {@code Expires}) or carries a validator ({@code ETag}, {@code Last-Modified}); no heuristic freshness is
+ * applied. It is never stored with {@code no-store}, {@code private}, {@code Vary: *} or {@code Set-Cookie},
+ * nor for a request with {@code Authorization} unless the response is explicitly shareable. Entries are
+ * keyed by rule and the path and query below it (so all of a rule's targets share them), with one variant
+ * per combination of the request headers the response's {@code Vary} names. A stale entry with a validator is revalidated with a conditional request and a
+ * {@code 304} refreshes it in place; within its {@code stale-while-revalidate} window it is served at once
+ * while one background request refreshes it. A successful unsafe request (POST, PUT, ...) drops the
+ * entries of its URL.
+ * <p>
+ * Bodies and headers are held up to {@code gateway.cache.maxBytes} (default 64 MB) in total, and a body
+ * over {@code gateway.cache.maxEntryBytes} (default 1 MB) is not stored. Lookups take no locks; when a
+ * store pushes the total over the budget, one thread evicts entries that can no longer be used and then
+ * the least recently used ones, down to 90% of the budget.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class GatewayResponseCache {
+
+    private static final long MAX_BYTES = Math.max(Settings.getLong("gateway.cache.maxBytes", 64L << 20), 0);
+    private static final int MAX_ENTRY_BYTES = Math.max(Settings.getInt("gateway.cache.maxEntryBytes", 1 << 20), 0);
+    // Rough cost of an entry's objects besides its body and header strings.
+    private static final int ENTRY_OVERHEAD = 512;
+    // Statuses that are cacheable by default (RFC 9110, section 15.1).
+    private static final Set<Integer> CACHEABLE_STATUSES = new HashSet<>(Arrays.asList(200, 203, 204, 300, 301, 308, 404, 405, 410, 414, 501));
+
+    /** What a request can get from the cache. */
+    public enum State {
+        /** Nothing usable is stored; the upstream response may be stored. */
+        MISS,
+        /** A fresh entry can be served. */
+        FRESH,
+        /** A stale entry can be served while it is refreshed in the background. */
+        STALE,
+        /** A stale entry must be revalidated with a conditional request first. */
+        REVALIDATE
+    }
+
+    private final ConcurrentMap<String, Resource> resources = new ConcurrentHashMap<>();
+    private final AtomicLong bytes = new AtomicLong();
+    private final AtomicInteger entries = new AtomicInteger();
+    private final AtomicLong evictions = new AtomicLong();
+    private final ReentrantLock evicting = new ReentrantLock();
+
+    public static boolean isEnabled(GatewayConfig config) {
+        return Boolean.TRUE.equals(config.getCacheEnabled()) && MAX_BYTES > 0;
+    }
+
+    /**
+     * Looks up the stored response for a GET or HEAD on a caching rule.
+     *
+     * @return null if the request must bypass the cache (another method, a disabled rule, {@code no-store},
+     *         a range, or a precondition the cache does not evaluate).
+     */
+    public Lookup lookup(GatewayRequest request) {
+        boolean get = "GET".equalsIgnoreCase(request.getMethod());
+        if (!isEnabled(request.getConfig()) || !(get || "HEAD".equalsIgnoreCase(request.getMethod()))) {
+            return null;
+        }
+        Map<String, List<String>> headers = request.getHeaders();
+        if (first(headers, "Range") != null || first(headers, "If-Range") != null
+                || first(headers, "If-Match") != null || first(headers, "If-Unmodified-Since") != null) {
+            return null;
+        }
+        List<String> cacheControl = values(headers, "Cache-Control");
+        CacheControl control = CacheControl.parse(cacheControl);
+        if (control.has("no-store")) {
+            return null;
+        }
+        boolean noCache = control.has("no-cache") || (cacheControl.isEmpty() && "no-cache".equalsIgnoreCase(first(headers, "Pragma")));
+        long maxAgeMs = control.seconds("max-age") * 1000;
+
+        String key = key(request.getConfig().getId(), request.getPath());
+        Resource resource = resources.get(key);
+        CachedResponse entry = resource == null ? null : resource.variants.get(variantKey(resource.vary, headers));
+        long now = System.currentTimeMillis();
+        State state = State.MISS;
+        if (entry != null) {
+            entry.lastUsed = System.nanoTime();
+            boolean clientValidates = first(headers, "If-None-Match") != null || first(headers, "If-Modified-Since") != null;
+            if (!noCache && now < entry.freshUntil && (maxAgeMs < 0 || entry.ageMillis(now) <= maxAgeMs)) {
+                state = State.FRESH;
+            } else if (!noCache && maxAgeMs < 0 && now < entry.staleUntil) {
+                state = State.STALE;
+            } else if (get && entry.hasValidator() && !clientValidates) {
+                state = State.REVALIDATE; // A client's own conditional request goes upstream as sent.
+            }
+        }
+        return new Lookup(key, request, state == State.MISS ? null : entry, state);
+    }
+
+    /**
+     * Starts storing the upstream response to a looked-up GET, if it may be stored. The body is written
+     * to the returned fill as it is relayed, and stored by {@link Fill#finish()}.
+     *
+     * @param contentLength The declared body length, or -1 if unknown.
+     * @return null if the response is not cacheable.
+     */
+    public Fill fill(Lookup lookup, int status, Map<String, List<String>> responseHeaders, long contentLength) {
+        if (!"GET".equalsIgnoreCase(lookup.request.getMethod()) || contentLength > MAX_ENTRY_BYTES) {
+            return null;
+        }
+        CachedResponse response = CachedResponse.create(status, responseHeaders, lookup.request.getHeaders(), null,
+                System.currentTimeMillis());
+        return response == null ? null : new Fill(lookup, response, contentLength);
+    }
+
+    /**
+     * Applies a {@code 304} to the entry a {@link State#REVALIDATE} lookup found: its headers update the
+     * stored ones and its freshness replaces the entry's.
+     *
+     * @return The refreshed response to serve.
+     */
+    public CachedResponse revalidated(Lookup lookup, Map<String, List<String>> notModifiedHeaders) {
+        CachedResponse stale = lookup.entry;
+        Map<String, List<String>> merged = new LinkedHashMap<>(stale.headers);
+        notModifiedHeaders.forEach((name, values) -> {
+            if (!"Content-Length".equalsIgnoreCase(name)) {
+                merged.keySet().removeIf(name::equalsIgnoreCase);
+                merged.put(name, values);
+            }
+        });
+        CachedResponse refreshed = CachedResponse.create(stale.status, merged, lookup.request.getHeaders(), stale.body,
+                System.currentTimeMillis());
+        if (refreshed == null) {
+            remove(lookup.key, stale);
+            return stale.withHeaders(merged);
+        }
+        store(lookup.key, lookup.request.getConfig().getId(), refreshed);
+        return refreshed;
+    }
+
+    /**
+     * Drops the entries of a path (and query) below a rule after a successful unsafe request to it.
+     */
+    public void invalidate(Long configId, String path) {
+        Resource resource = resources.remove(key(configId, path));
+        if (resource != null) {
+            released(resource);
+        }
+    }
+
+    /**
+     * Drops every entry of a rule.
+     */
+    public void evict(Long configId) {
+        resources.forEach((key, resource) -> {
+            if (resource.configId.equals(configId) && resources.remove(key, resource)) {
+                released(resource);
+            }
+        });
+    }
+
+    public void onGatewayConfigChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) GatewayConfigChangedEvent event) {
+        GatewayConfig config = event.getGatewayConfig();
+        if (config != null && config.getId() != null) {
+            // Target, headers or the cache setting itself may have changed; start over.
+            evict(config.getId());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("entries", entries.get());
+        stats.put("bytes", bytes.get());
+        stats.put("maxBytes", MAX_BYTES);
+        stats.put("evictions", evictions.get());
+        return stats;
+    }
+
+    public int getEntryCount() { return entries.get(); }
+    public long getBytes() { return bytes.get(); }
+    public long getEvictionCount() { return evictions.get(); }
+
+    private void store(String key, Long configId, CachedResponse response) {
+        long[] delta = new long[2];
+        resources.compute(key, (k, resource) -> {
+            if (resource == null || !resource.vary.equals(response.vary)) {
+                if (resource != null) {
+                    // The response varies on other headers now; the old variants cannot be selected any more.
+                    for (CachedResponse old : resource.variants.values()) {
+                        delta[0] -= old.size;
+                        delta[1]--;
+                    }
+                }
+                resource = new Resource(configId, response.vary);
+            }
+            CachedResponse previous = resource.variants.put(response.variantKey, response);
+            delta[0] += response.size - (previous == null ? 0 : previous.size);
+            delta[1] += previous == null ? 1 : 0;
+            return resource;
+        });
+        entries.addAndGet((int) delta[1]);
+        if (bytes.addAndGet(delta[0]) > MAX_BYTES) {
+            evictToBudget();
+        }
+    }
+
+    private boolean remove(String key, CachedResponse response) {
+        boolean[] removed = new boolean[1];
+        resources.computeIfPresent(key, (k, resource) -> {
+            removed[0] = resource.variants.remove(response.variantKey, response);
+            return resource.variants.isEmpty() ? null : resource;
+        });
+        if (removed[0]) {
+            entries.decrementAndGet();
+            bytes.addAndGet(-response.size);
+        }
+        return removed[0];
+    }
+
+    private void released(Resource resource) {
+        // Once out of the map a resource is never written to again, so its variants are final here.
+        for (CachedResponse response : resource.variants.values()) {
+            entries.decrementAndGet();
+            bytes.addAndGet(-response.size);
+        }
+    }
+
+    private void evictToBudget() {
+        if (!evicting.tryLock()) {
+            return; // Another thread is already evicting.
+        }
+        try {
+            long target = MAX_BYTES / 10 * 9;
+            long now = System.currentTimeMillis();
+            List<Map.Entry<String, CachedResponse>> candidates = new ArrayList<>(entries.get());
+            resources.forEach((key, resource) -> resource.variants.values()
+                    .forEach(response -> candidates.add(new AbstractMap.SimpleImmutableEntry<>(key, response))));
+            candidates.sort(Comparator.<Map.Entry<String, CachedResponse>, Boolean>comparing(candidate -> candidate.getValue().isUsable(now))
+                    .thenComparingLong(candidate -> candidate.getValue().lastUsed));
+            for (Map.Entry<String, CachedResponse> candidate : candidates) {
+                if (bytes.get() <= target) {
+                    break;
+                }
+                if (remove(candidate.getKey(), candidate.getValue())) {
+                    evictions.incrementAndGet();
+                }
+            }
+        } finally {
+            evicting.unlock();
+        }
+    }
+
+    private static String key(Long configId, String path) {
+        return configId + " " + path;
+    }
+
+    private static String variantKey(List<String> vary, Map<String, List<String>> requestHeaders) {
+        if (vary.isEmpty()) {
+            return "";
+        }
+        StringBuilder key = new StringBuilder();
+        for (String name : vary) {
+            // Values are compared as sent, after trimming; no per-header normalization.
+            key.append(String.join(",", values(requestHeaders, name)).trim()).append('\n');
+        }
+        return key.toString();
+    }
+
+    /**
+     * Header names listed in {@code Vary}, lower case and sorted; null for {@code Vary: *}.
+     */
+    private static List<String> vary(Map<String, List<String>> responseHeaders) {
+        List<String> names = new ArrayList<>();
+        for (String value : values(responseHeaders, "Vary")) {
+            for (String name : value.split(",")) {
+                String trimmed = name.trim().toLowerCase(Locale.ROOT);
+                if ("*".equals(trimmed)) {
+                    return null;
+                }
+                if (!trimmed.isEmpty() && !names.contains(trimmed)) {
+                    names.add(trimmed);
+                }
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    private static List<String> values(Map<String, List<String>> headers, String name) {
+        List<String> values = Collections.emptyList();
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (name.equalsIgnoreCase(header.getKey()) && header.getValue() != null) {
+                if (values.isEmpty()) {
+                    values = header.getValue();
+                } else {
+                    values = new ArrayList<>(values);
+                    values.addAll(header.getValue());
+                }
+            }
+        }
+        return values;
+    }
+
+    private static String first(Map<String, List<String>> headers, String name) {
+        List<String> values = values(headers, name);
+        return values.isEmpty() ? null : values.get(0);
+    }
+
+    /** The stored variants of one URL, all selected by the same {@code Vary} header names. */
+    private static final class Resource {
+        final Long configId;
+        final List<String> vary;
+        final ConcurrentMap<String, CachedResponse> variants = new ConcurrentHashMap<>(2);
+
+        Resource(Long configId, List<String> vary) {
+            this.configId = configId;
+            this.vary = vary;
+        }
+    }
+
+    /**
+     * The result of {@link #lookup}: the request it was made for, and the entry it may use.
+     */
+    public final class Lookup {
+
+        private final String key;
+        private final GatewayRequest request;
+        private final CachedResponse entry;
+        private final State state;
+
+        private Lookup(String key, GatewayRequest request, CachedResponse entry, State state) {
+            this.key = key;
+            this.request = request;
+            this.entry = entry;
+            this.state = state;
+        }
+
+        public State getState() { return state; }
+
+        /** The stored response; null for {@link State#MISS}. */
+        public CachedResponse getEntry() { return entry; }
+
+        /**
+         * Headers for the conditional request that revalidates the entry: the client's plus the entry's validators.
+         */
+        public Map<String, List<String>> revalidationHeaders() {
+            Map<String, List<String>> headers = new LinkedHashMap<>(request.getHeaders());
+            if (entry.etag != null) {
+                headers.put("If-None-Match", Collections.singletonList(entry.etag));
+            }
+            if (entry.lastModified != null) {
+                headers.put("If-Modified-Since", Collections.singletonList(entry.lastModified));
+            }
+            return headers;
+        }
+
+        /**
+         * Claims the background refresh of a {@link State#STALE} entry.
+         *
+         * @return false if another request is already refreshing it.
+         */
+        public boolean claimRefresh() {
+            return entry.refreshing.compareAndSet(false, true);
+        }
+
+        /** Gives up a refresh claimed with {@link #claimRefresh()} that did not replace the entry. */
+        public void releaseRefresh() {
+            entry.refreshing.set(false);
+        }
+
+        /** A lookup for the same request that revalidates the entry, for a background refresh. */
+        public Lookup forRefresh() {
+            return new Lookup(key, request, entry, entry.hasValidator() ? State.REVALIDATE : State.MISS);
+        }
+    }
+
+    /**
+     * Collects the body of a cacheable response while it is relayed; it is stored if it completes within
+     * {@code gateway.cache.maxEntryBytes}.
+     */
+    public final class Fill {
+
+        private final Lookup lookup;
+        private final CachedResponse response;
+        // Null once the body outgrew the limit or was stored.
+        private byte[] body;
+        private int size;
+
+        private Fill(Lookup lookup, CachedResponse response, long contentLength) {
+            this.lookup = lookup;
+            this.response = response;
+            this.body = new byte[(int) Math.max(Math.min(contentLength, MAX_ENTRY_BYTES), Math.min(8192, MAX_ENTRY_BYTES))];
+        }
+
+        public void write(byte[] buffer, int offset, int length) {
+            if (body == null) {
+                return;
+            }
+            if (size + length > MAX_ENTRY_BYTES) {
+                body = null;
+                return;
+            }
+            if (size + length > body.length) {
+                body = Arrays.copyOf(body, (int) Math.min(Math.max(body.length * 2L, size + length), MAX_ENTRY_BYTES));
+            }
+            System.arraycopy(buffer, offset, body, size, length);
+            size += length;
+        }
+
+        /**
+         * Stores the response once its whole body was written.
+         *
+         * @return false if the body was too large to store.
+         */
+        public boolean finish() {
+            if (body == null) {
+                return false;
+            }
+            store(lookup.key, lookup.request.getConfig().getId(), response.withBody(Arrays.copyOf(body, size)));
+            body = null;
+            return true;
+        }
+    }
+
+    /**
+     * A stored response and its freshness. Immutable apart from its last use time and refresh claim.
+     */
+    public static final class CachedResponse {
+
+        private final int status;
+        private final Map<String, List<String>> headers;
+        private final byte[] body;
+        private final long storedAt;
+        private final long initialAgeMs;
+        private final long freshUntil;
+        private final long staleUntil;
+        private final String etag;
+        private final String lastModified;
+        private final List<String> vary;
+        private final String variantKey;
+        private final long size;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private volatile long lastUsed = System.nanoTime();
+
+        private CachedResponse(int status, Map<String, List<String>> headers, byte[] body, long storedAt, long initialAgeMs,
+                               long freshUntil, long staleUntil, String etag, String lastModified, List<String> vary,
+                               String variantKey) {
+            this.status = status;
+            this.headers = Collections.unmodifiableMap(headers);
+            this.body = body;
+            this.storedAt = storedAt;
+            this.initialAgeMs = initialAgeMs;
+            this.freshUntil = freshUntil;
+            this.staleUntil = staleUntil;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.vary = vary;
+            this.variantKey = variantKey;
+            long headerChars = 0;
+            for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+                for (String value : header.getValue()) {
+                    headerChars += header.getKey().length() + (value == null ? 0 : value.length());
+                }
+            }
+            this.size = ENTRY_OVERHEAD + 2 * headerChars + (body == null ? 0 : body.length);
+        }
+
+        /**
+         * The stored form of a response received at {@code now}, or null if a shared cache must not store it
+         * or could never reuse it.
+         */
+        static CachedResponse create(int status, Map<String, List<String>> responseHeaders,
+                                     Map<String, List<String>> requestHeaders, byte[] body, long now) {
+            if (!CACHEABLE_STATUSES.contains(status) || first(responseHeaders, "Set-Cookie") != null) {
+                return null;
+            }
+            CacheControl control = CacheControl.parse(values(responseHeaders, "Cache-Control"));
+            if (control.has("no-store") || control.has("private")) {
+                return null;
+            }
+            List<String> vary = vary(responseHeaders);
+            if (vary == null) {
+                return null;
+            }
+            long sMaxAge = control.seconds("s-maxage");
+            if (first(requestHeaders, "Authorization") != null
+                    && !control.has("public") && sMaxAge < 0 && !control.has("must-revalidate")) {
+                return null;
+            }
+            String etag = first(responseHeaders, "ETag");
+            String lastModified = first(responseHeaders, "Last-Modified");
+            long date = CacheControl.parseDate(first(responseHeaders, "Date"));
+            if (date < 0) {
+                date = now;
+            }
+            long maxAge = control.seconds("max-age");
+            String expires = first(responseHeaders, "Expires");
+            long lifetimeMs;
+            if (control.has("no-cache")) {
+                lifetimeMs = 0;
+            } else if (sMaxAge >= 0) {
+                lifetimeMs = sMaxAge * 1000;
+            } else if (maxAge >= 0) {
+                lifetimeMs = maxAge * 1000;
+            } else if (expires != null) {
+                long expiresAt = CacheControl.parseDate(expires); // An invalid date means "already expired".
+                lifetimeMs = expiresAt < 0 ? 0 : Math.max(expiresAt - date, 0);
+            } else {
+                lifetimeMs = 0;
+            }
+            if (lifetimeMs == 0 && etag == null && lastModified == null) {
+                return null; // Never fresh and cannot be revalidated.
+            }
+            long initialAgeMs = Math.max(ageMillis(first(responseHeaders, "Age")), now - date);
+            long freshUntil = now + lifetimeMs - initialAgeMs;
+            boolean mustRevalidate = control.has("must-revalidate") || control.has("proxy-revalidate")
+                    || control.has("no-cache") || sMaxAge >= 0;
+            long staleMs = mustRevalidate ? 0 : Math.max(control.seconds("stale-while-revalidate"), 0) * 1000;
+
+            Map<String, List<String>> stored = new LinkedHashMap<>();
+            responseHeaders.forEach((name, values) -> {
+                if (name != null && !HttpExchange.isHopByHop(name) && !"Age".equalsIgnoreCase(name)) {
+                    stored.put(name, values);
+                }
+            });
+            return new CachedResponse(status, stored, body, now, initialAgeMs, freshUntil, freshUntil + staleMs,
+                    etag, lastModified, vary, variantKey(vary, requestHeaders));
+        }
+
+        private static long ageMillis(String age) {
+            try {
+                return age == null ? 0 : Math.min(Math.max(Long.parseLong(age.trim()), 0), 1L << 31) * 1000;
+            } catch (NumberFormatException e) {
+                return 0;
+            }
+        }
+
+        CachedResponse withBody(byte[] body) {
+            return new CachedResponse(status, headers, body, storedAt, initialAgeMs, freshUntil, staleUntil,
+                    etag, lastModified, vary, variantKey);
+        }
+
+        CachedResponse withHeaders(Map<String, List<String>> headers) {
+            return new CachedResponse(status, headers, body, storedAt, initialAgeMs, freshUntil, staleUntil,
+                    etag, lastModified, vary, variantKey);
+        }
+
+        boolean hasValidator() {
+            return etag != null || lastModified != null;
+        }
+
+        /** Whether the entry can still be served or revalidated. */
+        boolean isUsable(long now) {
+            return now < staleUntil || hasValidator();
+        }
+
+        long ageMillis(long now) {
+            return initialAgeMs + Math.max(now - storedAt, 0);
+        }
+
+        /**
+         * Whether a client's own {@code If-None-Match} or {@code If-Modified-Since} is satisfied by this
+         * entry, so it can be answered with a {@code 304}.
+         */
+        public boolean isNotModifiedFor(Map<String, List<String>> requestHeaders) {
+            if (status != 200) {
+                return false;
+            }
+            List<String> ifNoneMatch = values(requestHeaders, "If-None-Match");
+            if (!ifNoneMatch.isEmpty()) {
+                if (etag == null) {
+                    return false;
+                }
+                for (String value : ifNoneMatch) {
+                    for (String tag : value.split(",")) {
+                        String trimmed = tag.trim();
+                        // Weak comparison (RFC 9110, section 8.8.3.2).
+                        if ("*".equals(trimmed) || weak(trimmed).equals(weak(etag))) {
+                            return true;
+                        }
+                    }
+                }
+                return false;
+            }
+            long since = CacheControl.parseDate(first(requestHeaders, "If-Modified-Since"));
+            long modified = CacheControl.parseDate(lastModified);
+            return since >= 0 && modified >= 0 && modified <= since;
+        }
+
+        private static String weak(String tag) {
+            return tag.startsWith("W/") ? tag.substring(2) : tag;
+        }
+
+        public int getStatus() { return status; }
+        /** The stored end-to-end headers; {@code Age} is left for the server to add. */
+        public Map<String, List<String>> getHeaders() { return headers; }
+        public byte[] getBody() { return body; }
+        /** Current age in whole seconds, for the {@code Age} header. */
+        public long getAgeSeconds() { return ageMillis(System.currentTimeMillis()) / 1000; }
+    }
+}
@@ -0,0 +1,130 @@
+package org.example.mock.service;
+
+import org.example.mock.entity.GatewayConfig;
+import org.example.mock.util.PathPrefixTrie;
+import org.example.mock.util.PathTemplateTrie;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.TransactionPhase;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Application-wide, read-mostly routing table for {@code /api/gateway/*}.
+ * <p>
+ * Enabled {@link GatewayConfig} rows are compiled into an immutable snapshot holding a
+ * {@link PathPrefixTrie} of their source URL patterns, so one rule covers a whole API subtree and the
+ * most specific rule wins. Readers only dereference a volatile field, so the request path never touches
+ * the {@link EntityManager}. Changes made through {@link GatewayService} are applied copy-on-write after
+ * their transaction commits and the new snapshot is swapped in atomically.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class GatewayRouteTable {
+
+    private static final Logger LOGGER = Logger.getLogger(GatewayRouteTable.class.getName());
+
+    @PersistenceContext(unitName = "mock-pu")
+    private EntityManager em;
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        try {
+            reload();
+        } catch (Exception e) {
+            // Keep the application deployable; the table fills up again on the next save.
+            LOGGER.log(Level.SEVERE, "Could not load gateway configurations into the route table", e);
+        }
+    }
+
+    /**
+     * Rebuilds the whole table from the database.
+     */
+    public void reload() {
+        Map<Long, GatewayConfig> configs = new TreeMap<>();
+        for (GatewayConfig config : em.createNamedQuery("GatewayConfig.findAll", GatewayConfig.class).getResultList()) {
+            if (config.isEnabled()) {
+                configs.put(config.getId(), new GatewayConfig(config));
+            }
+        }
+        synchronized (this) {
+            this.snapshot = new Snapshot(configs);
+        }
+        LOGGER.log(Level.INFO, "Gateway route table loaded with {0} routes", configs.size());
+    }
+
+    /**
+     * Applies a committed save or delete to the table without going back to the database.
+     */
+    public void onGatewayConfigChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) GatewayConfigChangedEvent event) {
+        GatewayConfig config = event.getGatewayConfig();
+        if (config == null || config.getId() == null) {
+            return;
+        }
+        synchronized (this) {
+            Map<Long, GatewayConfig> configs = new TreeMap<>(snapshot.byId);
+            if (event.isDeleted() || !config.isEnabled()) {
+                configs.remove(config.getId());
+            } else {
+                configs.put(config.getId(), new GatewayConfig(config));
+            }
+            this.snapshot = new Snapshot(configs);
+        }
+    }
+
+    /**
+     * Finds the enabled rule whose source pattern is the longest segment-wise prefix of {@code path}.
+     *
+     * @param path Request path below {@code /api/gateway/}, as sent by the client (still percent-encoded).
+     * @return The match, or null if no enabled rule covers the path.
+     */
+    public GatewayMatch find(String path) {
+        PathPrefixTrie.Match<GatewayConfig> match = snapshot.trie.find(PathTemplateTrie.split(path));
+        if (match == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return new GatewayMatch(match.getValue(), PathPrefixTrie.remainder(path, match.getLength()));
+    }
+
+    public int getRouteCount() { return snapshot.byId.size(); }
+    public long getHitCount() { return hits.get(); }
+    public long getMissCount() { return misses.get(); }
+
+    /**
+     * One immutable generation of the table. Never modified after construction.
+     */
+    private static final class Snapshot {
+
+        static final Snapshot EMPTY = new Snapshot(Collections.emptyMap());
+
+        final Map<Long, GatewayConfig> byId;
+        final PathPrefixTrie<GatewayConfig> trie = new PathPrefixTrie<>();
+
+        Snapshot(Map<Long, GatewayConfig> configs) {
+            this.byId = Collections.unmodifiableMap(configs);
+            // Configs arrive ordered by id, so the oldest row wins if two patterns only differ in slashes.
+            for (GatewayConfig config : configs.values()) {
+                trie.putIfAbsent(PathTemplateTrie.split(config.getSourceUrlPattern()), config);
+            }
+        }
+    }
+}
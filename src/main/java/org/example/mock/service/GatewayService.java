@@ -4,11 +4,11 @@ import org.example.mock.entity.GatewayConfig;
 import org.example.mock.entity.GatewayLog;
 
 import javax.ejb.Stateless;
-import javax.ejb.TransactionAttribute;
-import javax.ejb.TransactionAttributeType;
+import javax.enterprise.event.Event;
+import javax.inject.Inject;
 import javax.persistence.EntityManager;
-import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
+import java.io.IOException;
 import java.util.Collections;
 import java.util.List;
 
@@ -18,6 +18,15 @@ public class GatewayService {
     @PersistenceContext(unitName = "mock-pu")
     private EntityManager em;
 
+    @Inject
+    private GatewayLogWriter logWriter;
+
+    @Inject
+    private LogRetentionService logRetention;
+
+    @Inject
+    private Event<GatewayConfigChangedEvent> changedEvent;
+
     // --- GatewayConfig Methods ---
 
     public List<GatewayConfig> findAllConfigs() {
@@ -25,11 +34,15 @@ public class GatewayService {
     }
 
     public void saveConfig(GatewayConfig config) {
+        GatewayConfig saved;
         if (config.getId() == null) {
             em.persist(config);
+            saved = config;
         } else {
-            em.merge(config);
+            saved = em.merge(config);
         }
+        // Delivered to GatewayRouteTable only once the transaction commits.
+        changedEvent.fire(new GatewayConfigChangedEvent(saved, false));
     }
 
     public void deleteConfig(GatewayConfig config) {
@@ -38,49 +51,27 @@ public class GatewayService {
         } else {
             em.remove(em.merge(config));
         }
-    }
-
-    public GatewayConfig findActiveConfigBySourcePattern(String sourceUrlPattern) {
-        try {
-            return em.createQuery("SELECT g FROM GatewayConfig g WHERE g.sourceUrlPattern = :pattern AND g.enabled = true", GatewayConfig.class)
-                    .setParameter("pattern", sourceUrlPattern)
-                    .getSingleResult();
-        } catch (NoResultException e) {
-            return null;
-        }
+        // Per-rule state (connection pools and the like) is dropped by its owners once the deletion
+        // commits; if the delete fails, it stays.
+        changedEvent.fire(new GatewayConfigChangedEvent(config, true));
     }
 
     // --- GatewayLog Methods ---
 
-    public void saveLog(GatewayLog log) {
-        em.persist(log);
+    public List<GatewayLog> findLogs(LogQuery query, int maxResults) {
+        return logWriter.getStore().findLogs(query, maxResults);
     }
 
-    public List<GatewayLog> findLogsForConfig(Long configId, int maxResults) {
-        // This is a JPQL Constructor Expression.
-        // It creates new GatewayLog objects using a custom constructor,
-        // selecting only the non-LOB fields we need for the summary table.
-        String jpql = "SELECT NEW org.example.mock.entity.GatewayLog(" +
-                "l.id, l.timestamp, l.requestMethod, l.responseStatusCode, l.durationMs" +
-                ") " +
-                "FROM GatewayLog l " +
-                "WHERE l.gatewayConfig.id = :configId " +
-                "ORDER BY l.timestamp DESC";
-
-        return em.createQuery(jpql, GatewayLog.class)
-                .setParameter("configId", configId)
-                .setMaxResults(maxResults)
-                .getResultList();
-    }
     public GatewayLog findLogDetails(Long logId) {
-        return em.find(GatewayLog.class, logId);
+        return logWriter.getStore().findLogDetails(logId);
     }
-    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
-    public void clearLogsForConfig(Long configId) {
+
+    /**
+     * Starts removing a rule's logs in the background (see {@link LogRetentionService}).
+     */
+    public void clearLogsForConfig(Long configId) throws IOException {
         if (configId != null) {
-            em.createQuery("DELETE FROM GatewayLog l WHERE l.gatewayConfig.id = :configId")
-              .setParameter("configId", configId)
-              .executeUpdate();
+            logRetention.clear(configId);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,128 @@
+package org.example.mock.service;
+
+import org.example.mock.entity.GatewayConfig;
+import org.example.mock.util.Settings;
+import org.example.mock.util.TargetBalancer;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.TransactionPhase;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * One {@link TargetBalancer} per gateway rule, spreading its upstream calls over the rule's
+ * {@code targets} (or its single target base URL if it has none).
+ * <p>
+ * {@code gateway.targets.strategy} picks the balancing: {@code p2c} (default, power of two choices) or
+ * {@code least} (least outstanding requests). A target is ejected after
+ * {@code gateway.targets.ejectAfterFailures} (default 5) consecutive failed calls, for
+ * {@code gateway.targets.ejectMs} (default 30 s) times the number of ejections in a row.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class GatewayTargets {
+
+    private static final TargetBalancer.Strategy STRATEGY =
+            "least".equals(Settings.getString("gateway.targets.strategy", "p2c").trim().toLowerCase(Locale.ROOT))
+                    ? TargetBalancer.Strategy.LEAST_OUTSTANDING : TargetBalancer.Strategy.POWER_OF_TWO;
+    private static final int EJECT_AFTER_FAILURES = Settings.getInt("gateway.targets.ejectAfterFailures", 5);
+    private static final long EJECT_MS = Settings.getLong("gateway.targets.ejectMs", 30_000);
+
+    private final ConcurrentMap<Long, TargetBalancer> balancers = new ConcurrentHashMap<>();
+
+    /**
+     * The rule's target list as configured: its {@code targets}, or else its target base URL.
+     */
+    public static String spec(GatewayConfig config) {
+        String targets = config.getTargets();
+        return targets == null || targets.trim().isEmpty() ? config.getTargetBaseUrl() : targets;
+    }
+
+    /**
+     * The rule's balancer, rebuilt when its target list has changed.
+     */
+    public TargetBalancer get(GatewayConfig config) {
+        String spec = spec(config);
+        TargetBalancer balancer = balancers.get(config.getId());
+        if (balancer != null && balancer.getSpec().equals(spec)) {
+            return balancer;
+        }
+        return balancers.compute(config.getId(), (id, current) ->
+                current != null && current.getSpec().equals(spec) ? current : build(spec, current));
+    }
+
+    private static TargetBalancer build(String spec, TargetBalancer previous) {
+        Map<String, TargetBalancer.Target> kept = new HashMap<>();
+        if (previous != null) {
+            for (TargetBalancer.Target target : previous.getTargets()) {
+                kept.put(target.getBaseUrl() + ' ' + target.getWeight(), target);
+            }
+        }
+        Map<String, Integer> parsed;
+        try {
+            parsed = TargetBalancer.parse(spec);
+        } catch (IllegalArgumentException e) {
+            // Saved before the list was validated; send everything to the first entry as it stands.
+            parsed = Collections.singletonMap(spec.trim().split("[\\s,]+")[0], 1);
+        }
+        List<TargetBalancer.Target> targets = new ArrayList<>(parsed.size());
+        parsed.forEach((url, weight) -> {
+            TargetBalancer.Target target = kept.get(url + ' ' + weight);
+            targets.add(target != null ? target : new TargetBalancer.Target(url, weight));
+        });
+        return new TargetBalancer(spec, targets, STRATEGY, EJECT_AFTER_FAILURES, EJECT_MS);
+    }
+
+    /** The rule's balancer, or null if it has not handled a call yet. */
+    public TargetBalancer find(Long configId) {
+        return balancers.get(configId);
+    }
+
+    /**
+     * Forgets a deleted rule.
+     */
+    public void evict(Long configId) {
+        balancers.remove(configId);
+    }
+
+    public void onGatewayConfigChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) GatewayConfigChangedEvent event) {
+        GatewayConfig config = event.getGatewayConfig();
+        if (event.isDeleted() && config != null && config.getId() != null) {
+            evict(config.getId());
+        }
+    }
+
+    /**
+     * Live counters of each of the rule's targets, in the order configured; empty before its first call.
+     */
+    public List<Map<String, Object>> getStats(Long configId) {
+        TargetBalancer balancer = balancers.get(configId);
+        if (balancer == null) {
+            return Collections.emptyList();
+        }
+        List<Map<String, Object>> stats = new ArrayList<>();
+        for (TargetBalancer.Target target : balancer.getTargets()) {
+            Map<String, Object> stat = new LinkedHashMap<>();
+            stat.put("url", target.getBaseUrl());
+            stat.put("weight", target.getWeight());
+            stat.put("inFlight", target.getInFlight());
+            stat.put("calls", target.getCallCount());
+            stat.put("failures", target.getFailureCount());
+            stat.put("latencyMs", target.getLatencyMicros() / 1000.0);
+            stat.put("ejected", target.isEjected());
+            stat.put("ejections", target.getEjectionCount());
+            stats.add(stat);
+        }
+        return stats;
+    }
+}
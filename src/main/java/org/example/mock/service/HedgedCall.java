@@ -0,0 +1,264 @@
+package org.example.mock.service;
+
+import org.example.mock.entity.GatewayConfig;
+import org.example.mock.util.CallCanceller;
+import org.example.mock.util.CircuitBreaker;
+import org.example.mock.util.HashedWheelTimer;
+import org.example.mock.util.HttpExchange;
+import org.example.mock.util.TargetBalancer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The upstream call of one gateway request, on a target chosen by the rule's {@link TargetBalancer}.
+ * <p>
+ * A hedged call (see {@link GatewayHedging}) that has no response head after its delay sends the same
+ * request to another target, on the rule's share of the {@link GatewayExecutor} and with a permit of its
+ * circuit breaker. The first response head wins; the other call is cancelled by closing its connection,
+ * or aborted if its head arrives anyway. If one call fails, the other can still win; only if both fail
+ * does the call fail, with the original call's error. Both calls count towards their target's and the
+ * breaker's statistics, except a cancelled one.
+ */
+public final class HedgedCall {
+
+    private final GatewayRequest request;
+    private final UpstreamClient upstreamClient;
+    private final GatewayExecutor gatewayExecutor;
+    private final TargetBalancer balancer;
+    private final CircuitBreaker breaker;
+    private final GatewayHedging hedging;
+    private final long hedgeDelayMs;
+    private final GatewayHedging.Budget budget;
+    private final RouteMetrics routeMetrics;
+
+    private final CompletableFuture<Attempt> winner = new CompletableFuture<>();
+    // Attempts that have not ended yet; the last one to fail fails the call.
+    private final AtomicInteger pending = new AtomicInteger(1);
+    private final AtomicBoolean released = new AtomicBoolean();
+    private volatile Attempt primary;
+    private volatile Attempt hedge;
+
+    /**
+     * @param hedging The hedge timer, or null for a call that is not hedged.
+     */
+    HedgedCall(GatewayRequest request, UpstreamClient upstreamClient, GatewayExecutor gatewayExecutor,
+               TargetBalancer balancer, CircuitBreaker breaker, GatewayHedging hedging, long hedgeDelayMs,
+               GatewayHedging.Budget budget, RouteMetrics routeMetrics) {
+        this.request = request;
+        this.upstreamClient = upstreamClient;
+        this.gatewayExecutor = gatewayExecutor;
+        this.balancer = balancer;
+        this.breaker = breaker;
+        this.hedging = hedging;
+        this.hedgeDelayMs = hedgeDelayMs;
+        this.budget = budget;
+        this.routeMetrics = routeMetrics;
+    }
+
+    /**
+     * Sends the request on the calling thread (plus a hedge, if it takes too long) and returns the first
+     * response head.
+     *
+     * @param body Request body, or null; a call with a body is never hedged.
+     * @return The response; closing it does not end the call, {@link #release()} does.
+     */
+    public HttpExchange.Response execute(Map<String, List<String>> headers, InputStream body, long contentLength) throws IOException {
+        primary = new Attempt(balancer.pick(), headers, body, contentLength, false);
+        HashedWheelTimer.Timeout timeout = null;
+        if (hedging != null) {
+            try {
+                timeout = hedging.schedule(this::sendHedge, hedgeDelayMs);
+            } catch (IllegalStateException e) {
+                // Timer stopped during shutdown: no hedge.
+            }
+        }
+        primary.run();
+        try {
+            // Returns at once unless the primary failed while a hedge is still running.
+            return winner.get().response;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            cancel();
+            throw new InterruptedIOException("Interrupted while waiting for a hedged call");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IOException(cause);
+        } finally {
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+    }
+
+    /**
+     * The URL actually called: the winning call's, or the original call's if none won.
+     */
+    public URI getUri() {
+        Attempt won = won();
+        return won != null ? won.uri : primary == null ? null : primary.uri;
+    }
+
+    /**
+     * Ends the call once its response has been relayed (or it failed): the winning target no longer
+     * counts it as outstanding. Safe to call more than once.
+     */
+    public void release() {
+        Attempt won = won();
+        if (won != null && released.compareAndSet(false, true)) {
+            balancer.release(won.target);
+        }
+    }
+
+    /** The attempt whose response won, or null if there is none (yet). */
+    private Attempt won() {
+        return winner.isDone() && !winner.isCompletedExceptionally() ? winner.join() : null;
+    }
+
+    /** Runs on the hedge timer once the delay is over. */
+    private void sendHedge() {
+        if (winner.isDone()) {
+            return;
+        }
+        if (!budget.trySpend()) {
+            routeMetrics.countHedge(RouteMetrics.HedgeResult.DENIED);
+            return;
+        }
+        if (!breaker.tryAcquire()) {
+            budget.refund();
+            return;
+        }
+        Attempt attempt = new Attempt(balancer.pick(primary.target), primary.headers, null, -1, true);
+        hedge = attempt;
+        pending.incrementAndGet();
+        if (winner.isDone()) {
+            unsent(attempt);
+            return;
+        }
+        try {
+            gatewayExecutor.execute(request.getConfig(), attempt);
+        } catch (RejectedExecutionException e) {
+            unsent(attempt); // The rule's bulkhead is full; hedging would only add to the queue.
+        }
+    }
+
+    private void unsent(Attempt attempt) {
+        breaker.onIgnored();
+        balancer.release(attempt.target);
+        budget.refund();
+        ended();
+    }
+
+    private void cancel() {
+        Attempt other = hedge;
+        if (other != null) {
+            other.canceller.cancel();
+        }
+        winner.thenAccept(won -> {
+            // Nobody waits for it any more.
+            won.response.abort();
+            release();
+        });
+    }
+
+    /**
+     * Settles an attempt that ended with {@code response}, or with {@code attempt.error} if null.
+     */
+    private void settle(Attempt attempt, HttpExchange.Response response) {
+        if (response != null && winner.complete(attempt.withResponse(response))) {
+            Attempt other = attempt == primary ? hedge : primary;
+            if (other != null) {
+                other.canceller.cancel();
+            }
+            pending.decrementAndGet();
+            return;
+        }
+        if (response != null) {
+            response.abort(); // Lost the race.
+        }
+        balancer.release(attempt.target);
+        ended();
+    }
+
+    private void ended() {
+        if (pending.decrementAndGet() == 0 && !winner.isDone()) {
+            Exception error = primary.error != null ? primary.error : hedge != null ? hedge.error : null;
+            winner.completeExceptionally(error != null ? error : new IOException("Upstream call failed"));
+        }
+    }
+
+    /**
+     * One request to one target.
+     */
+    private final class Attempt implements Runnable {
+
+        private final TargetBalancer.Target target;
+        private final Map<String, List<String>> headers;
+        private final InputStream body;
+        private final long contentLength;
+        private final boolean isHedge;
+        private final CallCanceller canceller = new CallCanceller();
+        private volatile URI uri;
+        private volatile HttpExchange.Response response;
+        private volatile Exception error;
+
+        Attempt(TargetBalancer.Target target, Map<String, List<String>> headers, InputStream body, long contentLength,
+                boolean isHedge) {
+            this.target = target;
+            this.headers = headers;
+            this.body = body;
+            this.contentLength = contentLength;
+            this.isHedge = isHedge;
+        }
+
+        Attempt withResponse(HttpExchange.Response response) {
+            this.response = response;
+            return this;
+        }
+
+        @Override
+        public void run() {
+            GatewayConfig config = request.getConfig();
+            HttpExchange.Response received = null;
+            long start = 0;
+            try {
+                uri = request.targetOn(target.getBaseUrl());
+                start = System.nanoTime();
+                received = upstreamClient.execute(config, request.getMethod(), uri, headers, body, contentLength, canceller);
+                long micros = (System.nanoTime() - start) / 1000;
+                breaker.onResult(received.getStatus() < 500, micros / 1000);
+                balancer.onResult(target, received.getStatus() < 500, micros);
+                routeMetrics.recordHead(micros);
+            } catch (Exception e) {
+                error = e;
+                if (start == 0 || canceller.isCancelled()) {
+                    breaker.onIgnored(); // Never reached the target, or was cut off because the other call won.
+                } else {
+                    long micros = (System.nanoTime() - start) / 1000;
+                    breaker.onResult(false, micros / 1000);
+                    balancer.onResult(target, false, micros);
+                    routeMetrics.recordHead(micros);
+                }
+            }
+            settle(this, received);
+            if (isHedge) {
+                routeMetrics.countHedge(won() == this ? RouteMetrics.HedgeResult.WON : RouteMetrics.HedgeResult.LOST);
+            }
+        }
+    }
+}
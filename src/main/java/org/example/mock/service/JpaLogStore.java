@@ -0,0 +1,278 @@
+package org.example.mock.service;
+
+import org.example.mock.entity.GatewayLog;
+import org.example.mock.util.Settings;
+
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.LocalBean;
+import javax.ejb.Singleton;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.TypedQuery;
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Gateway logs in the GATEWAY_LOG table. Batches are inserted and purged over plain JDBC, with the ids
+ * of a batch taken from GATEWAY_LOG_SEQ in a single round trip; reads go through JPA.
+ */
+@Singleton
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class JpaLogStore implements GatewayLogStore {
+
+    private static final Logger LOGGER = Logger.getLogger(JpaLogStore.class.getName());
+
+    private static final String NEXT_IDS_SQL = "SELECT GATEWAY_LOG_SEQ.NEXTVAL FROM DUAL CONNECT BY LEVEL <= ?";
+    private static final String INSERT_SQL = "INSERT INTO GATEWAY_LOG "
+            + "(ID, GATEWAY_CONFIG_ID, TIMESTAMP, REQUEST_METHOD, REQUEST_URL, REQUEST_HEADERS, REQUEST_BODY, "
+            + "RESPONSE_STATUS_CODE, RESPONSE_HEADERS, RESPONSE_BODY, DURATION_MS, REQUEST_BODY_LENGTH, RESPONSE_BODY_LENGTH, CACHE_HIT) "
+            + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    // Keyed chunk: the oldest matching ids of one rule, in index order.
+    private static final String DELETE_CHUNK_SQL = "DELETE FROM GATEWAY_LOG WHERE ID IN ("
+            + "SELECT ID FROM (SELECT ID FROM GATEWAY_LOG WHERE GATEWAY_CONFIG_ID = ? AND TIMESTAMP < ? AND ID <= ? "
+            + "ORDER BY TIMESTAMP, ID) WHERE ROWNUM <= ?)";
+    // Id of the (keepRows + 1)-th newest log of a rule.
+    private static final String PURGE_BOUNDARY_SQL = "SELECT ID FROM ("
+            + "SELECT ID, ROWNUM RN FROM (SELECT ID FROM GATEWAY_LOG WHERE GATEWAY_CONFIG_ID = ? ORDER BY ID DESC) "
+            + "WHERE ROWNUM <= ?) WHERE RN = ?";
+    private static final String PARTITIONS_SQL = "SELECT PARTITION_NAME, HIGH_VALUE FROM USER_TAB_PARTITIONS "
+            + "WHERE TABLE_NAME = 'GATEWAY_LOG' ORDER BY PARTITION_POSITION";
+    private static final Pattern TIMESTAMP_BOUND = Pattern.compile("(\\d{4}-\\d{2}-\\d{2} \\d{2}:\\d{2}:\\d{2})");
+    // Stands in for "no age limit" (Long.MAX_VALUE), which Oracle cannot represent.
+    private static final long LATEST_TIMESTAMP = Timestamp.valueOf("9999-12-31 00:00:00").getTime();
+    private static final boolean DROP_PARTITIONS = Settings.getBoolean("gateway.log.retention.dropPartitions", false);
+
+    @PersistenceContext(unitName = "mock-pu")
+    private EntityManager em;
+
+    @Resource(lookup = "jdbc/myMockDS")
+    private DataSource dataSource;
+
+    /**
+     * Inserts the batch in one local transaction of its own, outside any container transaction.
+     */
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void append(List<GatewayLog> batch) throws IOException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement nextIds = connection.prepareStatement(NEXT_IDS_SQL);
+                 PreparedStatement insert = connection.prepareStatement(INSERT_SQL)) {
+                nextIds.setInt(1, batch.size());
+                try (ResultSet ids = nextIds.executeQuery()) {
+                    for (GatewayLog log : batch) {
+                        if (!ids.next()) {
+                            throw new SQLException("GATEWAY_LOG_SEQ returned fewer ids than requested");
+                        }
+                        log.setId(ids.getLong(1));
+                    }
+                }
+                for (GatewayLog log : batch) {
+                    insert.setLong(1, log.getId());
+                    insert.setLong(2, log.getGatewayConfig().getId());
+                    insert.setTimestamp(3, log.getTimestamp());
+                    insert.setString(4, log.getRequestMethod());
+                    insert.setString(5, log.getRequestUrl());
+                    insert.setString(6, log.getRequestHeaders());
+                    insert.setString(7, log.getRequestBody());
+                    insert.setInt(8, log.getResponseStatusCode());
+                    insert.setString(9, log.getResponseHeaders());
+                    insert.setString(10, log.getResponseBody());
+                    insert.setLong(11, log.getDurationMs());
+                    setLength(insert, 12, log.getRequestBodyLength());
+                    setLength(insert, 13, log.getResponseBodyLength());
+                    if (log.getCacheHit() == null) {
+                        insert.setNull(14, Types.NUMERIC);
+                    } else {
+                        insert.setInt(14, log.getCacheHit() ? 1 : 0);
+                    }
+                    insert.addBatch();
+                }
+                insert.executeBatch();
+                connection.commit();
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IOException("Cannot insert " + batch.size() + " gateway logs", e);
+        }
+    }
+
+    private static void setLength(PreparedStatement insert, int index, Long length) throws SQLException {
+        if (length == null) {
+            insert.setNull(index, Types.NUMERIC);
+        } else {
+            insert.setLong(index, length);
+        }
+    }
+
+    /**
+     * Seeks through the (GATEWAY_CONFIG_ID, TIMESTAMP, ID) index to the row after the cursor and reads one
+     * page from there, so deep pages cost the same as the first.
+     */
+    @Override
+    public List<GatewayLog> findLogs(LogQuery query, int maxResults) {
+        // This is a JPQL Constructor Expression.
+        // It creates new GatewayLog objects using a custom constructor,
+        // selecting only the non-LOB fields we need for the summary table.
+        StringBuilder jpql = new StringBuilder("SELECT NEW org.example.mock.entity.GatewayLog(" +
+                "l.id, l.timestamp, l.requestMethod, l.responseStatusCode, l.durationMs, l.cacheHit" +
+                ") " +
+                "FROM GatewayLog l " +
+                "WHERE l.gatewayConfig.id = :configId");
+        if (query.getBeforeId() != null) {
+            // The redundant leading bound gives the optimizer a plain range on the index.
+            jpql.append(" AND l.timestamp <= :beforeTimestamp"
+                    + " AND (l.timestamp < :beforeTimestamp OR (l.timestamp = :beforeTimestamp AND l.id < :beforeId))");
+        }
+        if (query.getFrom() != null) {
+            jpql.append(" AND l.timestamp >= :from");
+        }
+        if (query.getTo() != null) {
+            jpql.append(" AND l.timestamp < :to");
+        }
+        if (query.getMinStatus() != null) {
+            jpql.append(" AND l.responseStatusCode >= :minStatus");
+        }
+        if (query.getMaxStatus() != null) {
+            jpql.append(" AND l.responseStatusCode <= :maxStatus");
+        }
+        if (query.getMethod() != null) {
+            jpql.append(" AND l.requestMethod = :method");
+        }
+        if (query.getMinDurationMs() != null) {
+            jpql.append(" AND l.durationMs >= :minDurationMs");
+        }
+        jpql.append(" ORDER BY l.timestamp DESC, l.id DESC");
+
+        TypedQuery<GatewayLog> typed = em.createQuery(jpql.toString(), GatewayLog.class)
+                .setParameter("configId", query.getConfigId());
+        if (query.getBeforeId() != null) {
+            typed.setParameter("beforeTimestamp", new Timestamp(query.getBeforeTimestamp()))
+                    .setParameter("beforeId", query.getBeforeId());
+        }
+        if (query.getFrom() != null) {
+            typed.setParameter("from", new Timestamp(query.getFrom()));
+        }
+        if (query.getTo() != null) {
+            typed.setParameter("to", new Timestamp(query.getTo()));
+        }
+        if (query.getMinStatus() != null) {
+            typed.setParameter("minStatus", query.getMinStatus());
+        }
+        if (query.getMaxStatus() != null) {
+            typed.setParameter("maxStatus", query.getMaxStatus());
+        }
+        if (query.getMethod() != null) {
+            typed.setParameter("method", query.getMethod());
+        }
+        if (query.getMinDurationMs() != null) {
+            typed.setParameter("minDurationMs", query.getMinDurationMs());
+        }
+        return typed.setMaxResults(maxResults).getResultList();
+    }
+
+    @Override
+    public GatewayLog findLogDetails(Long logId) {
+        return em.find(GatewayLog.class, logId);
+    }
+
+    /**
+     * Deletes one chunk, located through the (GATEWAY_CONFIG_ID, TIMESTAMP, ID) index, in its own short
+     * transaction so undo and locks stay small.
+     */
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public long deleteChunk(Long configId, long olderThan, long upToId, int chunkSize) throws IOException {
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(false);
+            try (PreparedStatement delete = connection.prepareStatement(DELETE_CHUNK_SQL)) {
+                delete.setLong(1, configId);
+                delete.setTimestamp(2, new Timestamp(Math.min(olderThan, LATEST_TIMESTAMP)));
+                delete.setLong(3, upToId);
+                delete.setInt(4, chunkSize);
+                int deleted = delete.executeUpdate();
+                connection.commit();
+                return deleted;
+            } catch (SQLException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IOException("Cannot purge gateway logs of rule " + configId, e);
+        }
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public long findPurgeBoundary(Long configId, int keepRows) throws IOException {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement query = connection.prepareStatement(PURGE_BOUNDARY_SQL)) {
+            query.setLong(1, configId);
+            query.setInt(2, keepRows + 1);
+            query.setInt(3, keepRows + 1);
+            try (ResultSet result = query.executeQuery()) {
+                return result.next() ? result.getLong(1) : 0;
+            }
+        } catch (SQLException e) {
+            throw new IOException("Cannot find the purge boundary of rule " + configId, e);
+        }
+    }
+
+    /**
+     * Drops the partitions of a GATEWAY_LOG table range-partitioned by TIMESTAMP whose upper bound is at
+     * or before {@code cutoff}. Does nothing unless {@code gateway.log.retention.dropPartitions} is set,
+     * or if the table is not partitioned.
+     */
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public int dropOlderThan(long cutoff) throws IOException {
+        if (!DROP_PARTITIONS) {
+            return 0;
+        }
+        int dropped = 0;
+        try (Connection connection = dataSource.getConnection()) {
+            List<String> expired = new ArrayList<>();
+            try (Statement query = connection.createStatement();
+                 ResultSet partitions = query.executeQuery(PARTITIONS_SQL)) {
+                while (partitions.next()) {
+                    Matcher bound = TIMESTAMP_BOUND.matcher(String.valueOf(partitions.getString(2)));
+                    if (bound.find() && Timestamp.valueOf(bound.group(1)).getTime() <= cutoff) {
+                        expired.add(partitions.getString(1));
+                    }
+                }
+            }
+            for (String partition : expired) {
+                try (Statement drop = connection.createStatement()) {
+                    drop.execute("ALTER TABLE GATEWAY_LOG DROP PARTITION \"" + partition.replace("\"", "") + "\" UPDATE GLOBAL INDEXES");
+                    dropped++;
+                } catch (SQLException e) {
+                    // E.g. the last range partition of an interval-partitioned table cannot be dropped.
+                    LOGGER.log(Level.FINE, "Cannot drop gateway log partition " + partition, e);
+                }
+            }
+        } catch (SQLException e) {
+            throw new IOException("Cannot drop expired gateway log partitions", e);
+        }
+        return dropped;
+    }
+}
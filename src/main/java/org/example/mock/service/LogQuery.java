@@ -0,0 +1,87 @@
+package org.example.mock.service;
+
+import org.example.mock.entity.GatewayLog;
+
+import java.io.Serializable;
+
+/**
+ * One page request for a rule's logs: optional filters plus a keyset cursor. Pages are ordered newest
+ * first, by (timestamp, id) in the database and by id (append order) in the segment store. The cursor is
+ * the last log of the previous page, so a store seeks straight to the next page through its index however
+ * deep it is, instead of skipping an offset's worth of rows. Null filters match everything.
+ */
+public final class LogQuery implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Long configId;
+    private final Integer minStatus;
+    private final Integer maxStatus;
+    private final String method;
+    private final Long from;
+    private final Long to;
+    private final Long minDurationMs;
+    private final Long beforeTimestamp;
+    private final Long beforeId;
+
+    /**
+     * @param minStatus Lowest status code, inclusive.
+     * @param maxStatus Highest status code, inclusive.
+     * @param from      Earliest timestamp, inclusive, in epoch milliseconds.
+     * @param to        Latest timestamp, exclusive, in epoch milliseconds.
+     */
+    public LogQuery(Long configId, Integer minStatus, Integer maxStatus, String method, Long from, Long to, Long minDurationMs) {
+        this(configId, minStatus, maxStatus, method, from, to, minDurationMs, null, null);
+    }
+
+    private LogQuery(Long configId, Integer minStatus, Integer maxStatus, String method, Long from, Long to, Long minDurationMs,
+                     Long beforeTimestamp, Long beforeId) {
+        this.configId = configId;
+        this.minStatus = minStatus;
+        this.maxStatus = maxStatus;
+        this.method = method == null || method.isEmpty() ? null : method;
+        this.from = from;
+        this.to = to;
+        this.minDurationMs = minDurationMs;
+        this.beforeTimestamp = beforeTimestamp;
+        this.beforeId = beforeId;
+    }
+
+    /** All of a rule's logs. */
+    public static LogQuery forConfig(Long configId) {
+        return new LogQuery(configId, null, null, null, null, null, null);
+    }
+
+    /**
+     * The same filters, starting after {@code last}, the last log of the previous page (null for the first page).
+     */
+    public LogQuery after(GatewayLog last) {
+        if (last == null) {
+            return new LogQuery(configId, minStatus, maxStatus, method, from, to, minDurationMs);
+        }
+        return new LogQuery(configId, minStatus, maxStatus, method, from, to, minDurationMs,
+                last.getTimestamp().getTime(), last.getId());
+    }
+
+    /** Whether a log with these fields passes the filters; the cursor is not checked. */
+    boolean matches(long timestamp, int status, String requestMethod, long durationMs) {
+        return (minStatus == null || status >= minStatus)
+                && (maxStatus == null || status <= maxStatus)
+                && (method == null || method.equals(requestMethod))
+                && (from == null || timestamp >= from)
+                && (to == null || timestamp < to)
+                && (minDurationMs == null || durationMs >= minDurationMs);
+    }
+
+    public Long getConfigId() { return configId; }
+    public Integer getMinStatus() { return minStatus; }
+    public Integer getMaxStatus() { return maxStatus; }
+    public String getMethod() { return method; }
+    public Long getFrom() { return from; }
+    public Long getTo() { return to; }
+    public Long getMinDurationMs() { return minDurationMs; }
+    /** Timestamp of the previous page's last log, or null on the first page. */
+    public Long getBeforeTimestamp() { return beforeTimestamp; }
+    /** Id of the previous page's last log, or null on the first page. */
+    public Long getBeforeId() { return beforeId; }
+}
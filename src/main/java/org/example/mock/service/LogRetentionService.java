@@ -0,0 +1,216 @@
+package org.example.mock.service;
+
+import org.example.mock.entity.GatewayConfig;
+import org.example.mock.util.Settings;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.inject.Inject;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Deletes old gateway logs in the background.
+ * <p>
+ * Every {@code gateway.log.retention.intervalMs} (default 15 minutes) each rule's logs beyond its max
+ * age and max row count are purged (rule settings, else {@code gateway.log.retention.maxAgeHours} and
+ * {@code gateway.log.retention.maxRows}; 0 keeps everything). Purging goes through
+ * {@link GatewayLogStore#deleteChunk} in chunks of {@code gateway.log.retention.chunkSize} (default 1000)
+ * with a {@code gateway.log.retention.pauseMs} (default 200) pause after each, so the log table never
+ * sees a long transaction. "Clear logs" requests from the UI are queued and purged the same way.
+ * Finally, if every rule has a max age, whole partitions or segments older than the longest one are dropped.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class LogRetentionService {
+
+    private static final Logger LOGGER = Logger.getLogger(LogRetentionService.class.getName());
+
+    private static final long INTERVAL_MS = Settings.getLong("gateway.log.retention.intervalMs", 15 * 60 * 1000L);
+    private static final int DEFAULT_MAX_AGE_HOURS = Settings.getInt("gateway.log.retention.maxAgeHours", 0);
+    private static final int DEFAULT_MAX_ROWS = Settings.getInt("gateway.log.retention.maxRows", 0);
+    private static final int CHUNK_SIZE = Math.max(Settings.getInt("gateway.log.retention.chunkSize", 1000), 1);
+    private static final long PAUSE_MS = Settings.getLong("gateway.log.retention.pauseMs", 200);
+
+    @Resource
+    private ManagedScheduledExecutorService scheduler;
+
+    @Inject
+    private GatewayService gatewayService;
+
+    @Inject
+    private GatewayLogWriter logWriter;
+
+    // Rules whose logs the UI asked to clear, mapped to the newest id at that moment.
+    private final Map<Long, Long> pendingClears = new ConcurrentHashMap<>();
+    private final Set<Long> clearing = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong rowsPurged = new AtomicLong();
+    private final AtomicLong chunks = new AtomicLong();
+    private final AtomicLong unitsDropped = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile String currentTask = "idle";
+    private volatile long currentRunPurged;
+    private volatile long lastRunStarted;
+    private volatile long lastRunMillis;
+    private volatile boolean shuttingDown;
+    private ScheduledFuture<?> task;
+
+    @PostConstruct
+    public void init() {
+        task = scheduler.scheduleWithFixedDelay(this::runQuietly, INTERVAL_MS, INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shuttingDown = true;
+        if (task != null) {
+            task.cancel(false);
+        }
+    }
+
+    /**
+     * Queues the removal of every log a rule has now; returns at once.
+     */
+    public void clear(Long configId) throws IOException {
+        long upToId = logWriter.getStore().findPurgeBoundary(configId, 0);
+        if (upToId > 0) {
+            pendingClears.merge(configId, upToId, Math::max);
+            clearing.add(configId);
+            runSoon();
+        }
+    }
+
+    /** Whether a clear requested for this rule is still being purged. */
+    public boolean isClearing(Long configId) { return clearing.contains(configId); }
+
+    private void runSoon() {
+        if (!running.get()) {
+            try {
+                scheduler.execute(this::runQuietly);
+            } catch (RejectedExecutionException e) {
+                LOGGER.log(Level.FINE, "Retention run rejected; the scheduled run will pick the request up", e);
+            }
+        }
+    }
+
+    private void runQuietly() {
+        if (!running.compareAndSet(false, true)) {
+            return;
+        }
+        long started = System.currentTimeMillis();
+        lastRunStarted = started;
+        currentRunPurged = 0;
+        boolean completed = false;
+        try {
+            run();
+            runs.incrementAndGet();
+            completed = true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            failures.incrementAndGet();
+            LOGGER.log(Level.WARNING, "Gateway log retention run failed; pending clears are retried on the next run", e);
+        } finally {
+            lastRunMillis = System.currentTimeMillis() - started;
+            currentTask = "idle";
+            running.set(false);
+        }
+        if (completed && !pendingClears.isEmpty() && !shuttingDown) {
+            runSoon(); // Requested while this run was past its clear phase.
+        }
+    }
+
+    private void run() throws IOException, InterruptedException {
+        GatewayLogStore store = logWriter.getStore();
+        for (Map.Entry<Long, Long> clear : pendingClears.entrySet()) {
+            currentTask = "clearing rule " + clear.getKey();
+            purge(store, clear.getKey(), Long.MAX_VALUE, clear.getValue());
+            // Kept if the rule was cleared again meanwhile, so the newer request runs next.
+            if (pendingClears.remove(clear.getKey(), clear.getValue())) {
+                clearing.remove(clear.getKey());
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        long longestAgeMs = 0;
+        boolean allAged = true;
+        List<GatewayConfig> configs = gatewayService.findAllConfigs();
+        for (GatewayConfig config : configs) {
+            int maxAgeHours = UpstreamClient.valueOrDefault(config.getRetentionMaxAgeHours(), DEFAULT_MAX_AGE_HOURS);
+            int maxRows = UpstreamClient.valueOrDefault(config.getRetentionMaxRows(), DEFAULT_MAX_ROWS);
+            if (maxAgeHours > 0) {
+                long maxAgeMs = TimeUnit.HOURS.toMillis(maxAgeHours);
+                longestAgeMs = Math.max(longestAgeMs, maxAgeMs);
+                currentTask = "purging rule " + config.getId() + " by age";
+                purge(store, config.getId(), now - maxAgeMs, Long.MAX_VALUE);
+            } else {
+                allAged = false;
+            }
+            if (maxRows > 0) {
+                long boundary = store.findPurgeBoundary(config.getId(), maxRows);
+                if (boundary > 0) {
+                    currentTask = "purging rule " + config.getId() + " by row count";
+                    purge(store, config.getId(), Long.MAX_VALUE, boundary);
+                }
+            }
+        }
+
+        if (allAged && longestAgeMs > 0 && !configs.isEmpty()) {
+            currentTask = "dropping expired partitions";
+            unitsDropped.addAndGet(store.dropOlderThan(now - longestAgeMs));
+        }
+    }
+
+    private void purge(GatewayLogStore store, Long configId, long olderThan, long upToId) throws IOException, InterruptedException {
+        long deleted;
+        do {
+            if (shuttingDown) {
+                return;
+            }
+            deleted = store.deleteChunk(configId, olderThan, upToId, CHUNK_SIZE);
+            chunks.incrementAndGet();
+            rowsPurged.addAndGet(deleted);
+            currentRunPurged += deleted;
+            if (deleted >= CHUNK_SIZE && PAUSE_MS > 0) {
+                // Let the database and the request path breathe between chunks.
+                Thread.sleep(PAUSE_MS);
+            }
+        } while (deleted >= CHUNK_SIZE);
+    }
+
+    public Map<String, Object> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("running", running.get());
+        stats.put("currentTask", currentTask);
+        stats.put("currentRunPurged", currentRunPurged);
+        stats.put("pendingClears", pendingClears.size());
+        stats.put("runs", runs.get());
+        stats.put("rowsPurged", rowsPurged.get());
+        stats.put("chunks", chunks.get());
+        stats.put("unitsDropped", unitsDropped.get());
+        stats.put("failures", failures.get());
+        stats.put("lastRunStarted", lastRunStarted);
+        stats.put("lastRunMs", lastRunMillis);
+        return stats;
+    }
+}
@@ -0,0 +1,432 @@
+package org.example.mock.service;
+
+import org.example.mock.entity.GatewayConfig;
+import org.example.mock.entity.GatewayLog;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongPredicate;
+
+/**
+ * One memory-mapped, append-only file of gateway log records, used by {@link SegmentLogStore}.
+ * <p>
+ * A record is a fixed header followed by six length-prefixed UTF-8 strings (method, URL, request
+ * headers, request body, response headers, response body; length -1 for null):
+ * <pre>
+ * int length | long id | long configId | long timestamp | int status | long durationMs
+ * | int previous offset of the same config (-1 if none) | long request body length | long response body length
+ * </pre>
+ * Two high bits of the status carry the log's cache flag; records written before the flag existed read
+ * as null. The length is written last, so a record torn by a crash reads as the end of the segment. Each
+ * record points back to the previous record of its rule, so a rule's logs are read newest first without
+ * scanning other rules' records. Two sparse in-memory indexes, one entry per {@code indexInterval} records, locate
+ * a record by id and a rule's records by time; both are rebuilt by scanning when a segment is reopened.
+ * <p>
+ * The timestamp is when the request started, but a record is appended when it completes, so a slow
+ * request lands after faster ones that started later. The time index therefore keys on completion time
+ * (timestamp plus duration), which follows append order, and a seek for records older than some time
+ * allows for the longest duration seen for the rule.
+ * <p>
+ * Appends come from one thread at a time; reads are safe from any thread.
+ */
+final class LogSegment {
+
+    static final String SUFFIX = ".seg";
+
+    private static final int HEADER_BYTES = 4 + 8 + 8 + 8 + 4 + 8 + 4 + 8 + 8;
+    private static final int STRING_COUNT = 6;
+    private static final int CACHE_MISS_FLAG = 1 << 29;
+    private static final int CACHE_HIT_FLAG = 1 << 30;
+    // Completion times of records appended close together may be out of order by this much (the time
+    // between measuring a request's duration and queueing its log).
+    private static final long COMPLETION_SKEW_MS = 1000;
+
+    private final Path file;
+    private final long firstId;
+    private final long createdAt;
+    private final int indexInterval;
+    private final MappedByteBuffer buffer;
+    private final SparseIndex byId;
+    private final Map<Long, ConfigIndex> configs = new ConcurrentHashMap<>();
+    // Bytes of complete records; readers never look beyond it.
+    private volatile int end;
+    private volatile long lastId;
+    private volatile long maxTimestamp = Long.MIN_VALUE;
+    private int recordCount;
+
+    private LogSegment(Path file, long firstId, long createdAt, MappedByteBuffer buffer, int indexInterval) {
+        this.file = file;
+        this.firstId = firstId;
+        this.createdAt = createdAt;
+        this.buffer = buffer;
+        this.indexInterval = Math.max(indexInterval, 1);
+        this.byId = new SparseIndex();
+        this.lastId = firstId - 1;
+    }
+
+    /**
+     * Creates a new, empty segment file of {@code capacity} bytes.
+     */
+    static LogSegment create(Path dir, long firstId, int capacity, int indexInterval) throws IOException {
+        long createdAt = System.currentTimeMillis();
+        Path file = dir.resolve(String.format("%020d-%d%s", firstId, createdAt, SUFFIX));
+        try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+            MappedByteBuffer buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+            return new LogSegment(file, firstId, createdAt, buffer, indexInterval);
+        }
+    }
+
+    /**
+     * Maps an existing segment file read-only and rebuilds its indexes.
+     */
+    static LogSegment open(Path file, int indexInterval) throws IOException {
+        String name = file.getFileName().toString();
+        int dash = name.indexOf('-');
+        long firstId = Long.parseLong(name.substring(0, dash));
+        long createdAt = Long.parseLong(name.substring(dash + 1, name.length() - SUFFIX.length()));
+        try (FileChannel channel = FileChannel.open(file)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            LogSegment segment = new LogSegment(file, firstId, createdAt, buffer, indexInterval);
+            segment.scan();
+            return segment;
+        }
+    }
+
+    private void scan() {
+        int offset = 0;
+        while (offset + HEADER_BYTES <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+            if (length < HEADER_BYTES || offset + length > buffer.capacity()) {
+                break;
+            }
+            index(offset, buffer.getLong(offset + 4), buffer.getLong(offset + 12), buffer.getLong(offset + 20),
+                    buffer.getLong(offset + 32));
+            offset += length;
+        }
+        end = offset;
+    }
+
+    /**
+     * Appends {@code log}, whose id must be greater than any already in the segment.
+     *
+     * @return false if the record does not fit; nothing is written then.
+     */
+    boolean append(GatewayLog log) {
+        byte[][] strings = strings(log);
+        int length = recordLength(strings);
+        int offset = end;
+        if (offset + length > buffer.capacity()) {
+            return false;
+        }
+        long configId = log.getGatewayConfig().getId();
+        long timestamp = log.getTimestamp().getTime();
+        ConfigIndex config = configs.get(configId);
+        ByteBuffer out = buffer.duplicate();
+        ((Buffer) out).position(offset + 4);
+        out.putLong(log.getId())
+                .putLong(configId)
+                .putLong(timestamp)
+                .putInt(log.getResponseStatusCode()
+                        | (log.getCacheHit() == null ? 0 : log.getCacheHit() ? CACHE_HIT_FLAG : CACHE_MISS_FLAG))
+                .putLong(log.getDurationMs())
+                .putInt(config == null ? -1 : config.lastOffset)
+                .putLong(log.getRequestBodyLength() == null ? -1 : log.getRequestBodyLength())
+                .putLong(log.getResponseBodyLength() == null ? -1 : log.getResponseBodyLength());
+        for (byte[] string : strings) {
+            out.putInt(string == null ? -1 : string.length);
+            if (string != null) {
+                out.put(string);
+            }
+        }
+        out.putInt(offset, length);
+        index(offset, log.getId(), configId, timestamp, log.getDurationMs());
+        end = offset + length;
+        return true;
+    }
+
+    static int recordLength(GatewayLog log) {
+        return recordLength(strings(log));
+    }
+
+    private static int recordLength(byte[][] strings) {
+        int length = HEADER_BYTES + 4 * STRING_COUNT;
+        for (byte[] string : strings) {
+            length += string == null ? 0 : string.length;
+        }
+        return length;
+    }
+
+    private static byte[][] strings(GatewayLog log) {
+        return new byte[][]{bytes(log.getRequestMethod()), bytes(log.getRequestUrl()), bytes(log.getRequestHeaders()),
+                bytes(log.getRequestBody()), bytes(log.getResponseHeaders()), bytes(log.getResponseBody())};
+    }
+
+    private static byte[] bytes(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void index(int offset, long id, long configId, long timestamp, long durationMs) {
+        if (recordCount++ % indexInterval == 0) {
+            byId.add(id, offset);
+        }
+        configs.computeIfAbsent(configId, k -> new ConfigIndex()).add(offset, id, timestamp, Math.max(durationMs, 0), indexInterval);
+        lastId = id;
+        if (timestamp > maxTimestamp) {
+            maxTimestamp = timestamp;
+        }
+    }
+
+    /**
+     * Adds summaries of up to {@code max} records of the query's rule that pass its filters, newest first,
+     * that have an id below the query's cursor and above {@code afterId}.
+     */
+    void collect(LogQuery query, long afterId, int max, List<GatewayLog> into) {
+        ConfigIndex config = configs.get(query.getConfigId());
+        if (config == null) {
+            return;
+        }
+        long beforeId = query.getBeforeId() == null ? Long.MAX_VALUE : query.getBeforeId();
+        int offset = config.seekBeforeId(beforeId);
+        if (query.getTo() != null) {
+            // Both are safe starting points; the earlier one skips more.
+            int byTime = config.seek(query.getTo());
+            offset = offset < 0 || byTime < 0 ? -1 : Math.min(offset, byTime);
+        }
+        for (int added = 0; offset >= 0 && added < max; offset = buffer.getInt(offset + 40)) {
+            long id = buffer.getLong(offset + 4);
+            if (id <= afterId) {
+                break; // Ids only decrease from here on.
+            }
+            if (id < beforeId && query.matches(buffer.getLong(offset + 20), status(buffer.getInt(offset + 28)),
+                    query.getMethod() == null ? null : readMethod(offset), buffer.getLong(offset + 32))) {
+                into.add(readSummary(offset));
+                added++;
+            }
+        }
+    }
+
+    /**
+     * Hands the ids of a rule's records older than {@code beforeTimestamp} to {@code visitor}, newest
+     * first, until it returns false.
+     *
+     * @return false if the visitor stopped the walk.
+     */
+    boolean walk(long configId, long beforeTimestamp, LongPredicate visitor) {
+        ConfigIndex config = configs.get(configId);
+        if (config == null) {
+            return true;
+        }
+        for (int offset = config.seek(beforeTimestamp); offset >= 0; offset = buffer.getInt(offset + 40)) {
+            if (buffer.getLong(offset + 20) < beforeTimestamp && !visitor.test(buffer.getLong(offset + 4))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The full record with this id, or null if the segment does not hold it.
+     */
+    GatewayLog find(long id) {
+        if (id < firstId || id > lastId) {
+            return null;
+        }
+        int limit = end;
+        for (int offset = byId.floor(id); offset >= 0 && offset < limit; offset += buffer.getInt(offset)) {
+            long recordId = buffer.getLong(offset + 4);
+            if (recordId == id) {
+                return readFull(offset);
+            }
+            if (recordId > id) {
+                break;
+            }
+        }
+        return null;
+    }
+
+    private String readMethod(int offset) {
+        ByteBuffer in = buffer.duplicate();
+        ((Buffer) in).position(offset + HEADER_BYTES);
+        return readString(in);
+    }
+
+    private GatewayLog readSummary(int offset) {
+        ByteBuffer in = buffer.duplicate();
+        ((Buffer) in).position(offset + HEADER_BYTES);
+        int status = buffer.getInt(offset + 28);
+        return new GatewayLog(buffer.getLong(offset + 4), new Timestamp(buffer.getLong(offset + 20)),
+                readString(in), status(status), buffer.getLong(offset + 32), cacheHit(status));
+    }
+
+    private static int status(int word) {
+        return word & ~(CACHE_HIT_FLAG | CACHE_MISS_FLAG);
+    }
+
+    private static Boolean cacheHit(int word) {
+        return (word & CACHE_HIT_FLAG) != 0 ? Boolean.TRUE : (word & CACHE_MISS_FLAG) != 0 ? Boolean.FALSE : null;
+    }
+
+    private GatewayLog readFull(int offset) {
+        ByteBuffer in = buffer.duplicate();
+        ((Buffer) in).position(offset + 4);
+        GatewayLog log = new GatewayLog();
+        log.setId(in.getLong());
+        GatewayConfig config = new GatewayConfig();
+        config.setId(in.getLong());
+        log.setGatewayConfig(config);
+        log.setTimestamp(new Timestamp(in.getLong()));
+        int status = in.getInt();
+        log.setResponseStatusCode(status(status));
+        log.setCacheHit(cacheHit(status));
+        log.setDurationMs(in.getLong());
+        in.getInt(); // Previous offset of the same rule
+        long requestBodyLength = in.getLong();
+        long responseBodyLength = in.getLong();
+        log.setRequestBodyLength(requestBodyLength < 0 ? null : requestBodyLength);
+        log.setResponseBodyLength(responseBodyLength < 0 ? null : responseBodyLength);
+        log.setRequestMethod(readString(in));
+        log.setRequestUrl(readString(in));
+        log.setRequestHeaders(readString(in));
+        log.setRequestBody(readString(in));
+        log.setResponseHeaders(readString(in));
+        log.setResponseBody(readString(in));
+        return log;
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes dirty pages to disk.
+     */
+    void force() {
+        buffer.force();
+    }
+
+    void delete() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    Path getFile() { return file; }
+    long getFirstId() { return firstId; }
+    long getLastId() { return lastId; }
+    long getCreatedAt() { return createdAt; }
+    /** Newest record timestamp, or {@link Long#MIN_VALUE} if the segment is empty. */
+    long getMaxTimestamp() { return maxTimestamp; }
+    int getSize() { return end; }
+    int getCapacity() { return buffer.capacity(); }
+    boolean isEmpty() { return end == 0; }
+
+    /**
+     * Sorted (key, offset) pairs; one entry per {@code indexInterval} records.
+     */
+    private static final class SparseIndex {
+
+        private long[] keys = new long[16];
+        private int[] offsets = new int[16];
+        private int size;
+
+        synchronized void add(long key, int offset) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                offsets = Arrays.copyOf(offsets, size * 2);
+            }
+            keys[size] = key;
+            offsets[size] = offset;
+            size++;
+        }
+
+        /** Offset of the last entry with a key at or below {@code key}, or -1. */
+        synchronized int floor(long key) {
+            int index = Arrays.binarySearch(keys, 0, size, key);
+            if (index < 0) {
+                index = -index - 2;
+            }
+            return index < 0 ? -1 : offsets[index];
+        }
+
+        /** Offset of the first entry with a key above {@code key}, or -1. */
+        synchronized int higher(long key) {
+            int index = Arrays.binarySearch(keys, 0, size, key);
+            index = index < 0 ? -index - 1 : index + 1;
+            while (index < size && keys[index] <= key) {
+                index++;
+            }
+            return index < size ? offsets[index] : -1;
+        }
+    }
+
+    /**
+     * A rule's newest record plus sparse (id, offset) and (completion time, offset) indexes of its records.
+     */
+    private static final class ConfigIndex {
+
+        private final SparseIndex byId = new SparseIndex();
+        private final SparseIndex byCompletion = new SparseIndex();
+        private volatile int lastOffset = -1;
+        private volatile long maxDurationMs;
+        private int count;
+        private long lastIndexed = Long.MIN_VALUE;
+
+        void add(int offset, long id, long timestamp, long durationMs, int indexInterval) {
+            if (durationMs > maxDurationMs) {
+                maxDurationMs = durationMs;
+            }
+            if (count++ % indexInterval == 0) {
+                byId.add(id, offset);
+                // Completion times can still be slightly out of order; the index keeps them sorted.
+                long completedAt = timestamp + durationMs;
+                if (completedAt >= lastIndexed) {
+                    byCompletion.add(completedAt, offset);
+                    lastIndexed = completedAt;
+                }
+            }
+            lastOffset = offset;
+        }
+
+        /**
+         * Offset to start walking back from for records older than {@code beforeTimestamp}: the first
+         * indexed record that completed after any such record can have, or the newest record. The walk
+         * still passes records that started later, and has to filter them out.
+         */
+        int seek(long beforeTimestamp) {
+            long completedBy = beforeTimestamp + maxDurationMs + COMPLETION_SKEW_MS;
+            if (completedBy < beforeTimestamp) {
+                return lastOffset; // Overflow: no bound.
+            }
+            int offset = byCompletion.higher(completedBy);
+            return offset < 0 ? lastOffset : offset;
+        }
+
+        /**
+         * Offset to start walking back from for records with an id below {@code beforeId}: the first
+         * indexed record at or above it, or the newest record.
+         */
+        int seekBeforeId(long beforeId) {
+            if (beforeId == Long.MAX_VALUE) {
+                return lastOffset;
+            }
+            int offset = byId.higher(beforeId - 1);
+            return offset < 0 ? lastOffset : offset;
+        }
+    }
+}
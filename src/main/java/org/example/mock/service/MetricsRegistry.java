@@ -0,0 +1,352 @@
+package org.example.mock.service;
+
+import org.example.mock.entity.GatewayConfig;
+import org.example.mock.entity.MockConfig;
+import org.example.mock.util.CircuitBreaker;
+import org.example.mock.util.LatencyHistogram;
+import org.example.mock.util.Settings;
+import org.example.mock.util.TargetBalancer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.TransactionPhase;
+import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Holds the {@link RouteMetrics} of every gateway rule and mock that has served a request, and renders
+ * them in the Prometheus text format for {@code /api/metrics}.
+ * <p>
+ * Latency quantiles cover a sliding window: every {@code metrics.windowSeconds} (default 60) each route
+ * starts a new window slot and drops the oldest of its two, so quantiles reflect the last one to two
+ * windows while sums and counts run since startup. Gateway rules also report their circuit breaker,
+ * bulkhead and response cache (see {@link GatewayCircuitBreakers}, {@link GatewayExecutor} and
+ * {@link GatewayResponseCache}); requests answered from the cache are counted in
+ * {@code gateway_cache_requests_total} and the status counts, but not in the latency summaries. Requests
+ * that shared another request's upstream call (see {@link RequestCoalescer}) are counted in
+ * {@code gateway_coalesced_requests_total}. The {@code gateway_target_*} metrics break a rule's upstream
+ * calls down by target (see {@link GatewayTargets}), and {@code gateway_hedge_requests_total} counts
+ * hedges by outcome (see {@link GatewayHedging}).
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class MetricsRegistry {
+
+    private static final long WINDOW_SECONDS = Math.max(Settings.getLong("metrics.windowSeconds", 60), 1);
+    private static final double[] QUANTILES = {0.5, 0.9, 0.95, 0.99, 0.999};
+
+    @Resource
+    private ManagedScheduledExecutorService scheduler;
+
+    @Inject
+    private GatewayCircuitBreakers circuitBreakers;
+
+    @Inject
+    private GatewayExecutor gatewayExecutor;
+
+    @Inject
+    private GatewayResponseCache responseCache;
+
+    @Inject
+    private RequestCoalescer coalescer;
+
+    @Inject
+    private GatewayTargets targets;
+
+    private final Map<Long, RouteMetrics> gateway = new ConcurrentHashMap<>();
+    private final Map<Long, RouteMetrics> mock = new ConcurrentHashMap<>();
+    private final Map<Long, RouteMetrics> mock2 = new ConcurrentHashMap<>();
+    private ScheduledFuture<?> rotation;
+
+    @PostConstruct
+    public void init() {
+        rotation = scheduler.scheduleAtFixedRate(this::rotate, WINDOW_SECONDS, WINDOW_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (rotation != null) {
+            rotation.cancel(false);
+        }
+    }
+
+    private void rotate() {
+        gateway.values().forEach(RouteMetrics::rotate);
+        mock.values().forEach(RouteMetrics::rotate);
+        mock2.values().forEach(RouteMetrics::rotate);
+    }
+
+    public RouteMetrics gateway(GatewayConfig config) {
+        RouteMetrics metrics = gateway.get(config.getId());
+        return metrics != null ? metrics
+                : gateway.computeIfAbsent(config.getId(), id -> new RouteMetrics("gateway", id, config.getSourceUrlPattern()));
+    }
+
+    /** The metrics of a gateway rule, or null if it has not served a request yet. */
+    public RouteMetrics findGateway(Long id) {
+        return gateway.get(id);
+    }
+
+    public RouteMetrics mock(MockRoute route) {
+        RouteMetrics metrics = mock.get(route.getId());
+        return metrics != null ? metrics
+                : mock.computeIfAbsent(route.getId(), id -> new RouteMetrics("mock", id, route.getHttpMethod() + " " + route.getUrlPattern()));
+    }
+
+    public RouteMetrics mock2(Long id, String httpMethod, String urlPattern) {
+        RouteMetrics metrics = mock2.get(id);
+        return metrics != null ? metrics
+                : mock2.computeIfAbsent(id, k -> new RouteMetrics("mock2", k, httpMethod + " " + urlPattern));
+    }
+
+    public void onGatewayConfigChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) GatewayConfigChangedEvent event) {
+        GatewayConfig config = event.getGatewayConfig();
+        if (config == null || config.getId() == null) {
+            return;
+        }
+        if (event.isDeleted()) {
+            gateway.remove(config.getId());
+        } else {
+            RouteMetrics metrics = gateway.get(config.getId());
+            if (metrics != null) {
+                metrics.setRoute(config.getSourceUrlPattern());
+            }
+        }
+    }
+
+    public void onMockConfigChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) MockConfigChangedEvent event) {
+        MockConfig config = event.getMockConfig();
+        if (config == null || config.getId() == null) {
+            return;
+        }
+        if (event.isDeleted()) {
+            mock.remove(config.getId());
+        } else {
+            RouteMetrics metrics = mock.get(config.getId());
+            if (metrics != null) {
+                metrics.setRoute(config.getHttpMethod() + " " + config.getUrlPattern());
+            }
+        }
+    }
+
+    /**
+     * All routes in the Prometheus text exposition format (version 0.0.4).
+     */
+    public String toPrometheus() {
+        List<RouteMetrics> routes = new ArrayList<>();
+        routes.addAll(gateway.values());
+        routes.addAll(mock.values());
+        routes.addAll(mock2.values());
+        routes.sort(Comparator.comparing(RouteMetrics::getType).thenComparing(RouteMetrics::getId));
+
+        StringBuilder out = new StringBuilder(256 + routes.size() * 1024);
+        out.append("# HELP mock_route_requests_total Completed requests per route and status class.\n");
+        out.append("# TYPE mock_route_requests_total counter\n");
+        for (RouteMetrics route : routes) {
+            for (int i = 0; i < RouteMetrics.statusClassCount(); i++) {
+                long count = route.getStatusCount(i);
+                if (count > 0) {
+                    sample(out, "mock_route_requests_total", route, "status", RouteMetrics.statusClass(i)).append(count).append('\n');
+                }
+            }
+        }
+
+        out.append("# HELP mock_route_in_flight Requests in progress per route.\n");
+        out.append("# TYPE mock_route_in_flight gauge\n");
+        for (RouteMetrics route : routes) {
+            sample(out, "mock_route_in_flight", route, null, null).append(route.getInFlight()).append('\n');
+        }
+
+        out.append("# HELP mock_route_latency_seconds Request latency per route; quantiles over the last ")
+                .append(WINDOW_SECONDS).append(" to ").append(2 * WINDOW_SECONDS).append(" seconds.\n");
+        out.append("# TYPE mock_route_latency_seconds summary\n");
+        List<LatencyHistogram.Snapshot> totals = new ArrayList<>(routes.size());
+        for (RouteMetrics route : routes) {
+            LatencyHistogram.Snapshot recent = route.getRecent();
+            for (double quantile : QUANTILES) {
+                sample(out, "mock_route_latency_seconds", route, "quantile", Double.toString(quantile))
+                        .append(seconds(recent.percentile(quantile))).append('\n');
+            }
+            LatencyHistogram.Snapshot total = route.getTotal();
+            totals.add(total);
+            sample(out, "mock_route_latency_seconds_sum", route, null, null).append(seconds(total.getSum())).append('\n');
+            sample(out, "mock_route_latency_seconds_count", route, null, null).append(total.getCount()).append('\n');
+        }
+
+        out.append("# HELP mock_route_latency_max_seconds Slowest request per route since startup.\n");
+        out.append("# TYPE mock_route_latency_max_seconds gauge\n");
+        for (int i = 0; i < routes.size(); i++) {
+            sample(out, "mock_route_latency_max_seconds", routes.get(i), null, null).append(seconds(totals.get(i).getMax())).append('\n');
+        }
+
+        List<RouteMetrics> gatewayRoutes = new ArrayList<>(gateway.values());
+        gatewayRoutes.sort(Comparator.comparing(RouteMetrics::getId));
+        out.append("# HELP gateway_circuit_state Circuit breaker state per gateway rule (1 for the current state).\n");
+        out.append("# TYPE gateway_circuit_state gauge\n");
+        for (RouteMetrics route : gatewayRoutes) {
+            CircuitBreaker breaker = circuitBreakers.find(route.getId());
+            CircuitBreaker.State current = breaker == null ? CircuitBreaker.State.CLOSED : breaker.getState();
+            for (CircuitBreaker.State state : CircuitBreaker.State.values()) {
+                sample(out, "gateway_circuit_state", route, "state", state.name().toLowerCase())
+                        .append(state == current ? 1 : 0).append('\n');
+            }
+        }
+        out.append("# HELP gateway_circuit_transitions_total Circuit breaker state changes per gateway rule.\n");
+        out.append("# TYPE gateway_circuit_transitions_total counter\n");
+        for (RouteMetrics route : gatewayRoutes) {
+            CircuitBreaker breaker = circuitBreakers.find(route.getId());
+            for (CircuitBreaker.State state : CircuitBreaker.State.values()) {
+                sample(out, "gateway_circuit_transitions_total", route, "to", state.name().toLowerCase())
+                        .append(breaker == null ? 0 : breaker.getTransitionCount(state)).append('\n');
+            }
+        }
+        out.append("# HELP gateway_circuit_rejected_total Calls refused by an open or half-open circuit breaker.\n");
+        out.append("# TYPE gateway_circuit_rejected_total counter\n");
+        for (RouteMetrics route : gatewayRoutes) {
+            CircuitBreaker breaker = circuitBreakers.find(route.getId());
+            sample(out, "gateway_circuit_rejected_total", route, null, null)
+                    .append(breaker == null ? 0 : breaker.getRejectedCount()).append('\n');
+        }
+
+        List<Map<String, Object>> bulkheads = new ArrayList<>(gatewayRoutes.size());
+        for (RouteMetrics route : gatewayRoutes) {
+            bulkheads.add(gatewayExecutor.getStats(route.getId()));
+        }
+        bulkhead(out, gatewayRoutes, bulkheads, "active", "gauge", "Upstream calls running per gateway rule.");
+        bulkhead(out, gatewayRoutes, bulkheads, "queued", "gauge", "Upstream calls waiting for one of the rule's connections.");
+        bulkhead(out, gatewayRoutes, bulkheads, "rejected", "counter", "Calls refused because the rule's bulkhead was full.");
+
+        out.append("# HELP gateway_cache_requests_total Cacheable requests per gateway rule, by how they were answered.\n");
+        out.append("# TYPE gateway_cache_requests_total counter\n");
+        for (RouteMetrics route : gatewayRoutes) {
+            for (RouteMetrics.CacheResult result : RouteMetrics.CacheResult.values()) {
+                long count = route.getCacheCount(result);
+                if (count > 0) {
+                    sample(out, "gateway_cache_requests_total", route, "result", result.name().toLowerCase()).append(count).append('\n');
+                }
+            }
+        }
+        out.append("# HELP gateway_cache_entries Responses held by the gateway cache.\n");
+        out.append("# TYPE gateway_cache_entries gauge\n");
+        out.append("gateway_cache_entries ").append(responseCache.getEntryCount()).append('\n');
+        out.append("# HELP gateway_cache_bytes Estimated memory held by the gateway cache.\n");
+        out.append("# TYPE gateway_cache_bytes gauge\n");
+        out.append("gateway_cache_bytes ").append(responseCache.getBytes()).append('\n');
+        out.append("# HELP gateway_cache_evictions_total Responses evicted to keep the gateway cache within its byte budget.\n");
+        out.append("# TYPE gateway_cache_evictions_total counter\n");
+        out.append("gateway_cache_evictions_total ").append(responseCache.getEvictionCount()).append('\n');
+
+        out.append("# HELP gateway_coalesced_requests_total Requests that waited for an identical request's upstream call instead of making their own.\n");
+        out.append("# TYPE gateway_coalesced_requests_total counter\n");
+        for (RouteMetrics route : gatewayRoutes) {
+            sample(out, "gateway_coalesced_requests_total", route, null, null).append(route.getCollapsedCount()).append('\n');
+        }
+        out.append("# HELP gateway_coalesce_in_flight Upstream calls that identical requests can currently join.\n");
+        out.append("# TYPE gateway_coalesce_in_flight gauge\n");
+        out.append("gateway_coalesce_in_flight ").append(coalescer.getInFlight()).append('\n');
+
+        out.append("# HELP gateway_hedge_requests_total Hedged calls per gateway rule: won or lost the race, or denied by the hedge budget.\n");
+        out.append("# TYPE gateway_hedge_requests_total counter\n");
+        for (RouteMetrics route : gatewayRoutes) {
+            for (RouteMetrics.HedgeResult result : RouteMetrics.HedgeResult.values()) {
+                long count = route.getHedgeCount(result);
+                if (count > 0) {
+                    sample(out, "gateway_hedge_requests_total", route, "result", result.name().toLowerCase()).append(count).append('\n');
+                }
+            }
+        }
+
+        List<RouteMetrics> balanced = new ArrayList<>();
+        List<TargetBalancer> balancers = new ArrayList<>();
+        for (RouteMetrics route : gatewayRoutes) {
+            TargetBalancer balancer = targets.find(route.getId());
+            if (balancer != null) {
+                balanced.add(route);
+                balancers.add(balancer);
+            }
+        }
+        target(out, balanced, balancers, "gateway_target_in_flight", "gauge", "Upstream calls outstanding per target.",
+                TargetBalancer.Target::getInFlight);
+        target(out, balanced, balancers, "gateway_target_calls_total", "counter", "Upstream calls that reached each target.",
+                TargetBalancer.Target::getCallCount);
+        target(out, balanced, balancers, "gateway_target_failures_total", "counter", "Calls to each target that failed (5xx, timeout, unreachable).",
+                TargetBalancer.Target::getFailureCount);
+        target(out, balanced, balancers, "gateway_target_ejections_total", "counter", "Times each target was ejected after consecutive failures.",
+                TargetBalancer.Target::getEjectionCount);
+        target(out, balanced, balancers, "gateway_target_ejected", "gauge", "Whether each target is currently ejected.",
+                t -> t.isEjected() ? 1 : 0);
+        target(out, balanced, balancers, "gateway_target_latency_seconds", "gauge", "Moving average of each target's time to the response head.",
+                t -> seconds(t.getLatencyMicros()));
+        return out.toString();
+    }
+
+    private static void bulkhead(StringBuilder out, List<RouteMetrics> routes, List<Map<String, Object>> stats,
+                                 String key, String type, String help) {
+        String name = "gateway_bulkhead_" + key + ("counter".equals(type) ? "_total" : "");
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        for (int i = 0; i < routes.size(); i++) {
+            sample(out, name, routes.get(i), null, null).append(stats.get(i).get(key)).append('\n');
+        }
+    }
+
+    private static void target(StringBuilder out, List<RouteMetrics> routes, List<TargetBalancer> balancers,
+                               String name, String type, String help, Function<TargetBalancer.Target, Object> value) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        for (int i = 0; i < routes.size(); i++) {
+            for (TargetBalancer.Target target : balancers.get(i).getTargets()) {
+                sample(out, name, routes.get(i), "target", target.getBaseUrl()).append(value.apply(target)).append('\n');
+            }
+        }
+    }
+
+    private static StringBuilder sample(StringBuilder out, String name, RouteMetrics route, String label, String value) {
+        out.append(name).append("{type=\"").append(route.getType())
+                .append("\",id=\"").append(route.getId())
+                .append("\",route=\"");
+        escape(out, route.getRoute());
+        out.append('"');
+        if (label != null) {
+            out.append(',').append(label).append("=\"");
+            escape(out, value);
+            out.append('"');
+        }
+        return out.append("} ");
+    }
+
+    private static void escape(StringBuilder out, String value) {
+        if (value == null) {
+            return;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                out.append('\\').append(c);
+            } else if (c == '\n') {
+                out.append("\\n");
+            } else {
+                out.append(c);
+            }
+        }
+    }
+
+    private static String seconds(long micros) {
+        return Double.toString(micros / 1_000_000.0);
+    }
+}
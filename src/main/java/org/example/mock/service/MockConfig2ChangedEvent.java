@@ -0,0 +1,22 @@
+package org.example.mock.service;
+
+import org.example.mock.entity.MockConfig2;
+
+/**
+ * CDI event fired by {@link MockConfigService2} whenever a mock configuration is saved or deleted.
+ * Observers that keep per-mock state ({@link EncodedBodyCache}, {@link CaptureService}) listen for it
+ * after the surrounding transaction has committed.
+ */
+public class MockConfig2ChangedEvent {
+
+    private final MockConfig2 mockConfig;
+    private final boolean deleted;
+
+    public MockConfig2ChangedEvent(MockConfig2 mockConfig, boolean deleted) {
+        this.mockConfig = mockConfig;
+        this.deleted = deleted;
+    }
+
+    public MockConfig2 getMockConfig() { return mockConfig; }
+    public boolean isDeleted() { return deleted; }
+}
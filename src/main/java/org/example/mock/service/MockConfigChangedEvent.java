@@ -0,0 +1,22 @@
+package org.example.mock.service;
+
+import org.example.mock.entity.MockConfig;
+
+/**
+ * CDI event fired by {@link MockConfigService} whenever a mock configuration is saved or deleted.
+ * Observers that keep in-memory copies of the configuration (such as {@link MockRouteTable})
+ * listen for it after the surrounding transaction has committed.
+ */
+public class MockConfigChangedEvent {
+
+    private final MockConfig mockConfig;
+    private final boolean deleted;
+
+    public MockConfigChangedEvent(MockConfig mockConfig, boolean deleted) {
+        this.mockConfig = mockConfig;
+        this.deleted = deleted;
+    }
+
+    public MockConfig getMockConfig() { return mockConfig; }
+    public boolean isDeleted() { return deleted; }
+}
@@ -5,8 +5,9 @@ import org.example.mock.entity.MockConfig;
 import org.example.mock.util.JsonUtil;
 
 import javax.ejb.Stateless;
+import javax.enterprise.event.Event;
+import javax.inject.Inject;
 import javax.persistence.EntityManager;
-import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
 import javax.persistence.TypedQuery;
 import java.util.List;
@@ -21,17 +22,23 @@ public class MockConfigService {
     @PersistenceContext(unitName = "mock-pu")
     private EntityManager em;
 
+    @Inject
+    private Event<MockConfigChangedEvent> changedEvent;
+
     // ... (findAll, save, delete methods remain the same) ...
     public List<MockConfig> findAll() {
         return em.createNamedQuery("MockConfig.findAll", MockConfig.class).getResultList();
     }
 
     public void save(MockConfig mockConfig) {
+        MockConfig saved = mockConfig;
         if (mockConfig.getId() == null) {
             em.persist(mockConfig);
         } else {
-            em.merge(mockConfig);
+            saved = em.merge(mockConfig);
         }
+        // Delivered to MockRouteTable only once the transaction commits.
+        changedEvent.fire(new MockConfigChangedEvent(saved, false));
     }
 
     public void delete(MockConfig mockConfig) {
@@ -40,11 +47,14 @@ public class MockConfigService {
         } else {
             em.remove(em.merge(mockConfig));
         }
+        changedEvent.fire(new MockConfigChangedEvent(mockConfig, true));
     }
 
 
     /**
      * Finds a mock configuration based on the URL pattern and request body.
+     * Bodies are matched on the indexed (method, URL pattern, payload digest) columns; the CLOB itself
+     * is only compared when more than one row shares the same digest.
      * @return The matching MockConfig object, or null if not found.
      */
     public MockConfig findMockConfig(String httpMethod, String urlPattern, String requestPayload) {
@@ -54,25 +64,38 @@ public class MockConfigService {
         String jpql;
 
         if (payloadToSearch == null) {
-            jpql = "SELECT m FROM MockConfig m WHERE m.httpMethod = :httpMethod AND m.urlPattern = :urlPattern AND m.requestPayload IS NULL";
+            jpql = "SELECT m FROM MockConfig m WHERE m.httpMethod = :httpMethod AND m.urlPattern = :urlPattern AND m.requestPayloadDigest IS NULL AND m.requestPayload IS NULL ORDER BY m.id";
             query = em.createQuery(jpql, MockConfig.class);
         } else {
-            jpql = "SELECT m FROM MockConfig m WHERE m.httpMethod = :httpMethod AND m.urlPattern = :urlPattern AND CAST(m.requestPayload AS VARCHAR2(4000)) = :payload";
+            jpql = "SELECT m FROM MockConfig m WHERE m.httpMethod = :httpMethod AND m.urlPattern = :urlPattern AND m.requestPayloadDigest = :digest AND m.requestPayloadLength = :length ORDER BY m.id";
             query = em.createQuery(jpql, MockConfig.class);
-            query.setParameter("payload", payloadToSearch);
+            query.setParameter("digest", JsonUtil.digest(payloadToSearch));
+            query.setParameter("length", payloadToSearch.length());
         }
 
         query.setParameter("httpMethod", httpMethod);
         query.setParameter("urlPattern", urlPattern);
 
         try {
-            return query.getSingleResult();
-        } catch (NoResultException e) {
-            LOGGER.log(Level.FINE, "No mock configuration found for method: {0}, URL: {1}", new Object[]{httpMethod, urlPattern});
-            return null;
+            List<MockConfig> candidates = query.getResultList();
+            if (candidates.size() == 1 || payloadToSearch == null) {
+                return candidates.isEmpty() ? notFound(httpMethod, urlPattern) : candidates.get(0);
+            }
+            // Digest collision (or duplicate rows): fall back to comparing the full payload.
+            for (MockConfig candidate : candidates) {
+                if (payloadToSearch.equals(JsonUtil.normalize(candidate.getRequestPayload()))) {
+                    return candidate;
+                }
+            }
+            return notFound(httpMethod, urlPattern);
         } catch (Exception ex) {
             LOGGER.log(Level.SEVERE, "Error finding mock config for method: " + httpMethod + ", URL: " + urlPattern, ex);
             return null;
         }
     }
-}
\ No newline at end of file
+
+    private MockConfig notFound(String httpMethod, String urlPattern) {
+        LOGGER.log(Level.FINE, "No mock configuration found for method: {0}, URL: {1}", new Object[]{httpMethod, urlPattern});
+        return null;
+    }
+}
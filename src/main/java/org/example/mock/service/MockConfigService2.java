@@ -1,8 +1,11 @@
 package org.example.mock.service;
 
+import org.example.mock.entity.MockCapture;
 import org.example.mock.entity.MockConfig2;
 
 import javax.ejb.Stateless;
+import javax.enterprise.event.Event;
+import javax.inject.Inject;
 import javax.persistence.EntityManager;
 import javax.persistence.NoResultException;
 import javax.persistence.PersistenceContext;
@@ -19,16 +22,22 @@ public class MockConfigService2 {
     @PersistenceContext(unitName = "mock-pu")
     private EntityManager em;
 
+    @Inject
+    private Event<MockConfig2ChangedEvent> changedEvent;
+
     public List<MockConfig2> findAll() {
         return em.createNamedQuery("MockConfig2.findAll", MockConfig2.class).getResultList();
     }
 
     public void save(MockConfig2 mockConfig) {
+        MockConfig2 saved = mockConfig;
         if (mockConfig.getId() == null) {
             em.persist(mockConfig);
         } else {
-            em.merge(mockConfig);
+            saved = em.merge(mockConfig);
         }
+        // EncodedBodyCache re-encodes the response once the transaction commits.
+        changedEvent.fire(new MockConfig2ChangedEvent(saved, false));
     }
 
     public void delete(MockConfig2 mockConfig) {
@@ -37,14 +46,29 @@ public class MockConfigService2 {
         } else {
             em.remove(em.merge(mockConfig));
         }
+        // The mock's encoded response and in-memory captures are dropped once the deletion commits.
+        changedEvent.fire(new MockConfig2ChangedEvent(mockConfig, true));
+    }
+
+    /**
+     * Returns the persisted capture history of a mock, newest first. Captures still waiting for the
+     * background flush are only visible through {@link CaptureService#findRecent(Long, int)}.
+     */
+    public List<MockCapture> findCaptures(Long mockConfigId, int maxResults) {
+        return em.createNamedQuery("MockCapture.findByConfigId", MockCapture.class)
+                .setParameter("configId", mockConfigId)
+                .setMaxResults(maxResults)
+                .getResultList();
     }
 
     /**
      * Finds a mock configuration based on the HTTP method and URL pattern.
-     * @return The matching MockConfig2 object, or null if not found.
+     * Only the non-LOB columns are read; the response comes from {@link EncodedBodyCache}.
+     * @return A detached MockConfig2 without payloads, or null if not found.
      */
     public MockConfig2 findMockConfig(String httpMethod, String urlPattern) {
-        String jpql = "SELECT m FROM MockConfig2 m WHERE m.httpMethod = :httpMethod AND m.urlPattern = :urlPattern";
+        String jpql = "SELECT NEW org.example.mock.entity.MockConfig2(m.id, m.urlPattern, m.httpMethod, m.httpStatusCode, m.delayMs) "
+                + "FROM MockConfig2 m WHERE m.httpMethod = :httpMethod AND m.urlPattern = :urlPattern";
         TypedQuery<MockConfig2> query = em.createQuery(jpql, MockConfig2.class);
         query.setParameter("httpMethod", httpMethod);
         query.setParameter("urlPattern", urlPattern);
@@ -59,4 +83,15 @@ public class MockConfigService2 {
             return null;
         }
     }
+
+    /**
+     * Reads the response payload of a mock, for {@link EncodedBodyCache} misses.
+     * @return The payload, or null if the mock no longer exists.
+     */
+    public String findResponsePayload(Long id) {
+        List<String> payloads = em.createQuery("SELECT m.responsePayload FROM MockConfig2 m WHERE m.id = :id", String.class)
+                .setParameter("id", id)
+                .getResultList();
+        return payloads.isEmpty() ? null : payloads.get(0);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,42 @@
+package org.example.mock.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Result of a {@link MockRouteTable} lookup: the matched route plus the path variables captured
+ * from the request URL (for example {@code id -> 42} for {@code users/{id}}).
+ */
+public final class MockMatch {
+
+    private final MockRoute route;
+    private final Map<String, String> pathVariables;
+
+    MockMatch(MockRoute route, Map<String, String> pathVariables) {
+        this.route = route;
+        this.pathVariables = pathVariables;
+    }
+
+    public MockRoute getRoute() { return route; }
+    public Map<String, String> getPathVariables() { return pathVariables; }
+
+    /**
+     * The response body for this request, with path variables substituted if the route uses them.
+     */
+    public String renderResponse() {
+        return route.renderResponse(pathVariables);
+    }
+
+    /**
+     * The encoded response body: the route's shared pre-encoded variants, or a fresh encoding of the
+     * rendered template.
+     */
+    public EncodedBody encodedBody() {
+        EncodedBody body = route.getEncodedBody();
+        if (body != null) {
+            return body;
+        }
+        String rendered = renderResponse();
+        return EncodedBody.uncached(rendered == null ? new byte[0] : rendered.getBytes(StandardCharsets.UTF_8), route.getContentType());
+    }
+}
@@ -0,0 +1,127 @@
+package org.example.mock.service;
+
+import org.example.mock.entity.MockConfig;
+import org.example.mock.util.JsonUtil;
+import org.example.mock.util.PathTemplateTrie;
+
+import javax.ws.rs.core.MediaType;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, pre-processed view of a {@link MockConfig} row as served by {@link MockRouteTable}.
+ * Instances are compiled once when the configuration changes and then shared by all request threads.
+ */
+public final class MockRoute {
+
+    private final Long id;
+    private final String httpMethod;
+    private final String urlPattern;
+    private final String[] pathTemplate;
+    private final List<String> variableNames;
+    private final String requestPayload;
+    private final String requestPayloadDigest;
+    private final String responsePayload;
+    private final boolean responseTemplated;
+    // Pre-encoded (and pre-compressed) body; null for templated responses, which differ per request.
+    private final EncodedBody encodedBody;
+    // Set when the body is served from the content store; responsePayload and encodedBody are then unused.
+    private final FileBody fileBody;
+    private final String contentType;
+    private final int delayMs;
+    private final int httpStatusCode;
+
+    private MockRoute(MockConfig config) {
+        this.id = config.getId();
+        this.httpMethod = config.getHttpMethod();
+        this.urlPattern = config.getUrlPattern();
+        this.pathTemplate = PathTemplateTrie.split(urlPattern);
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < pathTemplate.length; i++) {
+            String name = PathTemplateTrie.parameterName(pathTemplate[i]);
+            if (name != null) {
+                names.add(name);
+            } else if (PathTemplateTrie.WILDCARD.equals(pathTemplate[i]) && i == pathTemplate.length - 1) {
+                names.add(PathTemplateTrie.WILDCARD);
+            }
+        }
+        this.variableNames = Collections.unmodifiableList(names);
+        this.requestPayload = JsonUtil.normalize(config.getRequestPayload());
+        // Recomputed rather than read from the entity so rows saved before the digest column existed still match.
+        this.requestPayloadDigest = JsonUtil.digest(requestPayload);
+        this.responsePayload = config.getResponsePayload();
+        String bodyFile = config.getResponseBodyFile() == null ? "" : config.getResponseBodyFile().trim();
+        this.fileBody = bodyFile.isEmpty() ? null : FileBody.of(bodyFile);
+        this.responseTemplated = fileBody == null && !names.isEmpty() && responsePayload != null && responsePayload.contains("{{");
+        this.contentType = fileBody != null ? fileBody.getContentType() : EncodedBody.detectContentType(responsePayload);
+        this.encodedBody = responseTemplated || fileBody != null ? null : EncodedBody.encode(responsePayload, contentType);
+        this.delayMs = config.getDelayMs() != null ? config.getDelayMs() : 0;
+        this.httpStatusCode = config.getHttpStatusCode() != null ? config.getHttpStatusCode() : 200;
+    }
+
+    public static MockRoute compile(MockConfig config) {
+        return new MockRoute(config);
+    }
+
+    /**
+     * Pairs the values captured by {@link PathTemplateTrie#find} with this route's variable names.
+     */
+    Map<String, String> bindVariables(List<String> captures) {
+        if (variableNames.isEmpty()) {
+            return Collections.emptyMap();
+        }
+        Map<String, String> variables = new LinkedHashMap<>();
+        for (int i = 0; i < variableNames.size() && i < captures.size(); i++) {
+            variables.put(variableNames.get(i), captures.get(i));
+        }
+        return variables;
+    }
+
+    /**
+     * Returns the response payload with {@code {{name}}} placeholders replaced by captured path variables
+     * (the wildcard remainder is {@code {{*}}}). Payloads without placeholders are returned as-is.
+     * Values are decoded from the request path, so they are escaped for JSON and XML bodies; otherwise a
+     * value such as {@code a"b} could break the document or add fields to it.
+     */
+    public String renderResponse(Map<String, String> variables) {
+        if (!responseTemplated || variables.isEmpty()) {
+            return responsePayload;
+        }
+        String rendered = responsePayload;
+        for (Map.Entry<String, String> variable : variables.entrySet()) {
+            rendered = rendered.replace("{{" + variable.getKey() + "}}", escape(variable.getValue()));
+        }
+        return rendered;
+    }
+
+    private String escape(String value) {
+        if (contentType.startsWith(MediaType.APPLICATION_JSON)) {
+            return JsonUtil.escape(value);
+        }
+        if (contentType.startsWith(MediaType.APPLICATION_XML)) {
+            return value.replace("&", "&amp;").replace("<", "&lt;").replace(">", "&gt;")
+                    .replace("\"", "&quot;").replace("'", "&apos;");
+        }
+        return value;
+    }
+
+    public Long getId() { return id; }
+    public String getHttpMethod() { return httpMethod; }
+    public String getUrlPattern() { return urlPattern; }
+    String[] pathTemplate() { return pathTemplate; }
+    public List<String> getVariableNames() { return variableNames; }
+    public String getRequestPayload() { return requestPayload; }
+    public String getRequestPayloadDigest() { return requestPayloadDigest; }
+    public String getResponsePayload() { return responsePayload; }
+    public boolean isResponseTemplated() { return responseTemplated; }
+    /** The pre-encoded response payload, or null if it is templated or served from a file. */
+    public EncodedBody getEncodedBody() { return encodedBody; }
+    /** The file the body is served from, or null if it comes from the response payload. */
+    public FileBody getFileBody() { return fileBody; }
+    public String getContentType() { return contentType; }
+    public int getDelayMs() { return delayMs; }
+    public int getHttpStatusCode() { return httpStatusCode; }
+}
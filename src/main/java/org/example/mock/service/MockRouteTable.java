@@ -0,0 +1,188 @@
+package org.example.mock.service;
+
+import org.example.mock.entity.MockConfig;
+import org.example.mock.util.JsonUtil;
+import org.example.mock.util.PathTemplateTrie;
+
+import javax.annotation.PostConstruct;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.TransactionPhase;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Application-wide, read-mostly routing table for {@code /api/mock/*}.
+ * <p>
+ * All {@link MockConfig} rows are compiled into an immutable snapshot: one {@link PathTemplateTrie} of
+ * URL patterns per HTTP method, whose entries are keyed by the digest of the normalized request payload. Readers only dereference a volatile field, so the request path
+ * never touches the {@link EntityManager}. Changes made through {@link MockConfigService} are applied
+ * copy-on-write after their transaction commits and the new snapshot is swapped in atomically.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class MockRouteTable {
+
+    private static final Logger LOGGER = Logger.getLogger(MockRouteTable.class.getName());
+
+    // digest() never returns an empty string, so it is safe to use as the "no body" key.
+    private static final String NO_PAYLOAD = "";
+
+    @PersistenceContext(unitName = "mock-pu")
+    private EntityManager em;
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    @PostConstruct
+    public void init() {
+        try {
+            reload();
+        } catch (Exception e) {
+            // Keep the application deployable; the table fills up again on the next save.
+            LOGGER.log(Level.SEVERE, "Could not load mock configurations into the route table", e);
+        }
+    }
+
+    /**
+     * Rebuilds the whole table from the database.
+     */
+    public void reload() {
+        Map<Long, MockRoute> routes = new TreeMap<>();
+        for (MockConfig config : em.createNamedQuery("MockConfig.findAll", MockConfig.class).getResultList()) {
+            MockRoute route = compile(config);
+            if (route != null) {
+                routes.put(config.getId(), route);
+            }
+        }
+        synchronized (this) {
+            this.snapshot = new Snapshot(routes);
+        }
+        LOGGER.log(Level.INFO, "Mock route table loaded with {0} routes", routes.size());
+    }
+
+    /**
+     * Applies a committed save or delete to the table without going back to the database.
+     */
+    public void onMockConfigChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) MockConfigChangedEvent event) {
+        MockConfig config = event.getMockConfig();
+        if (config == null || config.getId() == null) {
+            return;
+        }
+        synchronized (this) {
+            Map<Long, MockRoute> routes = new TreeMap<>(snapshot.byId);
+            MockRoute route = event.isDeleted() ? null : compile(config);
+            if (route == null) {
+                routes.remove(config.getId());
+            } else {
+                routes.put(config.getId(), route);
+            }
+            this.snapshot = new Snapshot(routes);
+        }
+    }
+
+    /**
+     * Compiles one row, or returns null (and logs why) if it cannot be served, such as a response body
+     * file outside the content store. One bad row must not take the rest of the table with it.
+     */
+    private static MockRoute compile(MockConfig config) {
+        try {
+            return MockRoute.compile(config);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Skipping mock configuration " + config.getId() + ": " + e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Finds the route for a request. URL patterns may be templates such as {@code users/{id}/orders/*};
+     * at every path segment a literal match wins over a parameter, which wins over a wildcard.
+     * Request bodies are matched the same way as in
+     * {@link MockConfigService#findMockConfig(String, String, String)}.
+     *
+     * @return The match, including captured path variables, or null if no route is configured.
+     */
+    public MockMatch find(String httpMethod, String urlPattern, String requestPayload) {
+        PathTemplateTrie<Map<String, List<MockRoute>>> trie = snapshot.byMethod.get(httpMethod);
+        MockMatch match = null;
+        if (trie != null) {
+            String[] digest = new String[1];
+            List<String> captures = new ArrayList<>(4);
+            MockRoute route = trie.find(PathTemplateTrie.split(urlPattern), byDigest -> {
+                if (digest[0] == null) {
+                    // Computed once per request, and only when a path matched.
+                    String value = JsonUtil.normalizedDigest(requestPayload);
+                    digest[0] = value == null ? NO_PAYLOAD : value;
+                }
+                return select(byDigest.get(digest[0]), requestPayload);
+            }, captures);
+            if (route != null) {
+                match = new MockMatch(route, route.bindVariables(captures));
+            }
+        }
+        (match != null ? hits : misses).incrementAndGet();
+        return match;
+    }
+
+    private static MockRoute select(List<MockRoute> candidates, String requestPayload) {
+        if (candidates == null) {
+            return null;
+        }
+        if (candidates.size() == 1) {
+            return candidates.get(0);
+        }
+        // Digest collision: only now compare the payloads themselves.
+        String payload = JsonUtil.normalize(requestPayload);
+        for (MockRoute candidate : candidates) {
+            if (Objects.equals(payload, candidate.getRequestPayload())) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+
+    public int getRouteCount() { return snapshot.byId.size(); }
+    public long getHitCount() { return hits.get(); }
+    public long getMissCount() { return misses.get(); }
+
+    /**
+     * One immutable generation of the table. Never modified after construction.
+     */
+    private static final class Snapshot {
+
+        static final Snapshot EMPTY = new Snapshot(Collections.emptyMap());
+
+        final Map<Long, MockRoute> byId;
+        final Map<String, PathTemplateTrie<Map<String, List<MockRoute>>>> byMethod;
+
+        Snapshot(Map<Long, MockRoute> routes) {
+            this.byId = Collections.unmodifiableMap(routes);
+            Map<String, PathTemplateTrie<Map<String, List<MockRoute>>>> byMethod = new HashMap<>();
+            // Routes arrive ordered by id, so the oldest row wins if two rows are identical.
+            for (MockRoute route : routes.values()) {
+                String digest = route.getRequestPayloadDigest() == null ? NO_PAYLOAD : route.getRequestPayloadDigest();
+                byMethod.computeIfAbsent(route.getHttpMethod(), k -> new PathTemplateTrie<>())
+                        .computeIfAbsent(route.pathTemplate(), HashMap::new)
+                        .computeIfAbsent(digest, k -> new ArrayList<>(1))
+                        .add(route);
+            }
+            this.byMethod = byMethod;
+        }
+    }
+}
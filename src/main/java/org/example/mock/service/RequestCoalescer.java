@@ -0,0 +1,169 @@
+package org.example.mock.service;
+
+import org.example.mock.entity.GatewayConfig;
+import org.example.mock.util.Settings;
+
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BiConsumer;
+
+/**
+ * Single-flight coalescing of identical GET and HEAD requests on gateway rules with
+ * {@code coalesceRequests}: while one upstream call for a request is in flight, identical requests
+ * wait for it instead of making their own, and each gets a copy of its buffered response.
+ * <p>
+ * Requests are identical if they share the rule, method, path and query, plus the values of the
+ * conditional and range headers and of {@code gateway.coalesce.keyHeaders} (default Accept,
+ * Accept-Encoding, Accept-Language, Authorization and Cookie), so clients that may get different
+ * answers are never merged. Only a response body of at most {@code gateway.coalesce.maxBodyBytes}
+ * (default 1 MB) is shared; with a larger one the call's own client gets it streamed, and the waiting
+ * requests make their own calls. A failed call fails its waiting requests too, so a failing target is
+ * not hit once per waiter.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class RequestCoalescer {
+
+    public static final int MAX_BODY_BYTES = Math.max(Settings.getInt("gateway.coalesce.maxBodyBytes", 1 << 20), 0);
+    // Headers that change the answer; a request's values for them are part of its key.
+    private static final List<String> KEY_HEADERS = keyHeaders(Settings.getString("gateway.coalesce.keyHeaders",
+            "Accept,Accept-Encoding,Accept-Language,Authorization,Cookie"));
+
+    private final ConcurrentMap<String, CompletableFuture<SharedResponse>> flights = new ConcurrentHashMap<>();
+
+    public static boolean isEnabled(GatewayConfig config) {
+        return Boolean.TRUE.equals(config.getCoalesceRequests());
+    }
+
+    /**
+     * Joins the call in flight for an identical request, or makes this request the one that calls.
+     *
+     * @return null if the request cannot be coalesced (a disabled rule, another method, or a body).
+     */
+    public Flight join(GatewayRequest request) {
+        String method = request.getMethod();
+        if (!isEnabled(request.getConfig()) || request.getBody() != null
+                || !("GET".equalsIgnoreCase(method) || "HEAD".equalsIgnoreCase(method))) {
+            return null;
+        }
+        String key = key(request);
+        CompletableFuture<SharedResponse> created = new CompletableFuture<>();
+        CompletableFuture<SharedResponse> existing = flights.putIfAbsent(key, created);
+        return existing == null ? new Flight(key, created, true) : new Flight(key, existing, false);
+    }
+
+    /** Calls in flight that identical requests can join. */
+    public int getInFlight() {
+        return flights.size();
+    }
+
+    private static String key(GatewayRequest request) {
+        StringBuilder key = new StringBuilder(128)
+                .append(request.getConfig().getId()).append(' ')
+                .append(request.getMethod().toUpperCase(Locale.ROOT)).append(' ')
+                .append(request.getPath());
+        for (String name : KEY_HEADERS) {
+            for (Map.Entry<String, List<String>> header : request.getHeaders().entrySet()) {
+                if (name.equalsIgnoreCase(header.getKey())) {
+                    key.append('\n').append(name).append(':').append(String.join(",", header.getValue()));
+                }
+            }
+        }
+        return key.toString();
+    }
+
+    private static List<String> keyHeaders(String configured) {
+        Set<String> names = new LinkedHashSet<>(Arrays.asList(
+                "If-None-Match", "If-Modified-Since", "If-Match", "If-Unmodified-Since", "Range", "If-Range"));
+        for (String name : configured.split(",")) {
+            if (!name.trim().isEmpty()) {
+                names.add(name.trim());
+            }
+        }
+        return Collections.unmodifiableList(new ArrayList<>(names));
+    }
+
+    /**
+     * One request's part in a coalesced call: the leader makes the call and ends the flight with
+     * exactly one of {@link #share}, {@link #fail} or {@link #abandon()}; the others wait with
+     * {@link #whenDone}.
+     */
+    public final class Flight {
+
+        private final String key;
+        private final CompletableFuture<SharedResponse> result;
+        private final boolean leader;
+
+        private Flight(String key, CompletableFuture<SharedResponse> result, boolean leader) {
+            this.key = key;
+            this.result = result;
+            this.leader = leader;
+        }
+
+        public boolean isLeader() { return leader; }
+
+        /** Hands the buffered response to the waiting requests. */
+        public void share(int status, Map<String, List<String>> headers, byte[] body) {
+            end().complete(new SharedResponse(status, headers, body));
+        }
+
+        /** Fails the waiting requests with the call's error. */
+        public void fail(Exception error) {
+            end().completeExceptionally(error);
+        }
+
+        /**
+         * Lets the waiting requests make their own calls, e.g. because the body is too large to share.
+         * Does nothing once the flight has ended.
+         */
+        public void abandon() {
+            end().complete(null);
+        }
+
+        private CompletableFuture<SharedResponse> end() {
+            // Requests that arrive from now on start a new flight rather than get this (older) response.
+            flights.remove(key, result);
+            return result;
+        }
+
+        /**
+         * Runs {@code action} once the leader's call is over, with its response, or with its error, or
+         * with neither if it was abandoned.
+         */
+        public void whenDone(BiConsumer<SharedResponse, Throwable> action) {
+            result.whenComplete(action);
+        }
+    }
+
+    /**
+     * A complete upstream response, shared by every request of a flight.
+     */
+    public static final class SharedResponse {
+
+        private final int status;
+        private final Map<String, List<String>> headers;
+        private final byte[] body;
+
+        SharedResponse(int status, Map<String, List<String>> headers, byte[] body) {
+            this.status = status;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        public int getStatus() { return status; }
+        public Map<String, List<String>> getHeaders() { return headers; }
+        public byte[] getBody() { return body; }
+    }
+}
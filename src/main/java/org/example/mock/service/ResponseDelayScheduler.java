@@ -0,0 +1,77 @@
+package org.example.mock.service;
+
+import org.example.mock.util.HashedWheelTimer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.enterprise.concurrent.ManagedExecutorService;
+import javax.enterprise.concurrent.ManagedThreadFactory;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.core.Response;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Completes suspended mock responses after their configured delay without holding a request thread.
+ * <p>
+ * All delays share one {@link HashedWheelTimer}; a delayed response costs a timer slot until it fires,
+ * and is then resumed on the container's managed executor.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class ResponseDelayScheduler {
+
+    private static final Logger LOGGER = Logger.getLogger(ResponseDelayScheduler.class.getName());
+
+    private static final long TICK_MS = 10;
+    private static final int TICKS_PER_WHEEL = 512;
+
+    @Resource
+    private ManagedThreadFactory threadFactory;
+
+    @Resource
+    private ManagedExecutorService executor;
+
+    private HashedWheelTimer timer;
+
+    @PostConstruct
+    public void init() {
+        timer = new HashedWheelTimer(threadFactory, executor, TICK_MS, TimeUnit.MILLISECONDS, TICKS_PER_WHEEL);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.stop();
+    }
+
+    /**
+     * Resumes {@code asyncResponse} with {@code response}, immediately or after {@code delayMs}.
+     */
+    public void resume(AsyncResponse asyncResponse, Response response, long delayMs) {
+        if (delayMs <= 0) {
+            asyncResponse.resume(response);
+            return;
+        }
+        try {
+            timer.newTimeout(() -> asyncResponse.resume(response), delayMs, TimeUnit.MILLISECONDS);
+        } catch (IllegalStateException e) {
+            LOGGER.log(Level.WARNING, "Delay timer is stopped; responding without delay", e);
+            asyncResponse.resume(response);
+        }
+    }
+
+    /** Number of delayed responses waiting for their timer to fire. */
+    public int getPendingResponses() { return timer.getPendingTimeouts(); }
+
+    /** How late the most recent delayed response fired, in milliseconds. */
+    public long getLastLagMillis() { return timer.getLastLagMillis(); }
+
+    public long getMaxLagMillis() { return timer.getMaxLagMillis(); }
+}
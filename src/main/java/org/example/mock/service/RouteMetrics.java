@@ -0,0 +1,164 @@
+package org.example.mock.service;
+
+import org.example.mock.util.LatencyHistogram;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live counters of one gateway rule or mock: requests per status class, requests in flight, and
+ * latency, both since startup and over a sliding window of the last one to two
+ * {@code metrics.windowSeconds} (see {@link MetricsRegistry}). Gateway rules with a response cache
+ * also count how each cacheable request was answered; requests served from the cache without an upstream
+ * call are left out of the latency histograms, which keep describing the upstream. Gateway rules also
+ * keep a window of upstream calls' time to the response head, which unlike the request latency does not
+ * include relaying the body, and count hedged calls by outcome. Updating them takes no locks and
+ * allocates nothing.
+ */
+public final class RouteMetrics {
+
+    // 1xx to 5xx; index 0 counts anything else (e.g. a call that failed before it had a status).
+    private static final String[] STATUS_CLASSES = {"other", "1xx", "2xx", "3xx", "4xx", "5xx"};
+
+    /** How a request on a caching gateway rule was answered (see {@link GatewayResponseCache}). */
+    public enum CacheResult { HIT, STALE, REVALIDATED, MISS }
+
+    /**
+     * What became of a hedge (see {@link HedgedCall}): its response came first, the original call's did,
+     * or none was sent because the rule's hedge budget was spent.
+     */
+    public enum HedgeResult { WON, LOST, DENIED }
+
+    private final String type;
+    private final Long id;
+    private volatile String route;
+    private final LatencyHistogram total = new LatencyHistogram();
+    private final LatencyHistogram[] window = {new LatencyHistogram(), new LatencyHistogram()};
+    private volatile int currentWindow;
+    // Gateway rules only: time to the response head of each upstream call, over the same window.
+    private final LatencyHistogram[] headWindow;
+    private final LongAdder[] statusCounts = new LongAdder[STATUS_CLASSES.length];
+    private final LongAdder inFlight = new LongAdder();
+    private final LongAdder[] cacheResults = new LongAdder[CacheResult.values().length];
+    private final LongAdder collapsed = new LongAdder();
+    private final LongAdder[] hedgeResults = new LongAdder[HedgeResult.values().length];
+
+    RouteMetrics(String type, Long id, String route) {
+        this.type = type;
+        this.id = id;
+        this.route = route;
+        this.headWindow = "gateway".equals(type) ? new LatencyHistogram[]{new LatencyHistogram(), new LatencyHistogram()} : null;
+        for (int i = 0; i < statusCounts.length; i++) {
+            statusCounts[i] = new LongAdder();
+        }
+        for (int i = 0; i < cacheResults.length; i++) {
+            cacheResults[i] = new LongAdder();
+        }
+        for (int i = 0; i < hedgeResults.length; i++) {
+            hedgeResults[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Marks a request as started.
+     *
+     * @return The start time to pass to {@link #finish}.
+     */
+    public long start() {
+        inFlight.increment();
+        return System.nanoTime();
+    }
+
+    /**
+     * Marks a request started with {@link #start()} as completed with {@code status}.
+     */
+    public void finish(int status, long startNanos) {
+        long micros = (System.nanoTime() - startNanos) / 1000;
+        inFlight.decrement();
+        total.record(micros);
+        window[currentWindow].record(micros);
+        statusCounts[status >= 100 && status < 600 ? status / 100 : 0].increment();
+    }
+
+    /**
+     * Marks a request started with {@link #start()} as answered from the cache without an upstream call;
+     * its latency is not recorded.
+     */
+    public void finishFromCache(int status, CacheResult result) {
+        inFlight.decrement();
+        statusCounts[status >= 100 && status < 600 ? status / 100 : 0].increment();
+        cacheResults[result.ordinal()].increment();
+    }
+
+    /**
+     * Counts a request that went upstream for a caching rule; it is finished with {@link #finish}.
+     */
+    public void countCache(CacheResult result) {
+        cacheResults[result.ordinal()].increment();
+    }
+
+    /**
+     * Counts a request that waited for an identical request's upstream call instead of making its own.
+     */
+    public void countCollapsed() {
+        collapsed.increment();
+    }
+
+    /**
+     * Records how long an upstream call of a gateway rule took to produce its response head (or to fail).
+     */
+    public void recordHead(long micros) {
+        headWindow[currentWindow].record(micros);
+    }
+
+    public void countHedge(HedgeResult result) {
+        hedgeResults[result.ordinal()].increment();
+    }
+
+    /**
+     * Starts a new window slot, dropping the oldest one.
+     */
+    void rotate() {
+        int next = 1 - currentWindow;
+        window[next].reset();
+        if (headWindow != null) {
+            headWindow[next].reset();
+        }
+        currentWindow = next;
+    }
+
+    public String getType() { return type; }
+    public Long getId() { return id; }
+    /** The rule's source pattern or the mock's method and URL pattern. */
+    public String getRoute() { return route; }
+    void setRoute(String route) { this.route = route; }
+    public long getInFlight() { return inFlight.sum(); }
+
+    public long getRequests() {
+        long requests = 0;
+        for (LongAdder statusCount : statusCounts) {
+            requests += statusCount.sum();
+        }
+        return requests;
+    }
+
+    static int statusClassCount() { return STATUS_CLASSES.length; }
+    static String statusClass(int index) { return STATUS_CLASSES[index]; }
+    long getStatusCount(int index) { return statusCounts[index].sum(); }
+    public long getCacheCount(CacheResult result) { return cacheResults[result.ordinal()].sum(); }
+    /** Requests that shared another request's upstream call (see {@link RequestCoalescer}). */
+    public long getCollapsedCount() { return collapsed.sum(); }
+    public long getHedgeCount(HedgeResult result) { return hedgeResults[result.ordinal()].sum(); }
+
+    /** Latency since startup. */
+    public LatencyHistogram.Snapshot getTotal() { return total.snapshot(); }
+
+    /** Latency over the last one to two windows. */
+    public LatencyHistogram.Snapshot getRecent() {
+        return window[0].snapshot().plus(window[1].snapshot());
+    }
+
+    /** Upstream time to the response head over the last one to two windows; null unless a gateway rule. */
+    public LatencyHistogram.Snapshot getRecentHead() {
+        return headWindow == null ? null : headWindow[0].snapshot().plus(headWindow[1].snapshot());
+    }
+}
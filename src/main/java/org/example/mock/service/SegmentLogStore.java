@@ -0,0 +1,303 @@
+package org.example.mock.service;
+
+import org.example.mock.entity.GatewayLog;
+import org.example.mock.util.Settings;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.LocalBean;
+import javax.ejb.Singleton;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Gateway logs in local, append-only segment files (see {@link LogSegment}) under
+ * {@code gateway.log.segment.dir} (default {@code <tmpdir>/gateway-log}).
+ * <p>
+ * Records are appended to the newest segment, which is memory-mapped with a capacity of
+ * {@code gateway.log.segment.maxBytes} (default 64 MB). A new segment is started when the record does not
+ * fit or the segment is older than {@code gateway.log.segment.maxAgeMs} (default one hour), so old logs
+ * are removed a whole segment at a time ({@link #deleteSegmentsBefore(long)}). Ids are assigned here,
+ * in append order. Purging a rule's logs records a per-rule id watermark instead of rewriting segments.
+ * Segments found on startup are reopened read-only; appends always go to a new one.
+ */
+@Singleton
+@LocalBean
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class SegmentLogStore implements GatewayLogStore {
+
+    private static final Logger LOGGER = Logger.getLogger(SegmentLogStore.class.getName());
+
+    private static final Path DIR = Paths.get(Settings.getString("gateway.log.segment.dir",
+            Paths.get(System.getProperty("java.io.tmpdir"), "gateway-log").toString()));
+    private static final int SEGMENT_BYTES = Settings.getInt("gateway.log.segment.maxBytes", 64 * 1024 * 1024);
+    private static final long SEGMENT_MAX_AGE_MS = Settings.getLong("gateway.log.segment.maxAgeMs", 60 * 60 * 1000L);
+    private static final int INDEX_INTERVAL = Settings.getInt("gateway.log.segment.indexInterval", 64);
+    private static final String CLEARED_FILE = "cleared.properties";
+
+    // Ordered by first id; replaced, never modified, so readers can iterate without locking.
+    private volatile List<LogSegment> segments = Collections.emptyList();
+    private LogSegment active;
+    private long nextId = 1;
+    // Highest id purged per rule; records at or below it are hidden.
+    private final Map<Long, Long> cleared = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+
+    @PostConstruct
+    public void init() {
+        try {
+            Files.createDirectories(DIR);
+            List<LogSegment> opened = new ArrayList<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(DIR, "*" + LogSegment.SUFFIX)) {
+                for (Path file : files) {
+                    try {
+                        opened.add(LogSegment.open(file, INDEX_INTERVAL));
+                    } catch (IOException | RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Skipping unreadable log segment " + file, e);
+                    }
+                }
+            }
+            opened.sort(Comparator.comparingLong(LogSegment::getFirstId));
+            for (LogSegment segment : opened) {
+                nextId = Math.max(nextId, segment.getLastId() + 1);
+            }
+            segments = Collections.unmodifiableList(opened);
+            loadCleared();
+            LOGGER.log(Level.INFO, "Opened {0} gateway log segments in {1}", new Object[]{opened.size(), DIR});
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open gateway log segments in " + DIR, e);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        synchronized (writeLock) {
+            if (active != null) {
+                active.force();
+            }
+        }
+    }
+
+    @Override
+    public void append(List<GatewayLog> batch) throws IOException {
+        synchronized (writeLock) {
+            for (GatewayLog log : batch) {
+                log.setId(nextId);
+                if (active == null || System.currentTimeMillis() - active.getCreatedAt() > SEGMENT_MAX_AGE_MS || !active.append(log)) {
+                    roll(Math.max(SEGMENT_BYTES, LogSegment.recordLength(log)));
+                    if (!active.append(log)) {
+                        throw new IOException("Log record " + nextId + " does not fit a new segment");
+                    }
+                }
+                nextId++;
+            }
+        }
+    }
+
+    private void roll(int capacity) throws IOException {
+        if (active != null) {
+            active.force();
+            if (active.isEmpty()) {
+                removeSegment(active);
+            }
+        }
+        active = LogSegment.create(DIR, nextId, capacity, INDEX_INTERVAL);
+        List<LogSegment> updated = new ArrayList<>(segments);
+        updated.add(active);
+        segments = Collections.unmodifiableList(updated);
+    }
+
+    /**
+     * Pages by id, in append order. Segments outside the time window or at or above the cursor are skipped
+     * without reading them; within a segment the walk starts at the cursor via the rule's sparse id index.
+     */
+    @Override
+    public List<GatewayLog> findLogs(LogQuery query, int maxResults) {
+        List<GatewayLog> logs = new ArrayList<>(Math.min(maxResults, 1000));
+        long clearedUpTo = cleared.getOrDefault(query.getConfigId(), 0L);
+        List<LogSegment> current = segments;
+        for (int i = current.size() - 1; i >= 0 && logs.size() < maxResults; i--) {
+            LogSegment segment = current.get(i);
+            if (segment.getLastId() <= clearedUpTo) {
+                break;
+            }
+            if ((query.getBeforeId() != null && segment.getFirstId() >= query.getBeforeId())
+                    || (query.getFrom() != null && segment.getMaxTimestamp() < query.getFrom())) {
+                continue;
+            }
+            segment.collect(query, clearedUpTo, maxResults - logs.size(), logs);
+        }
+        return logs;
+    }
+
+    @Override
+    public GatewayLog findLogDetails(Long logId) {
+        List<LogSegment> current = segments;
+        int low = 0;
+        int high = current.size() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (current.get(mid).getFirstId() <= logId) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        GatewayLog log = high < 0 ? null : current.get(high).find(logId);
+        if (log == null || log.getId() <= cleared.getOrDefault(log.getGatewayConfig().getId(), 0L)) {
+            return null;
+        }
+        return log;
+    }
+
+    /**
+     * Hides the matching logs by raising the rule's id watermark, which takes a single write however many
+     * logs it covers, so {@code chunkSize} does not apply. The space is reclaimed when whole segments expire.
+     */
+    @Override
+    public long deleteChunk(Long configId, long olderThan, long upToId, int chunkSize) {
+        synchronized (writeLock) {
+            long from = cleared.getOrDefault(configId, 0L);
+            long[] newest = {0};
+            long[] count = {0};
+            List<LogSegment> current = segments;
+            for (int i = current.size() - 1; i >= 0; i--) {
+                boolean more = current.get(i).walk(configId, olderThan, id -> {
+                    if (id <= from) {
+                        return false;
+                    }
+                    if (id <= upToId) {
+                        newest[0] = Math.max(newest[0], id);
+                        count[0]++;
+                    }
+                    return true;
+                });
+                if (!more) {
+                    break;
+                }
+            }
+            if (newest[0] > from) {
+                cleared.put(configId, newest[0]);
+                saveCleared();
+            }
+            return count[0];
+        }
+    }
+
+    @Override
+    public long findPurgeBoundary(Long configId, int keepRows) {
+        long from = cleared.getOrDefault(configId, 0L);
+        long[] boundary = {0};
+        int[] seen = {0};
+        List<LogSegment> current = segments;
+        for (int i = current.size() - 1; i >= 0 && boundary[0] == 0; i--) {
+            boolean more = current.get(i).walk(configId, Long.MAX_VALUE, id -> {
+                if (id <= from) {
+                    return false;
+                }
+                if (seen[0]++ == keepRows) {
+                    boundary[0] = id;
+                    return false;
+                }
+                return true;
+            });
+            if (!more) {
+                break;
+            }
+        }
+        return boundary[0];
+    }
+
+    @Override
+    public int dropOlderThan(long cutoff) {
+        return deleteSegmentsBefore(cutoff);
+    }
+
+    /**
+     * Deletes every segment whose newest record is older than {@code cutoff} (epoch milliseconds). The
+     * segment being appended to is never deleted.
+     *
+     * @return The number of segments deleted.
+     */
+    public int deleteSegmentsBefore(long cutoff) {
+        int deleted = 0;
+        synchronized (writeLock) {
+            for (LogSegment segment : segments) {
+                if (segment != active && segment.getMaxTimestamp() < cutoff) {
+                    removeSegment(segment);
+                    deleted++;
+                }
+            }
+        }
+        return deleted;
+    }
+
+    private void removeSegment(LogSegment segment) {
+        List<LogSegment> updated = new ArrayList<>(segments);
+        updated.remove(segment);
+        segments = Collections.unmodifiableList(updated);
+        try {
+            segment.delete();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Cannot delete log segment " + segment.getFile(), e);
+        }
+    }
+
+    private void loadCleared() throws IOException {
+        Path file = DIR.resolve(CLEARED_FILE);
+        if (!Files.exists(file)) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+        }
+        for (String configId : properties.stringPropertyNames()) {
+            cleared.put(Long.valueOf(configId), Long.valueOf(properties.getProperty(configId)));
+        }
+    }
+
+    private void saveCleared() {
+        Properties properties = new Properties();
+        cleared.forEach((configId, id) -> properties.setProperty(configId.toString(), id.toString()));
+        Path file = DIR.resolve(CLEARED_FILE);
+        Path temp = DIR.resolve(CLEARED_FILE + ".tmp");
+        try {
+            try (OutputStream out = Files.newOutputStream(temp)) {
+                properties.store(out, "Highest cleared gateway log id per rule");
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Cannot save cleared log ids; they apply until the next restart", e);
+        }
+    }
+
+    public int getSegmentCount() { return segments.size(); }
+
+    /** Bytes of records in all segments. */
+    public long getTotalBytes() {
+        long total = 0;
+        for (LogSegment segment : segments) {
+            total += segment.getSize();
+        }
+        return total;
+    }
+}
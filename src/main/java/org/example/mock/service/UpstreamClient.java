@@ -0,0 +1,279 @@
+package org.example.mock.service;
+
+import org.example.mock.entity.GatewayConfig;
+import org.example.mock.util.CallCanceller;
+import org.example.mock.util.HttpConnectionPool;
+import org.example.mock.util.HttpExchange;
+import org.example.mock.util.Settings;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.enterprise.concurrent.ManagedScheduledExecutorService;
+import javax.enterprise.event.Observes;
+import javax.enterprise.event.TransactionPhase;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keep-alive HTTP client for gateway upstream calls, with one {@link HttpConnectionPool} per
+ * gateway rule and target origin.
+ * <p>
+ * Pool size and timeouts come from the rule ({@code MAX_CONNECTIONS}, {@code CONNECT_TIMEOUT_MS},
+ * {@code READ_TIMEOUT_MS}) or fall back to {@code gateway.pool.maxConnections} (default 20),
+ * {@code gateway.connectTimeoutMs} and {@code gateway.readTimeoutMs} (default 10000 each). Idle
+ * connections are closed after {@code gateway.pool.idleTimeoutMs} (default 30000) by a task running
+ * every {@code gateway.pool.evictIntervalMs} (default 5000). A pool is rebuilt when its rule's
+ * settings change and dropped when the rule is deleted.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class UpstreamClient {
+
+    private static final Logger LOGGER = Logger.getLogger(UpstreamClient.class.getName());
+
+    static final int DEFAULT_MAX_CONNECTIONS = Settings.getInt("gateway.pool.maxConnections", 20);
+    static final int DEFAULT_CONNECT_TIMEOUT_MS = Settings.getInt("gateway.connectTimeoutMs", 10000);
+    static final int DEFAULT_READ_TIMEOUT_MS = Settings.getInt("gateway.readTimeoutMs", 10000);
+    private static final long IDLE_TIMEOUT_MS = Settings.getLong("gateway.pool.idleTimeoutMs", 30000);
+    private static final long EVICT_INTERVAL_MS = Settings.getLong("gateway.pool.evictIntervalMs", 5000);
+
+    @Resource
+    private ManagedScheduledExecutorService scheduler;
+
+    private final ConcurrentMap<PoolKey, HttpConnectionPool> pools = new ConcurrentHashMap<>();
+    private ScheduledFuture<?> evictTask;
+
+    @PostConstruct
+    public void init() {
+        evictTask = scheduler.scheduleWithFixedDelay(this::evictIdle, EVICT_INTERVAL_MS, EVICT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (evictTask != null) {
+            evictTask.cancel(false);
+        }
+        pools.values().forEach(HttpConnectionPool::close);
+        pools.clear();
+    }
+
+    /**
+     * Sends a request to {@code target} over a pooled connection of {@code config}'s pool.
+     * Requests without a body that fail on a reused connection before any response arrives
+     * (the peer closed it in the meantime) are retried once on a new connection.
+     *
+     * @param body          Request body, or null.
+     * @param contentLength Length of {@code body}, or -1 to send it chunked.
+     * @return The response; the caller must close it (after reading the body) to release the connection.
+     */
+    public HttpExchange.Response execute(GatewayConfig config, String method, URI target, Map<String, List<String>> headers,
+                                         InputStream body, long contentLength) throws IOException {
+        return execute(config, method, target, headers, body, contentLength, null);
+    }
+
+    /**
+     * Like {@link #execute(GatewayConfig, String, URI, Map, InputStream, long)}, but another thread can
+     * abort the call with {@code canceller} until its response head has arrived.
+     *
+     * @param canceller Cancels the call, or null.
+     * @throws InterruptedIOException if the call was cancelled before it got a connection.
+     */
+    public HttpExchange.Response execute(GatewayConfig config, String method, URI target, Map<String, List<String>> headers,
+                                         InputStream body, long contentLength, CallCanceller canceller) throws IOException {
+        HttpConnectionPool pool = pool(config, target);
+        String pathAndQuery = target.getRawPath() == null || target.getRawPath().isEmpty() ? "/" : target.getRawPath();
+        if (target.getRawQuery() != null) {
+            pathAndQuery += "?" + target.getRawQuery();
+        }
+        for (int attempt = 0; ; attempt++) {
+            HttpConnectionPool.Connection connection = pool.lease(pool.getConnectTimeoutMs());
+            if (canceller != null && !canceller.attach(connection)) {
+                pool.release(connection, false);
+                throw new InterruptedIOException("Call to " + target + " was cancelled");
+            }
+            try {
+                return HttpExchange.execute(connection, method, pathAndQuery, headers, body, contentLength);
+            } catch (IOException | RuntimeException e) {
+                pool.release(connection, false);
+                if (canceller != null && canceller.isCancelled()) {
+                    throw e;
+                }
+                if (attempt == 0 && connection.isReused() && body == null && e instanceof IOException) {
+                    LOGGER.log(Level.FINE, "Retrying on a new connection after a stale one failed: {0}", e.toString());
+                    continue;
+                }
+                throw e;
+            } finally {
+                if (canceller != null) {
+                    canceller.detach(connection);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the pool for {@code config}'s target origin, replacing it if the rule's settings changed.
+     */
+    HttpConnectionPool pool(GatewayConfig config, URI target) {
+        String scheme = target.getScheme() == null ? "http" : target.getScheme().toLowerCase();
+        int port = target.getPort() >= 0 ? target.getPort() : ("https".equals(scheme) ? 443 : 80);
+        PoolKey key = new PoolKey(config.getId(), scheme, target.getHost(), port);
+        int maxConnections = valueOrDefault(config.getMaxConnections(), DEFAULT_MAX_CONNECTIONS);
+        int connectTimeoutMs = valueOrDefault(config.getConnectTimeoutMs(), DEFAULT_CONNECT_TIMEOUT_MS);
+        int readTimeoutMs = valueOrDefault(config.getReadTimeoutMs(), DEFAULT_READ_TIMEOUT_MS);
+
+        HttpConnectionPool pool = pools.get(key);
+        if (pool != null && pool.hasSettings(maxConnections, connectTimeoutMs, readTimeoutMs)) {
+            return pool;
+        }
+        HttpConnectionPool[] replaced = new HttpConnectionPool[1];
+        pool = pools.compute(key, (k, existing) -> {
+            if (existing != null && existing.hasSettings(maxConnections, connectTimeoutMs, readTimeoutMs)) {
+                return existing;
+            }
+            replaced[0] = existing;
+            return new HttpConnectionPool(scheme, target.getHost(), port, maxConnections, connectTimeoutMs, readTimeoutMs, IDLE_TIMEOUT_MS);
+        });
+        if (replaced[0] != null) {
+            replaced[0].close();
+        }
+        return pool;
+    }
+
+    /**
+     * How long a call on this rule may take to produce a response head: its connect plus read timeout.
+     */
+    public long responseTimeoutMs(GatewayConfig config) {
+        return (long) valueOrDefault(config.getConnectTimeoutMs(), DEFAULT_CONNECT_TIMEOUT_MS)
+                + valueOrDefault(config.getReadTimeoutMs(), DEFAULT_READ_TIMEOUT_MS);
+    }
+
+    /**
+     * Closes the pools of a deleted rule.
+     */
+    public void evict(Long configId) {
+        pools.entrySet().removeIf(entry -> {
+            if (entry.getKey().configId.equals(configId)) {
+                entry.getValue().close();
+                return true;
+            }
+            return false;
+        });
+    }
+
+    public void onGatewayConfigChanged(@Observes(during = TransactionPhase.AFTER_SUCCESS) GatewayConfigChangedEvent event) {
+        GatewayConfig config = event.getGatewayConfig();
+        if (event.isDeleted() && config != null && config.getId() != null) {
+            evict(config.getId());
+        }
+    }
+
+    private void evictIdle() {
+        try {
+            int closed = 0;
+            for (HttpConnectionPool pool : pools.values()) {
+                closed += pool.evictIdle();
+            }
+            if (closed > 0) {
+                LOGGER.log(Level.FINE, "Closed {0} idle upstream connections", closed);
+            }
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Idle connection eviction failed", e);
+        }
+    }
+
+    /**
+     * Pool statistics of a rule, summed over its target origins.
+     */
+    public Map<String, Object> getStats(Long configId) {
+        int leased = 0;
+        int idle = 0;
+        int pending = 0;
+        int maxConnections = 0;
+        long created = 0;
+        long reused = 0;
+        long leases = 0;
+        long leaseTimeouts = 0;
+        long totalWaitMs = 0;
+        long maxWaitMs = 0;
+        List<String> origins = new ArrayList<>();
+        for (Map.Entry<PoolKey, HttpConnectionPool> entry : pools.entrySet()) {
+            if (!entry.getKey().configId.equals(configId)) {
+                continue;
+            }
+            HttpConnectionPool pool = entry.getValue();
+            origins.add(pool.getOrigin());
+            leased += pool.getLeased();
+            idle += pool.getIdle();
+            pending += pool.getPending();
+            maxConnections += pool.getMaxConnections();
+            created += pool.getCreatedCount();
+            reused += pool.getReusedCount();
+            leases += pool.getLeaseCount();
+            leaseTimeouts += pool.getLeaseTimeoutCount();
+            totalWaitMs += pool.getTotalWaitMillis();
+            maxWaitMs = Math.max(maxWaitMs, pool.getMaxWaitMillis());
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("origins", origins);
+        stats.put("maxConnections", maxConnections);
+        stats.put("leased", leased);
+        stats.put("idle", idle);
+        stats.put("pending", pending);
+        stats.put("created", created);
+        stats.put("reused", reused);
+        stats.put("leaseTimeouts", leaseTimeouts);
+        stats.put("avgWaitMs", leases == 0 ? 0.0 : (double) totalWaitMs / leases);
+        stats.put("maxWaitMs", maxWaitMs);
+        return stats;
+    }
+
+    static int valueOrDefault(Integer value, int defaultValue) {
+        return value != null && value > 0 ? value : defaultValue;
+    }
+
+    private static final class PoolKey {
+        final Long configId;
+        final String scheme;
+        final String host;
+        final int port;
+
+        PoolKey(Long configId, String scheme, String host, int port) {
+            this.configId = configId;
+            this.scheme = scheme;
+            this.host = host;
+            this.port = port;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof PoolKey)) return false;
+            PoolKey that = (PoolKey) o;
+            return port == that.port && configId.equals(that.configId) && scheme.equals(that.scheme) && host.equalsIgnoreCase(that.host);
+        }
+
+        @Override
+        public int hashCode() {
+            return (configId.hashCode() * 31 + host.toLowerCase().hashCode()) * 31 + port;
+        }
+    }
+}
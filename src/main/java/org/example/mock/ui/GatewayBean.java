@@ -2,20 +2,35 @@ package org.example.mock.ui;
 
 import org.example.mock.entity.GatewayConfig;
 import org.example.mock.entity.GatewayLog;
+import org.example.mock.service.GatewayCircuitBreakers;
+import org.example.mock.service.GatewayExecutor;
 import org.example.mock.service.GatewayService;
+import org.example.mock.service.GatewayTargets;
+import org.example.mock.service.LogQuery;
+import org.example.mock.service.LogRetentionService;
+import org.example.mock.service.MetricsRegistry;
+import org.example.mock.service.RouteMetrics;
+import org.example.mock.service.UpstreamClient;
+import org.example.mock.util.TargetBalancer;
 import org.primefaces.PrimeFaces;
+import org.primefaces.component.datatable.DataTable;
 
 import javax.annotation.PostConstruct;
 import javax.faces.application.FacesMessage;
+import javax.faces.component.UIComponent;
 import javax.faces.context.FacesContext;
 import javax.faces.view.ViewScoped;
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.servlet.http.HttpServletRequest;
 import java.io.Serializable;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 @Named
 @ViewScoped
@@ -24,13 +39,37 @@ public class GatewayBean implements Serializable {
     @Inject
     private GatewayService gatewayService;
 
+    @Inject
+    private UpstreamClient upstreamClient;
+
+    @Inject
+    private GatewayExecutor gatewayExecutor;
+
+    @Inject
+    private LogRetentionService logRetention;
+
+    @Inject
+    private GatewayCircuitBreakers circuitBreakers;
+
+    @Inject
+    private MetricsRegistry metrics;
+
+    @Inject
+    private GatewayTargets targets;
+
     private List<GatewayConfig> configs = new ArrayList<>();
     private GatewayConfig selectedConfig;
-    private List<GatewayLog> selectedConfigLogs = new ArrayList<>();
+    private GatewayLogDataModel logModel;
+    // Log table filters; see applyLogFilter().
+    private String logStatusFilter;
+    private String logMethodFilter;
+    private LocalDateTime logFrom;
+    private LocalDateTime logTo;
+    private Long logMinDurationMs;
 
     // Add these two fields to your GatewayBean.java
     private String generatedCurlCommand;
-    private final List<String> httpMethods = Arrays.asList("GET", "POST", "PUT", "DELETE");
+    private final List<String> httpMethods = Arrays.asList("GET", "POST", "PUT", "PATCH", "DELETE");
 // In GatewayBean.java
 
     // Add a new field to hold the single log entry you want to view in detail.
@@ -67,6 +106,19 @@ public class GatewayBean implements Serializable {
     }
 
     public void saveConfig() {
+        String targetList = selectedConfig.getTargets();
+        if (targetList != null && !targetList.trim().isEmpty()) {
+            try {
+                // The first target doubles as the rule's base URL, e.g. for the generated curl command.
+                selectedConfig.setTargetBaseUrl(TargetBalancer.parse(targetList).keySet().iterator().next());
+            } catch (IllegalArgumentException e) {
+                addErrorMessage("Invalid Targets", e.getMessage());
+                return;
+            }
+        } else if (selectedConfig.getTargetBaseUrl() == null || selectedConfig.getTargetBaseUrl().trim().isEmpty()) {
+            addErrorMessage("Save Error", "Enter a target base URL or a list of targets.");
+            return;
+        }
         try {
             gatewayService.saveConfig(this.selectedConfig);
             this.configs = gatewayService.findAllConfigs(); // Refresh list
@@ -94,19 +146,63 @@ public class GatewayBean implements Serializable {
 
     public void viewLogs(GatewayConfig config) {
         this.selectedConfig = config;
-        try {
-            this.selectedConfigLogs = gatewayService.findLogsForConfig(config.getId(), 100);
-        } catch (Exception e) {
-            this.selectedConfigLogs = new ArrayList<>();
-            addErrorMessage("Error Loading Logs", "Could not retrieve logs for the selected rule.");
+        this.logStatusFilter = null;
+        this.logMethodFilter = null;
+        this.logFrom = null;
+        this.logTo = null;
+        this.logMinDurationMs = null;
+        this.logModel = new GatewayLogDataModel(gatewayService, LogQuery.forConfig(config.getId()));
+        resetLogTable();
+    }
+
+    /**
+     * Applies the log table filters and goes back to the first page. The status filter takes a code
+     * ({@code 404}) or a class ({@code 5xx}).
+     */
+    public void applyLogFilter() {
+        if (selectedConfig == null || logModel == null) {
+            return;
+        }
+        Integer minStatus = null;
+        Integer maxStatus = null;
+        String status = logStatusFilter == null ? "" : logStatusFilter.trim().toLowerCase();
+        if (status.matches("[1-5]xx")) {
+            minStatus = (status.charAt(0) - '0') * 100;
+            maxStatus = minStatus + 99;
+        } else if (status.matches("\\d{3}")) {
+            minStatus = Integer.valueOf(status);
+            maxStatus = minStatus;
+        } else if (!status.isEmpty()) {
+            addErrorMessage("Invalid Status Filter", "Enter a status code such as 404 or a class such as 5xx.");
+            return;
+        }
+        logModel.setQuery(new LogQuery(selectedConfig.getId(), minStatus, maxStatus, logMethodFilter,
+                epochMillis(logFrom), epochMillis(logTo), logMinDurationMs));
+        resetLogTable();
+    }
+
+    private static Long epochMillis(LocalDateTime time) {
+        return time == null ? null : time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private void resetLogTable() {
+        UIComponent table = FacesContext.getCurrentInstance().getViewRoot().findComponent(":log-dialog-form:log-table");
+        if (table instanceof DataTable) {
+            ((DataTable) table).setFirst(0);
         }
     }
     
     public void clearLogs() {
         if (selectedConfig != null) {
-            gatewayService.clearLogsForConfig(selectedConfig.getId());
-            this.selectedConfigLogs.clear(); // Clear the list in the UI
-            FacesContext.getCurrentInstance().addMessage(null, new FacesMessage("Logs Cleared", "All logs for this rule have been deleted."));
+            try {
+                gatewayService.clearLogsForConfig(selectedConfig.getId());
+            } catch (Exception e) {
+                addErrorMessage("Error Clearing Logs", "Could not start clearing the logs of this rule.");
+                return;
+            }
+            logModel.setQuery(logModel.getQuery()); // Back to the first page
+            resetLogTable();
+            FacesContext.getCurrentInstance().addMessage(null, new FacesMessage("Clearing Logs", "The logs of this rule are being deleted in the background."));
             PrimeFaces.current().ajax().update("form:messages", "log-dialog-content");
         }
     }
@@ -153,6 +249,75 @@ public class GatewayBean implements Serializable {
     }
 
 
+    /**
+     * A logged body for display. Truncated bodies already end with their full length; bodies the rule's
+     * capture policy left out are shown by their length alone.
+     */
+    public String bodyText(String body, Long length) {
+        if (body == null && length != null && length > 0) {
+            return "[Body not captured, " + length + " bytes]";
+        }
+        return body == null || body.isEmpty() ? "[No Body]" : body;
+    }
+
+    /**
+     * Connection pool statistics (leased, idle, pending, wait times) of a rule's upstream pools.
+     */
+    public Map<String, Object> poolStats(GatewayConfig config) {
+        return upstreamClient.getStats(config.getId());
+    }
+
+    public Map<String, Object> executorStats(GatewayConfig config) {
+        return gatewayExecutor.getStats(config.getId());
+    }
+
+    public Map<String, Object> breakerStats(GatewayConfig config) {
+        return circuitBreakers.getStats(config.getId());
+    }
+
+    public void resetBreaker(GatewayConfig config) {
+        circuitBreakers.reset(config.getId());
+        addInfoMessage("Circuit Closed", "Calls to " + config.getTargetBaseUrl() + " are let through again.");
+    }
+
+    /**
+     * Live counters of each of the rule's targets (in flight, calls, failures, latency, ejection).
+     */
+    public List<Map<String, Object>> targetStats(GatewayConfig config) {
+        return targets.getStats(config.getId());
+    }
+
+    /** How the rule's cacheable requests were answered since startup: hit, stale, revalidated and miss counts. */
+    public Map<String, Object> cacheStats(GatewayConfig config) {
+        RouteMetrics route = metrics.findGateway(config.getId());
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (RouteMetrics.CacheResult result : RouteMetrics.CacheResult.values()) {
+            stats.put(result.name().toLowerCase(), route == null ? 0L : route.getCacheCount(result));
+        }
+        return stats;
+    }
+
+    /** What became of the rule's hedges since startup: won, lost and denied counts. */
+    public Map<String, Object> hedgeStats(GatewayConfig config) {
+        RouteMetrics route = metrics.findGateway(config.getId());
+        Map<String, Object> stats = new LinkedHashMap<>();
+        for (RouteMetrics.HedgeResult result : RouteMetrics.HedgeResult.values()) {
+            stats.put(result.name().toLowerCase(), route == null ? 0L : route.getHedgeCount(result));
+        }
+        return stats;
+    }
+
+    /** Requests that shared an identical request's upstream call since startup. */
+    public long coalescedCount(GatewayConfig config) {
+        RouteMetrics route = metrics.findGateway(config.getId());
+        return route == null ? 0 : route.getCollapsedCount();
+    }
+
+    /** Whether the selected rule's logs are still being cleared. */
+    public boolean isClearing() {
+        return selectedConfig != null && logRetention.isClearing(selectedConfig.getId());
+    }
+
     // --- Helper Methods for Messages ---
     private void addInfoMessage(String summary, String detail) {
         FacesContext.getCurrentInstance().addMessage(null, new FacesMessage(FacesMessage.SEVERITY_INFO, summary, detail));
@@ -165,7 +330,17 @@ public class GatewayBean implements Serializable {
     public List<GatewayConfig> getConfigs() { return configs; }
     public GatewayConfig getSelectedConfig() { return selectedConfig; }
     public void setSelectedConfig(GatewayConfig selectedConfig) { this.selectedConfig = selectedConfig; }
-    public List<GatewayLog> getSelectedConfigLogs() { return selectedConfigLogs; }
+    public GatewayLogDataModel getLogModel() { return logModel; }
+    public String getLogStatusFilter() { return logStatusFilter; }
+    public void setLogStatusFilter(String logStatusFilter) { this.logStatusFilter = logStatusFilter; }
+    public String getLogMethodFilter() { return logMethodFilter; }
+    public void setLogMethodFilter(String logMethodFilter) { this.logMethodFilter = logMethodFilter; }
+    public LocalDateTime getLogFrom() { return logFrom; }
+    public void setLogFrom(LocalDateTime logFrom) { this.logFrom = logFrom; }
+    public LocalDateTime getLogTo() { return logTo; }
+    public void setLogTo(LocalDateTime logTo) { this.logTo = logTo; }
+    public Long getLogMinDurationMs() { return logMinDurationMs; }
+    public void setLogMinDurationMs(Long logMinDurationMs) { this.logMinDurationMs = logMinDurationMs; }
 
 // Add these getters to your GatewayBean.java
 
@@ -0,0 +1,102 @@
+package org.example.mock.ui;
+
+import org.example.mock.entity.GatewayLog;
+import org.example.mock.service.GatewayService;
+import org.example.mock.service.LogQuery;
+import org.primefaces.model.FilterMeta;
+import org.primefaces.model.LazyDataModel;
+import org.primefaces.model.SortMeta;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * A rule's logs for the gateway log table, loaded a page at a time with keyset pagination (see
+ * {@link LogQuery}): the last log of every page reached so far is kept as the cursor of the next one, so
+ * moving to the next or previous page costs one index seek however deep it is. The total is never counted;
+ * the table only learns whether there is a next page, by asking for one row more than it shows.
+ */
+public class GatewayLogDataModel extends LazyDataModel<GatewayLog> {
+
+    private static final long serialVersionUID = 1L;
+    // Rows read per query when jumping past the pages reached so far.
+    private static final int SKIP_BATCH = 1000;
+
+    private final GatewayService gatewayService;
+    private LogQuery query;
+    // Row offset of each page reached so far -> last log before it (null for the first page).
+    private final NavigableMap<Integer, GatewayLog> cursors = new TreeMap<>();
+    private int knownRows;
+
+    public GatewayLogDataModel(GatewayService gatewayService, LogQuery query) {
+        this.gatewayService = gatewayService;
+        setQuery(query);
+    }
+
+    /**
+     * Replaces the filters and goes back to the first page.
+     */
+    public void setQuery(LogQuery query) {
+        this.query = query;
+        cursors.clear();
+        cursors.put(0, null);
+        knownRows = 0;
+        setRowCount(0);
+    }
+
+    public LogQuery getQuery() { return query; }
+
+    @Override
+    public int count(Map<String, FilterMeta> filterBy) {
+        return knownRows;
+    }
+
+    @Override
+    public List<GatewayLog> load(int first, int pageSize, Map<String, SortMeta> sortBy, Map<String, FilterMeta> filterBy) {
+        Map.Entry<Integer, GatewayLog> start = cursors.floorEntry(first);
+        int offset = start.getKey();
+        GatewayLog cursor = start.getValue();
+        // Only a jump past the pages reached so far (e.g. a larger page size) reads the rows in between.
+        while (offset < first) {
+            List<GatewayLog> skipped = gatewayService.findLogs(query.after(cursor), Math.min(first - offset, SKIP_BATCH));
+            if (skipped.isEmpty()) {
+                return Collections.emptyList();
+            }
+            offset += skipped.size();
+            cursor = skipped.get(skipped.size() - 1);
+            cursors.put(offset, cursor);
+        }
+
+        List<GatewayLog> page = gatewayService.findLogs(query.after(cursor), pageSize + 1);
+        boolean more = page.size() > pageSize;
+        if (more) {
+            page = new ArrayList<>(page.subList(0, pageSize));
+        }
+        if (!page.isEmpty()) {
+            cursors.put(first + page.size(), page.get(page.size() - 1));
+        }
+        knownRows = more ? Math.max(knownRows, first + page.size() + 1) : first + page.size();
+        setRowCount(knownRows);
+        return page;
+    }
+
+    @Override
+    public String getRowKey(GatewayLog log) {
+        return String.valueOf(log.getId());
+    }
+
+    @Override
+    public GatewayLog getRowData(String rowKey) {
+        List<GatewayLog> page = getWrappedData();
+        for (GatewayLog log : page == null ? Collections.<GatewayLog>emptyList() : page) {
+            if (String.valueOf(log.getId()).equals(rowKey)) {
+                return log;
+            }
+        }
+        return null;
+    }
+}
@@ -1,7 +1,10 @@
 package org.example.mock.ui;
 
 import org.example.mock.entity.MockConfig;
+import org.example.mock.service.FileBody;
 import org.example.mock.service.MockConfigService;
+import org.example.mock.service.MockRouteTable;
+import org.example.mock.service.ResponseDelayScheduler;
 import org.example.mock.util.JsonUtil;
 import org.primefaces.PrimeFaces;
 
@@ -13,6 +16,8 @@ import javax.inject.Inject;
 import javax.inject.Named;
 import javax.servlet.http.HttpServletRequest;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -28,6 +33,12 @@ public class MockConfigBean implements Serializable {
     @Inject
     private MockConfigService mockConfigService;
 
+    @Inject
+    private MockRouteTable routeTable;
+
+    @Inject
+    private ResponseDelayScheduler delayScheduler;
+
     private List<MockConfig> configs= new ArrayList<>();;
     private MockConfig selectedConfig;
     private String generatedCurlCommand;
@@ -64,9 +75,29 @@ public class MockConfigBean implements Serializable {
             if (!isRequestBodyApplicable()) {
                 this.selectedConfig.setRequestPayload(null);
             }
-            // Normalize JSON payloads before saving
+            // Canonicalize the request payload for matching; the response is only minified so its key order is kept
             this.selectedConfig.setRequestPayload(JsonUtil.normalize(this.selectedConfig.getRequestPayload()));
-            this.selectedConfig.setResponsePayload(JsonUtil.normalize(this.selectedConfig.getResponsePayload()));
+            this.selectedConfig.setResponsePayload(JsonUtil.minify(this.selectedConfig.getResponsePayload()));
+
+            String bodyFile = this.selectedConfig.getResponseBodyFile();
+            if (bodyFile != null && !bodyFile.trim().isEmpty()) {
+                Path path;
+                try {
+                    path = FileBody.resolve(bodyFile.trim());
+                } catch (IllegalArgumentException e) {
+                    addErrorMessage("Invalid Body File", e.getMessage());
+                    FacesContext.getCurrentInstance().validationFailed();
+                    return;
+                }
+                if (!Files.isRegularFile(path) || !Files.isReadable(path)) {
+                    addErrorMessage("Invalid Body File", "No readable file at " + path);
+                    FacesContext.getCurrentInstance().validationFailed();
+                    return;
+                }
+                this.selectedConfig.setResponseBodyFile(bodyFile.trim());
+            } else {
+                this.selectedConfig.setResponseBodyFile(null);
+            }
 
             mockConfigService.save(this.selectedConfig);
 
@@ -149,4 +180,6 @@ public class MockConfigBean implements Serializable {
     public void setSelectedConfig(MockConfig selectedConfig) { this.selectedConfig = selectedConfig; }
     public String getGeneratedCurlCommand() { return generatedCurlCommand; }
     public List<String> getHttpMethods() { return httpMethods; }
+    public MockRouteTable getRouteTable() { return routeTable; }
+    public ResponseDelayScheduler getDelayScheduler() { return delayScheduler; }
 }
\ No newline at end of file
@@ -0,0 +1,172 @@
+package org.example.mock.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the first {@code limit} bytes of a body that is streamed elsewhere, plus its total length,
+ * so a log entry can show a prefix without the proxy ever holding the whole body.
+ * <p>
+ * Up to {@code gateway.log.memoryCaptureBytes} (default 64 KB) of the prefix is kept in memory; a
+ * larger {@code limit} spills the rest to a temporary file, which {@link #close()} deletes.
+ */
+public final class BodyCapture implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(BodyCapture.class.getName());
+
+    private static final int MEMORY_LIMIT = Settings.getInt("gateway.log.memoryCaptureBytes", 64 * 1024);
+
+    private final int limit;
+    private final int memoryLimit;
+    private byte[] bytes;
+    private int size;
+    private long total;
+    private Path spillFile;
+    private OutputStream spill;
+    private long spilled;
+    private boolean spillFailed;
+
+    public BodyCapture(int limit) {
+        this.limit = Math.max(limit, 0);
+        this.memoryLimit = Math.min(this.limit, MEMORY_LIMIT);
+        this.bytes = new byte[Math.min(memoryLimit, 1024)];
+    }
+
+    /**
+     * Wraps {@code in} so every byte read from it is also captured.
+     */
+    public InputStream tee(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    write(new byte[]{(byte) b}, 0, 1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = super.read(buffer, offset, length);
+                if (read > 0) {
+                    write(buffer, offset, read);
+                }
+                return read;
+            }
+        };
+    }
+
+    public void write(byte[] buffer, int offset, int length) {
+        total += length;
+        int kept = (int) Math.min(length, limit - size - spilled);
+        if (kept <= 0) {
+            return;
+        }
+        int inMemory = Math.min(kept, memoryLimit - size);
+        if (inMemory > 0) {
+            if (size + inMemory > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.min(memoryLimit, Math.max(bytes.length * 2, size + inMemory)));
+            }
+            System.arraycopy(buffer, offset, bytes, size, inMemory);
+            size += inMemory;
+        }
+        if (kept > inMemory && !spillFailed) {
+            spill(buffer, offset + inMemory, kept - inMemory);
+        }
+    }
+
+    private void spill(byte[] buffer, int offset, int length) {
+        try {
+            if (spill == null) {
+                spillFile = Files.createTempFile("gateway-body-", ".tmp");
+                spill = Files.newOutputStream(spillFile);
+            }
+            spill.write(buffer, offset, length);
+            spilled += length;
+        } catch (IOException e) {
+            // Logging must never break the transfer; keep what is in memory.
+            LOGGER.log(Level.WARNING, "Cannot spill captured body to disk; the log keeps only the in-memory prefix", e);
+            spillFailed = true;
+        }
+    }
+
+    /** Bytes seen so far, including those beyond the captured prefix. */
+    public long getTotal() { return total; }
+
+    public boolean isTruncated() { return total > size + spilled; }
+
+    /**
+     * Renders the captured prefix for a log: as UTF-8 text for uncompressed textual content, otherwise
+     * as a short description, with a marker when the body was longer than the prefix.
+     */
+    public String toLogString(String contentType, String contentEncoding) {
+        if (total == 0) {
+            return "";
+        }
+        boolean encoded = contentEncoding != null && !contentEncoding.trim().isEmpty() && !"identity".equalsIgnoreCase(contentEncoding.trim());
+        if (encoded || !isTextual(contentType)) {
+            return "[" + total + " bytes of " + (contentType == null ? "unknown content" : contentType)
+                    + (encoded ? ", " + contentEncoding + "-encoded" : "") + "]";
+        }
+        String text = new String(capturedBytes(), StandardCharsets.UTF_8);
+        return isTruncated() ? text + "... [truncated, " + total + " bytes total]" : text;
+    }
+
+    private byte[] capturedBytes() {
+        if (spillFile == null) {
+            return Arrays.copyOf(bytes, size);
+        }
+        ByteArrayOutputStream all = new ByteArrayOutputStream(size + (int) spilled);
+        all.write(bytes, 0, size);
+        try {
+            spill.flush();
+            Files.copy(spillFile, all);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Cannot read spilled body capture " + spillFile, e);
+        }
+        return all.toByteArray();
+    }
+
+    /**
+     * Deletes the spill file, if one was created.
+     */
+    @Override
+    public void close() {
+        if (spillFile == null) {
+            return;
+        }
+        try {
+            spill.close();
+            Files.deleteIfExists(spillFile);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Cannot delete body capture spill file " + spillFile, e);
+        }
+        spillFile = null;
+        spill = null;
+    }
+
+    /**
+     * Whether a body of this content type is readable as text. A missing type is assumed to be text,
+     * as most of the APIs behind the gateway are JSON services that do not always send one.
+     */
+    public static boolean isTextual(String contentType) {
+        if (contentType == null) {
+            return true;
+        }
+        String type = contentType.toLowerCase(Locale.ROOT);
+        return type.startsWith("text/") || type.contains("json") || type.contains("xml")
+                || type.contains("javascript") || type.contains("x-www-form-urlencoded");
+    }
+}
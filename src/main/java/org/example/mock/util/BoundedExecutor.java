@@ -0,0 +1,117 @@
+package org.example.mock.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs at most {@code maxConcurrent} tasks at a time on a shared executor, queueing up to
+ * {@code queueCapacity} more and rejecting the rest, so one busy key cannot take all of the
+ * shared executor's threads. Submission and completion are lock-free.
+ */
+public final class BoundedExecutor implements Executor {
+
+    private static final Logger LOGGER = Logger.getLogger(BoundedExecutor.class.getName());
+
+    private final Executor delegate;
+    private volatile int queueCapacity;
+    private volatile int maxConcurrent;
+    private final AtomicInteger active = new AtomicInteger();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final Queue<Runnable> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+
+    public BoundedExecutor(Executor delegate, int maxConcurrent, int queueCapacity) {
+        this.delegate = delegate;
+        this.maxConcurrent = Math.max(maxConcurrent, 1);
+        this.queueCapacity = Math.max(queueCapacity, 0);
+    }
+
+    /**
+     * @throws RejectedExecutionException if the concurrency limit is reached and the queue is full.
+     */
+    @Override
+    public void execute(Runnable task) {
+        if (tryAcquire()) {
+            dispatch(task);
+            return;
+        }
+        if (queued.incrementAndGet() > queueCapacity) {
+            queued.decrementAndGet();
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("Concurrency limit " + maxConcurrent + " reached and " + queueCapacity + " tasks queued");
+        }
+        queue.add(task);
+        drain(); // A running task may have finished between tryAcquire() and add().
+    }
+
+    /** Changes the concurrency limit; running tasks are not affected. */
+    public void setMaxConcurrent(int maxConcurrent) {
+        this.maxConcurrent = Math.max(maxConcurrent, 1);
+        drain();
+    }
+
+    private boolean tryAcquire() {
+        int current;
+        do {
+            current = active.get();
+            if (current >= maxConcurrent) {
+                return false;
+            }
+        } while (!active.compareAndSet(current, current + 1));
+        return true;
+    }
+
+    private void drain() {
+        while (!queue.isEmpty() && tryAcquire()) {
+            Runnable next = queue.poll();
+            if (next == null) {
+                active.decrementAndGet();
+                continue;
+            }
+            queued.decrementAndGet();
+            try {
+                dispatch(next);
+            } catch (RejectedExecutionException e) {
+                // The submitter has already returned; its own timeout has to answer the caller.
+                LOGGER.log(Level.WARNING, "Shared executor rejected a queued task", e);
+            }
+        }
+    }
+
+    private void dispatch(Runnable task) {
+        try {
+            delegate.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    active.decrementAndGet();
+                    completed.incrementAndGet();
+                    drain();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            active.decrementAndGet();
+            rejected.incrementAndGet();
+            throw e;
+        }
+    }
+
+    /** Changes how many tasks may wait; tasks already queued stay queued. */
+    public void setQueueCapacity(int queueCapacity) {
+        this.queueCapacity = Math.max(queueCapacity, 0);
+    }
+
+    public int getMaxConcurrent() { return maxConcurrent; }
+    public int getQueueCapacity() { return queueCapacity; }
+    public int getActive() { return active.get(); }
+    public int getQueued() { return queued.get(); }
+    public long getCompletedCount() { return completed.get(); }
+    public long getRejectedCount() { return rejected.get(); }
+}
@@ -0,0 +1,139 @@
+package org.example.mock.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Fixed-size, lock-free ring of the most recent values, written by many threads and drained by one.
+ * <p>
+ * Producers claim a sequence number with a single atomic increment and publish into the slot it maps
+ * to, unless a newer value is already there. A single consumer drains published values in order;
+ * values that were overwritten before being drained are counted as dropped. When the ring is full of
+ * undrained values the {@link OverflowPolicy} decides whether the producer overwrites the oldest one
+ * straight away or first waits (up to a bound) for the consumer to catch up.
+ *
+ * @param <T> Value type; values should be immutable.
+ */
+public final class BoundedRingBuffer<T> {
+
+    public enum OverflowPolicy {
+        /** Overwrite the oldest undrained value. */
+        DROP_OLDEST,
+        /** Wait for the consumer, then fall back to overwriting once the wait bound is reached. */
+        BLOCK
+    }
+
+    private final AtomicReferenceArray<Slot<T>> slots;
+    private final int mask;
+    private final OverflowPolicy policy;
+    private final long maxBlockNanos;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong blocked = new AtomicLong();
+    private volatile long drained;
+
+    /**
+     * @param capacity      Rounded up to a power of two.
+     * @param policy        What producers do when the ring is full of undrained values.
+     * @param maxBlockNanos Longest a producer waits under {@link OverflowPolicy#BLOCK}.
+     */
+    public BoundedRingBuffer(int capacity, OverflowPolicy policy, long maxBlockNanos) {
+        int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.slots = new AtomicReferenceArray<>(size);
+        this.mask = size - 1;
+        this.policy = policy;
+        this.maxBlockNanos = maxBlockNanos;
+    }
+
+    /**
+     * Publishes a value. Never fails; under {@link OverflowPolicy#BLOCK} it may wait first.
+     */
+    public void offer(T value) {
+        long sequence = head.getAndIncrement();
+        if (policy == OverflowPolicy.BLOCK && sequence - drained >= slots.length()) {
+            blocked.incrementAndGet();
+            long deadline = System.nanoTime() + maxBlockNanos;
+            while (sequence - drained >= slots.length() && System.nanoTime() < deadline) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+        // A producer a lap ahead may have published into this slot first; never replace its newer value,
+        // or the consumer would take the slot as not yet published and stall until it is written again.
+        int index = (int) (sequence & mask);
+        Slot<T> slot = new Slot<>(sequence, value);
+        Slot<T> current;
+        do {
+            current = slots.get(index);
+            if (current != null && current.sequence > sequence) {
+                return; // Overwritten on arrival; the consumer counts it as dropped.
+            }
+        } while (!slots.compareAndSet(index, current, slot));
+    }
+
+    /**
+     * Hands up to {@code max} undrained values, oldest first, to {@code sink}. Single consumer only.
+     *
+     * @return The number of values handed over.
+     */
+    public int drainTo(Consumer<? super T> sink, int max) {
+        long sequence = drained;
+        long end = head.get();
+        int count = 0;
+        while (sequence < end && count < max) {
+            Slot<T> slot = slots.get((int) (sequence & mask));
+            if (slot == null || slot.sequence < sequence) {
+                break; // Claimed but not yet published; pick it up on the next drain.
+            }
+            if (slot.sequence > sequence) {
+                // Overwritten: everything up to the oldest value still in the ring is lost.
+                long oldest = Math.max(sequence + 1, end - slots.length());
+                dropped.addAndGet(oldest - sequence);
+                sequence = oldest;
+                continue;
+            }
+            sink.accept(slot.value);
+            sequence++;
+            count++;
+        }
+        drained = sequence;
+        return count;
+    }
+
+    /**
+     * Returns up to {@code limit} of the most recent values, newest first, whether drained or not.
+     */
+    public List<T> recent(int limit) {
+        long end = head.get();
+        List<T> values = new ArrayList<>(Math.min(limit, slots.length()));
+        for (long sequence = end - 1; sequence >= 0 && sequence >= end - slots.length() && values.size() < limit; sequence--) {
+            Slot<T> slot = slots.get((int) (sequence & mask));
+            if (slot != null && slot.sequence == sequence) {
+                values.add(slot.value);
+            }
+        }
+        return values;
+    }
+
+    /** Values published but not yet drained. */
+    public long getBacklog() { return Math.max(head.get() - drained, 0); }
+    /** Values overwritten before the consumer could drain them. */
+    public long getDropped() { return dropped.get(); }
+    /** Times a producer had to wait under {@link OverflowPolicy#BLOCK}. */
+    public long getBlocked() { return blocked.get(); }
+    public int getCapacity() { return slots.length(); }
+
+    private static final class Slot<T> {
+        final long sequence;
+        final T value;
+
+        Slot(long sequence, T value) {
+            this.sequence = sequence;
+            this.value = value;
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package org.example.mock.util;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Parsed {@code Cache-Control} directives (RFC 9111, section 5.2) of a request or response, plus the
+ * HTTP date parsing the cache needs. Directive names are case-insensitive; a directive without an
+ * argument maps to an empty string.
+ */
+public final class CacheControl {
+
+    private static final long MAX_SECONDS = 1L << 31;
+    private static final CacheControl NONE = new CacheControl(Collections.emptyMap());
+
+    private final Map<String, String> directives;
+
+    private CacheControl(Map<String, String> directives) {
+        this.directives = directives;
+    }
+
+    /**
+     * Parses every {@code Cache-Control} value of a header list; null or empty gives no directives.
+     */
+    public static CacheControl parse(List<String> values) {
+        if (values == null || values.isEmpty()) {
+            return NONE;
+        }
+        Map<String, String> directives = new HashMap<>();
+        for (String value : values) {
+            if (value == null) {
+                continue;
+            }
+            // Quoted arguments (e.g. no-cache="Set-Cookie") may hold commas; split outside quotes only.
+            int start = 0;
+            boolean quoted = false;
+            for (int i = 0; i <= value.length(); i++) {
+                char c = i < value.length() ? value.charAt(i) : ',';
+                if (c == '"') {
+                    quoted = !quoted;
+                } else if (c == ',' && !quoted) {
+                    add(directives, value.substring(start, i));
+                    start = i + 1;
+                }
+            }
+        }
+        return directives.isEmpty() ? NONE : new CacheControl(directives);
+    }
+
+    private static void add(Map<String, String> directives, String directive) {
+        String trimmed = directive.trim();
+        if (trimmed.isEmpty()) {
+            return;
+        }
+        int eq = trimmed.indexOf('=');
+        String name = (eq < 0 ? trimmed : trimmed.substring(0, eq)).trim().toLowerCase(Locale.ROOT);
+        String argument = eq < 0 ? "" : trimmed.substring(eq + 1).trim();
+        if (argument.length() >= 2 && argument.startsWith("\"") && argument.endsWith("\"")) {
+            argument = argument.substring(1, argument.length() - 1);
+        }
+        directives.putIfAbsent(name, argument);
+    }
+
+    public boolean has(String directive) {
+        return directives.containsKey(directive);
+    }
+
+    /**
+     * The directive's argument in seconds, or -1 if it is absent or not a number. Values past 2^31 are
+     * capped there, as RFC 9111 asks.
+     */
+    public long seconds(String directive) {
+        String argument = directives.get(directive);
+        if (argument == null || argument.isEmpty() || !argument.chars().allMatch(Character::isDigit)) {
+            return -1;
+        }
+        try {
+            return Math.min(Long.parseLong(argument), MAX_SECONDS);
+        } catch (NumberFormatException e) {
+            return MAX_SECONDS;
+        }
+    }
+
+    /**
+     * An HTTP date (RFC 1123 form) in epoch milliseconds, or -1 if it is missing or malformed.
+     */
+    public static long parseDate(String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            return ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
+    }
+}
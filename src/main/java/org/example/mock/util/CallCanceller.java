@@ -0,0 +1,53 @@
+package org.example.mock.util;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lets one thread abort an upstream call that another thread is blocked in, e.g. the losing side of a
+ * hedged request: {@link #cancel()} closes the call's connection, so its pending write or read fails
+ * at once instead of waiting for the response or the read timeout.
+ * <p>
+ * The calling thread attaches each connection it leases and detaches it once the response head has
+ * arrived; from then on the caller owns the response and aborts it itself.
+ */
+public final class CallCanceller {
+
+    private static final Object CANCELLED = new Object();
+
+    private final AtomicReference<Object> state = new AtomicReference<>();
+
+    /**
+     * Registers the connection the call is about to use.
+     *
+     * @return false if the call was already cancelled; the connection has then been closed.
+     */
+    public boolean attach(HttpConnectionPool.Connection connection) {
+        if (state.compareAndSet(null, connection)) {
+            return true;
+        }
+        connection.closeQuietly();
+        return false;
+    }
+
+    /** Unregisters a connection whose exchange is over, or failed. */
+    public void detach(HttpConnectionPool.Connection connection) {
+        state.compareAndSet(connection, null);
+    }
+
+    /**
+     * Cancels the call: closes its attached connection, and makes any later {@link #attach} fail.
+     *
+     * @return false if it was already cancelled.
+     */
+    public boolean cancel() {
+        Object previous = state.getAndSet(CANCELLED);
+        if (previous instanceof HttpConnectionPool.Connection) {
+            ((HttpConnectionPool.Connection) previous).closeQuietly();
+        }
+        return previous != CANCELLED;
+    }
+
+    public boolean isCancelled() {
+        return state.get() == CANCELLED;
+    }
+}
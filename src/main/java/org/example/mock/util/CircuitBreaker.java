@@ -0,0 +1,232 @@
+package org.example.mock.util;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Lock-free circuit breaker over a rolling time window.
+ * <p>
+ * Outcomes are counted in {@code buckets} time slices covering {@code windowMs}. While CLOSED, once the
+ * window holds at least {@code minCalls} calls and the share of failed or of slow calls reaches its
+ * threshold, the breaker opens and {@link #tryAcquire()} refuses calls. After {@code openMs} the next
+ * caller moves it to HALF_OPEN, where {@code halfOpenCalls} trial calls are let through: one failure or
+ * slow call reopens it, that many successes close it with an empty window. State changes are single
+ * compare-and-set operations; counting is a few atomic increments. Counts that race with a bucket being
+ * recycled may be lost, which only makes the rates slightly approximate.
+ */
+public final class CircuitBreaker {
+
+    private static final Logger LOGGER = Logger.getLogger(CircuitBreaker.class.getName());
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private static final int CLOSED = 0;
+    private static final int OPEN = 1;
+    private static final int HALF_OPEN = 2;
+    private static final State[] STATES = {State.CLOSED, State.OPEN, State.HALF_OPEN};
+
+    private final String name;
+    private final int buckets;
+    private final long bucketMs;
+    private final AtomicLongArray bucketEpochs;
+    private final AtomicLongArray calls;
+    private final AtomicLongArray failures;
+    private final AtomicLongArray slowCalls;
+
+    private volatile int failureRatePercent;
+    private volatile int slowCallRatePercent;
+    private volatile long slowCallMs;
+    private volatile long openMs;
+    private final int minCalls;
+    private final int halfOpenCalls;
+
+    private final AtomicInteger state = new AtomicInteger(CLOSED);
+    private volatile long openedAt;
+    private final AtomicInteger trialPermits = new AtomicInteger();
+    private final AtomicInteger trialSuccesses = new AtomicInteger();
+    private final AtomicLong[] transitions = {new AtomicLong(), new AtomicLong(), new AtomicLong()};
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile long lastTransitionAt;
+
+    /**
+     * @param failureRatePercent  Failed calls in the window, in percent, that open the breaker; 0 never opens it.
+     * @param slowCallRatePercent Slow calls in the window, in percent, that open the breaker; 0 ignores slowness.
+     */
+    public CircuitBreaker(String name, long windowMs, int buckets, int minCalls, int halfOpenCalls,
+                          int failureRatePercent, int slowCallRatePercent, long slowCallMs, long openMs) {
+        this.name = name;
+        this.buckets = Math.max(buckets, 1);
+        this.bucketMs = Math.max(windowMs / this.buckets, 1);
+        this.bucketEpochs = new AtomicLongArray(this.buckets);
+        this.calls = new AtomicLongArray(this.buckets);
+        this.failures = new AtomicLongArray(this.buckets);
+        this.slowCalls = new AtomicLongArray(this.buckets);
+        this.minCalls = Math.max(minCalls, 1);
+        this.halfOpenCalls = Math.max(halfOpenCalls, 1);
+        configure(failureRatePercent, slowCallRatePercent, slowCallMs, openMs);
+    }
+
+    /** Changes the thresholds; the state and window are kept. */
+    public void configure(int failureRatePercent, int slowCallRatePercent, long slowCallMs, long openMs) {
+        if (failureRatePercent == this.failureRatePercent && slowCallRatePercent == this.slowCallRatePercent
+                && slowCallMs == this.slowCallMs && openMs == this.openMs) {
+            return; // Called per request; don't dirty the cache line when nothing changed.
+        }
+        this.failureRatePercent = failureRatePercent;
+        this.slowCallRatePercent = slowCallRatePercent;
+        this.slowCallMs = slowCallMs;
+        this.openMs = openMs;
+        if (failureRatePercent <= 0 && slowCallRatePercent <= 0 && state.get() != CLOSED) {
+            reset(); // Disabled while open.
+        }
+    }
+
+    /**
+     * Whether a call may go ahead. Every permitted call must be followed by {@link #onResult} or
+     * {@link #onIgnored()}.
+     */
+    public boolean tryAcquire() {
+        int current = state.get();
+        if (current == OPEN) {
+            if (System.currentTimeMillis() - openedAt < openMs) {
+                rejected.incrementAndGet();
+                return false;
+            }
+            if (state.compareAndSet(OPEN, HALF_OPEN)) {
+                trialSuccesses.set(0);
+                trialPermits.set(halfOpenCalls);
+                transitioned(HALF_OPEN, "after " + openMs + " ms open");
+            }
+            current = state.get();
+        }
+        if (current == HALF_OPEN) {
+            if (trialPermits.getAndDecrement() > 0) {
+                return true;
+            }
+            trialPermits.incrementAndGet();
+            rejected.incrementAndGet();
+            return false;
+        }
+        return current == CLOSED || tryAcquire();
+    }
+
+    /**
+     * Records the outcome of a permitted call.
+     */
+    public void onResult(boolean success, long durationMs) {
+        boolean slow = slowCallRatePercent > 0 && durationMs >= slowCallMs;
+        int current = state.get();
+        if (current == HALF_OPEN) {
+            if (!success || slow) {
+                open(HALF_OPEN, slow && success ? "a slow trial call" : "a failed trial call");
+            } else if (trialSuccesses.incrementAndGet() >= halfOpenCalls && state.compareAndSet(HALF_OPEN, CLOSED)) {
+                clearWindow();
+                transitioned(CLOSED, halfOpenCalls + " successful trial calls");
+            }
+            return;
+        }
+        if (current != CLOSED) {
+            return; // Started before the breaker opened.
+        }
+        int bucket = currentBucket();
+        calls.incrementAndGet(bucket);
+        if (!success) {
+            failures.incrementAndGet(bucket);
+        }
+        if (slow) {
+            slowCalls.incrementAndGet(bucket);
+        }
+        if (!success || slow) {
+            long[] window = window();
+            if (window[0] >= minCalls) {
+                if (failureRatePercent > 0 && window[1] * 100 >= window[0] * failureRatePercent) {
+                    open(CLOSED, window[1] + " of " + window[0] + " calls failed");
+                } else if (slowCallRatePercent > 0 && window[2] * 100 >= window[0] * slowCallRatePercent) {
+                    open(CLOSED, window[2] + " of " + window[0] + " calls took " + slowCallMs + " ms or more");
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases a permitted call that never reached the target (e.g. it was rejected by a bulkhead).
+     */
+    public void onIgnored() {
+        if (state.get() == HALF_OPEN) {
+            trialPermits.incrementAndGet();
+        }
+    }
+
+    /** Closes the breaker and empties its window. */
+    public void reset() {
+        int previous = state.getAndSet(CLOSED);
+        clearWindow();
+        if (previous != CLOSED) {
+            transitioned(CLOSED, "manual reset");
+        }
+    }
+
+    private void open(int from, String reason) {
+        if (failureRatePercent <= 0 && slowCallRatePercent <= 0) {
+            return;
+        }
+        openedAt = System.currentTimeMillis();
+        if (state.compareAndSet(from, OPEN)) {
+            transitioned(OPEN, reason);
+        }
+    }
+
+    private void transitioned(int to, String reason) {
+        transitions[to].incrementAndGet();
+        lastTransitionAt = System.currentTimeMillis();
+        LOGGER.log(to == OPEN ? Level.WARNING : Level.INFO, "Circuit {0} is now {1}: {2}", new Object[]{name, STATES[to], reason});
+    }
+
+    private int currentBucket() {
+        long epoch = System.currentTimeMillis() / bucketMs;
+        int bucket = (int) (epoch % buckets);
+        long seen = bucketEpochs.get(bucket);
+        if (seen != epoch && bucketEpochs.compareAndSet(bucket, seen, epoch)) {
+            calls.set(bucket, 0);
+            failures.set(bucket, 0);
+            slowCalls.set(bucket, 0);
+        }
+        return bucket;
+    }
+
+    /** Calls, failures and slow calls in the window. */
+    private long[] window() {
+        long oldest = System.currentTimeMillis() / bucketMs - buckets + 1;
+        long[] totals = new long[3];
+        for (int i = 0; i < buckets; i++) {
+            if (bucketEpochs.get(i) >= oldest) {
+                totals[0] += calls.get(i);
+                totals[1] += failures.get(i);
+                totals[2] += slowCalls.get(i);
+            }
+        }
+        return totals;
+    }
+
+    private void clearWindow() {
+        for (int i = 0; i < buckets; i++) {
+            bucketEpochs.set(i, 0);
+            calls.set(i, 0);
+            failures.set(i, 0);
+            slowCalls.set(i, 0);
+        }
+    }
+
+    public String getName() { return name; }
+    public State getState() { return STATES[state.get()]; }
+    public long getRejectedCount() { return rejected.get(); }
+    public long getTransitionCount(State to) { return transitions[to.ordinal()].get(); }
+    /** When the state last changed, in epoch milliseconds; 0 if it never did. */
+    public long getLastTransitionAt() { return lastTransitionAt; }
+    public long getWindowCalls() { return window()[0]; }
+    public long getWindowFailures() { return window()[1]; }
+    public long getWindowSlowCalls() { return window()[2]; }
+}
@@ -0,0 +1,252 @@
+package org.example.mock.util;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Approximate timer for large numbers of short delays.
+ * <p>
+ * Timeouts are hashed into a fixed ring of buckets ("the wheel") by their deadline. A single worker
+ * thread advances one bucket per tick and hands every expired task to a dispatcher executor, so a
+ * pending timeout costs one small node and scheduling or cancelling is O(1). Expiry is accurate to
+ * one tick; {@link #getLastLagMillis()} reports how late the most recent task actually fired.
+ */
+public final class HashedWheelTimer {
+
+    private static final Logger LOGGER = Logger.getLogger(HashedWheelTimer.class.getName());
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final Executor dispatcher;
+    private final Thread worker;
+    private final Queue<Node> incoming = new ConcurrentLinkedQueue<>();
+    private final Queue<Node> cancelled = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicLong lastLagNanos = new AtomicLong();
+    private final AtomicLong maxLagNanos = new AtomicLong();
+    private final long startTime;
+    private volatile boolean running = true;
+
+    /**
+     * @param threadFactory Creates the single worker thread.
+     * @param dispatcher    Runs expired tasks, so slow tasks never hold up the wheel.
+     * @param tickDuration  Resolution of the timer.
+     * @param unit          Unit of {@code tickDuration}.
+     * @param ticksPerWheel Number of buckets; rounded up to a power of two.
+     */
+    public HashedWheelTimer(ThreadFactory threadFactory, Executor dispatcher, long tickDuration, TimeUnit unit, int ticksPerWheel) {
+        this.tickNanos = Math.max(unit.toNanos(tickDuration), TimeUnit.MILLISECONDS.toNanos(1));
+        int size = Integer.highestOneBit(Math.max(ticksPerWheel, 1) - 1) << 1;
+        this.wheel = new Bucket[Math.max(size, 1)];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = wheel.length - 1;
+        this.dispatcher = dispatcher;
+        this.startTime = System.nanoTime();
+        this.worker = threadFactory.newThread(this::run);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * Schedules {@code task} to run once after {@code delay}.
+     */
+    public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) {
+        if (!running) {
+            throw new IllegalStateException("Timer has been stopped");
+        }
+        Node node = new Node(task, System.nanoTime() - startTime + unit.toNanos(delay));
+        pending.incrementAndGet();
+        incoming.add(node);
+        return node;
+    }
+
+    /** Number of scheduled timeouts that have neither fired nor been cancelled. */
+    public int getPendingTimeouts() { return pending.get(); }
+
+    /** How late, in milliseconds, the most recently expired timeout fired compared to its deadline. */
+    public long getLastLagMillis() { return TimeUnit.NANOSECONDS.toMillis(lastLagNanos.get()); }
+
+    /** Worst lag seen since the timer started, in milliseconds. */
+    public long getMaxLagMillis() { return TimeUnit.NANOSECONDS.toMillis(maxLagNanos.get()); }
+
+    /**
+     * Stops the worker thread. Timeouts that have not fired yet are discarded.
+     */
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void run() {
+        long tick = 0;
+        while (running) {
+            long deadline = tickNanos * (tick + 1);
+            long sleepNanos = deadline - (System.nanoTime() - startTime);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    if (!running) {
+                        return;
+                    }
+                    continue;
+                }
+            }
+            removeCancelled();
+            transferIncoming(tick);
+            expire(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+    }
+
+    private void transferIncoming(long currentTick) {
+        // Bounded per tick so a burst of scheduling cannot starve expiry.
+        for (int i = 0; i < 100_000; i++) {
+            Node node = incoming.poll();
+            if (node == null) {
+                return;
+            }
+            if (node.state.get() != Node.PENDING) {
+                continue;
+            }
+            long targetTick = node.deadline / tickNanos;
+            node.remainingRounds = (targetTick - currentTick) / wheel.length;
+            // Deadlines already in the past go into the current bucket and fire this tick.
+            long bucketTick = Math.max(targetTick, currentTick);
+            wheel[(int) (bucketTick & mask)].add(node);
+        }
+    }
+
+    private void removeCancelled() {
+        Node node;
+        while ((node = cancelled.poll()) != null) {
+            if (node.bucket != null) {
+                node.bucket.remove(node);
+            }
+        }
+    }
+
+    private void expire(Bucket bucket) {
+        Node node = bucket.head;
+        while (node != null) {
+            Node next = node.next;
+            if (node.remainingRounds <= 0) {
+                bucket.remove(node);
+                if (node.state.compareAndSet(Node.PENDING, Node.EXPIRED)) {
+                    pending.decrementAndGet();
+                    recordLag(System.nanoTime() - startTime - node.deadline);
+                    dispatch(node.task);
+                }
+            } else {
+                node.remainingRounds--;
+            }
+            node = next;
+        }
+    }
+
+    private void recordLag(long lag) {
+        long value = Math.max(lag, 0);
+        lastLagNanos.set(value);
+        long max;
+        while (value > (max = maxLagNanos.get()) && !maxLagNanos.compareAndSet(max, value)) {
+            // retry
+        }
+    }
+
+    private void dispatch(Runnable task) {
+        try {
+            dispatcher.execute(task);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Could not dispatch expired timer task", e);
+        }
+    }
+
+    /**
+     * Handle to a scheduled task.
+     */
+    public interface Timeout {
+        /**
+         * @return true if the task was cancelled before it fired.
+         */
+        boolean cancel();
+    }
+
+    private final class Node implements Timeout {
+        static final int PENDING = 0;
+        static final int CANCELLED = 1;
+        static final int EXPIRED = 2;
+
+        final Runnable task;
+        final long deadline;
+        final AtomicInteger state = new AtomicInteger(PENDING);
+        long remainingRounds;
+        // Only touched by the worker thread.
+        Bucket bucket;
+        Node prev;
+        Node next;
+
+        Node(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!state.compareAndSet(PENDING, CANCELLED)) {
+                return false;
+            }
+            pending.decrementAndGet();
+            cancelled.add(this);
+            return true;
+        }
+    }
+
+    /**
+     * Doubly linked list of nodes, owned by the worker thread.
+     */
+    private static final class Bucket {
+        Node head;
+        Node tail;
+
+        void add(Node node) {
+            node.bucket = this;
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+        }
+
+        void remove(Node node) {
+            if (node.bucket != this) {
+                return;
+            }
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.bucket = null;
+            node.prev = null;
+            node.next = null;
+        }
+    }
+}
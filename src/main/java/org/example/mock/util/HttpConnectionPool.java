@@ -0,0 +1,374 @@
+package org.example.mock.util;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded pool of keep-alive HTTP/1.1 connections to one origin ({@code scheme://host:port}).
+ * <p>
+ * At most {@code maxConnections} sockets exist at a time; callers beyond that wait (up to the lease
+ * timeout) for one to be released. Released connections are kept idle, newest first, and reused
+ * until they have been idle longer than {@code idleTimeoutMs}, the peer closes them, or
+ * {@link #evictIdle()} removes them. Connections idle for more than {@link #VALIDATE_AFTER_IDLE_MS}
+ * are checked for a peer close before they are handed out again; the check costs a 1 ms read
+ * timeout, so recently used connections skip it.
+ */
+public final class HttpConnectionPool {
+
+    static final long VALIDATE_AFTER_IDLE_MS = Settings.getLong("gateway.pool.validateAfterIdleMs", 2000);
+
+    private final String scheme;
+    private final String host;
+    private final int port;
+    private final int maxConnections;
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+    private final long idleTimeoutNanos;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition released = lock.newCondition();
+    private final Deque<Connection> idle = new ArrayDeque<>();
+    private int leased;
+    private int pending;
+    private boolean closed;
+
+    private final AtomicLong created = new AtomicLong();
+    private final AtomicLong reused = new AtomicLong();
+    private final AtomicLong leases = new AtomicLong();
+    private final AtomicLong leaseTimeouts = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    public HttpConnectionPool(String scheme, String host, int port, int maxConnections,
+                              int connectTimeoutMs, int readTimeoutMs, long idleTimeoutMs) {
+        this.scheme = scheme.toLowerCase();
+        this.host = host;
+        this.port = port;
+        this.maxConnections = Math.max(maxConnections, 1);
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMs);
+    }
+
+    /**
+     * Hands out an idle connection or opens a new one, waiting up to {@code timeoutMs} while the
+     * pool is exhausted.
+     *
+     * @throws LeaseTimeoutException if no connection became available in time.
+     */
+    public Connection lease(long timeoutMs) throws IOException {
+        long start = System.nanoTime();
+        long remaining = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        Connection connection = null;
+        boolean open = false;
+        lock.lock();
+        try {
+            while (connection == null && !open) {
+                if (closed) {
+                    throw new IOException("Connection pool for " + getOrigin() + " is closed");
+                }
+                connection = pollIdle();
+                if (connection == null && leased + idle.size() < maxConnections) {
+                    open = true;
+                } else if (connection == null) {
+                    if (remaining <= 0) {
+                        leaseTimeouts.incrementAndGet();
+                        throw new LeaseTimeoutException("Timed out after " + timeoutMs + " ms waiting for a connection to " + getOrigin());
+                    }
+                    pending++;
+                    try {
+                        remaining = released.awaitNanos(remaining);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new IOException("Interrupted while waiting for a connection to " + getOrigin(), e);
+                    } finally {
+                        pending--;
+                    }
+                }
+            }
+            leased++;
+        } finally {
+            lock.unlock();
+        }
+        recordWait(System.nanoTime() - start);
+        leases.incrementAndGet();
+
+        if (connection != null
+                && (System.nanoTime() - connection.idleSince < TimeUnit.MILLISECONDS.toNanos(VALIDATE_AFTER_IDLE_MS) || !connection.isStale())) {
+            reused.incrementAndGet();
+            connection.reused = true;
+            connection.socket.setSoTimeout(readTimeoutMs);
+            return connection;
+        }
+        if (connection != null) {
+            connection.closeQuietly();
+        }
+        try {
+            connection = connect();
+        } catch (IOException | RuntimeException e) {
+            releaseSlot();
+            throw e;
+        }
+        created.incrementAndGet();
+        return connection;
+    }
+
+    /**
+     * Returns a leased connection. Connections that are not {@code reusable} (half-read bodies,
+     * {@code Connection: close}, I/O errors) are closed instead of pooled.
+     */
+    public void release(Connection connection, boolean reusable) {
+        lock.lock();
+        try {
+            leased--;
+            if (reusable && !closed && !connection.socket.isClosed()) {
+                connection.idleSince = System.nanoTime();
+                idle.addFirst(connection);
+                connection = null;
+            }
+            released.signal();
+        } finally {
+            lock.unlock();
+        }
+        if (connection != null) {
+            connection.closeQuietly();
+        }
+    }
+
+    /**
+     * Closes connections that have been idle longer than the idle timeout.
+     *
+     * @return The number of connections closed.
+     */
+    public int evictIdle() {
+        Deque<Connection> expired = new ArrayDeque<>();
+        long now = System.nanoTime();
+        lock.lock();
+        try {
+            for (Iterator<Connection> it = idle.descendingIterator(); it.hasNext(); ) {
+                Connection connection = it.next();
+                if (now - connection.idleSince < idleTimeoutNanos) {
+                    break; // The rest were released more recently.
+                }
+                it.remove();
+                expired.add(connection);
+            }
+            if (!expired.isEmpty()) {
+                released.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+        expired.forEach(Connection::closeQuietly);
+        return expired.size();
+    }
+
+    /**
+     * Closes all idle connections and refuses new leases. Leased connections are closed when released.
+     */
+    public void close() {
+        Deque<Connection> toClose;
+        lock.lock();
+        try {
+            closed = true;
+            toClose = new ArrayDeque<>(idle);
+            idle.clear();
+            released.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        toClose.forEach(Connection::closeQuietly);
+    }
+
+    /** Whether this pool was built with the given settings, so callers can tell when to replace it. */
+    public boolean hasSettings(int maxConnections, int connectTimeoutMs, int readTimeoutMs) {
+        return this.maxConnections == Math.max(maxConnections, 1)
+                && this.connectTimeoutMs == connectTimeoutMs
+                && this.readTimeoutMs == readTimeoutMs;
+    }
+
+    private Connection pollIdle() {
+        long now = System.nanoTime();
+        Connection connection;
+        while ((connection = idle.pollFirst()) != null) {
+            if (now - connection.idleSince < idleTimeoutNanos) {
+                return connection;
+            }
+            connection.closeQuietly();
+        }
+        return null;
+    }
+
+    private void releaseSlot() {
+        lock.lock();
+        try {
+            leased--;
+            released.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void recordWait(long nanos) {
+        totalWaitNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, nanos)) {
+            // retry
+        }
+    }
+
+    private Connection connect() throws IOException {
+        boolean secure = "https".equals(scheme);
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            socket.connect(new InetSocketAddress(host, port), connectTimeoutMs);
+            socket.setSoTimeout(readTimeoutMs);
+            if (secure) {
+                SSLSocket ssl = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault()).createSocket(socket, host, port, true);
+                SSLParameters parameters = ssl.getSSLParameters();
+                parameters.setEndpointIdentificationAlgorithm("HTTPS");
+                ssl.setSSLParameters(parameters);
+                ssl.startHandshake();
+                socket = ssl;
+            }
+            return new Connection(this, socket);
+        } catch (IOException | RuntimeException e) {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // already failing
+            }
+            throw e;
+        }
+    }
+
+    public String getOrigin() { return scheme + "://" + host + ":" + port; }
+    public String getScheme() { return scheme; }
+    public String getHost() { return host; }
+    public int getPort() { return port; }
+    public int getMaxConnections() { return maxConnections; }
+    public int getConnectTimeoutMs() { return connectTimeoutMs; }
+    public int getReadTimeoutMs() { return readTimeoutMs; }
+
+    public int getLeased() {
+        lock.lock();
+        try {
+            return leased;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getIdle() {
+        lock.lock();
+        try {
+            return idle.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Callers currently waiting for a connection. */
+    public int getPending() {
+        lock.lock();
+        try {
+            return pending;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getCreatedCount() { return created.get(); }
+    public long getReusedCount() { return reused.get(); }
+    public long getLeaseCount() { return leases.get(); }
+    public long getLeaseTimeoutCount() { return leaseTimeouts.get(); }
+    public long getTotalWaitMillis() { return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.get()); }
+    public long getMaxWaitMillis() { return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get()); }
+
+    /**
+     * One pooled socket with its buffered streams.
+     */
+    public static final class Connection {
+        private final HttpConnectionPool pool;
+        private final Socket socket;
+        private final BufferedInputStream in;
+        private final BufferedOutputStream out;
+        private volatile long idleSince;
+        private boolean reused;
+
+        Connection(HttpConnectionPool pool, Socket socket) throws IOException {
+            this.pool = pool;
+            this.socket = socket;
+            this.in = new BufferedInputStream(socket.getInputStream(), HttpExchange.BUFFER_SIZE);
+            this.out = new BufferedOutputStream(socket.getOutputStream(), HttpExchange.BUFFER_SIZE);
+        }
+
+        public InputStream getInputStream() { return in; }
+        public OutputStream getOutputStream() { return out; }
+        public HttpConnectionPool getPool() { return pool; }
+        /** Whether this lease got a connection that had already served a request. */
+        public boolean isReused() { return reused; }
+
+        /**
+         * Detects a connection the peer has closed (or written garbage to) while it sat idle.
+         */
+        boolean isStale() {
+            if (socket.isClosed() || socket.isInputShutdown()) {
+                return true;
+            }
+            try {
+                socket.setSoTimeout(1);
+                in.mark(1);
+                int b = in.read();
+                if (b < 0) {
+                    return true;
+                }
+                in.reset();
+                return true; // Unsolicited bytes: the next response would be misread.
+            } catch (SocketTimeoutException e) {
+                return false;
+            } catch (IOException e) {
+                return true;
+            }
+        }
+
+        /** Closes the socket, e.g. to abort a request that is still being read. */
+        public void closeQuietly() {
+            try {
+                socket.close();
+            } catch (IOException ignored) {
+                // nothing to do
+            }
+        }
+    }
+
+    /**
+     * Thrown when the pool stays exhausted for the whole lease timeout.
+     */
+    public static final class LeaseTimeoutException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        LeaseTimeoutException(String message) {
+            super(message);
+        }
+    }
+}
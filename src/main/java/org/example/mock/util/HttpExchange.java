@@ -0,0 +1,435 @@
+package org.example.mock.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * One HTTP/1.1 request/response exchange over a {@link HttpConnectionPool.Connection}.
+ * <p>
+ * The request body, if any, is sent with Content-Length when it is known and chunked otherwise. The
+ * response body is exposed as a stream bounded by Content-Length or chunked framing; closing the
+ * {@link Response} after reading the body to the end returns the connection to its pool for reuse,
+ * closing it earlier discards the connection.
+ */
+public final class HttpExchange {
+
+    private static final int MAX_HEADER_BYTES = 64 * 1024;
+    /**
+     * Size of the socket and copy buffers ({@code gateway.bufferSize}, default 8 KB). Together with the
+     * log capture limit it bounds the memory one in-flight request needs, whatever the body size.
+     */
+    public static final int BUFFER_SIZE = Settings.getInt("gateway.bufferSize", 8192);
+
+    private HttpExchange() {
+    }
+
+    /**
+     * Sends a request and reads the response head.
+     *
+     * @param pathAndQuery  Request target, e.g. {@code /api/users?id=1}.
+     * @param headers       Headers to send; Host and the body framing headers are added here.
+     * @param body          Request body, or null for none.
+     * @param contentLength Length of {@code body}, or -1 to send it chunked.
+     */
+    public static Response execute(HttpConnectionPool.Connection connection, String method, String pathAndQuery,
+                                   Map<String, List<String>> headers, InputStream body, long contentLength) throws IOException {
+        HttpConnectionPool pool = connection.getPool();
+        OutputStream out = connection.getOutputStream();
+        StringBuilder head = new StringBuilder(256);
+        head.append(method).append(' ').append(pathAndQuery).append(" HTTP/1.1\r\n");
+        head.append("Host: ").append(pool.getHost());
+        if (pool.getPort() != ("https".equals(pool.getScheme()) ? 443 : 80)) {
+            head.append(':').append(pool.getPort());
+        }
+        head.append("\r\n");
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            for (String value : header.getValue()) {
+                head.append(header.getKey()).append(": ").append(value).append("\r\n");
+            }
+        }
+        if (body != null) {
+            head.append(contentLength >= 0 ? "Content-Length: " + contentLength : "Transfer-Encoding: chunked").append("\r\n");
+        }
+        head.append("\r\n");
+        out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        if (body != null) {
+            writeBody(body, contentLength, out);
+        }
+        out.flush();
+
+        InputStream in = connection.getInputStream();
+        int status;
+        String reason;
+        Map<String, List<String>> responseHeaders;
+        do {
+            String statusLine = readLine(in);
+            if (statusLine == null) {
+                throw new EOFException("Connection closed before the response status line");
+            }
+            String[] parts = statusLine.split(" ", 3);
+            if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+                throw new IOException("Malformed status line: " + statusLine);
+            }
+            try {
+                status = Integer.parseInt(parts[1]);
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed status line: " + statusLine, e);
+            }
+            reason = parts.length > 2 ? parts[2] : "";
+            responseHeaders = readHeaders(in);
+        } while (status >= 100 && status < 200 && status != 101); // Skip interim 100 Continue / 103 Early Hints.
+
+        boolean keepAlive = !containsToken(responseHeaders, "Connection", "close");
+        InputStream responseBody;
+        if ("HEAD".equalsIgnoreCase(method) || status == 204 || status == 304) {
+            responseBody = new FixedLengthInputStream(in, 0);
+        } else if (containsToken(responseHeaders, "Transfer-Encoding", "chunked")) {
+            responseBody = new ChunkedInputStream(in);
+        } else if (first(responseHeaders, "Content-Length") != null) {
+            try {
+                responseBody = new FixedLengthInputStream(in, Long.parseLong(first(responseHeaders, "Content-Length").trim()));
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed Content-Length: " + first(responseHeaders, "Content-Length"), e);
+            }
+        } else {
+            responseBody = in; // Delimited by connection close.
+            keepAlive = false;
+        }
+        return new Response(connection, status, reason, responseHeaders, responseBody, keepAlive);
+    }
+
+    private static void writeBody(InputStream body, long contentLength, OutputStream out) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        if (contentLength >= 0) {
+            long remaining = contentLength;
+            int read;
+            while (remaining > 0 && (read = body.read(buffer, 0, (int) Math.min(buffer.length, remaining))) != -1) {
+                out.write(buffer, 0, read);
+                remaining -= read;
+            }
+            if (remaining > 0) {
+                throw new EOFException("Request body ended " + remaining + " bytes before its Content-Length");
+            }
+        } else {
+            int read;
+            while ((read = body.read(buffer)) != -1) {
+                if (read > 0) {
+                    out.write(Integer.toHexString(read).getBytes(StandardCharsets.ISO_8859_1));
+                    out.write('\r');
+                    out.write('\n');
+                    out.write(buffer, 0, read);
+                    out.write('\r');
+                    out.write('\n');
+                }
+            }
+            out.write("0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        }
+    }
+
+    private static Map<String, List<String>> readHeaders(InputStream in) throws IOException {
+        Map<String, List<String>> headers = new LinkedHashMap<>();
+        int total = 0;
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            total += line.length();
+            if (total > MAX_HEADER_BYTES) {
+                throw new IOException("Response headers exceed " + MAX_HEADER_BYTES + " bytes");
+            }
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String name = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+            headers.computeIfAbsent(findName(headers, name), k -> new ArrayList<>(1)).add(value);
+        }
+        if (line == null) {
+            throw new EOFException("Connection closed inside the response headers");
+        }
+        return headers;
+    }
+
+    /** Keeps the first spelling seen for a header name, so repeated headers are grouped case-insensitively. */
+    private static String findName(Map<String, List<String>> headers, String name) {
+        for (String existing : headers.keySet()) {
+            if (existing.equalsIgnoreCase(name)) {
+                return existing;
+            }
+        }
+        return name;
+    }
+
+    static String first(Map<String, List<String>> headers, String name) {
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name) && !header.getValue().isEmpty()) {
+                return header.getValue().get(0);
+            }
+        }
+        return null;
+    }
+
+    private static boolean containsToken(Map<String, List<String>> headers, String name, String token) {
+        for (Map.Entry<String, List<String>> header : headers.entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name)) {
+                for (String value : header.getValue()) {
+                    for (String part : value.split(",")) {
+                        if (part.trim().equalsIgnoreCase(token)) {
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Reads one CRLF (or bare LF) terminated line as ISO-8859-1, or null at end of stream.
+     */
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                byte[] bytes = line.toByteArray();
+                int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+                return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+            }
+            if (line.size() >= MAX_HEADER_BYTES) {
+                throw new IOException("Response line exceeds " + MAX_HEADER_BYTES + " bytes");
+            }
+            line.write(b);
+        }
+        return line.size() == 0 ? null : new String(line.toByteArray(), StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Status, headers and body of an upstream response. Must be closed to release the connection.
+     */
+    public static final class Response implements Closeable {
+        private final HttpConnectionPool.Connection connection;
+        private final int status;
+        private final String reason;
+        private final Map<String, List<String>> headers;
+        private final InputStream body;
+        private final boolean keepAlive;
+        private boolean closed;
+
+        Response(HttpConnectionPool.Connection connection, int status, String reason,
+                 Map<String, List<String>> headers, InputStream body, boolean keepAlive) {
+            this.connection = connection;
+            this.status = status;
+            this.reason = reason;
+            this.headers = Collections.unmodifiableMap(headers);
+            this.body = body;
+            this.keepAlive = keepAlive;
+        }
+
+        public int getStatus() { return status; }
+        public String getReason() { return reason; }
+        /** Response headers in arrival order; names keep the upstream's spelling. */
+        public Map<String, List<String>> getHeaders() { return headers; }
+        public String getHeader(String name) { return first(headers, name); }
+        /** The body, already de-chunked but otherwise exactly as sent (still compressed, for example). */
+        public InputStream getBody() { return body; }
+
+        /**
+         * Drops the connection instead of returning it to the pool, e.g. when the client went away
+         * or a hedged request lost.
+         */
+        public void abort() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            connection.closeQuietly();
+            connection.getPool().release(connection, false);
+        }
+
+        /**
+         * Returns the connection to the pool if the body was read to the end, otherwise closes it.
+         */
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+            boolean complete = body instanceof BoundedBody && ((BoundedBody) body).isComplete();
+            connection.getPool().release(connection, keepAlive && complete);
+        }
+    }
+
+    private interface BoundedBody {
+        boolean isComplete();
+    }
+
+    private static final class FixedLengthInputStream extends InputStream implements BoundedBody {
+        private final InputStream in;
+        private long remaining;
+
+        FixedLengthInputStream(InputStream in, long length) {
+            this.in = in;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Response body ended " + remaining + " bytes early");
+            }
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int read = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (read < 0) {
+                throw new EOFException("Response body ended " + remaining + " bytes early");
+            }
+            remaining -= read;
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+
+        @Override
+        public boolean isComplete() {
+            return remaining <= 0;
+        }
+
+        @Override
+        public void close() {
+            // The connection's stream stays open; Response.close() decides what happens to it.
+        }
+    }
+
+    private static final class ChunkedInputStream extends InputStream implements BoundedBody {
+        private final InputStream in;
+        private long chunkRemaining;
+        private boolean eof;
+
+        ChunkedInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        private boolean nextChunk() throws IOException {
+            if (chunkRemaining > 0) {
+                return true;
+            }
+            if (eof) {
+                return false;
+            }
+            String size = readLine(in);
+            if (size == null) {
+                throw new EOFException("Connection closed inside a chunked body");
+            }
+            if (size.isEmpty()) { // CRLF that ends the previous chunk's data
+                size = readLine(in);
+                if (size == null) {
+                    throw new EOFException("Connection closed inside a chunked body");
+                }
+            }
+            int extension = size.indexOf(';');
+            try {
+                chunkRemaining = Long.parseLong((extension >= 0 ? size.substring(0, extension) : size).trim(), 16);
+            } catch (NumberFormatException e) {
+                throw new IOException("Malformed chunk size: " + size, e);
+            }
+            if (chunkRemaining == 0) {
+                readHeaders(in); // Trailers, up to the final empty line.
+                eof = true;
+                return false;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!nextChunk()) {
+                return -1;
+            }
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Connection closed inside a chunk");
+            }
+            chunkRemaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (!nextChunk()) {
+                return -1;
+            }
+            int read = in.read(buffer, offset, (int) Math.min(length, chunkRemaining));
+            if (read < 0) {
+                throw new EOFException("Connection closed inside a chunk");
+            }
+            chunkRemaining -= read;
+            return read;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), chunkRemaining);
+        }
+
+        @Override
+        public boolean isComplete() {
+            return eof;
+        }
+
+        @Override
+        public void close() {
+            // See FixedLengthInputStream.close().
+        }
+    }
+
+    /** Lower-cased header names that must not be forwarded by a proxy (RFC 7230 section 6.1). */
+    public static boolean isHopByHop(String name) {
+        switch (name.toLowerCase(Locale.ROOT)) {
+            case "connection":
+            case "keep-alive":
+            case "proxy-authenticate":
+            case "proxy-authorization":
+            case "proxy-connection":
+            case "te":
+            case "trailer":
+            case "transfer-encoding":
+            case "upgrade":
+                return true;
+            default:
+                return false;
+        }
+    }
+}
@@ -0,0 +1,703 @@
+package org.example.mock.util;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.math.BigDecimal;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Single-pass canonicalizer for JSON text.
+ * <p>
+ * The canonical form has no insignificant whitespace, object members sorted by key (UTF-16 code unit
+ * order, like {@link String#compareTo(String)}), strings re-escaped in one fixed way and numbers written
+ * in their shortest decimal form ({@code 1.0 -> 1}, {@code 1e2 -> 100}, {@code -0 -> 0}).
+ * Input is read once, in chunks, from a {@link String}, {@code char[]} or {@link Reader}. Arrays and
+ * scalars are written straight to the output; only object members are buffered (one reusable buffer
+ * per nesting level) so they can be sorted. The output can be a string or a SHA-256 digest of its
+ * UTF-8 bytes, in which case the canonical string is never built.
+ * <p>
+ * Instances are single-use and not thread-safe; use the static entry points.
+ */
+public final class JsonCanonicalizer {
+
+    private static final int MAX_DEPTH = 512;
+    private static final int CHUNK_SIZE = 8192;
+
+    private final Source in;
+    private final List<Frame> frames = new ArrayList<>();
+    private final StringBuilder scratch = new StringBuilder();
+    private int depth;
+
+    private JsonCanonicalizer(Source in) {
+        this.in = in;
+    }
+
+    /**
+     * Returns the canonical form of a JSON document, or null if the text is not valid JSON.
+     */
+    public static String canonicalize(String json) {
+        if (json == null) {
+            return null;
+        }
+        StringBuilder out = new StringBuilder(json.length());
+        try {
+            new JsonCanonicalizer(new Source(json)).document(new BuilderSink(out));
+            return out.toString();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Writes the canonical form of the JSON document read from {@code reader} to {@code out}.
+     *
+     * @throws MalformedJsonException if the input is not valid JSON.
+     * @throws IOException if reading or writing fails.
+     */
+    public static void canonicalize(Reader reader, Appendable out) throws IOException {
+        new JsonCanonicalizer(new Source(reader)).document(new AppendableSink(out));
+    }
+
+    /**
+     * Returns the SHA-256 digest of the UTF-8 encoded canonical form, or null if the text is not valid JSON.
+     * Equivalent to hashing {@link #canonicalize(String)} without materializing it.
+     */
+    public static byte[] digest(String json) {
+        if (json == null) {
+            return null;
+        }
+        return digest(new Source(json));
+    }
+
+    public static byte[] digest(char[] json, int offset, int length) {
+        return digest(new Source(json, offset, length));
+    }
+
+    /**
+     * Digest variant for streamed input.
+     *
+     * @throws MalformedJsonException if the input is not valid JSON.
+     */
+    public static byte[] digest(Reader reader) throws IOException {
+        DigestSink sink = new DigestSink(JsonUtil.newDigest());
+        new JsonCanonicalizer(new Source(reader)).document(sink);
+        return sink.finish();
+    }
+
+    private static byte[] digest(Source source) {
+        DigestSink sink = new DigestSink(JsonUtil.newDigest());
+        try {
+            new JsonCanonicalizer(source).document(sink);
+            return sink.finish();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    // --- Parser ---
+
+    private void document(Sink out) throws IOException {
+        skipWhitespace();
+        value(out);
+        skipWhitespace();
+        if (in.peek() != -1) {
+            throw malformed("Unexpected trailing content");
+        }
+    }
+
+    private void value(Sink out) throws IOException {
+        skipWhitespace();
+        int c = in.peek();
+        switch (c) {
+            case '{':
+                object(out);
+                break;
+            case '[':
+                array(out);
+                break;
+            case '"':
+                in.read();
+                scratch.setLength(0);
+                readString(scratch);
+                writeString(scratch, out);
+                break;
+            case 't':
+                literal("true", out);
+                break;
+            case 'f':
+                literal("false", out);
+                break;
+            case 'n':
+                literal("null", out);
+                break;
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    number(out);
+                } else {
+                    throw malformed("Unexpected character");
+                }
+        }
+    }
+
+    private void object(Sink out) throws IOException {
+        in.read(); // '{'
+        Frame frame = enter();
+        skipWhitespace();
+        if (in.peek() == '}') {
+            in.read();
+        } else {
+            while (true) {
+                skipWhitespace();
+                if (in.read() != '"') {
+                    throw malformed("Expected object key");
+                }
+                scratch.setLength(0);
+                readString(scratch);
+                String key = scratch.toString();
+                skipWhitespace();
+                if (in.read() != ':') {
+                    throw malformed("Expected ':'");
+                }
+                int start = frame.values.length();
+                value(frame);
+                frame.add(key, start, frame.values.length());
+                skipWhitespace();
+                int c = in.read();
+                if (c == '}') {
+                    break;
+                }
+                if (c != ',') {
+                    throw malformed("Expected ',' or '}'");
+                }
+            }
+        }
+        frame.emit(out);
+        depth--;
+    }
+
+    private void array(Sink out) throws IOException {
+        in.read(); // '['
+        enter();
+        out.append('[');
+        skipWhitespace();
+        if (in.peek() == ']') {
+            in.read();
+        } else {
+            while (true) {
+                value(out);
+                skipWhitespace();
+                int c = in.read();
+                if (c == ']') {
+                    break;
+                }
+                if (c != ',') {
+                    throw malformed("Expected ',' or ']'");
+                }
+                out.append(',');
+            }
+        }
+        out.append(']');
+        depth--;
+    }
+
+    private Frame enter() throws MalformedJsonException {
+        if (++depth > MAX_DEPTH) {
+            throw malformed("Nesting too deep");
+        }
+        if (frames.size() < depth) {
+            frames.add(new Frame());
+        }
+        Frame frame = frames.get(depth - 1);
+        frame.reset();
+        return frame;
+    }
+
+    /**
+     * Reads the rest of a string (after the opening quote) and appends its decoded characters to {@code target}.
+     */
+    private void readString(StringBuilder target) throws IOException {
+        while (true) {
+            int c = in.read();
+            if (c == '"') {
+                return;
+            }
+            if (c == -1 || c < 0x20) {
+                throw malformed("Unterminated string");
+            }
+            if (c != '\\') {
+                target.append((char) c);
+                continue;
+            }
+            int e = in.read();
+            switch (e) {
+                case '"': target.append('"'); break;
+                case '\\': target.append('\\'); break;
+                case '/': target.append('/'); break;
+                case 'b': target.append('\b'); break;
+                case 'f': target.append('\f'); break;
+                case 'n': target.append('\n'); break;
+                case 'r': target.append('\r'); break;
+                case 't': target.append('\t'); break;
+                case 'u':
+                    int code = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(in.read(), 16);
+                        if (digit < 0) {
+                            throw malformed("Invalid unicode escape");
+                        }
+                        code = (code << 4) | digit;
+                    }
+                    target.append((char) code);
+                    break;
+                default:
+                    throw malformed("Invalid escape");
+            }
+        }
+    }
+
+    private void number(Sink out) throws IOException {
+        StringBuilder token = scratch;
+        token.setLength(0);
+        boolean integral = true;
+        if (in.peek() == '-') {
+            token.append((char) in.read());
+        }
+        int c = in.peek();
+        if (c == '0') {
+            token.append((char) in.read());
+        } else if (c >= '1' && c <= '9') {
+            digits(token);
+        } else {
+            throw malformed("Invalid number");
+        }
+        if (in.peek() == '.') {
+            integral = false;
+            token.append((char) in.read());
+            if (digits(token) == 0) {
+                throw malformed("Invalid number");
+            }
+        }
+        c = in.peek();
+        if (c == 'e' || c == 'E') {
+            integral = false;
+            token.append((char) in.read());
+            c = in.peek();
+            if (c == '+' || c == '-') {
+                token.append((char) in.read());
+            }
+            if (digits(token) == 0) {
+                throw malformed("Invalid number");
+            }
+        }
+
+        // Plain integers (the common case) are already canonical, except for "-0".
+        if (integral && !(token.length() == 2 && token.charAt(0) == '-' && token.charAt(1) == '0')) {
+            out.append(token, 0, token.length());
+            return;
+        }
+        String canonical;
+        try {
+            canonical = canonicalNumber(new BigDecimal(token.toString()));
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw malformed("Number out of range");
+        }
+        out.append(canonical, 0, canonical.length());
+    }
+
+    private int digits(StringBuilder token) throws IOException {
+        int count = 0;
+        int c;
+        while ((c = in.peek()) >= '0' && c <= '9') {
+            token.append((char) in.read());
+            count++;
+        }
+        return count;
+    }
+
+    static String canonicalNumber(BigDecimal value) {
+        if (value.signum() == 0) {
+            return "0";
+        }
+        BigDecimal stripped = value.stripTrailingZeros();
+        int scale = stripped.scale();
+        if (scale >= -21 && scale <= 21) {
+            return stripped.toPlainString();
+        }
+        // Very large or very small magnitudes keep exponent notation, in a single fixed spelling.
+        return stripped.toString().replace("E+", "e").replace('E', 'e');
+    }
+
+    private void literal(String word, Sink out) throws IOException {
+        for (int i = 0; i < word.length(); i++) {
+            if (in.read() != word.charAt(i)) {
+                throw malformed("Invalid literal");
+            }
+        }
+        out.append(word, 0, word.length());
+    }
+
+    private void skipWhitespace() throws IOException {
+        int c;
+        while ((c = in.peek()) == ' ' || c == '\n' || c == '\r' || c == '\t') {
+            in.read();
+        }
+    }
+
+    private MalformedJsonException malformed(String message) {
+        return new MalformedJsonException(message + " at offset " + in.offset());
+    }
+
+    private static void writeString(CharSequence value, Sink out) throws IOException {
+        out.append('"');
+        int runStart = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char ch = value.charAt(i);
+            if (ch >= 0x20 && ch != '"' && ch != '\\') {
+                continue;
+            }
+            out.append(value, runStart, i);
+            runStart = i + 1;
+            switch (ch) {
+                case '"': out.append('\\'); out.append('"'); break;
+                case '\\': out.append('\\'); out.append('\\'); break;
+                case '\b': out.append('\\'); out.append('b'); break;
+                case '\f': out.append('\\'); out.append('f'); break;
+                case '\n': out.append('\\'); out.append('n'); break;
+                case '\r': out.append('\\'); out.append('r'); break;
+                case '\t': out.append('\\'); out.append('t'); break;
+                default:
+                    out.append('\\');
+                    out.append('u');
+                    out.append('0');
+                    out.append('0');
+                    out.append(Character.forDigit(ch >> 4, 16));
+                    out.append(Character.forDigit(ch & 0xF, 16));
+            }
+        }
+        out.append(value, runStart, value.length());
+        out.append('"');
+    }
+
+    /**
+     * Thrown when the input is not valid JSON.
+     */
+    public static class MalformedJsonException extends IOException {
+
+        private static final long serialVersionUID = 1L;
+
+        public MalformedJsonException(String message) {
+            super(message);
+        }
+    }
+
+    // --- Input ---
+
+    /**
+     * Chunked character source. Strings and readers are copied through a fixed buffer;
+     * char arrays are read in place.
+     */
+    private static final class Source {
+        private final Reader reader;
+        private final String string;
+        private int stringPos;
+        private char[] buf;
+        private int pos;
+        private int limit;
+        private long consumed;
+
+        Source(String string) {
+            this.reader = null;
+            this.string = string;
+            this.buf = new char[Math.min(CHUNK_SIZE, Math.max(string.length(), 1))];
+        }
+
+        Source(Reader reader) {
+            this.reader = reader;
+            this.string = null;
+            this.buf = new char[CHUNK_SIZE];
+        }
+
+        Source(char[] chars, int offset, int length) {
+            this.reader = null;
+            this.string = null;
+            this.buf = chars;
+            this.pos = offset;
+            this.limit = offset + length;
+            this.consumed = -offset;
+        }
+
+        int peek() throws IOException {
+            if (pos == limit && !fill()) {
+                return -1;
+            }
+            return buf[pos];
+        }
+
+        int read() throws IOException {
+            if (pos == limit && !fill()) {
+                return -1;
+            }
+            return buf[pos++];
+        }
+
+        long offset() {
+            return consumed + pos;
+        }
+
+        private boolean fill() throws IOException {
+            int n;
+            if (reader != null) {
+                n = reader.read(buf, 0, buf.length);
+            } else if (string != null) {
+                n = Math.min(string.length() - stringPos, buf.length);
+                if (n > 0) {
+                    string.getChars(stringPos, stringPos + n, buf, 0);
+                    stringPos += n;
+                }
+            } else {
+                n = -1;
+            }
+            if (n <= 0) {
+                return false;
+            }
+            consumed += limit;
+            pos = 0;
+            limit = n;
+            return true;
+        }
+    }
+
+    // --- Output ---
+
+    private interface Sink {
+        void append(char c) throws IOException;
+
+        void append(CharSequence s, int start, int end) throws IOException;
+    }
+
+    private static final class BuilderSink implements Sink {
+        private final StringBuilder out;
+
+        BuilderSink(StringBuilder out) { this.out = out; }
+
+        @Override
+        public void append(char c) { out.append(c); }
+
+        @Override
+        public void append(CharSequence s, int start, int end) { out.append(s, start, end); }
+    }
+
+    private static final class AppendableSink implements Sink {
+        private final Appendable out;
+
+        AppendableSink(Appendable out) { this.out = out; }
+
+        @Override
+        public void append(char c) throws IOException { out.append(c); }
+
+        @Override
+        public void append(CharSequence s, int start, int end) throws IOException { out.append(s, start, end); }
+    }
+
+    /**
+     * Encodes characters to UTF-8 straight into a {@link MessageDigest}, the same way
+     * {@code String.getBytes(UTF_8)} would (unpaired surrogates become {@code '?'}).
+     */
+    private static final class DigestSink implements Sink {
+        private final MessageDigest digest;
+        private final byte[] buf = new byte[CHUNK_SIZE];
+        private final char[] chars = new char[CHUNK_SIZE];
+        private int count;
+        private char pendingHigh;
+
+        DigestSink(MessageDigest digest) { this.digest = digest; }
+
+        /**
+         * Copies the range out in chunks and encodes runs of ASCII one byte per char, leaving only other
+         * characters (and a full buffer) to {@link #append(char)}.
+         */
+        @Override
+        public void append(CharSequence s, int start, int end) {
+            while (start < end) {
+                int n = Math.min(end - start, chars.length);
+                getChars(s, start, start + n, chars);
+                start += n;
+                int i = 0;
+                while (i < n) {
+                    int stop = i + Math.min(n - i, buf.length - count);
+                    if (pendingHigh == 0) {
+                        while (i < stop && chars[i] < 0x80) {
+                            buf[count++] = (byte) chars[i++];
+                        }
+                    }
+                    if (i < n) {
+                        append(chars[i++]);
+                    }
+                }
+            }
+        }
+
+        private static void getChars(CharSequence s, int start, int end, char[] dst) {
+            if (s instanceof String) {
+                ((String) s).getChars(start, end, dst, 0);
+            } else if (s instanceof StringBuilder) {
+                ((StringBuilder) s).getChars(start, end, dst, 0);
+            } else {
+                for (int i = start; i < end; i++) {
+                    dst[i - start] = s.charAt(i);
+                }
+            }
+        }
+
+        @Override
+        public void append(char c) {
+            if (count > buf.length - 4) {
+                flush();
+            }
+            if (pendingHigh != 0) {
+                char high = pendingHigh;
+                pendingHigh = 0;
+                if (Character.isLowSurrogate(c)) {
+                    int cp = Character.toCodePoint(high, c);
+                    buf[count++] = (byte) (0xF0 | (cp >> 18));
+                    buf[count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    buf[count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    buf[count++] = (byte) (0x80 | (cp & 0x3F));
+                    return;
+                }
+                buf[count++] = '?';
+                if (count > buf.length - 4) {
+                    flush();
+                }
+            }
+            if (c < 0x80) {
+                buf[count++] = (byte) c;
+            } else if (c < 0x800) {
+                buf[count++] = (byte) (0xC0 | (c >> 6));
+                buf[count++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c)) {
+                pendingHigh = c;
+            } else if (Character.isLowSurrogate(c)) {
+                buf[count++] = '?';
+            } else {
+                buf[count++] = (byte) (0xE0 | (c >> 12));
+                buf[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buf[count++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+
+        byte[] finish() {
+            if (pendingHigh != 0) {
+                pendingHigh = 0;
+                if (count == buf.length) {
+                    flush();
+                }
+                buf[count++] = '?';
+            }
+            flush();
+            return digest.digest();
+        }
+
+        private void flush() {
+            digest.update(buf, 0, count);
+            count = 0;
+        }
+    }
+
+    /**
+     * Buffered members of one object at one nesting level. Frames are reused for every object
+     * at the same depth, so steady-state canonicalization allocates only the key strings.
+     */
+    private static final class Frame implements Sink {
+        private static final int INSERTION_SORT_SIZE = 16;
+
+        final StringBuilder values = new StringBuilder();
+        String[] keys = new String[8];
+        int[] starts = new int[8];
+        int[] ends = new int[8];
+        int[] order = new int[8];
+        int[] merge = new int[8];
+        int size;
+
+        void reset() {
+            values.setLength(0);
+            Arrays.fill(keys, 0, size, null);
+            size = 0;
+        }
+
+        void add(String key, int start, int end) {
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+                starts = Arrays.copyOf(starts, size * 2);
+                ends = Arrays.copyOf(ends, size * 2);
+                order = new int[size * 2];
+                merge = new int[size * 2];
+            }
+            keys[size] = key;
+            starts[size] = start;
+            ends[size] = end;
+            size++;
+        }
+
+        void emit(Sink out) throws IOException {
+            for (int i = 0; i < size; i++) {
+                order[i] = i;
+            }
+            sort(0, size);
+            out.append('{');
+            for (int i = 0; i < size; i++) {
+                int member = order[i];
+                if (i > 0) {
+                    out.append(',');
+                }
+                writeString(keys[member], out);
+                out.append(':');
+                out.append(values, starts[member], ends[member]);
+            }
+            out.append('}');
+        }
+
+        /**
+         * Stable merge sort of {@code order[from, to)} by key, so duplicate keys keep their document order.
+         */
+        private void sort(int from, int to) {
+            if (to - from <= INSERTION_SORT_SIZE) {
+                for (int i = from + 1; i < to; i++) {
+                    int member = order[i];
+                    int j = i;
+                    while (j > from && keys[order[j - 1]].compareTo(keys[member]) > 0) {
+                        order[j] = order[j - 1];
+                        j--;
+                    }
+                    order[j] = member;
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            sort(from, mid);
+            sort(mid, to);
+            if (keys[order[mid - 1]].compareTo(keys[order[mid]]) <= 0) {
+                return;
+            }
+            System.arraycopy(order, from, merge, from, to - from);
+            int left = from;
+            int right = mid;
+            for (int i = from; i < to; i++) {
+                if (right == to || (left < mid && keys[merge[left]].compareTo(keys[merge[right]]) <= 0)) {
+                    order[i] = merge[left++];
+                } else {
+                    order[i] = merge[right++];
+                }
+            }
+        }
+
+        @Override
+        public void append(char c) { values.append(c); }
+
+        @Override
+        public void append(CharSequence s, int start, int end) { values.append(s, start, end); }
+    }
+}
@@ -1,23 +1,144 @@
 package org.example.mock.util;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
 public class JsonUtil {
 
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
     /**
-     * Normalizes a JSON string by removing spaces and newlines outside of quotes.
-     * This is a simple but effective way to make JSON strings comparable.
-     * Returns the original string if it's null, empty, or not valid JSON.
+     * Normalizes a request payload so that equivalent bodies compare equal.
+     * Valid JSON is canonicalized by {@link JsonCanonicalizer} (no whitespace, sorted keys, normalized
+     * numbers and escapes). Anything else (XML, plain text) has whitespace outside of double quotes removed.
+     * The result is idempotent: normalizing it again returns the same string.
      *
      * @param jsonString The JSON string to normalize.
-     * @return A minified JSON string or the original string if not applicable.
+     * @return The canonical string, or null if the input is null or blank.
      */
     public static String normalize(String jsonString) {
-        if (jsonString == null || jsonString.trim().isEmpty()) {
+        if (isBlank(jsonString)) {
             return null; // Return null for empty/null strings to match DB state
         }
+        String canonical = JsonCanonicalizer.canonicalize(jsonString);
+        return canonical != null ? canonical : minify(jsonString);
+    }
+
+    /**
+     * Removes whitespace that is not inside double quotes, without otherwise touching the text.
+     * Used for response payloads, where key order and number spelling should be kept as entered.
+     *
+     * @param text The text to minify.
+     * @return The minified text, or null if the input is null or blank.
+     */
+    public static String minify(String text) {
+        if (isBlank(text)) {
+            return null;
+        }
+        // Same result as the former replaceAll("\\s+(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)", ""): whitespace is
+        // dropped when an even number of quotes follows it, but computed in one linear pass.
+        int quotesAhead = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '"') {
+                quotesAhead++;
+            }
+        }
+        StringBuilder out = new StringBuilder(text.length());
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"') {
+                quotesAhead--;
+            } else if ((quotesAhead & 1) == 0 && isRegexWhitespace(c)) {
+                continue;
+            }
+            out.append(c);
+        }
+        return out.toString();
+    }
+
+    /**
+     * Same as {@code digest(normalize(payload))}. Hashing the canonical string is faster than
+     * {@link JsonCanonicalizer#digest(String)}, which never builds it (see JsonCanonicalizerBenchmark).
+     *
+     * @param payload The raw request payload.
+     * @return The 64-character hex digest, or null if the payload is null or blank.
+     */
+    public static String normalizedDigest(String payload) {
+        return digest(normalize(payload));
+    }
+
+    /**
+     * Escapes text for use inside a JSON string literal (without the surrounding quotes).
+     *
+     * @param text The raw text.
+     * @return The text with quotes, backslashes and control characters escaped.
+     */
+    public static String escape(String text) {
+        StringBuilder out = null;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                if (out != null) {
+                    out.append(c);
+                }
+                continue;
+            }
+            if (out == null) {
+                out = new StringBuilder(text.length() + 16).append(text, 0, i);
+            }
+            switch (c) {
+                case '"': out.append("\\\""); break;
+                case '\\': out.append("\\\\"); break;
+                case '\b': out.append("\\b"); break;
+                case '\f': out.append("\\f"); break;
+                case '\n': out.append("\\n"); break;
+                case '\r': out.append("\\r"); break;
+                case '\t': out.append("\\t"); break;
+                default:
+                    out.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+            }
+        }
+        return out == null ? text : out.toString();
+    }
+
+    /**
+     * Computes the SHA-256 digest of an already normalized payload, as a lowercase hex string.
+     *
+     * @param normalizedJson The output of {@link #normalize(String)}.
+     * @return The 64-character hex digest, or null if the payload is null.
+     */
+    public static String digest(String normalizedJson) {
+        if (normalizedJson == null) {
+            return null;
+        }
+        return toHex(newDigest().digest(normalizedJson.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            // Every Java platform is required to support SHA-256.
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String toHex(byte[] bytes) {
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            out[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            out[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(out);
+    }
+
+    private static boolean isBlank(String text) {
+        return text == null || text.trim().isEmpty();
+    }
 
-        // A simple regex to remove whitespace that is not inside quotes.
-        // This is generally safe for most JSON but can be replaced with a
-        // more robust library-based approach if needed.
-        return jsonString.replaceAll("\\s+(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)", "");
+    // The character class matched by the regex "\\s".
+    private static boolean isRegexWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r';
     }
-}
\ No newline at end of file
+}
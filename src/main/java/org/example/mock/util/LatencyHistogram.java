@@ -0,0 +1,133 @@
+package org.example.mock.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of latencies in microseconds, recorded by many threads without allocating.
+ * <p>
+ * Buckets are log-linear: values below 16 get a bucket each, and every power of two above is split into
+ * 16 equal buckets, so a reported percentile is at most 1/16 (6.25%) above the true value. The range ends
+ * at 2^36 µs (about 19 hours); larger values land in the last bucket. Recording is one atomic increment on
+ * the bucket plus two {@link LongAdder} updates; readers take a {@link Snapshot}, which may be off by the
+ * few values recorded while it is taken.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 36;
+    private static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 2) * SUB_BUCKETS;
+    private static final long MAX_VALUE = (1L << (MAX_EXPONENT + 1)) - 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    public void record(long micros) {
+        long value = Math.min(Math.max(micros, 0), MAX_VALUE);
+        counts.incrementAndGet(bucket(value));
+        count.increment();
+        sum.add(value);
+        long currentMax = max.get();
+        while (value > currentMax && !max.compareAndSet(currentMax, value)) {
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Empties the histogram. Values recorded concurrently may survive.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.set(0);
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+        }
+        return new Snapshot(copy, count.sum(), sum.sum(), max.get());
+    }
+
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /** Largest value that falls in {@code bucket}. */
+    static long highestValue(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BUCKET_BITS);
+        return lowest + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    /**
+     * Point-in-time copy of a histogram; snapshots of several histograms can be added together.
+     */
+    public static final class Snapshot {
+
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public Snapshot plus(Snapshot other) {
+            long[] merged = counts.clone();
+            for (int i = 0; i < BUCKETS; i++) {
+                merged[i] += other.counts[i];
+            }
+            return new Snapshot(merged, count + other.count, sum + other.sum, Math.max(max, other.max));
+        }
+
+        /**
+         * The value at or below which {@code quantile} (0 to 1) of the values fall, in microseconds;
+         * 0 if there are none.
+         */
+        public long percentile(double quantile) {
+            long total = 0;
+            for (long bucketCount : counts) {
+                total += bucketCount;
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max((long) Math.ceil(quantile * total), 1);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValue(i), max);
+                }
+            }
+            return max;
+        }
+
+        public long getCount() { return count; }
+        /** Sum of all values, in microseconds. */
+        public long getSum() { return sum; }
+        /** Largest value, in microseconds. */
+        public long getMax() { return max; }
+    }
+}
@@ -0,0 +1,104 @@
+package org.example.mock.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Segment trie for longest-prefix matching of URL paths: a value stored under {@code orders/v1}
+ * covers {@code orders/v1}, {@code orders/v1/42} and everything else below it, unless a longer
+ * prefix such as {@code orders/v1/admin} is also stored. Lookup walks the path once, so its cost
+ * depends on the path length and not on the number of prefixes.
+ * <p>
+ * Segments are compared literally; paths are split with {@link PathTemplateTrie#split(String)}.
+ * The trie is not thread-safe for writes; build it fully, then publish it for concurrent reads.
+ *
+ * @param <V> Value stored at the end of each prefix.
+ */
+public final class PathPrefixTrie<V> {
+
+    private final Node<V> root = new Node<>();
+    private int size;
+
+    /**
+     * Stores {@code value} under {@code prefix} unless a value is already stored there.
+     *
+     * @return The value now stored under {@code prefix}.
+     */
+    public V putIfAbsent(String[] prefix, V value) {
+        Node<V> node = root;
+        for (String segment : prefix) {
+            if (node.children == null) {
+                node.children = new HashMap<>();
+            }
+            node = node.children.computeIfAbsent(segment, k -> new Node<>());
+        }
+        if (node.value == null) {
+            node.value = value;
+            size++;
+        }
+        return node.value;
+    }
+
+    /**
+     * Finds the value stored under the longest prefix of {@code path}.
+     *
+     * @param path Path segments, as returned by {@link PathTemplateTrie#split(String)}.
+     * @return The match, or null if no stored prefix matches.
+     */
+    public Match<V> find(String[] path) {
+        Node<V> node = root;
+        Match<V> best = root.value != null ? new Match<>(root.value, 0) : null;
+        for (int i = 0; i < path.length && node.children != null; i++) {
+            node = node.children.get(path[i]);
+            if (node == null) {
+                break;
+            }
+            if (node.value != null) {
+                best = new Match<>(node.value, i + 1);
+            }
+        }
+        return best;
+    }
+
+    public int size() { return size; }
+
+    /**
+     * Returns what follows the first {@code segments} non-empty segments of {@code path}, starting
+     * with its slash, or an empty string if nothing follows. Unlike re-joining split segments, this
+     * keeps trailing and doubled slashes as the client sent them.
+     */
+    public static String remainder(String path, int segments) {
+        int i = 0;
+        for (int skipped = 0; skipped < segments; skipped++) {
+            while (i < path.length() && path.charAt(i) == '/') {
+                i++;
+            }
+            while (i < path.length() && path.charAt(i) != '/') {
+                i++;
+            }
+        }
+        return path.substring(i);
+    }
+
+    /**
+     * A lookup result: the stored value and how many path segments its prefix consumed.
+     */
+    public static final class Match<V> {
+
+        private final V value;
+        private final int length;
+
+        Match(V value, int length) {
+            this.value = value;
+            this.length = length;
+        }
+
+        public V getValue() { return value; }
+        public int getLength() { return length; }
+    }
+
+    private static final class Node<V> {
+        Map<String, Node<V>> children;
+        V value;
+    }
+}
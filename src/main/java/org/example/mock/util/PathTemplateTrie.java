@@ -0,0 +1,140 @@
+package org.example.mock.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Segment trie for URL path templates such as {@code users/{id}/orders/*}.
+ * <p>
+ * Each edge is one path segment: a literal, a {@code {name}} parameter matching any single segment,
+ * or a trailing {@code *} wildcard matching one or more remaining segments. Lookup walks the path
+ * once, preferring literal over parameter over wildcard at every level, and only backtracks when the
+ * preferred branch does not produce a match, so its cost depends on the path length and not on the
+ * number of templates.
+ * <p>
+ * The trie is not thread-safe for writes; build it fully, then publish it for concurrent reads.
+ *
+ * @param <V> Value stored at the end of each template.
+ */
+public final class PathTemplateTrie<V> {
+
+    public static final String WILDCARD = "*";
+
+    private final Node<V> root = new Node<>();
+
+    /**
+     * Splits a path into its non-empty segments, so leading, trailing and doubled slashes are ignored.
+     */
+    public static String[] split(String path) {
+        if (path == null || path.isEmpty()) {
+            return new String[0];
+        }
+        List<String> segments = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i <= path.length(); i++) {
+            if (i == path.length() || path.charAt(i) == '/') {
+                if (i > start) {
+                    segments.add(path.substring(start, i));
+                }
+                start = i + 1;
+            }
+        }
+        return segments.toArray(new String[0]);
+    }
+
+    /**
+     * @return The parameter name if {@code segment} is of the form {@code {name}}, otherwise null.
+     */
+    public static String parameterName(String segment) {
+        if (segment.length() > 2 && segment.charAt(0) == '{' && segment.charAt(segment.length() - 1) == '}') {
+            return segment.substring(1, segment.length() - 1);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the value stored for {@code template}, creating it with {@code factory} if needed.
+     */
+    public V computeIfAbsent(String[] template, Supplier<? extends V> factory) {
+        Node<V> node = root;
+        for (int i = 0; i < template.length; i++) {
+            String segment = template[i];
+            if (WILDCARD.equals(segment) && i == template.length - 1) {
+                if (node.wildcard == null) {
+                    node.wildcard = new Node<>();
+                }
+                node = node.wildcard;
+            } else if (parameterName(segment) != null) {
+                if (node.parameter == null) {
+                    node.parameter = new Node<>();
+                }
+                node = node.parameter;
+            } else {
+                if (node.literals == null) {
+                    node.literals = new HashMap<>();
+                }
+                node = node.literals.computeIfAbsent(segment, k -> new Node<>());
+            }
+        }
+        if (node.value == null) {
+            node.value = factory.get();
+        }
+        return node.value;
+    }
+
+    /**
+     * Finds the highest-precedence template matching {@code path} whose value the resolver accepts.
+     *
+     * @param path     Path segments, as returned by {@link #split(String)}.
+     * @param resolver Turns a stored value into a result, or returns null to keep searching.
+     * @param captures Receives the values of the parameters (in template order) followed by the
+     *                 wildcard remainder, if any. Only meaningful when a result is returned.
+     * @return The first non-null resolver result, or null if nothing matched.
+     */
+    public <R> R find(String[] path, Function<? super V, ? extends R> resolver, List<String> captures) {
+        return find(root, path, 0, resolver, captures);
+    }
+
+    private static <V, R> R find(Node<V> node, String[] path, int index, Function<? super V, ? extends R> resolver, List<String> captures) {
+        if (index == path.length) {
+            return node.value != null ? resolver.apply(node.value) : null;
+        }
+        if (node.literals != null) {
+            Node<V> child = node.literals.get(path[index]);
+            if (child != null) {
+                R result = find(child, path, index + 1, resolver, captures);
+                if (result != null) {
+                    return result;
+                }
+            }
+        }
+        if (node.parameter != null) {
+            captures.add(path[index]);
+            R result = find(node.parameter, path, index + 1, resolver, captures);
+            if (result != null) {
+                return result;
+            }
+            captures.remove(captures.size() - 1);
+        }
+        if (node.wildcard != null && node.wildcard.value != null) {
+            R result = resolver.apply(node.wildcard.value);
+            if (result != null) {
+                captures.add(String.join("/", Arrays.asList(path).subList(index, path.length)));
+                return result;
+            }
+        }
+        return null;
+    }
+
+    private static final class Node<V> {
+        Map<String, Node<V>> literals;
+        Node<V> parameter;
+        Node<V> wildcard;
+        V value;
+    }
+}
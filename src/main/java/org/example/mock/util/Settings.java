@@ -0,0 +1,56 @@
+package org.example.mock.util;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Tuning knobs read from JVM system properties (e.g. {@code -Dmock.compression.minBytes=2048}
+ * in the server start arguments), falling back to the given default when unset or invalid.
+ */
+public final class Settings {
+
+    private static final Logger LOGGER = Logger.getLogger(Settings.class.getName());
+
+    private Settings() {
+    }
+
+    public static int getInt(String name, int defaultValue) {
+        return (int) getLong(name, defaultValue);
+    }
+
+    public static long getLong(String name, long defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            LOGGER.log(Level.WARNING, "Ignoring invalid value ''{0}'' for {1}", new Object[]{value, name});
+            return defaultValue;
+        }
+    }
+
+    public static double getDouble(String name, double defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            LOGGER.log(Level.WARNING, "Ignoring invalid value ''{0}'' for {1}", new Object[]{value, name});
+            return defaultValue;
+        }
+    }
+
+    public static boolean getBoolean(String name, boolean defaultValue) {
+        String value = System.getProperty(name);
+        return value == null || value.trim().isEmpty() ? defaultValue : Boolean.parseBoolean(value.trim());
+    }
+
+    public static String getString(String name, String defaultValue) {
+        String value = System.getProperty(name);
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+}
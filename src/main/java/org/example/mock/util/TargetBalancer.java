@@ -0,0 +1,274 @@
+package org.example.mock.util;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Lock-free weighted load balancing over a set of upstream targets, with passive health checking.
+ * <p>
+ * {@link #pick()} draws two distinct targets at random in proportion to their weights and takes the one
+ * with fewer calls outstanding per unit of weight, or the first drawn on a tie (power of two choices), so
+ * an idle rule still spreads calls by weight. With {@link Strategy#LEAST_OUTSTANDING} it scans every
+ * target instead, starting at a weighted random one. A target whose calls
+ * fail {@code ejectAfterFailures} times in a row (unreachable, timed out or 5xx) is ejected: skipped for
+ * {@code ejectMs}, times the number of ejections since its last success (at most
+ * {@value #MAX_EJECTION_MULTIPLIER}). If every target is ejected they are all used anyway, so the rule
+ * keeps answering. Counting is a few atomic updates per call; the target set itself is immutable.
+ */
+public final class TargetBalancer {
+
+    private static final Logger LOGGER = Logger.getLogger(TargetBalancer.class.getName());
+    private static final int MAX_EJECTION_MULTIPLIER = 8;
+    public static final int MAX_WEIGHT = 1000;
+
+    public enum Strategy { POWER_OF_TWO, LEAST_OUTSTANDING }
+
+    private final String spec;
+    private final Target[] targets;
+    private final Strategy strategy;
+    private final int ejectAfterFailures;
+    private final long ejectMs;
+
+    /**
+     * @param spec               The target list this balancer was built from, see {@link #parse}.
+     * @param ejectAfterFailures Consecutive failures that eject a target; 0 never ejects.
+     */
+    public TargetBalancer(String spec, List<Target> targets, Strategy strategy, int ejectAfterFailures, long ejectMs) {
+        if (targets.isEmpty()) {
+            throw new IllegalArgumentException("No targets");
+        }
+        this.spec = spec;
+        this.targets = targets.toArray(new Target[0]);
+        this.strategy = strategy;
+        this.ejectAfterFailures = ejectAfterFailures;
+        this.ejectMs = ejectMs;
+    }
+
+    /**
+     * Parses a target list: entries separated by line breaks or commas, each a base URL optionally
+     * followed by whitespace and a weight from 1 to {@value #MAX_WEIGHT} (default 1).
+     *
+     * @return Weight per base URL, in the order listed; a URL listed twice keeps its first weight.
+     * @throws IllegalArgumentException If an entry is malformed or the list is empty.
+     */
+    public static Map<String, Integer> parse(String spec) {
+        Map<String, Integer> targets = new LinkedHashMap<>();
+        for (String entry : (spec == null ? "" : spec).split("[,\\r\\n]+")) {
+            String[] parts = entry.trim().split("\\s+");
+            if (parts[0].isEmpty()) {
+                continue;
+            }
+            if (parts.length > 2 || !(parts[0].startsWith("http://") || parts[0].startsWith("https://"))) {
+                throw new IllegalArgumentException("Expected \"http(s)://host[:port][/path] [weight]\", got \"" + entry.trim() + "\"");
+            }
+            int weight = 1;
+            if (parts.length == 2) {
+                try {
+                    weight = Integer.parseInt(parts[1]);
+                } catch (NumberFormatException e) {
+                    weight = -1;
+                }
+                if (weight < 1 || weight > MAX_WEIGHT) {
+                    throw new IllegalArgumentException("Weight of " + parts[0] + " must be 1 to " + MAX_WEIGHT + ", got " + parts[1]);
+                }
+            }
+            targets.putIfAbsent(parts[0], weight);
+        }
+        if (targets.isEmpty()) {
+            throw new IllegalArgumentException("No targets");
+        }
+        return targets;
+    }
+
+    /**
+     * Chooses the target for a call and counts the call as outstanding on it. Every pick must be followed
+     * by {@link #release}, and by {@link #onResult} if the call reached the target.
+     */
+    public Target pick() {
+        return pick(null);
+    }
+
+    /**
+     * Like {@link #pick()}, but never chooses {@code avoid} while there is another target, e.g. for a
+     * hedged request that should not queue behind the call it hedges.
+     */
+    public Target pick(Target avoid) {
+        Target chosen;
+        if (targets.length == 1) {
+            chosen = targets[0];
+        } else {
+            long now = System.currentTimeMillis();
+            int healthyWeight = 0;
+            for (Target target : targets) {
+                if (target != avoid && !target.isEjected(now)) {
+                    healthyWeight += target.weight;
+                }
+            }
+            // With every target ejected, none is singled out: all are used until one recovers.
+            boolean all = healthyWeight == 0;
+            if (all) {
+                for (Target target : targets) {
+                    if (target != avoid) {
+                        healthyWeight += target.weight;
+                    }
+                }
+            }
+            if (strategy == Strategy.LEAST_OUTSTANDING) {
+                chosen = leastLoaded(draw(now, all, healthyWeight, avoid, null), now, all, avoid);
+            } else {
+                Target first = draw(now, all, healthyWeight, avoid, null);
+                Target second = healthyWeight > first.weight ? draw(now, all, healthyWeight - first.weight, avoid, first) : null;
+                chosen = second == null || !lessLoaded(second, first) ? first : second;
+            }
+        }
+        chosen.inFlight.incrementAndGet();
+        return chosen;
+    }
+
+    private static boolean usable(Target target, long now, boolean all, Target avoid) {
+        return target != avoid && (all || !target.isEjected(now));
+    }
+
+    /** A random usable target other than {@code excluded}, weighted; {@code totalWeight} is theirs summed. */
+    private Target draw(long now, boolean all, int totalWeight, Target avoid, Target excluded) {
+        int remaining = ThreadLocalRandom.current().nextInt(totalWeight);
+        Target last = null;
+        for (Target target : targets) {
+            if (target != excluded && usable(target, now, all, avoid)) {
+                last = target;
+                remaining -= target.weight;
+                if (remaining < 0) {
+                    return target;
+                }
+            }
+        }
+        // Short only if a target was ejected or came back since the weights were summed.
+        return last != null ? last : targets[targets[0] == avoid ? 1 : 0];
+    }
+
+    private Target leastLoaded(Target start, long now, boolean all, Target avoid) {
+        // Ties go to the target scanned first, so starting at a weighted draw spreads them by weight.
+        int offset = Arrays.asList(targets).indexOf(start);
+        Target best = null;
+        for (int i = 0; i < targets.length; i++) {
+            Target target = targets[(offset + i) % targets.length];
+            if (usable(target, now, all, avoid) && (best == null || lessLoaded(target, best))) {
+                best = target;
+            }
+        }
+        return best != null ? best : start;
+    }
+
+    /** Whether {@code a} has fewer outstanding calls per unit of weight than {@code b}. */
+    private static boolean lessLoaded(Target a, Target b) {
+        return (long) a.inFlight.get() * b.weight < (long) b.inFlight.get() * a.weight;
+    }
+
+    /**
+     * Records the outcome of a call that reached {@code target}: the time to its response head, and
+     * whether the target answered without a 5xx.
+     */
+    public void onResult(Target target, boolean success, long micros) {
+        target.calls.increment();
+        target.recordLatency(micros);
+        if (success) {
+            if (target.consecutiveFailures.get() != 0) {
+                target.consecutiveFailures.set(0);
+            }
+            if (target.ejectionStreak.get() != 0) {
+                target.ejectionStreak.set(0);
+            }
+            return;
+        }
+        target.failures.increment();
+        if (ejectAfterFailures > 0 && targets.length > 1
+                && target.consecutiveFailures.incrementAndGet() >= ejectAfterFailures) {
+            long now = System.currentTimeMillis();
+            long until = target.ejectedUntil.get();
+            // One of the racing failures ejects it; the others find it already ejected.
+            if (until <= now) {
+                int streak = Math.min(target.ejectionStreak.incrementAndGet(), MAX_EJECTION_MULTIPLIER);
+                if (target.ejectedUntil.compareAndSet(until, now + ejectMs * streak)) {
+                    target.consecutiveFailures.set(0);
+                    target.ejections.increment();
+                    LOGGER.log(Level.WARNING, "Target {0} ejected for {1} ms after {2} consecutive failures",
+                            new Object[]{target.baseUrl, ejectMs * streak, ejectAfterFailures});
+                } else {
+                    target.ejectionStreak.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    /**
+     * Ends a call picked on {@code target}, once its response has been relayed or it failed.
+     */
+    public void release(Target target) {
+        target.inFlight.decrementAndGet();
+    }
+
+    public String getSpec() { return spec; }
+    public Strategy getStrategy() { return strategy; }
+
+    public List<Target> getTargets() {
+        return Collections.unmodifiableList(Arrays.asList(targets));
+    }
+
+    /**
+     * One upstream base URL and its live counters. A target is kept when its rule's target list changes
+     * but still holds it with the same weight, so its counters and ejection survive the edit.
+     */
+    public static final class Target {
+
+        private final String baseUrl;
+        private final int weight;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder ejections = new LongAdder();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private final AtomicInteger ejectionStreak = new AtomicInteger();
+        private final AtomicLong ejectedUntil = new AtomicLong();
+        // Moving average of the time to the response head, weighting each new call 1/8 (as TCP does).
+        private final AtomicLong latencyMicros = new AtomicLong();
+
+        public Target(String baseUrl, int weight) {
+            this.baseUrl = baseUrl;
+            this.weight = weight;
+        }
+
+        private void recordLatency(long micros) {
+            long current;
+            long next;
+            do {
+                current = latencyMicros.get();
+                next = current == 0 ? Math.max(micros, 1) : current + (micros - current) / 8;
+            } while (!latencyMicros.compareAndSet(current, next));
+        }
+
+        private boolean isEjected(long now) {
+            return ejectedUntil.get() > now;
+        }
+
+        public String getBaseUrl() { return baseUrl; }
+        public int getWeight() { return weight; }
+        public int getInFlight() { return inFlight.get(); }
+        public long getCallCount() { return calls.sum(); }
+        public long getFailureCount() { return failures.sum(); }
+        public long getEjectionCount() { return ejections.sum(); }
+        public boolean isEjected() { return isEjected(System.currentTimeMillis()); }
+        /** When the current ejection ends, in epoch milliseconds; in the past if the target is not ejected. */
+        public long getEjectedUntil() { return ejectedUntil.get(); }
+        /** Moving average of the time to the response head, in microseconds; 0 before the first call. */
+        public long getLatencyMicros() { return latencyMicros.get(); }
+    }
+}
@@ -0,0 +1,187 @@
+package org.example.mock.rest;
+
+import org.example.mock.service.EncodedBody;
+import org.junit.Test;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.Variant;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MockResponsesTest {
+
+    private static final String PAYLOAD = payload();
+    private static final EncodedBody BODY = EncodedBody.encode(PAYLOAD, MediaType.APPLICATION_JSON);
+
+    @Test
+    public void noAcceptEncodingGetsIdentity() {
+        Response response = MockResponses.build(200, BODY, null, null);
+        assertEncoding(null, response);
+        assertArrayEquals(PAYLOAD.getBytes(StandardCharsets.UTF_8), (byte[]) response.getEntity());
+        assertEquals(String.valueOf(PAYLOAD.getBytes(StandardCharsets.UTF_8).length), response.getHeaderString(HttpHeaders.CONTENT_LENGTH));
+        assertEquals(HttpHeaders.ACCEPT_ENCODING, response.getHeaderString(HttpHeaders.VARY));
+    }
+
+    @Test
+    public void prefersGzipOverDeflate() throws IOException {
+        Response response = MockResponses.build(200, BODY, null, "deflate, gzip");
+        assertEncoding(EncodedBody.GZIP, response);
+        byte[] bytes = (byte[]) response.getEntity();
+        assertTrue(bytes.length < PAYLOAD.length());
+        assertEquals(String.valueOf(bytes.length), response.getHeaderString(HttpHeaders.CONTENT_LENGTH));
+        assertEquals(PAYLOAD, read(new GZIPInputStream(new ByteArrayInputStream(bytes))));
+        assertEquals(HttpHeaders.ACCEPT_ENCODING, response.getHeaderString(HttpHeaders.VARY));
+    }
+
+    @Test
+    public void acceptsXGzipAndAnyCase() {
+        assertEncoding(EncodedBody.GZIP, MockResponses.build(200, BODY, null, "x-gzip"));
+        assertEncoding(EncodedBody.GZIP, MockResponses.build(200, BODY, null, "GZip"));
+    }
+
+    @Test
+    public void qZeroRefusesACoding() throws IOException {
+        Response response = MockResponses.build(200, BODY, null, "gzip;q=0, deflate;q=0.5");
+        assertEncoding(EncodedBody.DEFLATE, response);
+        assertEquals(PAYLOAD, read(new InflaterInputStream(new ByteArrayInputStream((byte[]) response.getEntity()))));
+
+        assertEncoding(null, MockResponses.build(200, BODY, null, "gzip; q=0.000, deflate;q=0"));
+        assertEncoding(null, MockResponses.build(200, BODY, null, "gzip;q=oops"));
+    }
+
+    @Test
+    public void wildcardAcceptsCodingsNotListed() {
+        assertEncoding(EncodedBody.GZIP, MockResponses.build(200, BODY, null, "*"));
+        assertEncoding(EncodedBody.DEFLATE, MockResponses.build(200, BODY, null, "gzip;q=0, *"));
+        assertEncoding(EncodedBody.GZIP, MockResponses.build(200, BODY, null, "br, *;q=0.1"));
+        assertEncoding(null, MockResponses.build(200, BODY, null, "*;q=0"));
+    }
+
+    @Test
+    public void unknownCodingsFallBackToIdentity() {
+        for (String acceptEncoding : new String[]{"", "identity", "br", "compress, br;q=1.0", "identity;q=1, gzip;q=0"}) {
+            Response response = MockResponses.build(200, BODY, null, acceptEncoding);
+            assertEncoding(null, response);
+            assertEquals(acceptEncoding, HttpHeaders.ACCEPT_ENCODING, response.getHeaderString(HttpHeaders.VARY));
+        }
+    }
+
+    @Test
+    public void eachEncodingHasItsOwnStrongETag() {
+        EntityTag identity = MockResponses.build(200, BODY, null, null).getEntityTag();
+        EntityTag gzip = MockResponses.build(200, BODY, null, "gzip").getEntityTag();
+        EntityTag deflate = MockResponses.build(200, BODY, null, "deflate").getEntityTag();
+        assertEquals(identity.getValue() + "-gzip", gzip.getValue());
+        assertEquals(identity.getValue() + "-deflate", deflate.getValue());
+        assertTrue(!identity.isWeak() && !gzip.isWeak() && !deflate.isWeak());
+    }
+
+    @Test
+    public void smallBodiesAreNeitherCompressedNorVaried() {
+        EncodedBody small = EncodedBody.encode("{\"ok\":true}", MediaType.APPLICATION_JSON);
+        Response response = MockResponses.build(200, small, null, "gzip, deflate");
+        assertEncoding(null, response);
+        assertNull(response.getHeaderString(HttpHeaders.VARY));
+        assertTrue(response.getEntityTag() != null);
+    }
+
+    @Test
+    public void uncachedBodiesHaveNoETagOrVary() {
+        EncodedBody rendered = EncodedBody.uncached(PAYLOAD.getBytes(StandardCharsets.UTF_8), MediaType.APPLICATION_JSON);
+        Response response = MockResponses.build(200, rendered, new MatchingRequest(), "gzip");
+        assertEquals(200, response.getStatus());
+        assertEncoding(null, response);
+        assertNull(response.getEntityTag());
+        assertNull(response.getHeaderString(HttpHeaders.VARY));
+    }
+
+    @Test
+    public void notModifiedKeepsVaryAndTheVariantETag() {
+        EntityTag gzip = MockResponses.build(200, BODY, null, "gzip").getEntityTag();
+        Response response = MockResponses.build(200, BODY, new MatchingRequest(gzip), "gzip");
+        assertEquals(304, response.getStatus());
+        assertNull(response.getEntity());
+        assertEquals(gzip, response.getEntityTag());
+        assertEquals(HttpHeaders.ACCEPT_ENCODING, response.getHeaderString(HttpHeaders.VARY));
+
+        // The identity ETag does not match the gzip variant.
+        assertEquals(200, MockResponses.build(200, BODY, new MatchingRequest(gzip), null).getStatus());
+    }
+
+    @Test
+    public void preconditionsOnlyApplyToOk() {
+        EntityTag gzip = MockResponses.build(200, BODY, null, "gzip").getEntityTag();
+        Response response = MockResponses.build(404, BODY, new MatchingRequest(gzip), "gzip");
+        assertEquals(404, response.getStatus());
+        assertEncoding(EncodedBody.GZIP, response);
+    }
+
+    private static void assertEncoding(String expected, Response response) {
+        assertEquals(expected, response.getHeaderString(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int n; (n = in.read(buffer)) > 0; ) {
+            out.write(buffer, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static String payload() {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 100; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"id\":").append(i).append(",\"name\":\"item ").append(i).append("\",\"active\":true}");
+        }
+        return json.append(']').toString();
+    }
+
+    /**
+     * Answers If-None-Match the way the container does, for one ETag (or none).
+     */
+    private static final class MatchingRequest implements Request {
+
+        private final EntityTag ifNoneMatch;
+
+        MatchingRequest() {
+            this(null);
+        }
+
+        MatchingRequest(EntityTag ifNoneMatch) {
+            this.ifNoneMatch = ifNoneMatch;
+        }
+
+        @Override
+        public Response.ResponseBuilder evaluatePreconditions(EntityTag eTag) {
+            return ifNoneMatch != null && ifNoneMatch.equals(eTag) ? Response.notModified(eTag) : null;
+        }
+
+        @Override
+        public String getMethod() { return "GET"; }
+        @Override
+        public Variant selectVariant(List<Variant> variants) { throw new UnsupportedOperationException(); }
+        @Override
+        public Response.ResponseBuilder evaluatePreconditions(Date lastModified) { throw new UnsupportedOperationException(); }
+        @Override
+        public Response.ResponseBuilder evaluatePreconditions(Date lastModified, EntityTag eTag) { throw new UnsupportedOperationException(); }
+        @Override
+        public Response.ResponseBuilder evaluatePreconditions() { throw new UnsupportedOperationException(); }
+    }
+}
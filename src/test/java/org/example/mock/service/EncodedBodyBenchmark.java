@@ -0,0 +1,118 @@
+package org.example.mock.service;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.ws.rs.core.MediaType;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Mock responses served over one simulated 1 Gbit/s link (8 ns per byte, overlapping the CPU work):
+ * identity bytes, the pre-compressed gzip variant, and gzip compressed per request as a servlet filter
+ * would. ops/s is responses per second; {@code wireBytes} is the bandwidth used.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodedBodyBenchmark {
+
+    private static final long NANOS_PER_BYTE = 8;
+
+    @Param({"4096", "65536", "1048576"})
+    private int size;
+
+    private EncodedBody body;
+    private byte[] raw;
+    private long linkFreeAt;
+
+    /**
+     * Bytes put on the link, reported by JMH as a rate.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Wire {
+        public long wireBytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            wireBytes = 0;
+        }
+    }
+
+    @Setup
+    public void setUp() {
+        String payload = payload(size);
+        raw = payload.getBytes(StandardCharsets.UTF_8);
+        body = EncodedBody.encode(payload, MediaType.APPLICATION_JSON);
+    }
+
+    @Benchmark
+    public byte[] identity(Wire wire) {
+        return send(body.select(null).getBytes(), wire);
+    }
+
+    @Benchmark
+    public byte[] precompressedGzip(Wire wire) {
+        return send(body.select("gzip, deflate").getBytes(), wire);
+    }
+
+    @Benchmark
+    public byte[] gzipPerRequest(Wire wire) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(raw.length / 4);
+        try (GZIPOutputStream out = new GZIPOutputStream(buffer)) {
+            out.write(raw);
+        }
+        return send(buffer.toByteArray(), wire);
+    }
+
+    /**
+     * Waits until the link has finished the previous response, then queues this one on it.
+     */
+    private byte[] send(byte[] bytes, Wire wire) {
+        long now;
+        do {
+            now = System.nanoTime();
+        } while (now < linkFreeAt);
+        linkFreeAt = now + bytes.length * NANOS_PER_BYTE;
+        wire.wireBytes += bytes.length;
+        return bytes;
+    }
+
+    /**
+     * A JSON array of records with varied values, about {@code size} bytes, compressing roughly like real
+     * API responses rather than a repeated string.
+     */
+    static String payload(int size) {
+        Random random = new Random(size);
+        String[] words = {"alpha", "bravo", "charlie", "delta", "echo", "foxtrot", "golf", "hotel", "india", "juliet"};
+        StringBuilder json = new StringBuilder(size + 256).append('[');
+        for (int i = 0; json.length() < size; i++) {
+            json.append(i == 0 ? "" : ",")
+                    .append("{\"id\":").append(100000 + random.nextInt(900000))
+                    .append(",\"name\":\"").append(words[random.nextInt(words.length)]).append(' ').append(words[random.nextInt(words.length)])
+                    .append("\",\"price\":").append(random.nextInt(100000) / 100.0)
+                    .append(",\"active\":").append(random.nextBoolean())
+                    .append(",\"uuid\":\"").append(Long.toHexString(random.nextLong())).append("\"}");
+        }
+        return json.append(']').toString();
+    }
+}
@@ -0,0 +1,51 @@
+package org.example.mock.service;
+
+import org.example.mock.entity.MockConfig;
+import org.junit.Test;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+public class MockRouteTest {
+
+    @Test
+    public void escapesPathValuesInJsonBodies() {
+        MockRoute route = route("users/{id}/*", "{\"id\":\"{{id}}\",\"rest\":\"{{*}}\"}");
+        Map<String, String> variables = new LinkedHashMap<>();
+        variables.put("id", "a\",\"admin\":true,\"x\":\"\\");
+        variables.put("*", "tab\there\u0001");
+        assertEquals("{\"id\":\"a\\\",\\\"admin\\\":true,\\\"x\\\":\\\"\\\\\",\"rest\":\"tab\\there\\u0001\"}",
+                route.renderResponse(variables));
+    }
+
+    @Test
+    public void leavesPlainValuesAlone() {
+        MockRoute route = route("users/{id}", "{\"id\":{{id}},\"name\":\"café {{id}}\"}");
+        assertEquals("{\"id\":42,\"name\":\"café 42\"}", route.renderResponse(Collections.singletonMap("id", "42")));
+    }
+
+    @Test
+    public void escapesPathValuesInXmlBodies() {
+        MockRoute route = route("users/{id}", "<user id=\"{{id}}\">{{id}}</user>");
+        assertEquals("<user id=\"a&quot;&lt;b&gt;&amp;&apos;\">a&quot;&lt;b&gt;&amp;&apos;</user>",
+                route.renderResponse(Collections.singletonMap("id", "a\"<b>&'")));
+    }
+
+    @Test
+    public void leavesPlainTextBodiesAsTheyAre() {
+        MockRoute route = route("users/{id}", "Hello {{id}}");
+        assertEquals("Hello a\"b", route.renderResponse(Collections.singletonMap("id", "a\"b")));
+    }
+
+    private static MockRoute route(String urlPattern, String responsePayload) {
+        MockConfig config = new MockConfig();
+        config.setId(1L);
+        config.setHttpMethod("GET");
+        config.setUrlPattern(urlPattern);
+        config.setResponsePayload(responsePayload);
+        return MockRoute.compile(config);
+    }
+}
@@ -0,0 +1,78 @@
+package org.example.mock.service;
+
+import org.example.mock.util.LatencyHistogram;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of recording a request in the live metrics: {@link LatencyHistogram#record} alone and a whole
+ * {@link RouteMetrics#start()}/{@link RouteMetrics#finish} pair, each on one route shared by 1 and by 8
+ * threads, the latter being every request of a busy rule.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RouteMetricsBenchmark {
+
+    private final LatencyHistogram histogram = new LatencyHistogram();
+    private final RouteMetrics route = new RouteMetrics("gateway", 1L, "/api/**");
+
+    /**
+     * Per-thread latencies spread over three decades, so records hit many buckets.
+     */
+    @State(Scope.Thread)
+    public static class Latencies {
+
+        private final long[] values = new long[1024];
+        private int next;
+
+        public Latencies() {
+            Random random = new Random(Thread.currentThread().getId());
+            for (int i = 0; i < values.length; i++) {
+                values[i] = (long) Math.exp(Math.log(500) + random.nextGaussian() * 1.5);
+            }
+        }
+
+        long next() {
+            return values[next++ & (values.length - 1)];
+        }
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void record(Latencies latencies) {
+        histogram.record(latencies.next());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void recordContended(Latencies latencies) {
+        histogram.record(latencies.next());
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void startFinish() {
+        route.finish(200, route.start());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public void startFinishContended() {
+        route.finish(200, route.start());
+    }
+}
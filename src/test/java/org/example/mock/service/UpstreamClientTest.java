@@ -0,0 +1,180 @@
+package org.example.mock.service;
+
+import org.example.mock.entity.GatewayConfig;
+import org.example.mock.util.HttpExchange;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class UpstreamClientTest {
+
+    private StubServer server;
+    private UpstreamClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new StubServer();
+        client = new UpstreamClient();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        client.shutdown();
+        server.close();
+    }
+
+    @Test
+    public void sequentialCallsReuseOneConnection() throws IOException {
+        GatewayConfig config = config(1L, 20);
+        for (int i = 0; i < 5; i++) {
+            assertEquals("hello /items/" + i, call(config, "/items/" + i));
+        }
+
+        assertEquals(1, server.getConnectionCount());
+        assertEquals(5, server.getRequestCount());
+        Map<String, Object> stats = client.getStats(1L);
+        assertEquals(1L, stats.get("created"));
+        assertEquals(4L, stats.get("reused"));
+        assertEquals(0, stats.get("leased"));
+        assertEquals(1, stats.get("idle"));
+    }
+
+    @Test
+    public void concurrentCallsStayWithinThePoolSize() throws Exception {
+        GatewayConfig config = config(2L, 2);
+        ExecutorService threads = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 40; i++) {
+                String path = "/items/" + i;
+                results.add(threads.submit(() -> call(config, path)));
+            }
+            for (int i = 0; i < results.size(); i++) {
+                assertEquals("hello /items/" + i, results.get(i).get(10, TimeUnit.SECONDS));
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+
+        assertTrue("connections: " + server.getConnectionCount(), server.getConnectionCount() <= 2);
+        Map<String, Object> stats = client.getStats(2L);
+        assertEquals((long) server.getConnectionCount(), stats.get("created"));
+        assertEquals(40L - server.getConnectionCount(), stats.get("reused"));
+    }
+
+    private String call(GatewayConfig config, String path) throws IOException {
+        URI target = URI.create("http://127.0.0.1:" + server.getPort() + path);
+        try (HttpExchange.Response response = client.execute(config, "GET", target, Collections.emptyMap(), null, -1)) {
+            assertEquals(200, response.getStatus());
+            return new String(readAll(response.getBody()), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static GatewayConfig config(Long id, int maxConnections) {
+        GatewayConfig config = new GatewayConfig();
+        config.setId(id);
+        config.setMaxConnections(maxConnections);
+        return config;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Keep-alive HTTP/1.1 server that answers every GET with "hello" and its path, and counts the TCP
+     * connections it accepts.
+     */
+    private static final class StubServer implements AutoCloseable {
+
+        private final ServerSocket socket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        private final ExecutorService connections = Executors.newCachedThreadPool();
+        private final AtomicInteger connectionCount = new AtomicInteger();
+        private final AtomicInteger requestCount = new AtomicInteger();
+
+        StubServer() throws IOException {
+            connections.execute(this::accept);
+        }
+
+        private void accept() {
+            try {
+                while (true) {
+                    Socket connection = socket.accept();
+                    connectionCount.incrementAndGet();
+                    connections.execute(() -> serve(connection));
+                }
+            } catch (IOException e) {
+                // Closed
+            }
+        }
+
+        private void serve(Socket connection) {
+            try (Socket s = connection) {
+                InputStream in = s.getInputStream();
+                OutputStream out = s.getOutputStream();
+                String requestLine;
+                while ((requestLine = readHead(in)) != null) {
+                    requestCount.incrementAndGet();
+                    byte[] body = ("hello " + requestLine.split(" ")[1]).getBytes(StandardCharsets.UTF_8);
+                    out.write(("HTTP/1.1 200 OK\r\nContent-Type: text/plain\r\nContent-Length: " + body.length + "\r\n\r\n")
+                            .getBytes(StandardCharsets.US_ASCII));
+                    out.write(body);
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // Client went away
+            }
+        }
+
+        /** Reads a request head (the requests have no body) and returns its request line, or null at EOF. */
+        private static String readHead(InputStream in) throws IOException {
+            StringBuilder head = new StringBuilder();
+            int c;
+            while ((c = in.read()) != -1) {
+                head.append((char) c);
+                if (head.length() >= 4 && head.substring(head.length() - 4).equals("\r\n\r\n")) {
+                    return head.substring(0, head.indexOf("\r\n"));
+                }
+            }
+            return null;
+        }
+
+        int getPort() { return socket.getLocalPort(); }
+        int getConnectionCount() { return connectionCount.get(); }
+        int getRequestCount() { return requestCount.get(); }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+            connections.shutdownNow();
+        }
+    }
+}
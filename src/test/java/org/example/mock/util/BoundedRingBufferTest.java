@@ -0,0 +1,96 @@
+package org.example.mock.util;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+public class BoundedRingBufferTest {
+
+    @Test
+    public void drainsInOrder() {
+        BoundedRingBuffer<Integer> ring = new BoundedRingBuffer<>(8, BoundedRingBuffer.OverflowPolicy.DROP_OLDEST, 0);
+        for (int i = 0; i < 5; i++) {
+            ring.offer(i);
+        }
+        List<Integer> drained = new ArrayList<>();
+        assertEquals(3, ring.drainTo(drained::add, 3));
+        assertEquals(2, ring.drainTo(drained::add, 10));
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), drained);
+        assertEquals(0, ring.getBacklog());
+        assertEquals(Arrays.asList(4, 3), ring.recent(2));
+    }
+
+    @Test
+    public void countsOverwrittenValuesAsDropped() {
+        BoundedRingBuffer<Integer> ring = new BoundedRingBuffer<>(4, BoundedRingBuffer.OverflowPolicy.DROP_OLDEST, 0);
+        for (int i = 0; i < 10; i++) {
+            ring.offer(i);
+        }
+        List<Integer> drained = new ArrayList<>();
+        ring.drainTo(drained::add, 100);
+        assertEquals(Arrays.asList(6, 7, 8, 9), drained);
+        assertEquals(6, ring.getDropped());
+    }
+
+    @Test
+    public void concurrentProducersLappingTheRingNeverStallTheConsumer() throws InterruptedException {
+        // A tiny ring, so producers a lap apart race for the same slot all the time.
+        for (int round = 0; round < 50; round++) {
+            BoundedRingBuffer<Integer> ring = new BoundedRingBuffer<>(2, BoundedRingBuffer.OverflowPolicy.DROP_OLDEST, 0);
+            int producers = 4;
+            int perProducer = 20_000;
+            CountDownLatch start = new CountDownLatch(1);
+            List<Thread> threads = new ArrayList<>();
+            for (int p = 0; p < producers; p++) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int i = 0; i < perProducer; i++) {
+                        ring.offer(i);
+                    }
+                });
+                thread.start();
+                threads.add(thread);
+            }
+            long[] drained = new long[1];
+            start.countDown();
+            for (Thread thread : threads) {
+                while (thread.isAlive()) {
+                    drained[0] += ring.drainTo(value -> { }, 64);
+                }
+                thread.join();
+            }
+            drained[0] += ring.drainTo(value -> { }, Integer.MAX_VALUE);
+            assertEquals("round " + round + ": backlog left after all producers finished", 0, ring.getBacklog());
+            assertEquals((long) producers * perProducer, drained[0] + ring.getDropped());
+        }
+    }
+
+    @Test
+    public void blockedProducerWaitsForTheConsumer() throws InterruptedException {
+        BoundedRingBuffer<Integer> ring = new BoundedRingBuffer<>(2, BoundedRingBuffer.OverflowPolicy.BLOCK,
+                TimeUnit.SECONDS.toNanos(10));
+        ring.offer(0);
+        ring.offer(1);
+        Thread producer = new Thread(() -> ring.offer(2));
+        producer.start();
+        while (ring.getBlocked() == 0) {
+            Thread.sleep(1);
+        }
+        List<Integer> drained = new ArrayList<>();
+        ring.drainTo(drained::add, 1);
+        producer.join(TimeUnit.SECONDS.toMillis(5));
+        ring.drainTo(drained::add, 10);
+        assertEquals(Arrays.asList(0, 1, 2), drained);
+        assertEquals(0, ring.getDropped());
+    }
+}
@@ -0,0 +1,80 @@
+package org.example.mock.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Request payload normalization on pretty-printed JSON of 1 KB, 100 KB and 5 MB: the canonical string,
+ * its digest computed while canonicalizing (never building the string), the same digest taken by
+ * hashing the canonical string as payload matching does, and the whitespace-only minify.
+ * The regex it replaced is measured by {@link JsonRegexNormalizeBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonCanonicalizerBenchmark {
+
+    @Param({"1024", "102400", "5242880"})
+    private int size;
+
+    private String payload;
+
+    @Setup
+    public void setUp() {
+        payload = payload(size);
+    }
+
+    @Benchmark
+    public String canonicalize() {
+        return JsonCanonicalizer.canonicalize(payload);
+    }
+
+    @Benchmark
+    public byte[] streamingDigest() {
+        return JsonCanonicalizer.digest(payload);
+    }
+
+    @Benchmark
+    public String canonicalizeThenDigest() {
+        return JsonUtil.normalizedDigest(payload);
+    }
+
+    @Benchmark
+    public String minify() {
+        return JsonUtil.minify(payload);
+    }
+
+    /**
+     * An indented array of small objects, about {@code size} characters long, with unsorted keys, numbers
+     * in several spellings and escaped strings.
+     */
+    static String payload(int size) {
+        StringBuilder json = new StringBuilder(size + 256).append("[\n");
+        for (int i = 0; json.length() < size; i++) {
+            json.append(i == 0 ? "" : ",\n")
+                    .append("  {\n")
+                    .append("    \"name\": \"item ").append(i).append(" \\\"quoted\\\" caf\\u00e9\",\n")
+                    .append("    \"id\": ").append(i).append(",\n")
+                    .append("    \"price\": ").append(i % 100).append(".50,\n")
+                    .append("    \"weight\": ").append(i % 7 + 1).append("e2,\n")
+                    .append("    \"tags\": [ \"a\", \"b c\" ],\n")
+                    .append("    \"active\": ").append(i % 2 == 0).append("\n")
+                    .append("  }");
+        }
+        return json.append("\n]").toString();
+    }
+}
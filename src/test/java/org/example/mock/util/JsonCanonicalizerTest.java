@@ -0,0 +1,204 @@
+package org.example.mock.util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class JsonCanonicalizerTest {
+
+    @Test
+    public void removesWhitespaceAndSortsKeys() {
+        assertEquals("{\"a\":[1,2],\"b\":{\"c\":true,\"d\":null}}",
+                JsonCanonicalizer.canonicalize(" {\n\t\"b\" : { \"d\" : null , \"c\" : true } ,\r\n \"a\" : [ 1 , 2 ] } "));
+    }
+
+    @Test
+    public void sortsKeysByUtf16CodeUnits() {
+        assertEquals("{\"B\":1,\"a\":2,\"aa\":3,\"\u00e9\":4}",
+                JsonCanonicalizer.canonicalize("{\"\u00e9\":4,\"aa\":3,\"a\":2,\"B\":1}"));
+    }
+
+    @Test
+    public void keepsDuplicateKeysInDocumentOrder() {
+        assertEquals("{\"a\":2,\"a\":1,\"b\":0}", JsonCanonicalizer.canonicalize("{\"b\":0,\"a\":2,\"a\":1}"));
+    }
+
+    @Test
+    public void keepsArrayOrder() {
+        assertEquals("[3,1,2]", JsonCanonicalizer.canonicalize("[3, 1, 2]"));
+    }
+
+    @Test
+    public void sortsEveryNestingLevelIndependently() {
+        assertEquals("[{\"a\":{\"x\":1,\"y\":2},\"b\":[{\"c\":0,\"d\":0}]},{\"a\":1}]",
+                JsonCanonicalizer.canonicalize("[{\"b\":[{\"d\":0,\"c\":0}],\"a\":{\"y\":2,\"x\":1}},{\"a\":1}]"));
+    }
+
+    @Test
+    public void sortsLargeObjectsStably() {
+        // More members than the insertion sort handles, in reverse order, with duplicates.
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 99; i >= 0; i--) {
+            json.append(i == 99 ? "" : ",").append("\"k").append(i / 2).append("\":").append(i);
+        }
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            keys.add("k" + i);
+        }
+        Collections.sort(keys);
+        StringBuilder sorted = new StringBuilder("{");
+        for (String key : keys) {
+            int n = Integer.parseInt(key.substring(1));
+            sorted.append(sorted.length() == 1 ? "" : ",")
+                    .append("\"").append(key).append("\":").append(n * 2 + 1)
+                    .append(",\"").append(key).append("\":").append(n * 2);
+        }
+        assertEquals(sorted.append("}").toString(), JsonCanonicalizer.canonicalize(json.append("}").toString()));
+    }
+
+    @Test
+    public void canonicalizesEmptyContainersAndScalars() {
+        assertEquals("{}", JsonCanonicalizer.canonicalize("{ }"));
+        assertEquals("[]", JsonCanonicalizer.canonicalize("[ ]"));
+        assertEquals("\"\"", JsonCanonicalizer.canonicalize(" \"\" "));
+        assertEquals("false", JsonCanonicalizer.canonicalize("false"));
+        assertEquals("42", JsonCanonicalizer.canonicalize("42"));
+    }
+
+    @Test
+    public void writesNumbersInShortestDecimalForm() {
+        assertEquals("[1,100,0,0,0.1,-1.5,100,0.00000015,12345678901234567890]",
+                JsonCanonicalizer.canonicalize("[1.0,1e2,-0,-0.0,0.10,-1.50,1E+2,1.5e-7,12345678901234567890]"));
+    }
+
+    @Test
+    public void keepsExponentsForExtremeMagnitudes() {
+        assertEquals("[1e22,1e-22,-2.5e400]", JsonCanonicalizer.canonicalize("[1e22,0.0000000000000000000001,-25e399]"));
+        assertEquals("[1000000000000000000000,0.000000000000000000001]", JsonCanonicalizer.canonicalize("[1e21,1e-21]"));
+    }
+
+    @Test
+    public void equivalentNumberSpellingsCanonicalizeAlike() {
+        assertEquals(JsonCanonicalizer.canonicalize("{\"n\":1}"), JsonCanonicalizer.canonicalize("{\"n\":1.000e0}"));
+        assertEquals(JsonCanonicalizer.canonicalize("{\"n\":0}"), JsonCanonicalizer.canonicalize("{\"n\":-0e10}"));
+    }
+
+    @Test
+    public void reEscapesStringsOneWay() {
+        assertEquals("\"A/\\\"\\\\\\b\\f\\n\\r\\t\"", JsonCanonicalizer.canonicalize("\"\\u0041\\/\\\"\\\\\\b\\f\\n\\r\\t\""));
+        assertEquals("\"\\u0001\\u001f\"", JsonCanonicalizer.canonicalize("\"\\u0001\\u001F\""));
+        assertEquals("\"\u00e9\u20ac\"", JsonCanonicalizer.canonicalize("\"\\u00E9\\u20ac\""));
+    }
+
+    @Test
+    public void keepsSurrogatePairs() {
+        assertEquals("\"\ud83d\ude00\"", JsonCanonicalizer.canonicalize("\"\\ud83d\\ude00\""));
+        assertEquals("\"\ud83d\ude00\"", JsonCanonicalizer.canonicalize("\"\ud83d\ude00\""));
+    }
+
+    @Test
+    public void canonicalizesEscapedKeys() {
+        assertEquals("{\"a\":1,\"b\\n\":2}", JsonCanonicalizer.canonicalize("{\"b\\u000a\":2,\"\\u0061\":1}"));
+    }
+
+    @Test
+    public void isIdempotent() {
+        String once = JsonCanonicalizer.canonicalize("{\"z\":[1.50,{\"y\":\"\\u00e9\\t\",\"x\":-0}],\"a\":1e30}");
+        assertEquals(once, JsonCanonicalizer.canonicalize(once));
+    }
+
+    @Test
+    public void acceptsNestingUpToTheLimit() {
+        String nested = repeat("[", 512) + repeat("]", 512);
+        assertEquals(nested, JsonCanonicalizer.canonicalize(nested));
+    }
+
+    @Test
+    public void rejectsNestingBeyondTheLimit() {
+        assertNull(JsonCanonicalizer.canonicalize(repeat("[", 513) + repeat("]", 513)));
+        assertNull(JsonCanonicalizer.canonicalize(repeat("{\"a\":", 513) + "1" + repeat("}", 513)));
+    }
+
+    @Test
+    public void rejectsMalformedInput() {
+        String[] malformed = {
+                "", "   ", "{", "}", "[1,]", "[1 2]", "{\"a\":1,}", "{\"a\" 1}", "{a:1}", "{'a':1}", "{\"a\":1}}",
+                "\"unterminated", "\"tab\there\"", "\"\\x\"", "\"\\u12G4\"", "\"\\u12",
+                "01", "[01]", "-", "1.", ".5", "1e", "1e+", "+1", "NaN", "Infinity",
+                "tru", "nul", "True", "{\"a\":1} x", "[1]\n[2]"};
+        for (String json : malformed) {
+            assertNull(json, JsonCanonicalizer.canonicalize(json));
+            assertNull(json, JsonCanonicalizer.digest(json));
+        }
+    }
+
+    @Test
+    public void readerVariantReportsMalformedInput() throws IOException {
+        try {
+            JsonCanonicalizer.canonicalize(new StringReader("{\"a\":[1,}"), new StringBuilder());
+            fail("Expected MalformedJsonException");
+        } catch (JsonCanonicalizer.MalformedJsonException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void readerVariantMatchesStringVariantAcrossChunks() throws IOException {
+        // Longer than one 8 KB read chunk, with strings and numbers straddling chunk boundaries.
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 2000; i++) {
+            json.append(i == 0 ? "" : ", ").append("{\"v\": ").append(i).append(".50, \"k\": \"\\u00e9 ").append(i).append("\"}");
+        }
+        json.append("]");
+        StringBuilder out = new StringBuilder();
+        JsonCanonicalizer.canonicalize(new StringReader(json.toString()), out);
+        assertEquals(JsonCanonicalizer.canonicalize(json.toString()), out.toString());
+    }
+
+    @Test
+    public void digestIsSha256OfTheCanonicalForm() throws IOException {
+        String json = "{\"b\":\"\ud83d\ude00 \u00e9\",\"a\":[1.0, 2e1]}";
+        byte[] expected = JsonUtil.newDigest().digest(JsonCanonicalizer.canonicalize(json).getBytes(StandardCharsets.UTF_8));
+        assertArrayEquals(expected, JsonCanonicalizer.digest(json));
+        assertArrayEquals(expected, JsonCanonicalizer.digest(json.toCharArray(), 0, json.length()));
+        assertArrayEquals(expected, JsonCanonicalizer.digest(new StringReader(json)));
+    }
+
+    @Test
+    public void digestMatchesHashingTheStringAcrossChunks() {
+        // ASCII runs longer than the encoder's buffer, mixed with 2- and 3-byte chars, surrogate pairs
+        // and unpaired surrogates, at varying offsets from the chunk boundaries.
+        StringBuilder json = new StringBuilder("[");
+        String[] parts = {"\u00e9", "\u20ac", "\ud83d\ude00", "\ud83d", "\ude00", "x"};
+        for (int i = 0; i < 300; i++) {
+            json.append(i == 0 ? "" : ",").append("{\"b\":\"").append(repeat("a", i * 37 % 9000))
+                    .append(parts[i % parts.length]).append("\",\"a\":").append(i).append('}');
+        }
+        json.append(']');
+        String canonical = JsonCanonicalizer.canonicalize(json.toString());
+        byte[] expected = JsonUtil.newDigest().digest(canonical.getBytes(StandardCharsets.UTF_8));
+        assertArrayEquals(expected, JsonCanonicalizer.digest(json.toString()));
+        assertEquals(JsonUtil.normalizedDigest(json.toString()), JsonUtil.toHex(JsonCanonicalizer.digest(json.toString())));
+    }
+
+    @Test
+    public void normalizeFallsBackToMinifyForNonJson() {
+        assertEquals("<a><b>xy</b></a>", JsonUtil.normalize("<a>\n  <b>x y</b>\n</a>"));
+        assertEquals("{a:\"x y\"}", JsonUtil.normalize("{ a : \"x y\" }"));
+        assertNull(JsonUtil.normalize("  \n "));
+    }
+
+    private static String repeat(String s, int count) {
+        return String.join("", Collections.nCopies(count, s));
+    }
+}
@@ -0,0 +1,45 @@
+package org.example.mock.util;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The former {@code JsonUtil.normalize}, a whitespace regex whose lookahead rescans the rest of the text
+ * at every whitespace run, on the payloads of {@link JsonCanonicalizerBenchmark}. Its backtracking
+ * needs a large stack from about 100 KB on, and its quadratic time keeps it from finishing 5 MB in
+ * hours, so it only runs at 1 KB and 100 KB.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xss1g")
+public class JsonRegexNormalizeBenchmark {
+
+    @Param({"1024", "102400"})
+    private int size;
+
+    private String payload;
+
+    @Setup
+    public void setUp() {
+        payload = JsonCanonicalizerBenchmark.payload(size);
+    }
+
+    @Benchmark
+    public String regex() {
+        return payload.replaceAll("\\s+(?=(?:[^\"]*\"[^\"]*\")*[^\"]*$)", "");
+    }
+}
@@ -0,0 +1,117 @@
+package org.example.mock.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+
+    private static final int BUCKETS = 544;
+    private static final long MAX_VALUE = (1L << 37) - 1;
+
+    @Test
+    public void smallValuesGetABucketEach() {
+        for (int value = 0; value < 16; value++) {
+            assertEquals(value, LatencyHistogram.bucket(value));
+            assertEquals(value, LatencyHistogram.highestValue(value));
+        }
+        assertEquals(16, LatencyHistogram.bucket(16));
+    }
+
+    @Test
+    public void bucketsAreContiguousUpToTheLast() {
+        for (int bucket = 0; bucket < BUCKETS - 1; bucket++) {
+            long highest = LatencyHistogram.highestValue(bucket);
+            assertEquals("bucket of highestValue(" + bucket + ")", bucket, LatencyHistogram.bucket(highest));
+            assertEquals("bucket after highestValue(" + bucket + ")", bucket + 1, LatencyHistogram.bucket(highest + 1));
+        }
+    }
+
+    @Test
+    public void maxValueLandsInTheLastBucket() {
+        assertEquals(BUCKETS - 1, LatencyHistogram.bucket(MAX_VALUE));
+        assertEquals(MAX_VALUE, LatencyHistogram.highestValue(BUCKETS - 1));
+        assertEquals(BUCKETS - 16, LatencyHistogram.bucket(1L << 36));
+    }
+
+    @Test
+    public void recordClampsOutOfRangeValues() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(-5);
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(2, snapshot.getCount());
+        assertEquals(MAX_VALUE, snapshot.getMax());
+        assertEquals(MAX_VALUE, snapshot.percentile(1.0));
+        assertEquals(0, snapshot.percentile(0.5));
+    }
+
+    @Test
+    public void bucketBoundIsWithinOneSixteenthOfTheValue() {
+        Random random = new Random(42);
+        for (int i = 0; i < 100_000; i++) {
+            long value = random.nextLong() & MAX_VALUE;
+            value >>>= random.nextInt(37);
+            long highest = LatencyHistogram.highestValue(LatencyHistogram.bucket(value));
+            assertTrue(value + " -> " + highest, highest >= value && highest - value <= value / 16);
+        }
+    }
+
+    @Test
+    public void percentilesAreUpperBoundsCappedAtTheMax() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int value = 1; value <= 1000; value++) {
+            histogram.record(value);
+        }
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500_500, snapshot.getSum());
+        assertBetween(500, 500 + 500 / 16, snapshot.percentile(0.5));
+        assertBetween(950, 950 + 950 / 16, snapshot.percentile(0.95));
+        assertBetween(990, 1000, snapshot.percentile(0.99));
+        assertEquals(1000, snapshot.percentile(1.0));
+        assertEquals(1, snapshot.percentile(0.0));
+    }
+
+    @Test
+    public void emptyHistogramReportsZero() {
+        LatencyHistogram.Snapshot snapshot = new LatencyHistogram().snapshot();
+        assertEquals(0, snapshot.percentile(0.99));
+        assertEquals(0, snapshot.getMax());
+    }
+
+    @Test
+    public void snapshotsAddUp() {
+        LatencyHistogram fast = new LatencyHistogram();
+        LatencyHistogram slow = new LatencyHistogram();
+        for (int i = 0; i < 90; i++) {
+            fast.record(10);
+        }
+        for (int i = 0; i < 10; i++) {
+            slow.record(100_000);
+        }
+        LatencyHistogram.Snapshot merged = fast.snapshot().plus(slow.snapshot());
+        assertEquals(100, merged.getCount());
+        assertEquals(100_000, merged.getMax());
+        assertEquals(10, merged.percentile(0.9));
+        assertBetween(100_000, 100_000 + 100_000 / 16, merged.percentile(0.91));
+    }
+
+    @Test
+    public void resetEmptiesTheHistogram() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(123);
+        histogram.reset();
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getSum());
+        assertEquals(0, snapshot.percentile(1.0));
+    }
+
+    private static void assertBetween(long low, long high, long actual) {
+        assertTrue(actual + " not in [" + low + ", " + high + "]", actual >= low && actual <= high);
+    }
+}